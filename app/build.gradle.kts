@@ -51,6 +51,12 @@ android {
             useLegacyPackaging = true
         }
     }
+
+    // ✅ Lớp chỉ dùng để đánh giá (DetectionEval, GoldenOutput): dùng chung cho unit test và DatasetEvalTest, không vào APK
+    sourceSets {
+        getByName("test").java.srcDir("src/sharedTest/java")
+        getByName("androidTest").java.srcDir("src/sharedTest/java")
+    }
 }
 
 // Cấu hình JVM target cho Kotlin
@@ -0,0 +1,256 @@
+package com.example.spiketimer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.spiketimer.yolo.DetectionBatch;
+import com.example.spiketimer.yolo.DetectionEval;
+import com.example.spiketimer.yolo.DetectorProfile;
+import com.example.spiketimer.yolo.DetectorProfileStore;
+import com.example.spiketimer.yolo.GoldenOutput;
+import com.example.spiketimer.yolo.LatencyStats;
+import com.example.spiketimer.yolo.PipelineSettings;
+import com.example.spiketimer.yolo.PipelineSettingsStore;
+import com.example.spiketimer.yolo.TFLiteYoloDetector;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Đánh giá offline trên tập ảnh có nhãn (thay cho nhìn dialog val_test.jpg bằng mắt).
+ *
+ * Bố cục thư mục (mặc định getExternalFilesDir("eval"), đổi bằng -e evalDir /đường/dẫn):
+ *   images/*.jpg|png      ảnh
+ *   labels/&lt;tên&gt;.txt      nhãn YOLO (class cx cy w h, chuẩn hoá)
+ *   golden.tsv            (tuỳ chọn) kết quả vàng — có thì so và fail nếu lệch số
+ *
+ * Chạy:
+ *   adb shell am instrument -w -e class com.example.spiketimer.DatasetEvalTest \
+ *       com.example.spiketimer.test/androidx.test.runner.AndroidJUnitRunner
+ * Báo cáo + golden mới ghi vào &lt;evalDir&gt;/out/.
+ * Độ chính xác đo song song nhiều worker cho nhanh; latency đo riêng ở 1 worker với profile của app
+ * (số luồng / delegate như lúc chạy thật) để số đo không bị các worker khác tranh CPU. Latency báo 2 đường:
+ * đường app thật (presence + tiled khi full frame trượt, như CameraPipeline.analyze) và detect đầy đủ (decode + NMS).
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatasetEvalTest {
+    private static final String TAG = "DatasetEval";
+    private static final int MODEL_INPUT = 448;
+    private static final float MIN_CONF = 0.05f;                   // decode giữ box từ đây, lọc theo CONFS khi tính P/R
+    private static final float[] CONFS = {0.25f, 0.5f, 0.74f};
+    private static final float[] NMS_IOUS = {0.45f, 0.6f};
+    private static final int TOP_K = 100;
+
+    /** Kết quả 1 ảnh ở 1 cấu hình NMS */
+    private static final class ImageResult {
+        final String name;
+        final float[] gt;
+        final float[][] boxes = new float[NMS_IOUS.length][];
+        final float[][] scores = new float[NMS_IOUS.length][];
+
+        ImageResult(String name, float[] gt) {
+            this.name = name;
+            this.gt = gt;
+        }
+    }
+
+    @Test
+    public void evaluateDataset() throws Exception {
+        Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Bundle args = InstrumentationRegistry.getArguments();
+        String dirArg = args.getString("evalDir");
+        File root = dirArg != null ? new File(dirArg) : ctx.getExternalFilesDir("eval");
+        File imagesDir = new File(root, "images");
+        File[] images = imagesDir.listFiles((d, n) -> {
+            String l = n.toLowerCase(Locale.US);
+            return l.endsWith(".jpg") || l.endsWith(".jpeg") || l.endsWith(".png");
+        });
+        assumeTrue("No dataset at " + imagesDir, images != null && images.length > 0);
+        Arrays.sort(images);
+
+        // Độ chính xác: mỗi worker 1 detector (Interpreter không dùng chung được giữa các thread)
+        int workers = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        int threadsPerWorker = Math.max(1, Runtime.getRuntime().availableProcessors() / workers);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        AtomicInteger next = new AtomicInteger();
+        ImageResult[] results = new ImageResult[images.length];
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            futures.add(pool.submit(() -> {
+                TFLiteYoloDetector det = new TFLiteYoloDetector(ctx, DetectorProfileStore.DEFAULT_MODEL, MODEL_INPUT, MIN_CONF);
+                det.initialize(false, threadsPerWorker);
+                try {
+                    int i;
+                    while ((i = next.getAndIncrement()) < images.length) {
+                        results[i] = evaluateImage(det, images[i], new File(root, "labels"));
+                    }
+                } finally {
+                    det.close();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+
+        // Latency: lượt riêng, 1 detector trên thread test (tạo + gọi cùng thread, delegate dùng được),
+        // cấu hình như app — profile đã tune hoặc mặc định
+        DetectorProfile profile = new DetectorProfileStore(ctx).loadOrDefault();
+        PipelineSettings settings = new PipelineSettingsStore(ctx).load();
+        LatencyStats[] lat = new LatencyStats[NMS_IOUS.length];
+        for (int k = 0; k < NMS_IOUS.length; k++) lat[k] = new LatencyStats(images.length);
+        LatencyStats shipping = new LatencyStats(images.length);
+        DetectionBatch presence = new DetectionBatch(PipelineSettings.MAX_TOP_K);
+        int tiledFrames = 0;
+        TFLiteYoloDetector det = new TFLiteYoloDetector(ctx, DetectorProfileStore.DEFAULT_MODEL, MODEL_INPUT, MIN_CONF);
+        det.initialize(profile);
+        try {
+            for (File image : images) {
+                Bitmap bmp = decode(image);
+                // Đường app thật: presence (1 box), full frame không thấy gì → thêm 1 lượt tiled
+                long ts = System.nanoTime();
+                float maxScore = det.detectPresence(bmp, 0, presence, true);
+                if (maxScore < settings.getConfThreshold() && settings.getTiles() > 1) {
+                    det.detectTiled(bmp, 0, settings.getTiles(), settings.getIouThreshold(), settings.getTopK(), presence);
+                    tiledFrames++;
+                }
+                shipping.add((System.nanoTime() - ts) / 1e6f);
+                for (int k = 0; k < NMS_IOUS.length; k++) {
+                    long t0 = System.nanoTime();
+                    det.detect(bmp, 0, NMS_IOUS[k], TOP_K);
+                    lat[k].add((System.nanoTime() - t0) / 1e6f);
+                }
+                bmp.recycle();
+            }
+        } finally {
+            det.close();
+        }
+
+        // Tổng hợp theo từng cấu hình NMS
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "%d images, model %s\n", images.length, DetectorProfileStore.DEFAULT_MODEL));
+        report.append(String.format(Locale.US, "accuracy: %d workers × %d threads\n", workers, threadsPerWorker));
+        report.append(String.format(Locale.US, "latency: 1 worker, profile %s (no other workers running)\n", profile.key()));
+        report.append(String.format(Locale.US,
+                "shipping path (detectPresence + tiled ×%d when nothing ≥ %.2f, as CameraPipeline.analyze): "
+                        + "p50 %.1f / p90 %.1f / p99 %.1f / max %.1f ms, tiled on %d/%d images\n",
+                settings.getTiles(), settings.getConfThreshold(), shipping.percentile(50f), shipping.percentile(90f),
+                shipping.percentile(99f), shipping.percentile(100f), tiledFrames, images.length));
+        report.append("full detect (decode + NMS) latency per NMS IoU below\n");
+        // Không quét latency theo conf: decode luôn giữ box từ MIN_CONF, conf chỉ lọc lúc tính P/R
+        report.append(String.format(Locale.US,
+                "latency does not depend on conf: decode always keeps boxes from %.2f, CONFS only filter when computing P/R\n",
+                MIN_CONF));
+        for (int k = 0; k < NMS_IOUS.length; k++) {
+            DetectionEval eval = new DetectionEval();
+            for (ImageResult r : results) {
+                eval.add(r.gt, r.gt.length / 4, r.boxes[k], r.scores[k], r.scores[k].length);
+            }
+            report.append(String.format(Locale.US, "\nNMS IoU %.2f — latency p50 %.1f / p90 %.1f / p99 %.1f / max %.1f ms\n",
+                    NMS_IOUS[k], lat[k].percentile(50f), lat[k].percentile(90f), lat[k].percentile(99f), lat[k].percentile(100f)));
+            report.append(eval.summary(CONFS)).append('\n');
+        }
+
+        // Golden ở cấu hình NMS mặc định của app (index 0); so qua đúng định dạng file để cùng độ làm tròn
+        Map<String, float[]> actual = new LinkedHashMap<>();
+        StringBuilder golden = new StringBuilder();
+        for (ImageResult r : results) {
+            String line = GoldenOutput.line(r.name, r.boxes[0], r.scores[0], r.scores[0].length);
+            golden.append(line).append('\n');
+        }
+        actual.putAll(GoldenOutput.parse(golden.toString()));
+
+        File out = new File(root, "out");
+        assertTrue(out.isDirectory() || out.mkdirs());
+        write(new File(out, "report.txt"), report.toString());
+        write(new File(out, "golden.tsv"), golden.toString());
+        Log.i(TAG, report.toString());
+
+        File goldenFile = new File(root, "golden.tsv");
+        if (goldenFile.isFile()) {
+            String expectedText = read(goldenFile);
+            GoldenOutput.Drift drift = GoldenOutput.compare(GoldenOutput.parse(expectedText), actual);
+            Log.i(TAG, "Golden: " + drift);
+            assertTrue("Numeric drift vs golden: " + drift + " " + drift.getMismatchedImages(), drift.isClean());
+        } else {
+            Log.i(TAG, "No golden.tsv — copy out/golden.tsv next to images/ to pin current outputs");
+        }
+    }
+
+    private static ImageResult evaluateImage(TFLiteYoloDetector det, File image, File labelsDir) throws IOException {
+        Bitmap bmp = decode(image);
+
+        String stem = image.getName().replaceFirst("\\.[^.]+$", "");
+        File label = new File(labelsDir, stem + ".txt");
+        String text = label.isFile() ? read(label) : "";
+        ImageResult r = new ImageResult(image.getName(), DetectionEval.parseYoloLabels(text, bmp.getWidth(), bmp.getHeight()));
+
+        for (int k = 0; k < NMS_IOUS.length; k++) {
+            DetectionBatch dets = det.detect(bmp, 0, NMS_IOUS[k], TOP_K);
+            // Batch của detector bị ghi đè ở lần detect sau → chép phần dùng được
+            r.boxes[k] = Arrays.copyOf(dets.getBoxes(), 4 * dets.getSize());
+            r.scores[k] = Arrays.copyOf(dets.getScores(), dets.getSize());
+        }
+        bmp.recycle();
+        return r;
+    }
+
+    /** Subsample khi decode: cạnh ngắn vẫn ≥ input model (không tốn decode full-res ảnh lớn) */
+    private static Bitmap decode(File image) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(image.getPath(), bounds);
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inSampleSize = sampleSizeFor(bounds.outWidth, bounds.outHeight, MODEL_INPUT);
+        Bitmap bmp = BitmapFactory.decodeFile(image.getPath(), opts);
+        assertNotNull("Cannot decode " + image, bmp);
+        return bmp;
+    }
+
+    /** inSampleSize lớn nhất (luỹ thừa 2) mà cạnh ngắn sau decode vẫn ≥ target */
+    private static int sampleSizeFor(int w, int h, int target) {
+        int shortSide = Math.min(w, h);
+        int s = 1;
+        while (shortSide / (s * 2) >= target) s *= 2;
+        return s;
+    }
+
+    private static String read(File f) throws IOException {
+        try (InputStream in = new FileInputStream(f)) {
+            byte[] buf = new byte[(int) f.length()];
+            int off = 0, n;
+            while (off < buf.length && (n = in.read(buf, off, buf.length - off)) > 0) off += n;
+            return new String(buf, 0, off, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void write(File f, String text) throws IOException {
+        try (FileWriter w = new FileWriter(f)) { w.write(text); }
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.spiketimer;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.os.Build;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.util.Log;
+import android.view.WindowManager;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.example.spiketimer.yolo.BenchmarkConfig;
+import com.example.spiketimer.yolo.DetectorBenchmark;
+import com.example.spiketimer.yolo.DetectorProfile;
+import com.example.spiketimer.yolo.DetectorProfileStore;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Màn benchmark theo yêu cầu (thay cho self-test chạy mỗi lần mở app):
+ * đo detector trên val_test.jpg với mọi cấu hình luồng / XNNPACK / delegate / input,
+ * hiển thị p50/p95 + stage, lưu JSON và so với lần chạy trước; cấu hình tốt nhất ở input gốc
+ * được lưu làm profile detector cho máy.
+ */
+public class BenchmarkActivity extends AppCompatActivity {
+    private static final String TAG = "BenchmarkActivity";
+    private static final String TEST_IMAGE = "val_test.jpg";
+
+    private EditText etIterations;
+    private Button btnRun;
+    private ProgressBar progress;
+    private TextView tvResults;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile DetectorBenchmark running;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_benchmark);
+
+        // Thay đổi màu status bar thành #058bd4
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            getWindow().setStatusBarColor(Color.parseColor("#058bd4"));
+        }
+
+        etIterations = findViewById(R.id.etIterations);
+        btnRun = findViewById(R.id.btnRunBenchmark);
+        progress = findViewById(R.id.pbBenchmark);
+        tvResults = findViewById(R.id.tvBenchmarkResults);
+
+        btnRun.setOnClickListener(v -> startBenchmark());
+    }
+
+    private void startBenchmark() {
+        int iterations = parseIterations();
+        btnRun.setEnabled(false);
+        tvResults.setText("");
+        // Giữ màn hình sáng để máy không hạ xung giữa chừng
+        getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+
+        executor.execute(() -> {
+            Bitmap image;
+            try (InputStream is = getAssets().open(TEST_IMAGE)) {
+                image = BitmapFactory.decodeStream(is);
+            } catch (Exception e) {
+                Log.e(TAG, "Cannot load " + TEST_IMAGE, e);
+                runOnUiThread(() -> finishRun("Không đọc được " + TEST_IMAGE));
+                return;
+            }
+
+            // Lấy báo cáo trước TRƯỚC khi ghi báo cáo mới để so sánh
+            Map<String, Float> previous = DetectorBenchmark.p50ByKey(DetectorBenchmark.loadLatest(this));
+
+            List<BenchmarkConfig> configs = BenchmarkConfig.matrix();
+            DetectorBenchmark bench = new DetectorBenchmark(this, image, iterations);
+            running = bench;
+            runOnUiThread(() -> {
+                progress.setMax(configs.size());
+                progress.setProgress(0);
+                tvResults.append(String.format(Locale.US, "%d cấu hình × %d vòng, ảnh %dx%d\n\n",
+                        configs.size(), iterations, image.getWidth(), image.getHeight()));
+            });
+
+            // Tiền xử lý: Canvas (cũ) vs resampler bảng hệ số
+            DetectorBenchmark.PreprocessComparison pre = bench.comparePreprocess();
+            runOnUiThread(() -> tvResults.append(String.format(Locale.US,
+                    "preprocess canvas %.2f ms, resampler %.2f ms, lệch max %.1f / mean %.2f\n\n",
+                    pre.getCanvasP50Ms(), pre.getResamplerP50Ms(), pre.getMaxDiff(), pre.getMeanDiff())));
+
+            List<DetectorBenchmark.Result> results = bench.run(configs, (done, total, r) -> {
+                String line = formatResult(r, previous.get(r.getConfig().key()));
+                runOnUiThread(() -> {
+                    progress.setProgress(done);
+                    tvResults.append(line);
+                });
+            });
+            running = null;
+            if (bench.getCancelled()) return;
+
+            String footer;
+            try {
+                JSONObject report = bench.toJson(results, pre);
+                File f = DetectorBenchmark.save(this, report);
+                footer = "\nĐã lưu: " + f.getAbsolutePath();
+            } catch (Exception e) {
+                Log.e(TAG, "Save failed", e);
+                footer = "\nLưu thất bại: " + e.getMessage();
+            }
+
+            // Kết quả ở input gốc cũng là một lần tune → cập nhật profile detector cho máy này
+            List<DetectorBenchmark.Result> atModelInput = new ArrayList<>();
+            for (DetectorBenchmark.Result r : results) {
+                if (r.getConfig().getInputSize() == BenchmarkConfig.DEFAULT_INPUT_SIZES[0]) atModelInput.add(r);
+            }
+            DetectorProfile best = DetectorProfile.pickFastestStable(atModelInput);
+            if (best != null) {
+                try {
+                    new DetectorProfileStore(this).save(best);
+                    footer += "\nProfile: " + best.key();
+                } catch (Exception e) {
+                    Log.e(TAG, "Profile save failed", e);
+                }
+            }
+            String msg = footer;
+            runOnUiThread(() -> finishRun(msg));
+        });
+    }
+
+    private static String formatResult(DetectorBenchmark.Result r, Float prevP50) {
+        String key = r.getConfig().key();
+        if (!r.isOk()) return String.format(Locale.US, "%-22s %s\n", key, r.getStatus());
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%-22s p50 %6.1f  p95 %6.1f ms", key, r.getP50Ms(), r.getP95Ms()));
+        if (prevP50 != null) {
+            sb.append(String.format(Locale.US, "  (trước %.1f, %+.0f%%)", prevP50, (r.getP50Ms() / prevP50 - 1f) * 100f));
+        }
+        sb.append('\n');
+        for (Map.Entry<String, float[]> e : r.getStages().entrySet()) {
+            sb.append(String.format(Locale.US, "    %-10s %5.1f / %5.1f\n", e.getKey(), e.getValue()[0], e.getValue()[1]));
+        }
+        return sb.toString();
+    }
+
+    private void finishRun(String message) {
+        tvResults.append(message);
+        tvResults.append("\n");
+        btnRun.setEnabled(true);
+        getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+    }
+
+    private int parseIterations() {
+        String raw = etIterations.getText() != null ? etIterations.getText().toString().trim() : "";
+        int n = 30;
+        if (!TextUtils.isEmpty(raw)) {
+            try { n = Integer.parseInt(raw); } catch (NumberFormatException ignored) {}
+        }
+        return Math.max(5, Math.min(500, n));
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        DetectorBenchmark bench = running;
+        if (bench != null) bench.setCancelled(true);
+        executor.shutdown();
+    }
+}
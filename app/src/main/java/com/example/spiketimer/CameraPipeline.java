@@ -0,0 +1,1271 @@
+package com.example.spiketimer;
+
+import android.Manifest;
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.media.AudioAttributes;
+import android.media.SoundPool;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Range;
+import android.util.Size;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.OptIn;
+import androidx.camera.camera2.interop.Camera2CameraControl;
+import androidx.camera.camera2.interop.Camera2CameraInfo;
+import androidx.camera.camera2.interop.Camera2Interop;
+import androidx.camera.camera2.interop.CaptureRequestOptions;
+import androidx.camera.camera2.interop.ExperimentalCamera2Interop;
+import androidx.camera.core.Camera;
+import androidx.camera.core.CameraControl;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+import androidx.camera.core.Preview;
+import androidx.camera.core.resolutionselector.AspectRatioStrategy;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+import androidx.camera.core.resolutionselector.ResolutionStrategy;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.camera.view.PreviewView;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+
+import com.example.spiketimer.camera.ImageProxyExt;
+import com.example.spiketimer.camera.ModelInputResolutionFilter;
+import com.example.spiketimer.ui.OverlayView;
+import com.example.spiketimer.yolo.AndroidThermalSource;
+import com.example.spiketimer.yolo.AudioPlantTrigger;
+import com.example.spiketimer.yolo.AutoZoomController;
+import com.example.spiketimer.yolo.BandPool;
+import com.example.spiketimer.yolo.CaptureLatencyLog;
+import com.example.spiketimer.yolo.DetectionBatch;
+import com.example.spiketimer.yolo.DetectorAutoTuner;
+import com.example.spiketimer.yolo.DetectorProfile;
+import com.example.spiketimer.yolo.DetectorProfileStore;
+import com.example.spiketimer.yolo.EventLog;
+import com.example.spiketimer.yolo.ExposureCap;
+import com.example.spiketimer.yolo.FrameAgePolicy;
+import com.example.spiketimer.yolo.FrameHintSession;
+import com.example.spiketimer.yolo.FrameTransform;
+import com.example.spiketimer.yolo.GlowFeature;
+import com.example.spiketimer.yolo.HintJitterAb;
+import com.example.spiketimer.yolo.LetterboxTransform;
+import com.example.spiketimer.yolo.LowLatencyCapture;
+import com.example.spiketimer.yolo.ModelCatalog;
+import com.example.spiketimer.yolo.PerfLevel;
+import com.example.spiketimer.yolo.PerformanceGovernor;
+import com.example.spiketimer.yolo.PipelineMetrics;
+import com.example.spiketimer.yolo.PipelineSettings;
+import com.example.spiketimer.yolo.PipelineSettingsStore;
+import com.example.spiketimer.yolo.PriorityThreadFactory;
+import com.example.spiketimer.yolo.SpikeGate;
+import com.example.spiketimer.yolo.SpikeTrigger;
+import com.example.spiketimer.yolo.TaskScanner;
+import com.example.spiketimer.yolo.TFLiteYoloDetector;
+import com.example.spiketimer.yolo.WarmupTracker;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Locale;
+
+/**
+ * Pipeline của màn camera, sống qua đổi cấu hình (xoay màn hình, đổi cỡ chữ...): detector, executor phân tích,
+ * camera, SoundPool, trigger âm thanh và trạng thái countdown nằm ở đây chứ không ở activity.
+ * Activity tạo lại chỉ gắn lại view ([attach]) — không nạp lại model, không mất countdown đang chạy.
+ * Camera bind vào lifecycle riêng: chạy khi có activity hiển thị, dừng khi app xuống nền, huỷ ở [onCleared]
+ * (activity thoát hẳn). Countdown chạy trên main looper, không phụ thuộc view nào.
+ */
+public class CameraPipeline extends AndroidViewModel {
+    private static final String TAG = "CameraPipeline";
+    private static final String PREFS_NAME = "spike_prefs";
+    private static final String KEY_COUNTDOWN = "countdown_time";      // giây (float)
+    private static final String KEY_NOTIFICATION = "notification_time"; // giây (float)
+    private static final String KEY_MODEL = "detector_model";          // asset hoặc đường dẫn trong filesDir/models
+    private static final String MODELS_DIR = "models";
+
+    // Detect params (ngưỡng conf / IoU / top-K / tiled / α trigger / input / luồng: PipelineSettings, chỉnh trong Settings)
+    private static final float EVIDENCE_MIN_CONF = PipelineSettings.MIN_CONF; // decode giữ box từ mức này để trigger có confidence thô
+    private static final float TRIGGER_MISS_RATE = 0.05f;
+    private static final long  FRAME_DOWNGRADE_AGE_MS = 60L;  // frame già hơn: bỏ tiled
+    private static final long  FRAME_DROP_AGE_MS = 120L;      // frame già hơn: bỏ luôn
+    private static final float GATE_RECALL_TARGET = 0.98f; // cổng trước YOLO: tỉ lệ frame có spike phải cho qua
+
+    // Camera: analysis khớp input model, preview giữ độ phân giải cao
+    private static final int  MODEL_INPUT = 448;
+    private static final Size PREVIEW_TARGET_SIZE = new Size(1920, 1080);
+    private static final Range<Integer> ANALYSIS_FPS_RANGE = new Range<>(30, 30);
+    private static final int  LOW_LATENCY_MAX_FPS = 60; // profile độ trễ thấp: dải FPS cố định cao nhất tới mức này
+    // record × 32 B = 8 MB; ~30 record frame + ≤ 14 record tổng hợp stage mỗi giây → ring giữ ~1,5 h
+    private static final int  EVENT_LOG_CAPACITY = 262_144;
+    private static final String EVENT_BIN = "events/events.bin";
+    private static final String EVENT_CSV = "events/events.csv";
+
+    // Luồng pipeline: tên ≤ 15 ký tự (comm) để tìm lại worker native của interpreter theo tên
+    private static final String ANALYSIS_THREAD = "spike-analysis";
+    private static final String SWAP_THREAD = "spike-swap";
+    private static final int    SWAP_WARMUP_MAX_ITERATIONS = 2; // warmup trên analysis thread khi dựng lại với delegate
+    private static final String BAND_THREAD = "spike-band";
+    private static final int    PIPELINE_PRIORITY = Process.THREAD_PRIORITY_URGENT_DISPLAY;
+    private static final float  FRAME_BUDGET_MS = 1000f / 30f; // ngân sách mỗi frame cho performance hint (30 fps)
+    private static final long   GOVERNOR_IDLE_EVAL_MS = 1_000L; // frame bị bỏ: đọc lại nhiệt tối đa 1 lần/giây
+
+    /** Activity đang gắn vào pipeline; mọi callback chạy trên main thread */
+    public interface Host {
+        /** Thời gian còn lại cần hiển thị (ms) — gọi mỗi nhịp ticker và ngay lúc gắn */
+        void showCountdown(long msLeft);
+
+        /** Cài đặt bật trigger âm thanh mà chưa có quyền mic; kết quả trả về qua [onAudioPermissionResult] */
+        void requestAudioPermission();
+    }
+
+    private final Context app;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private Host host;                         // main thread; null giữa 2 activity (đang xoay)
+    private volatile OverlayView overlay;      // View để vẽ khung của activity đang gắn
+
+    // Camera bind vào lifecycle của pipeline: activity tạo lại không làm camera đóng / mở lại
+    private final CameraLifecycle cameraLifecycle = new CameraLifecycle();
+    private boolean cameraRequested = false;
+    private Preview preview;
+    private ImageAnalysis analysis;
+    private PreviewView previewView;           // surface preview của activity đang gắn
+
+    // Countdown bằng ticker sub-second
+    private boolean countdownRunning = false;
+    private long countdownInitMs = 45_000L; // đọc từ prefs
+    private long endAtMs = 0L;
+    private static final int UI_INTERVAL_MS = 16; // ~60Hz
+
+    // --- Auto reset khi về 0 ---
+    private static final long AUTO_RESET_DELAY_MS = 3_000L; // 3 giây
+    private boolean autoResetScheduled = false;
+    private final Runnable autoResetRunnable = new Runnable() {
+        @Override public void run() {
+            if (stopping) return;
+            resetCountdown(true); // true = clear overlay
+            autoResetScheduled = false;
+        }
+    };
+
+    // SoundPool low-latency (tạo trên thread nền lúc khởi động)
+    private volatile SoundPool soundPool;
+    private volatile int soundId = 0;              // spike_no.wav (nổ)
+    private boolean soundLoaded = false;
+    private int warmupStreamId = 0;
+    private boolean explosionPlayed = false;
+
+    // Thông báo (spike_defuse.wav)
+    private volatile int soundIdDefuse = 0;
+    private boolean soundLoadedDefuse = false;
+    private long notificationMs = 0L;      // mốc thông báo (giây trong prefs → ms), 0 = tắt
+    private boolean notifyPlayed = false;
+
+    // YOLO
+    private volatile TFLiteYoloDetector detector;   // chỉ đổi trên analysis thread (giữa 2 frame)
+    private final ModelCatalog modelCatalog;
+    private final ExecutorService swapExecutor;      // nạp + warmup model mới, không chặn analyzer
+    private final AtomicBoolean swapping = new AtomicBoolean(false);
+    private final BandPool bandPool;                 // tiền xử lý song song theo dải hàng (convert + resample)
+    private final ExecutorService analysisExecutor;
+    // Priority + tid của luồng pipeline; phiên performance hint báo ngân sách / thời lượng thực mỗi frame
+    private final PriorityThreadFactory analysisThreads = new PriorityThreadFactory(ANALYSIS_THREAD, PIPELINE_PRIORITY);
+    private final PriorityThreadFactory swapThreads = new PriorityThreadFactory(SWAP_THREAD, PIPELINE_PRIORITY);
+    private final PriorityThreadFactory bandThreads = new PriorityThreadFactory(BAND_THREAD, PIPELINE_PRIORITY);
+    private final TaskScanner taskScanner = new TaskScanner();
+    private final FrameHintSession hintSession;     // chỉ dùng trên analysis thread (kể cả close)
+    private final HintJitterAb hintAb = new HintJitterAb();
+    private long lastDetectStartMs = 0L;
+    private long workStartNs = 0L;                  // analysis thread: mốc bắt đầu frame hiện tại
+    private boolean workDone = false;               // frame hiện tại đã chạy detect
+    private final AtomicBoolean busy = new AtomicBoolean(false);
+    private volatile boolean stopping = false; // chặn analyzer & close an toàn
+    private volatile boolean detectorReady = false; // analyzer bỏ frame cho tới khi detector init xong
+    private volatile DetectorProfileStore profileStore; // model gốc; analysis thread tạo, luồng swap đọc
+    private volatile DetectorProfile profile;       // analysis thread ghi, đổi model đọc snapshot
+    private Bitmap reusableBitmap = null;
+
+    // Kết quả detect dạng mảng phẳng, tái dùng mỗi frame (analysis thread) + affine input → view đã cache
+    private final DetectionBatch detections = new DetectionBatch(PipelineSettings.MAX_TOP_K);
+    private final FrameTransform frameTransform = new FrameTransform();
+    private volatile int viewW = 0, viewH = 0; // kích thước overlay, cập nhật khi layout đổi
+
+    // Cổng rẻ trước YOLO: đặc trưng vệt sáng + ngưỡng tự chỉnh theo recall mục tiêu
+    private final GlowFeature glowFeature = new GlowFeature();
+    private final SpikeGate spikeGate = new SpikeGate(SystemClock::elapsedRealtime, GATE_RECALL_TARGET);
+
+    // Khởi động song song: prefs + SoundPool chạy nền, detector init trên analysis thread
+    private final ExecutorService startupExecutor;
+    private final long createdAtMs;         // mốc tạo pipeline để đo time-to-first-detection
+    private boolean firstDetectionReported = false;
+
+    // Governor nhiệt/tải: hạ luồng, input, tốc độ phân tích khi máy nóng
+    private final PerformanceGovernor governor;
+    private long lastInferStartMs = 0L;
+    private long lastGovernorEvalMs = 0L;           // analysis thread: lần governor đọc lại nhiệt gần nhất
+
+    // Nhật ký sự kiện nhị phân (ring mmap) — mở trên thread nền, null tới khi sẵn sàng
+    private volatile EventLog eventLog;
+
+    // Metrics hiển thị trên preview
+    private final PipelineMetrics metrics = new PipelineMetrics();
+
+    // Kích hoạt countdown: tích luỹ bằng chứng qua các frame (analysis thread cập nhật, main thread reset)
+    private final SpikeTrigger spikeTrigger = new SpikeTrigger(SystemClock::elapsedRealtime,
+            PipelineSettings.DEFAULT.getTriggerFalseRate(), TRIGGER_MISS_RATE);
+
+    // Núm hiệu năng từ Settings: analysis thread đọc snapshot mỗi frame, đổi nóng qua listener prefs
+    private final PipelineSettingsStore settingsStore;
+
+    // Trigger âm thanh (mic, luồng riêng) — bật theo cài đặt, kích hoạt chung SpikeTrigger với camera
+    private final AudioPlantTrigger audioTrigger;
+    private boolean audioPermissionAsked = false;
+    private volatile PipelineSettings settings = PipelineSettings.DEFAULT;
+    private long firstSeenTs = 0L; // mốc frame đầu của chuỗi bằng chứng đã kích hoạt
+
+    // Tuổi frame (timestamp cảm biến → lúc analyzer nhận): bỏ / hạ cấp frame đã nằm chờ quá lâu
+    private final FrameAgePolicy frameAgePolicy = new FrameAgePolicy(FRAME_DOWNGRADE_AGE_MS, FRAME_DROP_AGE_MS);
+
+    // Zoom
+    private volatile CameraControl cameraControl;   // analysis thread ra lệnh auto-zoom
+    private Camera camera;
+    private float currentZoomRatio = 1f;
+    private float minZoom = 1f;
+    private float maxZoom = 1f;
+    private static final float ZOOM_EPS = 0.02f; // Threshold to avoid spamming
+    // Auto-zoom: box spike quá nhỏ → zoom vào (crop cảm biến) để có nhiều pixel hơn trên mục tiêu ở cùng input model
+    private final AutoZoomController autoZoom = new AutoZoomController(SystemClock::elapsedRealtime);
+    private final float[] zoomBox = new float[4];   // analysis thread: box tốt nhất chuẩn hoá trên frame
+
+    // Profile chụp độ trễ thấp (Camera2 interop, bật / tắt nóng từ Settings): tham số chọn theo khả năng của máy lúc bind
+    private volatile Camera2CameraControl camera2Control;
+    private volatile boolean lowLatencyActive = false;
+    private Range<Integer> lowLatencyFps;           // null = giữ ANALYSIS_FPS_RANGE
+    private int lowLatencyNoiseMode = -1;           // -1 = mặc định của máy
+    private int lowLatencyEdgeMode = -1;
+    private boolean lowLatencyStabilizationOff = false;
+    // Trần phơi sáng (AE muốn phơi lâu hơn → exposure thủ công) + trễ cảm biến → result / analyzer theo từng profile
+    private final ExposureCap exposureCap = new ExposureCap(SystemClock::elapsedRealtime);
+    private final CaptureLatencyLog captureLatency = new CaptureLatencyLog();
+    private final CameraCaptureSession.CaptureCallback captureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            Long sensorNs = result.get(CaptureResult.SENSOR_TIMESTAMP);
+            if (sensorNs != null) captureLatency.onResult(sensorNs, SystemClock.elapsedRealtimeNanos());
+            if (!lowLatencyActive) return;
+            Integer aeMode = result.get(CaptureResult.CONTROL_AE_MODE);
+            Long exposureNs = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+            Integer iso = result.get(CaptureResult.SENSOR_SENSITIVITY);
+            Integer aeState = result.get(CaptureResult.CONTROL_AE_STATE);
+            if (aeMode == null || aeMode == CameraMetadata.CONTROL_AE_MODE_OFF || exposureNs == null || iso == null) return;
+            boolean converged = aeState != null && aeState == CameraMetadata.CONTROL_AE_STATE_CONVERGED;
+            if (exposureCap.onAutoResult(exposureNs, iso, converged)) applyCaptureProfile();
+        }
+    };
+
+    // ===== Ticker: nhịp ~16ms trên main looper, activity đang gắn (nếu có) vẽ lại =====
+    private final Runnable ticker = new Runnable() {
+        @Override public void run() {
+            long msLeft = endAtMs - SystemClock.elapsedRealtime();
+            if (msLeft <= 0) {
+                // phát tiếng nổ đúng lúc về 0 (một lần)
+                if (!explosionPlayed && soundLoaded && soundPool != null) {
+                    try { soundPool.play(soundId, 1f, 1f, 1, 0, 1f); } catch (Exception ignored) {}
+                    explosionPlayed = true;
+                    logEvent(EventLog.AUDIO, EventLog.AUDIO_EXPLOSION, -msLeft);
+                }
+                showCountdown(0L);
+                countdownRunning = false;
+                logEvent(EventLog.COUNTDOWN_END, EventLog.END_EXPIRED, 0f);
+                spikeTrigger.reset();
+                main.removeCallbacks(this);
+
+                // --- Lên lịch auto-reset sau 3 giây ---
+                if (!autoResetScheduled) {
+                    autoResetScheduled = true;
+                    main.postDelayed(autoResetRunnable, AUTO_RESET_DELAY_MS);
+                }
+            } else {
+                // Phát thông báo khi vượt qua mốc notificationMs (nếu bật)
+                if (notificationMs > 0 && !notifyPlayed && msLeft <= notificationMs && soundLoadedDefuse && soundPool != null) {
+                    try { soundPool.play(soundIdDefuse, 1f, 1f, 1, 0, 1f); } catch (Exception ignored) {}
+                    notifyPlayed = true;
+                    logEvent(EventLog.AUDIO, EventLog.AUDIO_NOTIFY, notificationMs - msLeft);
+                }
+                showCountdown(msLeft);
+                main.removeCallbacks(this);
+                main.postDelayed(this, UI_INTERVAL_MS);
+            }
+        }
+    };
+
+    // Tạo 1 lần cho cả chuỗi activity (ViewModelProvider), trên main thread
+    public CameraPipeline(@NonNull Application application) {
+        super(application);
+        app = application;
+        createdAtMs = SystemClock.elapsedRealtime();
+        // Auto-tune benchmark đang chạy nền sẽ tranh CPU/GPU với pipeline → huỷ, tune lại khi pipeline đóng
+        DetectorAutoTuner.setPipelineActive(app, true);
+
+        // ==== Khởi động song song, không chặn main thread ====
+        analysisExecutor = Executors.newSingleThreadExecutor(analysisThreads);
+        startupExecutor = Executors.newFixedThreadPool(2);
+
+        // 1) Prefs (lần đọc đầu chạm đĩa)
+        startupExecutor.execute(this::loadPrefs);
+
+        // 2) Detector: init (copy model + warmup) trên chính analysis thread → analyze chỉ chạy sau khi xong
+        detector = new TFLiteYoloDetector(app,
+                DetectorProfileStore.DEFAULT_MODEL,
+                MODEL_INPUT,
+                EVIDENCE_MIN_CONF);
+        bandPool = new BandPool(BandPool.defaultParallelism(), 32_768, BAND_THREAD, bandThreads);
+        detector.setBandPool(bandPool);
+        metrics.putInfo("bands", String.valueOf(bandPool.getParallelism()));
+        modelCatalog = new ModelCatalog(new File(app.getFilesDir(), MODELS_DIR));
+        // Cùng priority với analysis: worker native của interpreter tạo lúc nạp model kế thừa priority của thread nạp
+        swapExecutor = Executors.newSingleThreadExecutor(swapThreads);
+        hintSession = new FrameHintSession(app);
+        settingsStore = new PipelineSettingsStore(app);
+        audioTrigger = new AudioPlantTrigger(new File(app.getFilesDir(), AudioPlantTrigger.TEMPLATE_PATH), this::onPlantSound);
+        governor = new PerformanceGovernor(new AndroidThermalSource(app), SystemClock::elapsedRealtime);
+        analysisExecutor.execute(this::initDetector);
+
+        // 3) SoundPool + load 2 file wav
+        startupExecutor.execute(this::initSoundPool);
+
+        // 4) Nhật ký sự kiện (mở/tạo file mmap)
+        startupExecutor.execute(this::openEventLog);
+        startupExecutor.shutdown();
+    }
+
+    // ===== Gắn / gỡ activity =====
+
+    /**
+     * Activity (mới tạo hoặc tạo lại) gắn view vào pipeline: preview nhận surface mới, overlay nhận box,
+     * countdown vẽ ngay trạng thái hiện tại. [rotation] = hướng màn hình (Surface.ROTATION_*) của activity.
+     */
+    public void attach(@NonNull Host h, @NonNull PreviewView pv, OverlayView ov, int rotation) {
+        host = h;
+        previewView = pv;
+        overlay = ov;
+        if (preview != null) {
+            // Surface provider mới thay surface của activity cũ; camera + analysis không bind lại
+            preview.setTargetRotation(rotation);
+            preview.setSurfaceProvider(pv.getSurfaceProvider());
+        }
+        if (analysis != null) analysis.setTargetRotation(rotation);
+        showCountdown(countdownRunning ? Math.max(0L, endAtMs - SystemClock.elapsedRealtime())
+                : autoResetScheduled ? 0L : countdownInitMs);
+        // Cài đặt bật mic trong lúc không có activity → xin quyền bây giờ
+        if (settings.getAudioTrigger()) setAudioTriggerEnabled(true);
+    }
+
+    /** Activity bị huỷ: bỏ tham chiếu view (pipeline vẫn chạy nếu chỉ là đổi cấu hình) */
+    public void detach(@NonNull Host h) {
+        if (host != h) return;
+        host = null;
+        overlay = null;
+        // Provider của PreviewView giữ view + activity cũ → gỡ ra, activity mới gắn provider của nó ở attach
+        if (preview != null) preview.setSurfaceProvider(null);
+        previewView = null;
+        viewW = 0;
+        viewH = 0;
+    }
+
+    /** Activity hiển thị / xuống nền thật (không tính lúc đổi cấu hình): camera chạy theo */
+    public void setVisible(boolean visible) {
+        if (stopping) return;
+        cameraLifecycle.setState(visible ? Lifecycle.State.RESUMED : Lifecycle.State.CREATED);
+    }
+
+    /** Kích thước overlay đổi (layout) → affine input → view tính lại ở frame sau */
+    public void setViewSize(int w, int h) {
+        viewW = w;
+        viewH = h;
+    }
+
+    public String metricsSummary() {
+        metrics.putInfo("gate", spikeGate.summary(metrics.stage("detect").percentile(50f)));
+        metrics.putInfo("trigger", spikeTrigger.summary());
+        if (settings.getAudioTrigger()) metrics.putInfo("audio", audioTrigger.summary());
+        metrics.putInfo("frame age", frameAgePolicy.summary());
+        metrics.putInfo("zoom", autoZoom.summary());
+        metrics.putInfo("capture", captureLatency.summary()
+                + (lowLatencyActive ? ", exposure " + exposureCap.summary() : ""));
+        metrics.putInfo("jitter", "detect " + metrics.jitter("detect") + ", interval " + metrics.jitter("interval"));
+        if (settings.getHintAb()) metrics.putInfo("hint a/b", hintAb.summary());
+        return metrics.summary();
+    }
+
+    /** Thời gian gắn lại view sau khi activity tạo lại (đo từ onCreate của activity mới) */
+    public void reportReattach(long ms) {
+        metrics.putInfo("reattach", ms + " ms");
+        Log.i(TAG, "Activity reattached after " + ms + " ms");
+    }
+
+    private void showCountdown(long msLeft) {
+        if (host != null) host.showCountdown(msLeft);
+    }
+
+    @Override
+    protected void onCleared() {
+        stopping = true;
+        main.removeCallbacksAndMessages(null);
+        // 1) Ngắt camera để analyzer không nhận thêm frame
+        cameraLifecycle.setState(Lifecycle.State.DESTROYED);
+        try { ProcessCameraProvider provider = ProcessCameraProvider.getInstance(app).get(); provider.unbindAll(); } catch (Exception ignored) {}
+        // 2) Tắt executor và chờ thoát gọn
+        startupExecutor.shutdownNow();
+        // Phiên hint đóng trên chính analysis thread, sau frame đang chạy (kể cả khi chờ dưới đây quá hạn)
+        analysisExecutor.execute(hintSession::close);
+        analysisExecutor.shutdown();
+        try { analysisExecutor.awaitTermination(1, TimeUnit.SECONDS); } catch (Exception ignored) {}
+        // 3) Đợi nếu còn đang infer dở
+        int spin = 0; while (busy.get() && spin++ < 50) { try { Thread.sleep(10); } catch (InterruptedException ignored) {} }
+        // 4) Đóng detector & audio (model đang nạp dở tự đóng khi thấy stopping)
+        swapExecutor.shutdown();
+        try { detector.close(); } catch (Exception ignored) {}
+        bandPool.close();
+        audioTrigger.stop();
+        settingsStore.setListener(null, null);
+        countdownRunning = false;
+        autoResetScheduled = false;
+        try { if (soundPool != null) { soundPool.release(); soundPool = null; } } catch (Exception ignored) {}
+
+        // 5) Xuất CSV của nhật ký sự kiện (nền) rồi đóng
+        EventLog log = eventLog;
+        eventLog = null;
+        metrics.attachEventLog(null, SystemClock::elapsedRealtime);
+        if (log != null) {
+            File csv = new File(app.getFilesDir(), EVENT_CSV);
+            new Thread(() -> {
+                try { log.exportCsv(csv); } catch (Exception e) { Log.w(TAG, "Event log export failed", e); }
+                log.close();
+            }, "event-export").start();
+        }
+        // 6) Pipeline rảnh → auto-tune (nếu bị huỷ / chưa có profile) chạy lại
+        DetectorAutoTuner.setPipelineActive(app, false);
+    }
+
+    // ==== Countdown & Notification từ prefs (giữ thập phân) — chạy nền, áp trên main thread ====
+    private void loadPrefs() {
+        SharedPreferences prefs = app.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        float countdownSec = prefs.getFloat(KEY_COUNTDOWN, 45f);
+        float notificationSec = prefs.getFloat(KEY_NOTIFICATION, 0f);
+        main.post(() -> {
+            countdownInitMs = Math.max(0L, (long) Math.round(countdownSec * 1000f));
+            if (!countdownRunning && !autoResetScheduled) showCountdown(countdownInitMs);
+            // mốc thông báo (<= countdownInitMs). 0 hoặc >= countdownInitMs → tắt
+            long notif = (long) Math.round(Math.max(0f, notificationSec) * 1000f);
+            notificationMs = (notif > 0 && notif < countdownInitMs) ? notif : 0L;
+        });
+    }
+
+    // ==== Detector init — chạy trên analysisExecutor ====
+    private void initDetector() {
+        if (stopping) return;
+        PerfLevel level = governor.currentLevel();
+        try {
+            // Backend theo profile đã tune cho máy này (mặc định CPU + XNNPACK khi chưa tune xong)
+            profileStore = new DetectorProfileStore(app);
+            profile = profileStore.loadOrDefault();
+            PipelineSettings s = settingsStore.load();
+            useSettings(s);
+            detector.setInputSize(inputSizeFor(level));
+            if (!detector.initialize(profile.withMaxThreads(threadsFor(level))) && !fallBackToDefaultProfile("init")) {
+                return;
+            }
+            metrics.putInfo("backend", profile.key());
+            // initialize() đã warmup qua đường detect tới khi latency ổn định → frame đầu chạy ở tốc độ steady-state
+            detectorReady = true;
+            // Cài đặt đổi (Settings lưu trong lúc pipeline còn sống) → áp giữa 2 frame trên analysis thread
+            main.post(() -> {
+                if (stopping) return;
+                settingsStore.setListener(next -> {
+                    try { analysisExecutor.execute(() -> applySettings(next)); } catch (Exception ignored) {}
+                }, s);
+            });
+            long readyMs = SystemClock.elapsedRealtime() - createdAtMs;
+            metrics.putInfo("detector ready", readyMs + " ms");
+            metrics.putInfo("warmup", detector.getWarmupTracker().summary());
+            metrics.putInfo("model", ModelCatalog.displayName(detector.getModelPath()));
+            Log.i(TAG, "Detector ready after " + readyMs + " ms");
+            refreshSchedThreads();
+
+            // Model A/B đã chọn trước đó (file trong storage) → nạp nền rồi đổi nóng, analyzer chạy model gốc trong lúc chờ
+            String wanted = modelCatalog.resolve(
+                    app.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).getString(KEY_MODEL, null));
+            if (!wanted.equals(detector.getModelPath())) requestModelSwap(wanted);
+        } catch (Exception e) { e.printStackTrace(); }
+    }
+
+    /** Nhấn giữ metrics → đổi sang model kế tiếp (assets + filesDir/models/*.tflite); false nếu detector chưa sẵn sàng */
+    public boolean swapToNextModel() {
+        if (!detectorReady || stopping) return false;
+        String current = detector.getModelPath();
+        // Liệt kê thư mục model trên luồng swap, không trên UI thread
+        try {
+            swapExecutor.execute(() -> requestModelSwap(modelCatalog.next(current)));
+        } catch (Exception ignored) {
+            // Executor đã tắt (đang thoát)
+        }
+        return true;
+    }
+
+    // ==== Đổi model nóng: nạp + warmup trên swapExecutor, hoán đổi trên analysis thread giữa 2 frame ====
+    private void requestModelSwap(String model) {
+        requestModelSwap(model, profile != null ? profile : DetectorProfile.DEFAULT);
+    }
+
+    private void requestModelSwap(String model, DetectorProfile tuned) {
+        if (stopping || !swapping.compareAndSet(false, true)) return;
+        PerfLevel level = governor.currentLevel();
+        metrics.putInfo("model", ModelCatalog.displayName(model) + " (loading)");
+        try {
+            swapExecutor.execute(() -> {
+                TFLiteYoloDetector fresh = null;
+                try {
+                    // Profile từng lỗi với chính model này (delegate hoặc cấu hình CPU đã tune) → chạy CPU mặc định
+                    DetectorProfile p = !tuned.equals(DetectorProfile.DEFAULT)
+                            && storeFor(model).failedKeys().contains(tuned.key())
+                            ? DetectorProfile.DEFAULT : tuned;
+                    // Chưa gắn bandPool: warmup tiền xử lý tuần tự trên luồng swap, không tranh worker với analyzer
+                    fresh = new TFLiteYoloDetector(app, model, inputSizeFor(level), EVIDENCE_MIN_CONF);
+                    if (p.usesDelegate()) {
+                        // Delegate GPU/NNAPI gắn với thread tạo ra nó → ở đây chỉ đọc file,
+                        // interpreter + warmup ngắn tạo trên analysis thread lúc install
+                        fresh.loadModel();
+                    } else {
+                        // initialize() đã warmup tới khi latency ổn định → model mới vào cuộc ở tốc độ steady-state
+                        if (!fresh.initialize(p.withMaxThreads(threadsFor(level)))) {
+                            fresh.close();
+                            fresh = null;
+                            if (p.equals(DetectorProfile.DEFAULT)) throw new IllegalStateException("CPU init failed");
+                            // Giữ model cũ; ghi lỗi cho đúng model này (như đường delegate ở installDetector) rồi thử CPU mặc định
+                            Log.w(TAG, "Profile " + p.key() + " failed for " + model + ", retrying with default");
+                            storeFor(model).markFailed(p);
+                            swapping.set(false);
+                            requestModelSwap(model, DetectorProfile.DEFAULT);
+                            return;
+                        }
+                    }
+                    TFLiteYoloDetector ready = fresh;
+                    analysisExecutor.execute(() -> installDetector(ready, p));
+                } catch (Exception e) {
+                    Log.w(TAG, "Model swap to " + model + " failed", e);
+                    if (fresh != null) fresh.close();
+                    metrics.putInfo("model", ModelCatalog.displayName(detector.getModelPath())
+                            + " (" + ModelCatalog.displayName(model) + " failed)");
+                    swapping.set(false);
+                }
+            });
+        } catch (Exception e) {
+            // Executor đã tắt (đang thoát)
+            swapping.set(false);
+        }
+    }
+
+    // Chạy trên analysis thread: không có frame nào đang infer → đóng detector cũ ngay được
+    private void installDetector(TFLiteYoloDetector fresh, DetectorProfile p) {
+        String model = fresh.getModelPath();
+        boolean retryOnCpu = false;
+        try {
+            if (stopping) { fresh.close(); return; }
+            PerfLevel level = governor.currentLevel();
+            fresh.setBandPool(bandPool);
+            fresh.setInputSize(inputSizeFor(level));
+            if (!fresh.isWarm()) {
+                // Đường delegate: tạo interpreter ngay trên analysis thread, warmup rút gọn để frame chỉ trễ 1–2 vòng
+                fresh.setWarmupTracker(new WarmupTracker(2, SWAP_WARMUP_MAX_ITERATIONS, 2));
+                if (!fresh.initialize(p.withMaxThreads(threadsFor(level)))) {
+                    // Giữ model cũ; ghi lỗi cho đúng model này rồi nạp lại bằng CPU
+                    Log.w(TAG, "Delegate " + p.key() + " failed for " + model + ", retrying on CPU");
+                    fresh.close();
+                    retryOnCpu = true;
+                    return;
+                }
+            }
+            TFLiteYoloDetector old = detector;
+            detector = fresh;
+            old.close();
+            app.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                    .putString(KEY_MODEL, model).apply();
+            metrics.putInfo("model", ModelCatalog.displayName(model));
+            metrics.putInfo("backend", p.key());
+            metrics.putInfo("warmup", fresh.getWarmupTracker().summary());
+            Log.i(TAG, "Detector model swapped to " + model);
+            refreshSchedThreads();
+        } finally {
+            swapping.set(false);
+            if (!retryOnCpu && !stopping && detector == fresh
+                    && p.withMaxThreads(threadsFor(governor.currentLevel())).getNumThreads() != fresh.getNumThreads()) {
+                // Nấc governor / cài đặt đổi trong lúc đang dựng (yêu cầu dựng lại khi đó bị bỏ qua) → dựng lại lần nữa
+                requestModelSwap(model);
+            }
+            if (retryOnCpu) {
+                try {
+                    // Hash model (đọc file) trên luồng swap; lần sau đổi sang model này cũng thấy profile đã lỗi → CPU
+                    swapExecutor.execute(() -> {
+                        storeFor(model).markFailed(p);
+                        requestModelSwap(model, DetectorProfile.DEFAULT);
+                    });
+                } catch (Exception ignored) {
+                    // Executor đã tắt (đang thoát)
+                }
+            }
+        }
+    }
+
+    // Profile lưu theo máy + hash model → mỗi model một store (store mặc định tạo sẵn ở initDetector)
+    private DetectorProfileStore storeFor(String model) {
+        DetectorProfileStore store = profileStore;
+        if (store != null && DetectorProfileStore.DEFAULT_MODEL.equals(model)) return store;
+        return new DetectorProfileStore(app, model);
+    }
+
+    // ==== SoundPool low-latency + warm-up (res/raw/spike_no.wav & spike_defuse.wav) — chạy nền ====
+    private void initSoundPool() {
+        if (stopping) return;
+        try {
+            AudioAttributes attrs = new AudioAttributes.Builder()
+                    .setUsage(AudioAttributes.USAGE_GAME)
+                    .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                    .setFlags(AudioAttributes.FLAG_LOW_LATENCY)
+                    .build();
+            SoundPool pool = new SoundPool.Builder()
+                    .setAudioAttributes(attrs)
+                    .setMaxStreams(2)
+                    .build();
+            // Listener gắn trước khi load; callback về main looper (thread nền không có looper)
+            pool.setOnLoadCompleteListener((sp, id, status) -> {
+                if (status == 0) {
+                    if (id == soundId) {
+                        soundLoaded = true;
+                        // warm-up: play silent rồi stop ~60ms để mở đường audio
+                        warmupStreamId = sp.play(soundId, 0f, 0f, 1, 0, 1f);
+                        main.postDelayed(() -> {
+                            try { if (warmupStreamId != 0) { sp.stop(warmupStreamId); warmupStreamId = 0; } } catch (Exception ignored) {}
+                        }, 60);
+                    } else if (id == soundIdDefuse) {
+                        soundLoadedDefuse = true;
+                        // warm-up nhẹ cho defuse (im lặng)
+                        int sid = sp.play(soundIdDefuse, 0f, 0f, 1, 0, 1f);
+                        main.postDelayed(() -> { try { sp.stop(sid); } catch (Exception ignored) {} }, 60);
+                    }
+                }
+            });
+            soundId = pool.load(app, R.raw.spike_no, 1);
+            soundIdDefuse = pool.load(app, R.raw.spike_defuse, 1);
+            soundPool = pool;
+            // Pipeline đã đóng trong lúc đang tạo → tự giải phóng
+            if (stopping) { soundPool = null; pool.release(); }
+        } catch (Exception e) { e.printStackTrace(); }
+    }
+
+    // ===== Countdown helpers (main thread) =====
+    private void startCountdown() {
+        if (countdownRunning) return;
+
+        // Khi bắt đầu lượt mới, hủy mọi auto-reset đã lên lịch trước đó
+        main.removeCallbacks(autoResetRunnable);
+        autoResetScheduled = false;
+
+        countdownRunning = true;
+        explosionPlayed = false; // reset cho lượt mới
+        long now = SystemClock.elapsedRealtime();
+        long detectionDelayMs = (firstSeenTs > 0L) ? (now - firstSeenTs) : 0L;
+        if (detectionDelayMs < 0L) detectionDelayMs = 0L;
+        long startMs = Math.max(0L, countdownInitMs - detectionDelayMs);
+        endAtMs = now + startMs;
+        logEvent(EventLog.COUNTDOWN_START, (int) startMs, detectionDelayMs);
+        // Nếu ngay lúc bắt đầu đã ở dưới mốc thông báo, coi như đã qua mốc => không phát notify
+        notifyPlayed = (notificationMs > 0 && startMs <= notificationMs);
+        main.removeCallbacks(ticker);
+        showCountdown(startMs);
+        main.post(ticker);
+    }
+
+    private void stopCountdown() {
+        countdownRunning = false;
+        main.removeCallbacks(ticker);
+    }
+
+    /** Nút reset: trở về thời gian gốc + reset trạng thái */
+    public void resetCountdown(boolean alsoClearOverlay) {
+        // Dừng ticker + hủy auto-reset chờ
+        if (countdownRunning) logEvent(EventLog.COUNTDOWN_END, EventLog.END_RESET, 0f);
+        stopCountdown();
+        main.removeCallbacks(autoResetRunnable);
+        autoResetScheduled = false;
+
+        // Đưa về trạng thái ban đầu
+        spikeTrigger.reset();
+        autoZoom.reset();
+        firstSeenTs = 0L;
+        explosionPlayed = false;
+        notifyPlayed = false;
+        showCountdown(countdownInitMs);
+
+        OverlayView ov = overlay;
+        if (alsoClearOverlay && ov != null) {
+            ov.clear();
+        }
+    }
+
+    // ===== Pinch-to-zoom (main thread) =====
+    public boolean onPinch(float scaleFactor) {
+        if (cameraControl == null) return false;
+        float candidate = currentZoomRatio * scaleFactor;
+        candidate = Math.max(minZoom, Math.min(maxZoom, candidate));
+        if (Math.abs(candidate - currentZoomRatio) > ZOOM_EPS) {
+            currentZoomRatio = candidate;
+            cameraControl.setZoomRatio(candidate);
+            autoZoom.onUserZoom(candidate);
+        }
+        return true;
+    }
+
+    public void onPinchEnd() {
+        if (camera != null && camera.getCameraInfo().getZoomState().getValue() != null) {
+            Float zr = camera.getCameraInfo().getZoomState().getValue().getZoomRatio();
+            if (zr != null) currentZoomRatio = zr;
+        }
+    }
+
+    // ===== CameraX =====
+
+    /** Bind camera 1 lần cho cả vòng đời pipeline (đã có quyền camera); activity tạo lại gọi lại thì bỏ qua */
+    @OptIn(markerClass = ExperimentalCamera2Interop.class)
+    public void startCamera(int rotation) {
+        if (cameraRequested || stopping) return;
+        cameraRequested = true;
+        ProcessCameraProvider.getInstance(app).addListener(() -> {
+            if (stopping) return;
+            try {
+                ProcessCameraProvider cameraProvider = ProcessCameraProvider.getInstance(app).get();
+                cameraProvider.unbindAll();
+
+                // Preview: 16:9, gần 1080p nhất có thể (độc lập với luồng phân tích)
+                ResolutionSelector previewSelector = new ResolutionSelector.Builder()
+                        .setAspectRatioStrategy(AspectRatioStrategy.RATIO_16_9_FALLBACK_AUTO_STRATEGY)
+                        .setResolutionStrategy(new ResolutionStrategy(PREVIEW_TARGET_SIZE,
+                                ResolutionStrategy.FALLBACK_RULE_CLOSEST_HIGHER_THEN_LOWER))
+                        .build();
+                preview = new Preview.Builder()
+                        .setResolutionSelector(previewSelector)
+                        .setTargetRotation(rotation)
+                        .build();
+                // Activity có thể đã tạo lại trong lúc chờ provider → surface của activity hiện tại
+                if (previewView != null) preview.setSurfaceProvider(previewView.getSurfaceProvider());
+
+                // Analysis: size nhỏ nhất vẫn phủ input model → chuyển đổi RGBA rẻ hơn nhiều
+                ResolutionSelector analysisSelector = new ResolutionSelector.Builder()
+                        .setAspectRatioStrategy(AspectRatioStrategy.RATIO_16_9_FALLBACK_AUTO_STRATEGY)
+                        .setResolutionFilter(new ModelInputResolutionFilter(MODEL_INPUT))
+                        .build();
+                ImageAnalysis.Builder analysisBuilder = new ImageAnalysis.Builder()
+                        .setResolutionSelector(analysisSelector)
+                        .setTargetRotation(rotation)
+                        .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                        .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_RGBA_8888);
+                // Không bật output rotation: xoay được gộp vào bước letterbox của detector
+                // FPS cố định để nhịp phân tích ổn định (AE không tự hạ FPS khi tối)
+                // Callback kết quả chụp: timestamp cảm biến (đo trễ) + exposure / ISO của AE (trần phơi sáng)
+                new Camera2Interop.Extender<>(analysisBuilder)
+                        .setCaptureRequestOption(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, ANALYSIS_FPS_RANGE)
+                        .setSessionCaptureCallback(captureCallback);
+                analysis = analysisBuilder.build();
+
+                analysis.setAnalyzer(analysisExecutor, this::analyze);
+
+                camera = cameraProvider.bindToLifecycle(cameraLifecycle, CameraSelector.DEFAULT_BACK_CAMERA, preview, analysis);
+                cameraControl = camera.getCameraControl();
+                reportResolutions(preview, analysis);
+                setUpCaptureProfile(camera);
+                setUpFrameAge(camera);
+
+                camera.getCameraInfo().getZoomState().observe(cameraLifecycle, state -> {
+                    if (state == null) return;
+                    minZoom = state.getMinZoomRatio();
+                    maxZoom = state.getMaxZoomRatio();
+                    currentZoomRatio = state.getZoomRatio();
+                    autoZoom.setLimits(minZoom, maxZoom);
+                });
+            } catch (Exception e) { e.printStackTrace(); }
+        }, ContextCompat.getMainExecutor(app));
+    }
+
+    private void analyze(@NonNull ImageProxy image) {
+        if (stopping || !detectorReady) { image.close(); return; }
+        try {
+            if (!busy.compareAndSet(false, true)) { image.close(); return; }
+            workStartNs = SystemClock.elapsedRealtimeNanos();
+            workDone = false;
+
+            // Frame nằm chờ trong queue lâu (inference trước chưa xong) → kết quả trễ làm lệch onset
+            long sensorNs = image.getImageInfo().getTimestamp();
+            int ageDecision = frameAgePolicy.classify(sensorNs, SystemClock.elapsedRealtimeNanos());
+            float ageMs = frameAgePolicy.getLastAgeMs();
+            captureLatency.onAnalyze(sensorNs, SystemClock.elapsedRealtimeNanos());
+            if (!Float.isNaN(ageMs)) metrics.record("age", ageMs);
+            if (ageDecision == FrameAgePolicy.DROP) {
+                logEvent(EventLog.FRAME_SKIPPED, EventLog.SKIP_STALE, ageMs);
+                evaluateGovernorWhileSkipping();
+                return;
+            }
+            // Mốc chụp (ms, timebase elapsedRealtime) cho trigger; không đo được tuổi thì dùng lúc nhận
+            long frameMs = Float.isNaN(ageMs) ? SystemClock.elapsedRealtime() : sensorNs / 1_000_000L;
+
+            // Governor giới hạn tốc độ phân tích (finally sẽ close + nhả busy)
+            long startMs = SystemClock.elapsedRealtime();
+            if (startMs - lastInferStartMs < governor.currentLevel().getMinFrameIntervalMs()) {
+                evaluateGovernorWhileSkipping();
+                return;
+            }
+            lastInferStartMs = startMs;
+
+            // Overlay của activity đang gắn; null giữa 2 activity → vẫn detect + trigger, chỉ không vẽ
+            OverlayView ov = overlay;
+
+            // Cổng rẻ trên buffer RGBA gốc: frame không có vệt sáng màu spike → bỏ qua YOLO
+            long tg = SystemClock.elapsedRealtimeNanos();
+            ImageProxy.PlaneProxy plane = image.getPlanes()[0];
+            float gateScore = glowFeature.score(plane.getBuffer(), image.getWidth(), image.getHeight(),
+                    plane.getRowStride(), plane.getPixelStride());
+            int gateDecision = spikeGate.decide(gateScore);
+            // Exposure thủ công (trần phơi sáng): giữ độ sáng bằng ISO theo luma đã lấy mẫu cùng lượt
+            if (lowLatencyActive && exposureCap.onFrameLuma(glowFeature.getLastMeanLuma())) applyCaptureProfile();
+            metrics.record("gate", (SystemClock.elapsedRealtimeNanos() - tg) / 1e6f);
+            if (gateDecision == SpikeGate.SKIP) {
+                logEvent(EventLog.FRAME_SKIPPED, EventLog.SKIP_GATE, ageMs, gateScore, 0f, 0f);
+                if (ov != null) ov.clear();
+                updateAutoZoom(0, false);
+                postEvidence(0f, frameMs);
+                evaluateGovernorWhileSkipping();
+                return;
+            }
+
+            // RGBA_8888 → Bitmap (tái sử dụng)
+            long tc = SystemClock.elapsedRealtimeNanos();
+            reusableBitmap = ImageProxyExt.toBitmapRGBA(image, reusableBitmap, bandPool);
+            metrics.record("convert", (SystemClock.elapsedRealtimeNanos() - tc) / 1e6f);
+            Bitmap frame = reusableBitmap;
+
+            // YOLO detect
+            // Frame chưa xoay → detector xoay trong lúc letterbox, box trả về ở không gian input model
+            int rotation = image.getImageInfo().getRotationDegrees();
+
+            PipelineSettings s = settings;
+            long t0 = SystemClock.elapsedRealtime();
+            long intervalMs = lastDetectStartMs > 0 ? t0 - lastDetectStartMs : -1L;
+            if (intervalMs >= 0) metrics.record("interval", intervalMs);
+            lastDetectStartMs = t0;
+            // A/B hint (settings): khối đang chạy quyết định frame này có phiên hint hay không
+            int hintArm = hintAb.armAt(t0);
+            hintSession.setEnabled(hintArm == HintJitterAb.HINT_ON);
+            workDone = true;
+            // Presence: trigger chỉ cần score cao nhất → chỉ quét kênh conf của output, không decode hết + NMS.
+            // Decode đúng 1 box khi có nơi dùng: overlay đang hiện (tắt được trong lúc đếm ngược) hoặc auto-zoom
+            boolean drawBoxes = ov != null && ov.getVisibility() == View.VISIBLE
+                    && (!countdownRunning || s.getCountdownBoxes());
+            boolean needBox = drawBoxes || autoZoom.isEnabled();
+            float maxScore = detector.detectPresence(frame, rotation, detections, needBox);
+            int n = maxScore >= s.getConfThreshold() ? 1 : 0;   // có spike ≥ ngưỡng (phản hồi cho cổng, log)
+            int nBox = n > 0 ? detections.getSize() : 0;
+            // input → view bằng 1 affine, chỉ tính lại khi analysis size / xoay / input / view đổi
+            frameTransform.update(detector.getLetterboxTransform(), viewW, viewH);
+            boolean inputSpace = true;
+            long detectMs = SystemClock.elapsedRealtime() - t0;
+            metrics.record("detect", detectMs);
+            hintAb.record(hintArm, detectMs, intervalMs);
+            if (!firstDetectionReported) {
+                // Time-to-first-detection: tạo pipeline → kết quả detect đầu tiên
+                firstDetectionReported = true;
+                long ttfd = SystemClock.elapsedRealtime() - createdAtMs;
+                metrics.putInfo("ttfd", ttfd + " ms");
+                Log.i(TAG, "Time to first detection " + ttfd + " ms");
+            }
+
+            // Full frame không thấy gì → thử tiled để bắt spike nhỏ/xa (chỉ khi chưa bị governor hạ nấc)
+            if (n == 0 && s.getTiles() > 1 && !countdownRunning && governor.currentLevelIndex() == 0
+                    && ageDecision == FrameAgePolicy.PROCESS) {
+                long tt = SystemClock.elapsedRealtime();
+                // Box tiled đã ở toạ độ ảnh đứng, batch đã xếp theo score giảm dần
+                detector.detectTiled(frame, rotation, s.getTiles(), s.getIouThreshold(), s.getTopK(), detections);
+                maxScore = Math.max(maxScore, detections.maxScore());
+                n = detections.countAtLeast(s.getConfThreshold());
+                nBox = n;
+                inputSpace = false;
+                long tiledMs = SystemClock.elapsedRealtime() - tt;
+                metrics.record("tiled", tiledMs);
+                detectMs += tiledMs;
+            }
+            lastGovernorEvalMs = SystemClock.elapsedRealtime();
+            if (governor.onFrame(detectMs)) applyPerfLevel(governor.currentLevel());
+
+            // Auto-zoom đo trên box trước khi bị map sang view
+            updateAutoZoom(nBox, inputSpace);
+
+            // Box → view (FIT_CENTER) ngay trên mảng phẳng; overlay chép sang mảng riêng
+            boolean hasSpike = n > 0;
+            if (ov != null) {
+                if (drawBoxes && frameTransform.isValid()) {
+                    float[] boxes = detections.getBoxes();
+                    if (inputSpace) frameTransform.mapInputBoxes(boxes, 0, boxes, 0, nBox);
+                    else frameTransform.mapUprightBoxes(boxes, 0, boxes, 0, nBox);
+                    ov.setDetections(detections, nBox);
+                } else {
+                    ov.clear();
+                }
+            }
+            spikeGate.onDetection(gateScore, gateDecision, hasSpike);
+            logEvent(EventLog.FRAME, n, maxScore, detectMs, ageMs, gateScore);
+            postEvidence(maxScore, frameMs);
+        } catch (Throwable t) {
+            t.printStackTrace();
+            // Lỗi lúc infer với delegate → bỏ profile đó
+            if (profile != null && profile.usesDelegate()) fallBackToDefaultProfile("detect");
+        } finally {
+            image.close();
+            // Chỉ báo frame đã chạy detect: frame bị cổng / governor bỏ qua gần như không tốn gì,
+            // báo chúng sẽ kéo xung xuống đúng lúc frame có spike tới
+            if (workDone) {
+                long workNs = SystemClock.elapsedRealtimeNanos() - workStartNs;
+                hintSession.reportActual(workNs);
+                metrics.record("work", workNs / 1e6f);
+                workDone = false;
+            }
+            busy.set(false);
+        }
+    }
+
+    // Box tốt nhất (score cao nhất, phần tử 0 của batch) → chuẩn hoá trên ảnh đứng → controller; ra lệnh zoom nếu cần
+    private void updateAutoZoom(int n, boolean inputSpace) {
+        float[] box = null;
+        LetterboxTransform lt = detector.getLetterboxTransform();
+        if (n > 0 && lt.getUprightW() > 0 && lt.getUprightH() > 0) {
+            System.arraycopy(detections.getBoxes(), 0, zoomBox, 0, 4);
+            if (inputSpace) lt.inputBoxToUpright(zoomBox, 0);
+            zoomBox[0] /= lt.getUprightW(); zoomBox[2] /= lt.getUprightW();
+            zoomBox[1] /= lt.getUprightH(); zoomBox[3] /= lt.getUprightH();
+            box = zoomBox;
+        }
+        float z = autoZoom.update(box, 0);
+        CameraControl cc = cameraControl;
+        if (!Float.isNaN(z) && cc != null) cc.setZoomRatio(z);
+    }
+
+    // Bằng chứng 1 frame → trigger tuần tự (analysis thread); chỉ lên main thread khi kích hoạt
+    private void postEvidence(float maxScore, long frameMs) {
+        if (!spikeTrigger.update(maxScore, frameMs)) return;
+        long onsetMs = spikeTrigger.onsetMs();
+        logEvent(EventLog.TRIGGER, EventLog.TRIGGER_CAMERA, spikeTrigger.statistic(), maxScore, frameMs - onsetMs, 0f);
+        main.post(() -> {
+            if (countdownRunning || stopping) return;
+            firstSeenTs = onsetMs;
+            startCountdown();
+        });
+    }
+
+    // Khớp tiếng cắm spike (luồng audio) → cùng trigger với camera: ai tới trước kích hoạt, onset = lúc âm thanh bắt đầu
+    private void onPlantSound(long onsetMs, float score) {
+        long now = SystemClock.elapsedRealtime();
+        if (!spikeTrigger.fire(onsetMs, now)) return;
+        logEvent(EventLog.TRIGGER, EventLog.TRIGGER_AUDIO, spikeTrigger.statistic(), score, now - onsetMs, 0f);
+        main.post(() -> {
+            if (countdownRunning || stopping) return;
+            firstSeenTs = onsetMs;
+            startCountdown();
+        });
+    }
+
+    // Bật / tắt mic theo cài đặt (main thread); chưa có quyền thì nhờ activity đang gắn xin 1 lần
+    private void setAudioTriggerEnabled(boolean on) {
+        if (stopping) return;
+        if (!on) {
+            audioTrigger.stop();
+            return;
+        }
+        if (audioTrigger.isRunning()) return;
+        if (ContextCompat.checkSelfPermission(app, Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
+            if (!audioPermissionAsked && host != null) {
+                audioPermissionAsked = true;
+                host.requestAudioPermission();
+            }
+            return;
+        }
+        audioTrigger.start();
+    }
+
+    /** Kết quả xin quyền mic; từ chối → chỉ camera kích hoạt, không hỏi lại trong vòng đời pipeline */
+    public void onAudioPermissionResult(boolean granted) {
+        if (granted) setAudioTriggerEnabled(settings.getAudioTrigger());
+    }
+
+    // ===== Nhật ký sự kiện =====
+    private void openEventLog() {
+        try {
+            EventLog log = EventLog.open(new File(app.getFilesDir(), EVENT_BIN), EVENT_LOG_CAPACITY);
+            int session = log.startSession(SystemClock.elapsedRealtime(), System.currentTimeMillis());
+            metrics.attachEventLog(log, SystemClock::elapsedRealtime);
+            eventLog = log;
+            metrics.putInfo("events", "session " + session + ", " + log.size() + "/" + log.getCapacity());
+        } catch (Exception e) {
+            Log.w(TAG, "Event log unavailable", e);
+        }
+    }
+
+    private void logEvent(int type, int i0, float f0) {
+        logEvent(type, i0, f0, 0f, 0f, 0f);
+    }
+
+    // Ghi 1 record, không cấp phát — dùng được trên analysis thread lẫn main thread
+    private void logEvent(int type, int i0, float f0, float f1, float f2, float f3) {
+        EventLog log = eventLog;
+        if (log != null) log.append(SystemClock.elapsedRealtime(), type, i0, f0, f1, f2, f3);
+    }
+
+    // Tuổi frame chỉ so được với elapsedRealtimeNanos khi camera báo timestamp REALTIME; không báo → đoán theo tuổi
+    @OptIn(markerClass = ExperimentalCamera2Interop.class)
+    private void setUpFrameAge(Camera camera) {
+        Integer source = Camera2CameraInfo.from(camera.getCameraInfo())
+                .getCameraCharacteristic(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+        frameAgePolicy.setTimebase(source == null ? FrameAgePolicy.TIMEBASE_GUESS
+                : source == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME ? FrameAgePolicy.TIMEBASE_REALTIME
+                : FrameAgePolicy.TIMEBASE_UNKNOWN);
+        Log.i(TAG, "Sensor timestamp source " + source);
+    }
+
+    // Chọn tham số profile độ trễ thấp theo khả năng của camera đã bind, rồi áp theo cài đặt hiện tại
+    @OptIn(markerClass = ExperimentalCamera2Interop.class)
+    private void setUpCaptureProfile(Camera camera) {
+        Camera2CameraInfo info = Camera2CameraInfo.from(camera.getCameraInfo());
+        Range<Integer>[] ranges = info.getCameraCharacteristic(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        synchronized (this) {
+            lowLatencyFps = null;
+            if (ranges != null) {
+                int[] flat = new int[2 * ranges.length];
+                for (int i = 0; i < ranges.length; i++) {
+                    flat[2 * i] = ranges[i].getLower();
+                    flat[2 * i + 1] = ranges[i].getUpper();
+                }
+                int best = LowLatencyCapture.pickFpsRange(flat, LOW_LATENCY_MAX_FPS);
+                if (best >= 0) lowLatencyFps = ranges[best];
+            }
+            lowLatencyNoiseMode = LowLatencyCapture.pickMode(info.getCameraCharacteristic(
+                    CameraCharacteristics.NOISE_REDUCTION_AVAILABLE_NOISE_REDUCTION_MODES), LowLatencyCapture.NOISE_MODES);
+            lowLatencyEdgeMode = LowLatencyCapture.pickMode(info.getCameraCharacteristic(
+                    CameraCharacteristics.EDGE_AVAILABLE_EDGE_MODES), LowLatencyCapture.EDGE_MODES);
+            lowLatencyStabilizationOff = LowLatencyCapture.pickMode(info.getCameraCharacteristic(
+                            CameraCharacteristics.CONTROL_AVAILABLE_VIDEO_STABILIZATION_MODES),
+                    new int[]{CameraMetadata.CONTROL_VIDEO_STABILIZATION_MODE_OFF}) >= 0;
+        }
+        // Exposure thủ công cần MANUAL_SENSOR; không có thì chỉ trần theo FPS (phơi ≤ 1 frame)
+        int[] caps = info.getCameraCharacteristic(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES);
+        Range<Integer> isoRange = info.getCameraCharacteristic(CameraCharacteristics.SENSOR_INFO_SENSITIVITY_RANGE);
+        boolean manual = false;
+        if (caps != null) for (int c : caps) if (c == CameraMetadata.REQUEST_AVAILABLE_CAPABILITIES_MANUAL_SENSOR) manual = true;
+        if (manual && isoRange != null) exposureCap.setIsoRange(isoRange.getLower(), isoRange.getUpper());
+        else exposureCap.setIsoRange(0, 0);
+
+        String desc = String.format(Locale.US, "fps %s, nr %d, edge %d, stab %s, exposure cap %s",
+                lowLatencyFps, lowLatencyNoiseMode, lowLatencyEdgeMode, lowLatencyStabilizationOff ? "off" : "?",
+                exposureCap.isSupported() ? String.format(Locale.US, "%.1f ms", exposureCap.getCapNs() / 1e6f) : "fps only");
+        Log.i(TAG, "Low-latency capture profile: " + desc);
+        metrics.putInfo("capture profile", desc);
+        camera2Control = Camera2CameraControl.from(camera.getCameraControl());
+        applyCaptureProfile();
+    }
+
+    // Đặt (hoặc gỡ) tuỳ chọn capture request của profile độ trễ thấp; gọi từ main, analysis lẫn camera thread
+    @OptIn(markerClass = ExperimentalCamera2Interop.class)
+    private synchronized void applyCaptureProfile() {
+        Camera2CameraControl control = camera2Control;
+        if (control == null) return;
+        captureLatency.setProfile(lowLatencyActive ? CaptureLatencyLog.LOW_LATENCY : CaptureLatencyLog.STANDARD);
+        if (!lowLatencyActive) {
+            // Về lại tuỳ chọn gốc của use case (FPS 30 cố định, mode mặc định của máy)
+            control.clearCaptureRequestOptions();
+            return;
+        }
+        CaptureRequestOptions.Builder b = new CaptureRequestOptions.Builder();
+        if (lowLatencyFps != null) b.setCaptureRequestOption(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, lowLatencyFps);
+        if (lowLatencyNoiseMode >= 0) b.setCaptureRequestOption(CaptureRequest.NOISE_REDUCTION_MODE, lowLatencyNoiseMode);
+        if (lowLatencyEdgeMode >= 0) b.setCaptureRequestOption(CaptureRequest.EDGE_MODE, lowLatencyEdgeMode);
+        if (lowLatencyStabilizationOff) {
+            b.setCaptureRequestOption(CaptureRequest.CONTROL_VIDEO_STABILIZATION_MODE,
+                    CameraMetadata.CONTROL_VIDEO_STABILIZATION_MODE_OFF);
+        }
+        if (exposureCap.isManual()) {
+            int fps = lowLatencyFps != null ? lowLatencyFps.getUpper() : ANALYSIS_FPS_RANGE.getUpper();
+            b.setCaptureRequestOption(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_OFF);
+            b.setCaptureRequestOption(CaptureRequest.SENSOR_EXPOSURE_TIME, exposureCap.getCapNs());
+            b.setCaptureRequestOption(CaptureRequest.SENSOR_SENSITIVITY, exposureCap.getIso());
+            b.setCaptureRequestOption(CaptureRequest.SENSOR_FRAME_DURATION, LowLatencyCapture.frameDurationNs(fps));
+        }
+        control.setCaptureRequestOptions(b.build());
+    }
+
+    // Log + hiển thị size preview/analysis thực tế mà CameraX đã chọn
+    private void reportResolutions(Preview preview, ImageAnalysis analysis) {
+        String previewSize = preview.getResolutionInfo() != null
+                ? preview.getResolutionInfo().getResolution().toString() : "?";
+        String analysisSize = analysis.getResolutionInfo() != null
+                ? analysis.getResolutionInfo().getResolution().toString() : "?";
+        Log.i(TAG, "Preview " + previewSize + ", analysis " + analysisSize + " (model " + MODEL_INPUT + ")");
+        metrics.putInfo("preview", previewSize);
+        metrics.putInfo("analysis", analysisSize);
+        metrics.putInfo("camera bound", (SystemClock.elapsedRealtime() - createdAtMs) + " ms");
+    }
+
+    // Frame bị bỏ (cổng / governor / quá tuổi) không qua onFrame → vẫn đọc lại nhiệt để governor hạ hoặc nâng nấc
+    // khi cảnh yên lặng (cổng bỏ phần lớn frame). Giới hạn nhịp: headroom của hệ thống không đọc dày hơn ~1 lần/giây.
+    private void evaluateGovernorWhileSkipping() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastGovernorEvalMs < GOVERNOR_IDLE_EVAL_MS) return;
+        lastGovernorEvalMs = now;
+        if (governor.evaluate()) applyPerfLevel(governor.currentLevel());
+    }
+
+    // Áp nấc mới của governor — chạy trên analysis thread, giữa 2 frame
+    private void applyPerfLevel(PerfLevel level) {
+        Log.i(TAG, "Perf level -> " + governor.currentLevelIndex() + " " + level);
+        logEvent(EventLog.PERF_LEVEL, governor.currentLevelIndex(), 0f);
+        applyLimits(level);
+    }
+
+    // Trần luồng / input hiệu lực = min(nấc governor, cài đặt); chỉ dựng lại interpreter khi số luồng đổi
+    private void applyLimits(PerfLevel level) {
+        DetectorProfile p = profile.withMaxThreads(threadsFor(level));
+        if (p.getNumThreads() != detector.getNumThreads()) {
+            // Interpreter không đổi số luồng tại chỗ được → dựng bản mới ở nền như đổi model,
+            // frame vẫn chạy interpreter cũ tới lúc hoán đổi (đang đổi model thì installDetector kiểm lại)
+            requestModelSwap(detector.getModelPath());
+        }
+        detector.setInputSize(inputSizeFor(level));
+        hintSession.updateTarget(frameBudgetMs(level));
+    }
+
+    private int threadsFor(PerfLevel level) {
+        return Math.min(level.getNumThreads(), settings.getMaxThreads());
+    }
+
+    private int inputSizeFor(PerfLevel level) {
+        return Math.min(level.getInputSize(), settings.getInputSize());
+    }
+
+    // Ngưỡng / top-K / tiled đọc lại mỗi frame; α của trigger đổi tại chỗ
+    private void useSettings(PipelineSettings s) {
+        settings = s;
+        spikeTrigger.setRates(s.getTriggerFalseRate(), TRIGGER_MISS_RATE);
+        if (s.getLowLatencyCapture() != lowLatencyActive) {
+            lowLatencyActive = s.getLowLatencyCapture();
+            exposureCap.reset();
+            applyCaptureProfile();
+        }
+        hintAb.setEnabled(s.getHintAb());
+        boolean audio = s.getAudioTrigger();
+        main.post(() -> setAudioTriggerEnabled(audio));
+        metrics.putInfo("settings", s.toString());
+    }
+
+    // Chạy trên analysis thread (giữa 2 frame)
+    private void applySettings(PipelineSettings s) {
+        if (stopping) return;
+        Log.i(TAG, "Settings -> " + s);
+        useSettings(s);
+        if (detectorReady) applyLimits(governor.currentLevel());
+    }
+
+    // Ngân sách 1 frame: nhịp camera, hoặc nhịp phân tích governor đã giãn
+    private static float frameBudgetMs(PerfLevel level) {
+        return Math.max(FRAME_BUDGET_MS, level.getMinFrameIntervalMs());
+    }
+
+    // Gom tid pipeline (analysis, band worker, worker native của interpreter hiện tại) → priority + phiên hint.
+    // Chạy trên analysis thread sau mỗi lần interpreter được tạo lại (init, đổi nấc, đổi model, fallback).
+    private void refreshSchedThreads() {
+        int[] own = concat(analysisThreads.tids(), bandThreads.tids());
+        // Worker của interpreter kế thừa comm của thread đã tạo interpreter (analysis hoặc swap)
+        int[] interp = concat(taskScanner.tidsNamed(ANALYSIS_THREAD, analysisThreads.tids()),
+                taskScanner.tidsNamed(SWAP_THREAD, swapThreads.tids()));
+        int boosted = 0;
+        for (int tid : interp) if (PriorityThreadFactory.setPriority(tid, PIPELINE_PRIORITY)) boosted++;
+        int[] all = concat(own, interp);
+        float budget = frameBudgetMs(governor.currentLevel());
+        boolean hint = hintSession.setThreads(all, budget);
+        metrics.putInfo("sched", String.format(Locale.US, "prio %d, %d threads (%d interpreter), hint %s",
+                PIPELINE_PRIORITY, all.length, boosted, hint ? String.format(Locale.US, "%.1f ms", budget) : "off"));
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] out = new int[a.length + b.length];
+        System.arraycopy(a, 0, out, 0, a.length);
+        System.arraycopy(b, 0, out, a.length, b.length);
+        return out;
+    }
+
+    // Profile lỗi (delegate không bật / crash) → ghi nhận để lần sau tune lại, chạy tiếp bằng CPU mặc định.
+    // false nếu CPU mặc định cũng không init được: detector dừng, analyzer bỏ mọi frame thay vì chạy interpreter hỏng
+    private boolean fallBackToDefaultProfile(String reason) {
+        if (!profile.equals(DetectorProfile.DEFAULT)) {
+            Log.w(TAG, "Detector profile " + profile.key() + " failed (" + reason + "), falling back to default");
+            // Ghi lỗi theo model đang chạy (có thể là model đã đổi nóng, không phải model gốc)
+            storeFor(detector.getModelPath()).markFailed(profile);
+            profile = DetectorProfile.DEFAULT;
+            if (detector.initialize(profile.withMaxThreads(threadsFor(governor.currentLevel())))) {
+                metrics.putInfo("backend", profile.key() + " (fallback)");
+                refreshSchedThreads();
+                return true;
+            }
+        }
+        Log.e(TAG, "Detector default profile failed (" + reason + "), analysis stopped");
+        detectorReady = false;
+        metrics.putInfo("backend", profile.key() + " failed (" + reason + "), detection stopped");
+        return false;
+    }
+
+    /**
+     * Lifecycle riêng cho camera: CREATED (chưa hiển thị / dưới nền) ↔ RESUMED (có activity hiển thị),
+     * DESTROYED khi pipeline bị huỷ (CameraX tự unbind). Chỉ đổi trên main thread.
+     */
+    private static final class CameraLifecycle implements LifecycleOwner {
+        private final LifecycleRegistry registry = new LifecycleRegistry(this);
+
+        CameraLifecycle() {
+            registry.setCurrentState(Lifecycle.State.CREATED);
+        }
+
+        void setState(Lifecycle.State state) {
+            if (registry.getCurrentState() == Lifecycle.State.DESTROYED) return;
+            registry.setCurrentState(state);
+        }
+
+        @NonNull
+        @Override
+        public Lifecycle getLifecycle() {
+            return registry;
+        }
+    }
+}
@@ -9,16 +9,28 @@ import android.text.Editable;
 import android.text.TextUtils;
 import android.view.View;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
+import android.widget.RadioGroup;
 import android.os.Build;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.example.spiketimer.yolo.PipelineSettings;
+import com.example.spiketimer.yolo.PipelineSettingsStore;
+
 import java.util.Locale;
+import java.util.Map;
 
 public class SettingsActivity extends AppCompatActivity {
     private EditText etCountdownTime;
     private EditText etNotificationTime;
+
+    // Núm hiệu năng (PipelineSettings) — màn camera đang chạy nhận thay đổi ngay khi lưu
+    private RadioGroup rgPreset;
+    private EditText etConf, etIou, etTopK, etFalseRate, etInputSize, etMaxThreads, etTiles;
+    private CheckBox cbCountdownBoxes, cbLowLatencyCapture, cbAudioTrigger, cbHintAb;
+    private PipelineSettingsStore settingsStore;
     private static final String PREFS_NAME = "spike_prefs";
     private static final String KEY_COUNTDOWN = "countdown_time";      // seconds (float)
     private static final String KEY_NOTIFICATION = "notification_time"; // seconds (float)
@@ -43,6 +55,31 @@ public class SettingsActivity extends AppCompatActivity {
         etCountdownTime.setText(String.format(Locale.getDefault(), "%.3f", savedCountdown));
         etNotificationTime.setText(String.format(Locale.getDefault(), "%.3f", savedNotification));
 
+        rgPreset = findViewById(R.id.rgPreset);
+        etConf = findViewById(R.id.etConf);
+        etIou = findViewById(R.id.etIou);
+        etTopK = findViewById(R.id.etTopK);
+        etFalseRate = findViewById(R.id.etFalseRate);
+        etInputSize = findViewById(R.id.etInputSize);
+        etMaxThreads = findViewById(R.id.etMaxThreads);
+        etTiles = findViewById(R.id.etTiles);
+        cbCountdownBoxes = findViewById(R.id.cbCountdownBoxes);
+        cbLowLatencyCapture = findViewById(R.id.cbLowLatencyCapture);
+        cbAudioTrigger = findViewById(R.id.cbAudioTrigger);
+        cbHintAb = findViewById(R.id.cbHintAb);
+        settingsStore = new PipelineSettingsStore(this);
+        showSettings(settingsStore.load());
+
+        // Chọn preset → điền sẵn các ô (vẫn sửa tay được, lúc lưu tự nhận ra preset hay tuỳ chỉnh)
+        rgPreset.setOnCheckedChangeListener((group, checkedId) -> {
+            PipelineSettings preset = null;
+            if (checkedId == R.id.rbBatterySaver) preset = PipelineSettings.preset(PipelineSettings.BATTERY_SAVER);
+            else if (checkedId == R.id.rbBalanced) preset = PipelineSettings.preset(PipelineSettings.BALANCED);
+            else if (checkedId == R.id.rbLowestLatency) preset = PipelineSettings.preset(PipelineSettings.LOWEST_LATENCY);
+            if (preset != null) showFields(preset.withAudioTrigger(cbAudioTrigger.isChecked())
+                    .withHintAb(cbHintAb.isChecked()));
+        });
+
         Button btnClose = findViewById(R.id.btnClose);
         btnClose.setOnClickListener(new View.OnClickListener() {
             @Override public void onClick(View v) {
@@ -53,6 +90,11 @@ public class SettingsActivity extends AppCompatActivity {
                 countdownValue = clamp(countdownValue, 0f, 24f * 3600f);
                 notificationValue = clamp(notificationValue, 0f, 24f * 3600f);
 
+                // Núm hiệu năng: sai miền thì báo ngay tại ô, không lưu gì
+                PipelineSettings settings = readSettings();
+                if (!showErrors(settings.errors())) return;
+                settingsStore.save(settings);
+
                 prefs.edit()
                         .putFloat(KEY_COUNTDOWN, countdownValue)
                         .putFloat(KEY_NOTIFICATION, notificationValue)
@@ -63,6 +105,61 @@ public class SettingsActivity extends AppCompatActivity {
         });
     }
 
+    private void showSettings(PipelineSettings s) {
+        showFields(s);
+        String preset = s.presetName();
+        int id = R.id.rbCustom;
+        if (PipelineSettings.BATTERY_SAVER.equals(preset)) id = R.id.rbBatterySaver;
+        else if (PipelineSettings.BALANCED.equals(preset)) id = R.id.rbBalanced;
+        else if (PipelineSettings.LOWEST_LATENCY.equals(preset)) id = R.id.rbLowestLatency;
+        rgPreset.check(id);
+    }
+
+    private void showFields(PipelineSettings s) {
+        etConf.setText(String.format(Locale.US, "%.2f", s.getConfThreshold()));
+        etIou.setText(String.format(Locale.US, "%.2f", s.getIouThreshold()));
+        etTopK.setText(String.valueOf(s.getTopK()));
+        etFalseRate.setText(String.format(Locale.US, "%.3f", s.getTriggerFalseRate()));
+        etInputSize.setText(String.valueOf(s.getInputSize()));
+        etMaxThreads.setText(String.valueOf(s.getMaxThreads()));
+        etTiles.setText(String.valueOf(s.getTiles()));
+        cbCountdownBoxes.setChecked(s.getCountdownBoxes());
+        cbLowLatencyCapture.setChecked(s.getLowLatencyCapture());
+        cbAudioTrigger.setChecked(s.getAudioTrigger());
+        cbHintAb.setChecked(s.getHintAb());
+    }
+
+    private PipelineSettings readSettings() {
+        return new PipelineSettings(
+                parseLocaleFloat(etConf.getText()),
+                parseLocaleFloat(etIou.getText()),
+                Math.round(parseLocaleFloat(etTopK.getText())),
+                parseLocaleFloat(etFalseRate.getText()),
+                Math.round(parseLocaleFloat(etInputSize.getText())),
+                Math.round(parseLocaleFloat(etMaxThreads.getText())),
+                Math.round(parseLocaleFloat(etTiles.getText())),
+                cbCountdownBoxes.isChecked(),
+                cbLowLatencyCapture.isChecked(),
+                cbAudioTrigger.isChecked(),
+                cbHintAb.isChecked());
+    }
+
+    /** Gắn lỗi (miền hợp lệ) vào ô tương ứng; true nếu không có lỗi */
+    private boolean showErrors(Map<String, String> errors) {
+        EditText[] fields = {etConf, etIou, etTopK, etFalseRate, etInputSize, etMaxThreads, etTiles};
+        String[] keys = {PipelineSettings.CONF, PipelineSettings.IOU, PipelineSettings.TOP_K,
+                PipelineSettings.TRIGGER_FALSE_RATE, PipelineSettings.INPUT_SIZE, PipelineSettings.MAX_THREADS,
+                PipelineSettings.TILES};
+        EditText first = null;
+        for (int i = 0; i < fields.length; i++) {
+            String error = errors.get(keys[i]);
+            fields[i].setError(error);
+            if (error != null && first == null) first = fields[i];
+        }
+        if (first != null) first.requestFocus();
+        return first == null;
+    }
+
     private static float clamp(float v, float lo, float hi) {
         if (v < lo) return lo;
         if (v > hi) return hi;
@@ -0,0 +1,67 @@
+package com.example.spiketimer.camera
+
+import android.util.Size
+import androidx.camera.core.resolutionselector.ResolutionFilter
+import kotlin.math.abs
+import kotlin.math.max
+
+object AnalysisResolution {
+    /**
+     * Sắp xếp các size camera hỗ trợ theo độ ưu tiên cho luồng phân tích:
+     * 1) đúng tỉ lệ [aspect] và cạnh dài ≥ [minLongSide] (letterbox vẫn đủ điểm ảnh cho model), nhỏ → lớn
+     * 2) đúng tỉ lệ nhưng nhỏ hơn, lớn → nhỏ
+     * 3) các tỉ lệ khác theo cùng quy tắc
+     * Trả về mảng index vào (widths, heights). Không đụng Android API để test trên JVM.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun order(
+        widths: IntArray,
+        heights: IntArray,
+        minLongSide: Int,
+        aspect: Float,
+        aspectTolerance: Float = 0.02f
+    ): IntArray {
+        require(widths.size == heights.size) { "widths/heights size mismatch" }
+        val n = widths.size
+        fun rank(i: Int): Int {
+            val w = widths[i]
+            val h = heights[i]
+            val long = max(w, h)
+            val short = minOf(w, h)
+            val ratioOk = short > 0 && abs(long.toFloat() / short - aspect) <= aspect * aspectTolerance
+            val covers = long >= minLongSide
+            return when {
+                ratioOk && covers -> 0
+                ratioOk -> 1
+                covers -> 2
+                else -> 3
+            }
+        }
+        return (0 until n).sortedWith(Comparator { a, b ->
+            val ra = rank(a)
+            val rb = rank(b)
+            if (ra != rb) return@Comparator ra - rb
+            val areaA = widths[a].toLong() * heights[a]
+            val areaB = widths[b].toLong() * heights[b]
+            // Nhóm "phủ" chọn nhỏ nhất trước, nhóm "thiếu" chọn lớn nhất trước
+            if (ra % 2 == 0) areaA.compareTo(areaB) else areaB.compareTo(areaA)
+        }).toIntArray()
+    }
+}
+
+/**
+ * ResolutionFilter cho ImageAnalysis: đưa size nhỏ nhất vẫn phủ input model lên đầu.
+ * Preview dùng selector riêng nên vẫn giữ độ phân giải cao.
+ */
+class ModelInputResolutionFilter @JvmOverloads constructor(
+    private val minLongSide: Int,
+    private val aspect: Float = 16f / 9f
+) : ResolutionFilter {
+    override fun filter(supportedSizes: List<Size>, rotationDegrees: Int): List<Size> {
+        val w = IntArray(supportedSizes.size) { supportedSizes[it].width }
+        val h = IntArray(supportedSizes.size) { supportedSizes[it].height }
+        val idx = AnalysisResolution.order(w, h, minLongSide, aspect)
+        return idx.mapTo(ArrayList(idx.size)) { supportedSizes[it] }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.spiketimer.yolo
+
+import android.content.Context
+import android.os.Build
+import android.os.PowerManager
+import android.os.SystemClock
+
+/**
+ * ThermalSource đọc từ PowerManager.
+ * - thermalStatus: API 29+, máy cũ luôn trả NONE.
+ * - thermalHeadroom: API 30+, hệ thống chỉ cho gọi ~1 lần/giây nên cache lại giá trị cuối.
+ */
+class AndroidThermalSource(context: Context) : ThermalSource {
+
+    private val pm = context.getSystemService(Context.POWER_SERVICE) as? PowerManager
+
+    private var lastHeadroom = Float.NaN
+    private var lastHeadroomAtMs = 0L
+
+    override fun thermalStatus(): Int {
+        if (pm == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return PerformanceGovernor.STATUS_NONE
+        return pm.currentThermalStatus
+    }
+
+    override fun thermalHeadroom(): Float {
+        if (pm == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.R) return Float.NaN
+        val now = SystemClock.elapsedRealtime()
+        if (now - lastHeadroomAtMs >= HEADROOM_POLL_MS) {
+            lastHeadroomAtMs = now
+            // NaN khi gọi quá dày hoặc máy không hỗ trợ → giữ giá trị cũ
+            val h = pm.getThermalHeadroom(HEADROOM_FORECAST_S)
+            if (!h.isNaN()) lastHeadroom = h
+        }
+        return lastHeadroom
+    }
+
+    companion object {
+        private const val HEADROOM_POLL_MS = 1_000L
+        private const val HEADROOM_FORECAST_S = 10
+    }
+}
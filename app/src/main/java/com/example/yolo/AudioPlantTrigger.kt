@@ -0,0 +1,167 @@
+package com.example.spiketimer.yolo
+
+import android.annotation.SuppressLint
+import android.media.AudioFormat
+import android.media.AudioRecord
+import android.media.AudioTimestamp
+import android.media.MediaRecorder
+import android.os.Process
+import android.os.SystemClock
+import android.util.Log
+import java.io.File
+
+/**
+ * Trigger âm thanh: đọc mic liên tục (AudioRecord mono 16 kHz) trên luồng priority audio, đưa PCM qua
+ * [AudioTemplateMatcher] với mẫu âm thanh cắm spike nạp từ [templateFile] (WAV, đẩy vào bằng adb như model).
+ * Phát hiện → [Listener] với mốc onset theo timebase elapsedRealtime (timestamp của AudioRecord nếu có),
+ * để gộp chung với trigger camera. Vòng đọc tái dùng 1 buffer, không cấp phát.
+ * Cần quyền RECORD_AUDIO (caller kiểm tra trước khi [start]).
+ */
+class AudioPlantTrigger(
+    private val templateFile: File,
+    private val listener: Listener
+) {
+    fun interface Listener {
+        /** Gọi trên luồng audio */
+        fun onPlantSound(onsetMs: Long, score: Float)
+    }
+
+    private val threads = PriorityThreadFactory(THREAD_NAME, Process.THREAD_PRIORITY_URGENT_AUDIO)
+
+    @Volatile private var running = false
+    // Luồng audio hiện hành: vòng đọc chỉ chạy và chỉ ghi running/status khi còn là luồng này
+    @Volatile private var thread: Thread? = null
+    // Luồng vừa bị [stop], có thể chưa thoát (đang kẹt trong read) — luồng kế tiếp chờ nó nhả mic
+    private var retired: Thread? = null
+    @Volatile private var matcher: AudioTemplateMatcher? = null
+    @Volatile private var status = "off"
+
+    fun isRunning(): Boolean = running
+
+    /** Bắt đầu nghe (idempotent); nạp mẫu + mở mic trên luồng audio */
+    @Synchronized
+    fun start() {
+        if (running) return
+        running = true
+        status = "starting"
+        val previous = retired
+        retired = null
+        // Gán trước khi start để luồng mới thấy chính nó là luồng hiện hành
+        val t = threads.newThread { loop(previous) }
+        t.isDaemon = true
+        thread = t
+        t.start()
+    }
+
+    /**
+     * Dừng và chờ tối đa 500 ms cho luồng audio thoát (AudioRecord được release trên luồng đó).
+     * Quá hạn thì luồng cũ tự thoát sau lần read kế tiếp; [start] sau đó không bị nó tắt nhầm.
+     */
+    fun stop() {
+        val t: Thread?
+        synchronized(this) {
+            if (!running) return
+            running = false
+            t = thread
+            thread = null
+            retired = t
+            status = "off"
+        }
+        // Chờ ngoài khoá: luồng audio cần khoá để kết thúc ([finish])
+        try { t?.join(500L) } catch (_: InterruptedException) {}
+    }
+
+    private fun isCurrent(): Boolean = thread === Thread.currentThread()
+
+    /** Vòng đọc kết thúc: chỉ luồng hiện hành mới được đặt trạng thái / tắt cờ running */
+    @Synchronized
+    private fun finish(newStatus: String?) {
+        if (!isCurrent()) return
+        if (newStatus != null) status = newStatus
+        running = false
+        thread = null
+    }
+
+    @Synchronized
+    private fun setStatus(newStatus: String) {
+        if (isCurrent()) status = newStatus
+    }
+
+    fun summary(): String {
+        val m = matcher
+        return if (running && m != null) m.summary() else status
+    }
+
+    @SuppressLint("MissingPermission")
+    private fun loop(previous: Thread?) {
+        // Luồng trước chưa release AudioRecord → chờ để không mở mic 2 lần cùng lúc (và không dùng chung matcher)
+        try { previous?.join() } catch (_: InterruptedException) { finish(null); return }
+        if (!isCurrent()) return
+        val m = try {
+            matcher ?: AudioTemplateMatcher(WavPcm.readAt(templateFile.readBytes(), AudioTemplateMatcher.SAMPLE_RATE))
+                .also { matcher = it }
+        } catch (e: Exception) {
+            Log.w(TAG, "Cannot load audio template $templateFile", e)
+            finish("no template (${templateFile.name})")
+            return
+        }
+        val rate = m.sampleRate
+        val minBuf = AudioRecord.getMinBufferSize(rate, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT)
+        if (minBuf <= 0) {
+            finish("mic unsupported")
+            return
+        }
+        // Đọc theo từng hop: frame FFT mới ngay khi đủ mẫu, không đợi buffer lớn đầy
+        val chunk = ShortArray(m.hop)
+        val record = try {
+            AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, rate, AudioFormat.CHANNEL_IN_MONO,
+                AudioFormat.ENCODING_PCM_16BIT, maxOf(minBuf, 4 * chunk.size * 2))
+        } catch (e: Exception) {
+            Log.w(TAG, "AudioRecord failed", e)
+            finish("mic error")
+            return
+        }
+        if (record.state != AudioRecord.STATE_INITIALIZED) {
+            record.release()
+            finish("mic busy")
+            return
+        }
+        val ts = AudioTimestamp()
+        var framesRead = 0L
+        m.reset()
+        var endStatus: String? = null
+        try {
+            record.startRecording()
+            setStatus("listening")
+            while (running && isCurrent()) {
+                val n = record.read(chunk, 0, chunk.size)
+                if (n <= 0) {
+                    if (n < 0) { endStatus = "read error $n"; break }
+                    continue
+                }
+                // Mốc mẫu đầu của đoạn: nội suy từ timestamp (frame, boottime) của mic; không có thì lùi từ lúc đọc xong
+                val firstMs = if (record.getTimestamp(ts, AudioTimestamp.TIMEBASE_BOOTTIME) == AudioRecord.SUCCESS) {
+                    (ts.nanoTime + (framesRead - ts.framePosition) * 1_000_000_000L / rate) / 1_000_000L
+                } else {
+                    SystemClock.elapsedRealtime() - n * 1000L / rate
+                }
+                framesRead += n
+                if (m.feed(chunk, 0, n, firstMs)) listener.onPlantSound(m.lastOnsetMs, m.lastDetectionScore)
+            }
+        } catch (e: Exception) {
+            Log.w(TAG, "Audio loop failed", e)
+            endStatus = "mic error"
+        } finally {
+            try { record.stop() } catch (_: Exception) {}
+            record.release()
+            finish(endStatus)
+        }
+    }
+
+    companion object {
+        private const val TAG = "AudioPlantTrigger"
+        private const val THREAD_NAME = "spike-audio"
+        /** Mẫu âm thanh cắm spike trong filesDir */
+        const val TEMPLATE_PATH = "audio/plant.wav"
+    }
+}
@@ -0,0 +1,360 @@
+package com.example.spiketimer.yolo
+
+import java.util.Locale
+import kotlin.math.PI
+import kotlin.math.cos
+import kotlin.math.ln
+import kotlin.math.log10
+import kotlin.math.pow
+import kotlin.math.sin
+import kotlin.math.sqrt
+
+/**
+ * Nhận diện âm thanh cắm spike trên luồng PCM mono [sampleRate] Hz, chạy liên tục trên luồng audio:
+ * mỗi [hop] mẫu tính FFT [fftSize] điểm (cửa sổ Hann), gom năng lượng vào [bands] dải tần chia log
+ * trong [[minHz], [maxHz]], lấy log (sàn 30 dB dưới dải mạnh nhất) rồi chuẩn hoá từng frame (trừ trung bình, chia độ dài) → chỉ còn
+ * hình dạng phổ, không phụ thuộc âm lượng. Điểm khớp = cosine trung bình giữa T frame của mẫu (template)
+ * và T frame gần nhất; vượt [threshold] (và đủ to, ≥ [minDbfs]) → phát hiện, mốc onset = frame đầu cửa sổ.
+ * Sau 1 lần phát hiện nghỉ [refractoryMs] (âm thanh còn vang không phát hiện lại).
+ * [feed] không cấp phát. Cùng engine chạy offline trên file WAV ([WavPcm]) để test / chỉnh ngưỡng.
+ * Không phụ thuộc Android để test trên JVM.
+ */
+class AudioTemplateMatcher @JvmOverloads constructor(
+    template: FloatArray,
+    val sampleRate: Int = SAMPLE_RATE,
+    val threshold: Float = 0.75f,
+    val minDbfs: Float = -55f,
+    val refractoryMs: Long = 3_000L,
+    val fftSize: Int = 512,
+    val hop: Int = 256,
+    val bands: Int = 24,
+    minHz: Float = 200f,
+    maxHz: Float = 7_000f
+) {
+    init {
+        require(fftSize >= 64 && fftSize and (fftSize - 1) == 0) { "fftSize must be a power of two >= 64" }
+        require(hop in 1..fftSize) { "hop must be in 1..fftSize" }
+        require(bands >= 4) { "bands must be >= 4" }
+        require(maxHz > minHz && maxHz <= sampleRate / 2f) { "band range must be inside Nyquist" }
+    }
+
+    private val fft = Fft(fftSize)
+    private val window = FloatArray(fftSize) { (0.5 - 0.5 * cos(2.0 * PI * it / fftSize)).toFloat() }
+
+    // Bin FFT đầu của mỗi dải (dải b = bin [bandStart[b], bandStart[b + 1]))
+    private val bandStart = IntArray(bands + 1).also { edges ->
+        val binHz = sampleRate.toFloat() / fftSize
+        for (b in 0..bands) {
+            val hz = minHz * (maxHz / minHz).pow(b.toFloat() / bands)
+            edges[b] = (hz / binHz).toInt().coerceIn(1, fftSize / 2)
+        }
+        for (b in 1..bands) if (edges[b] <= edges[b - 1]) edges[b] = minOf(fftSize / 2, edges[b - 1] + 1)
+    }
+
+    // Luồng vào: [fftSize] mẫu gần nhất (vòng), đếm mẫu tới lượt FFT kế tiếp
+    private val input = FloatArray(fftSize)
+    private var inputPos = 0
+    private var untilHop = fftSize
+    private var samplesSeen = 0L
+    private val re = FloatArray(fftSize)
+    private val im = FloatArray(fftSize)
+
+    /** Mẫu: [frames] frame đặc trưng × [bands], đã chuẩn hoá */
+    private val templateFeatures: FloatArray
+    val frames: Int
+
+    // T frame gần nhất (vòng) + năng lượng (dBFS) của từng frame
+    private val recent: FloatArray
+    private val recentDb: FloatArray
+    private var recentHead = 0
+    private var recentCount = 0
+
+    private var blockedUntilSample = Long.MIN_VALUE
+    private var firstSampleMsOfChunk = 0L
+    private var chunkStartSample = 0L
+
+    /** Điểm khớp của cửa sổ gần nhất (NaN khi chưa đủ T frame) */
+    var lastScore = Float.NaN; private set
+    /** Điểm cao nhất từ lần [resetStats] (chỉnh ngưỡng theo môi trường) */
+    var peakScore = Float.NaN; private set
+    /** Mốc onset (ms, cùng timebase với [feed]) và điểm của lần phát hiện gần nhất */
+    var lastOnsetMs = 0L; private set
+    var lastDetectionScore = Float.NaN; private set
+    var detections = 0; private set
+
+    init {
+        val all = features(template)
+        // Cắt đoạn lặng đầu / cuối của mẫu: frame lặng chỉ là nhiễu sau khi chuẩn hoá
+        val n = all.size / (bands + 1)
+        var maxDb = -200f
+        for (i in 0 until n) maxDb = maxOf(maxDb, all[i * (bands + 1)])
+        var from = 0
+        var to = n
+        while (from < n && all[from * (bands + 1)] < maxDb - TRIM_DB) from++
+        while (to > from && all[(to - 1) * (bands + 1)] < maxDb - TRIM_DB) to--
+        require(to - from >= 2) { "template too short or silent" }
+        frames = to - from
+        templateFeatures = FloatArray(frames * bands)
+        for (t in 0 until frames) System.arraycopy(all, (from + t) * (bands + 1) + 1, templateFeatures, t * bands, bands)
+        recent = FloatArray(frames * bands)
+        recentDb = FloatArray(frames)
+    }
+
+    /** Độ dài mẫu (ms) — từ frame đầu tới hết frame cuối */
+    fun templateMs(): Long = ((frames - 1) * hop + fftSize) * 1000L / sampleRate
+
+    /**
+     * Đưa [len] mẫu PCM 16-bit từ [offset]; [firstSampleMs] = mốc của mẫu đầu.
+     * Trả về true nếu có phát hiện trong đoạn này (xem [lastOnsetMs]).
+     */
+    fun feed(pcm: ShortArray, offset: Int, len: Int, firstSampleMs: Long): Boolean {
+        startChunk(firstSampleMs)
+        var detected = false
+        for (i in offset until offset + len) if (push(pcm[i] / 32768f)) detected = true
+        return detected
+    }
+
+    /** Như [feed] với mẫu float [-1, 1] (WAV offline) */
+    fun feed(pcm: FloatArray, offset: Int, len: Int, firstSampleMs: Long): Boolean {
+        startChunk(firstSampleMs)
+        var detected = false
+        for (i in offset until offset + len) if (push(pcm[i])) detected = true
+        return detected
+    }
+
+    private fun startChunk(firstSampleMs: Long) {
+        firstSampleMsOfChunk = firstSampleMs
+        chunkStartSample = samplesSeen
+    }
+
+    private fun push(x: Float): Boolean {
+        input[inputPos] = x
+        inputPos = if (inputPos + 1 == fftSize) 0 else inputPos + 1
+        samplesSeen++
+        if (--untilHop > 0) return false
+        untilHop = hop
+        return onFrame()
+    }
+
+    /** 1 frame mới đủ [fftSize] mẫu (kết thúc ở mẫu samplesSeen − 1) → đặc trưng + điểm khớp */
+    private fun onFrame(): Boolean {
+        // Cửa sổ theo thứ tự thời gian: mẫu cũ nhất ở inputPos
+        for (i in 0 until fftSize) {
+            val j = inputPos + i
+            re[i] = input[if (j >= fftSize) j - fftSize else j] * window[i]
+            im[i] = 0f
+        }
+        val slot = recentHead
+        recentDb[slot] = spectrumFeature(recent, slot * bands)
+        recentHead = if (recentHead + 1 == frames) 0 else recentHead + 1
+        if (recentCount < frames) recentCount++
+        if (recentCount < frames) return false
+
+        var score = 0f
+        var db = 0f
+        for (t in 0 until frames) {
+            val r = recentHead + t
+            val rs = if (r >= frames) r - frames else r
+            val ro = rs * bands
+            val to = t * bands
+            var dot = 0f
+            for (b in 0 until bands) dot += templateFeatures[to + b] * recent[ro + b]
+            score += dot
+            db += recentDb[rs]
+        }
+        score /= frames
+        db /= frames
+        lastScore = score
+        if (peakScore.isNaN() || score > peakScore) peakScore = score
+        if (score < threshold || db < minDbfs || samplesSeen < blockedUntilSample) return false
+
+        // Onset = mẫu đầu của frame cũ nhất trong cửa sổ
+        val onsetSample = samplesSeen - fftSize - (frames - 1).toLong() * hop
+        lastOnsetMs = firstSampleMsOfChunk + (onsetSample - chunkStartSample) * 1000L / sampleRate
+        lastDetectionScore = score
+        detections++
+        blockedUntilSample = samplesSeen + refractoryMs * sampleRate / 1000L
+        return true
+    }
+
+    /** FFT của re/im đã nạp → đặc trưng chuẩn hoá ghi vào [dst]; trả về năng lượng frame (dBFS) */
+    private fun spectrumFeature(dst: FloatArray, dstOffset: Int): Float {
+        fft.transform(re, im)
+        var total = 0f
+        var peak = 0f
+        for (b in 0 until bands) {
+            var e = 0f
+            for (k in bandStart[b] until bandStart[b + 1]) e += re[k] * re[k] + im[k] * im[k]
+            total += e
+            e /= bandStart[b + 1] - bandStart[b]
+            dst[dstOffset + b] = e
+            if (e > peak) peak = e
+        }
+        // Sàn động [FLOOR_DB] dưới dải mạnh nhất: dải gần như lặng (mẫu sạch vs nhiễu nền của mic) không lấn át hình dạng phổ
+        val floor = maxOf(1e-12f, peak * FLOOR)
+        var mean = 0f
+        for (b in 0 until bands) {
+            val v = ln(maxOf(dst[dstOffset + b], floor))
+            dst[dstOffset + b] = v
+            mean += v
+        }
+        mean /= bands
+        var norm = 0f
+        for (b in 0 until bands) {
+            val v = dst[dstOffset + b] - mean
+            dst[dstOffset + b] = v
+            norm += v * v
+        }
+        norm = sqrt(norm)
+        for (b in 0 until bands) dst[dstOffset + b] = if (norm > 0f) dst[dstOffset + b] / norm else 0f
+        // Năng lượng so với sóng sin toàn thang qua cửa sổ Hann (≈ (N/4)² · 2 trên nửa phổ)
+        val ref = fftSize * fftSize / 8f
+        return 10f * log10(1e-12f + total / ref)
+    }
+
+    /** Đặc trưng mọi frame của [pcm] (mảng phẳng [dBFS, bands…]*), không đụng trạng thái luồng */
+    private fun features(pcm: FloatArray): FloatArray {
+        val n = if (pcm.size < fftSize) 0 else (pcm.size - fftSize) / hop + 1
+        val out = FloatArray(n * (bands + 1))
+        for (f in 0 until n) {
+            for (i in 0 until fftSize) {
+                re[i] = pcm[f * hop + i] * window[i]
+                im[i] = 0f
+            }
+            out[f * (bands + 1)] = spectrumFeature(out, f * (bands + 1) + 1)
+        }
+        return out
+    }
+
+    /** Quên lịch sử luồng (mic mở lại); mẫu giữ nguyên */
+    fun reset() {
+        input.fill(0f)
+        inputPos = 0
+        untilHop = fftSize
+        recentHead = 0
+        recentCount = 0
+        blockedUntilSample = Long.MIN_VALUE
+        lastScore = Float.NaN
+    }
+
+    fun resetStats() {
+        peakScore = Float.NaN
+    }
+
+    fun summary(): String = String.format(
+        Locale.US, "score %.2f (peak %.2f) / %.2f, %d hits, template %d ms",
+        lastScore, peakScore, threshold, detections, templateMs()
+    )
+
+    companion object {
+        /** Tần số lấy mẫu của engine (đủ cho dải tới 7 kHz, FFT 512 điểm = 32 ms) */
+        const val SAMPLE_RATE = 16_000
+        private const val TRIM_DB = 30f
+        private const val FLOOR_DB = 30f
+        private val FLOOR = 10f.pow(-FLOOR_DB / 10f)
+    }
+}
+
+/** FFT phức radix-2 tại chỗ, bảng bit-reverse + twiddle tính trước, không cấp phát khi chạy */
+internal class Fft(private val n: Int) {
+    private val levels = Integer.numberOfTrailingZeros(n)
+    private val cosTable = FloatArray(n / 2) { cos(2.0 * PI * it / n).toFloat() }
+    private val sinTable = FloatArray(n / 2) { sin(2.0 * PI * it / n).toFloat() }
+    private val reverse = IntArray(n) { Integer.reverse(it) ushr (32 - levels) }
+
+    fun transform(re: FloatArray, im: FloatArray) {
+        for (i in 0 until n) {
+            val j = reverse[i]
+            if (j > i) {
+                var t = re[i]; re[i] = re[j]; re[j] = t
+                t = im[i]; im[i] = im[j]; im[j] = t
+            }
+        }
+        var size = 2
+        while (size <= n) {
+            val half = size / 2
+            val step = n / size
+            var i = 0
+            while (i < n) {
+                var k = 0
+                for (j in i until i + half) {
+                    val l = j + half
+                    val tre = re[l] * cosTable[k] + im[l] * sinTable[k]
+                    val tim = -re[l] * sinTable[k] + im[l] * cosTable[k]
+                    re[l] = re[j] - tre
+                    im[l] = im[j] - tim
+                    re[j] += tre
+                    im[j] += tim
+                    k += step
+                }
+                i += size
+            }
+            size *= 2
+        }
+    }
+}
+
+/**
+ * Đọc WAV PCM 16-bit (mono / nhiều kênh → trộn mono) và đổi tần số lấy mẫu (nội suy tuyến tính) —
+ * nạp mẫu âm thanh và chạy engine offline trên file ghi âm.
+ */
+object WavPcm {
+    class Audio(val samples: FloatArray, val sampleRate: Int)
+
+    @JvmStatic
+    fun read(bytes: ByteArray): Audio {
+        require(bytes.size >= 12 && tag(bytes, 0) == "RIFF" && tag(bytes, 8) == "WAVE") { "not a RIFF/WAVE file" }
+        var pos = 12
+        var channels = 0
+        var rate = 0
+        var bits = 0
+        while (pos + 8 <= bytes.size) {
+            val id = tag(bytes, pos)
+            val size = le32(bytes, pos + 4)
+            val body = pos + 8
+            if (id == "fmt ") {
+                require(le16(bytes, body) == 1) { "only PCM WAV is supported" }
+                channels = le16(bytes, body + 2)
+                rate = le32(bytes, body + 4)
+                bits = le16(bytes, body + 14)
+            } else if (id == "data") {
+                require(channels > 0 && bits == 16) { "only 16-bit PCM is supported" }
+                val frames = minOf(size, bytes.size - body) / (2 * channels)
+                val out = FloatArray(frames)
+                for (f in 0 until frames) {
+                    var s = 0
+                    for (c in 0 until channels) s += le16(bytes, body + 2 * (f * channels + c)).toShort().toInt()
+                    out[f] = s / (32768f * channels)
+                }
+                return Audio(out, rate)
+            }
+            pos = body + size + (size and 1)
+        }
+        throw IllegalArgumentException("no data chunk")
+    }
+
+    /** Đổi [src] từ [fromRate] sang [toRate] Hz */
+    @JvmStatic
+    fun resample(src: FloatArray, fromRate: Int, toRate: Int): FloatArray {
+        if (fromRate == toRate || src.isEmpty()) return src
+        val n = (src.size.toLong() * toRate / fromRate).toInt()
+        val ratio = fromRate.toDouble() / toRate
+        return FloatArray(n) {
+            val x = it * ratio
+            val i = x.toInt()
+            val frac = (x - i).toFloat()
+            if (i + 1 < src.size) src[i] + (src[i + 1] - src[i]) * frac else src[src.size - 1]
+        }
+    }
+
+    /** WAV bất kỳ tần số → mẫu float ở [rate] Hz */
+    @JvmStatic
+    fun readAt(bytes: ByteArray, rate: Int): FloatArray {
+        val a = read(bytes)
+        return resample(a.samples, a.sampleRate, rate)
+    }
+
+    private fun tag(b: ByteArray, o: Int) = String(b, o, 4, Charsets.US_ASCII)
+    private fun le16(b: ByteArray, o: Int) = (b[o].toInt() and 0xFF) or ((b[o + 1].toInt() and 0xFF) shl 8)
+    private fun le32(b: ByteArray, o: Int) = le16(b, o) or (le16(b, o + 2) shl 16)
+}
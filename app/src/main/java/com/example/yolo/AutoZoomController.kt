@@ -0,0 +1,167 @@
+package com.example.spiketimer.yolo
+
+import java.util.Locale
+import kotlin.math.abs
+import kotlin.math.exp
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.sqrt
+
+/**
+ * Tự zoom camera vào spike khi box quá nhỏ so với khung: zoom của CameraX là crop vùng cảm biến
+ * trước khi scale xuống độ phân giải analysis, nên zoom vào = nhiều pixel cảm biến hơn trên mục tiêu
+ * ở cùng input 448 của model (thay cho model input lớn, chậm hơn).
+ *
+ * Zoom cắt quanh tâm khung nên box luôn được quy về toạ độ "chưa zoom" (chuẩn hoá [0..1] ở zoom [baseZoom]):
+ *   x₀ = 0.5 + (x_z − 0.5) · baseZoom / z_frame
+ * — mục tiêu giữ nguyên toạ độ qua các lần đổi zoom. Zoom mong muốn là min của:
+ *   - kích thước: diện tích box đạt [targetFraction] khung (diện tích tỉ lệ z²),
+ *   - vừa khung: box cách mép ít nhất [margin] (tâm box lệch tâm khung bị đẩy ra ngoài khi zoom),
+ * kẹp trong [baseZoom, maxZoom]. Chỉ đổi khi lệch quá [deadband] (không săn qua lại), tiến tới zoom đích
+ * mượt theo tốc độ tối đa [maxLogRatePerS] (log-zoom / giây). Mất mục tiêu quá [holdMs] → lùi về [baseZoom].
+ * Sau mỗi lệnh zoom, frame trong [settleMs] có thể còn chụp ở zoom cũ nên không dùng để đo box.
+ * Người dùng pinch → zoom đó thành [baseZoom] và tạm dừng tự zoom [userHoldMs].
+ * Analysis thread gọi [update], main thread gọi [setLimits]/[onUserZoom]. Không phụ thuộc Android để test trên JVM.
+ */
+class AutoZoomController @JvmOverloads constructor(
+    private val clock: Clock,
+    val targetFraction: Float = 0.02f,
+    val margin: Float = 0.2f,
+    val deadband: Float = 1.15f,
+    val maxLogRatePerS: Float = 1.2f,
+    val holdMs: Long = 1_500L,
+    val settleMs: Long = 250L,
+    val userHoldMs: Long = 3_000L
+) {
+    init {
+        require(targetFraction > 0f && targetFraction < 1f) { "targetFraction must be in (0, 1)" }
+        require(margin >= 0f && margin < 1f) { "margin must be in [0, 1)" }
+        require(deadband >= 1f) { "deadband must be >= 1" }
+    }
+
+    private var minZoom = 1f
+    private var maxZoom = 1f
+    var baseZoom = 1f; private set
+    /** Zoom đã ra lệnh gần nhất */
+    var zoom = 1f; private set
+    private var frameZoom = 1f        // zoom mà frame hiện tại được chụp (zoom trước lệnh cho tới hết settle)
+    private var targetZoom = 1f
+    private var lastUpdateMs = Long.MIN_VALUE
+    private var lastCommandMs = Long.MIN_VALUE
+    private var lastSeenMs = Long.MIN_VALUE
+    private var userUntilMs = Long.MIN_VALUE
+
+    /** Mục tiêu gần nhất ở toạ độ chưa zoom [l, t, r, b] (NaN khi chưa thấy) */
+    private val target = floatArrayOf(Float.NaN, Float.NaN, Float.NaN, Float.NaN)
+
+    @Synchronized
+    fun setLimits(minZoom: Float, maxZoom: Float) {
+        this.minZoom = minZoom
+        this.maxZoom = max(minZoom, maxZoom)
+        baseZoom = baseZoom.coerceIn(this.minZoom, this.maxZoom)
+        zoom = zoom.coerceIn(this.minZoom, this.maxZoom)
+        frameZoom = frameZoom.coerceIn(this.minZoom, this.maxZoom)
+    }
+
+    /** Camera có dải zoom để điều khiển */
+    @Synchronized
+    fun isEnabled(): Boolean = maxZoom > minZoom
+
+    /** Người dùng pinch tới [z]: thành mức nền, tự zoom dừng một lúc */
+    @Synchronized
+    fun onUserZoom(z: Float) {
+        baseZoom = z.coerceIn(minZoom, maxZoom)
+        zoom = baseZoom
+        frameZoom = baseZoom
+        targetZoom = baseZoom
+        userUntilMs = clock.nowMs() + userHoldMs
+        target.fill(Float.NaN)
+    }
+
+    /** Quên mục tiêu (reset countdown) → lùi dần về mức nền ở các frame sau */
+    @Synchronized
+    fun reset() {
+        lastSeenMs = Long.MIN_VALUE
+        targetZoom = baseZoom
+        target.fill(Float.NaN)
+    }
+
+    /**
+     * Ghi 1 frame: [box] = box spike tốt nhất chuẩn hoá [0..1] trên frame (l, t, r, b từ [offset]), null nếu không có.
+     * Trả về zoom cần ra lệnh, hoặc NaN nếu giữ nguyên.
+     */
+    @Synchronized
+    fun update(box: FloatArray?, offset: Int): Float {
+        val now = clock.nowMs()
+        val dtMs = if (lastUpdateMs == Long.MIN_VALUE) 0L else min(now - lastUpdateMs, 100L)
+        lastUpdateMs = now
+        if (now < userUntilMs || maxZoom <= minZoom) return Float.NaN
+
+        val settled = lastCommandMs == Long.MIN_VALUE || now - lastCommandMs >= settleMs
+        if (settled) frameZoom = zoom
+        if (box != null) {
+            lastSeenMs = now
+            if (settled) {
+                toUnzoomed(box, offset, frameZoom / baseZoom, target, 0)
+                val desired = desiredZoom(target)
+                // Deadband quanh zoom đích hiện tại: box dao động vài pixel không làm zoom săn
+                if (desired > targetZoom * deadband || desired < targetZoom / deadband) targetZoom = desired
+            }
+        } else if (lastSeenMs == Long.MIN_VALUE || now - lastSeenMs > holdMs) {
+            targetZoom = baseZoom
+            target.fill(Float.NaN)
+        }
+
+        // Tiến về zoom đích với tốc độ giới hạn (nhân/chia tối đa e^(rate·dt) mỗi bước)
+        val maxStep = exp(maxLogRatePerS * dtMs / 1000f)
+        val next = targetZoom.coerceIn(zoom / maxStep, zoom * maxStep).coerceIn(minZoom, maxZoom)
+        if (abs(next - zoom) < MIN_CHANGE) return Float.NaN
+        zoom = next
+        lastCommandMs = now
+        return next
+    }
+
+    /** Zoom (tuyệt đối) đưa box chưa zoom [t] tới kích thước mục tiêu mà vẫn nằm trong khung */
+    private fun desiredZoom(t: FloatArray): Float {
+        val w = t[2] - t[0]
+        val h = t[3] - t[1]
+        val area = w * h
+        if (area <= 0f) return baseZoom
+        val bySize = sqrt(targetFraction / area)
+        val reach = max(abs((t[0] + t[2]) / 2f - 0.5f) + w / 2f, abs((t[1] + t[3]) / 2f - 0.5f) + h / 2f)
+        val byFit = if (reach <= 0f) Float.MAX_VALUE else 0.5f * (1f - margin) / reach
+        return (baseZoom * min(bySize, byFit)).coerceIn(baseZoom, maxZoom)
+    }
+
+    /** Mục tiêu hiện tại ở toạ độ chưa zoom, false nếu chưa có */
+    @Synchronized
+    fun target(out: FloatArray): Boolean {
+        if (target[0].isNaN()) return false
+        System.arraycopy(target, 0, out, 0, 4)
+        return true
+    }
+
+    @Synchronized
+    fun summary(): String =
+        if (maxZoom <= minZoom) "n/a"
+        else String.format(Locale.US, "%.2fx → %.2fx (base %.2fx, max %.1fx)", zoom, targetZoom, baseZoom, maxZoom)
+
+    companion object {
+        private const val MIN_CHANGE = 0.01f
+
+        /**
+         * Box chuẩn hoá trên frame zoom [relZoom] (so với mức nền) → toạ độ chưa zoom.
+         * Zoom cắt quanh tâm: x₀ = 0.5 + (x − 0.5) / relZoom.
+         */
+        @JvmStatic
+        fun toUnzoomed(src: FloatArray, srcOffset: Int, relZoom: Float, dst: FloatArray, dstOffset: Int) {
+            for (i in 0 until 4) dst[dstOffset + i] = 0.5f + (src[srcOffset + i] - 0.5f) / relZoom
+        }
+
+        /** Ngược lại của [toUnzoomed] */
+        @JvmStatic
+        fun toZoomed(src: FloatArray, srcOffset: Int, relZoom: Float, dst: FloatArray, dstOffset: Int) {
+            for (i in 0 until 4) dst[dstOffset + i] = 0.5f + (src[srcOffset + i] - 0.5f) * relZoom
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.spiketimer.yolo
+
+import java.util.concurrent.ThreadFactory
+
+/**
+ * Pool luồng cố định chạy 1 tác vụ theo dải hàng song song: hàng [0, rows) chia thành tối đa [parallelism]
+ * dải liền nhau, luồng gọi tự làm dải đầu và chờ các worker làm phần còn lại. Mỗi dải ghi vùng riêng của
+ * buffer đích nên không cần khoá dữ liệu. Số dải thích nghi theo khối lượng: frame nhỏ (ít hơn
+ * [minWorkPerBand] đơn vị/dải) chạy ít dải hơn hoặc chạy thẳng trên luồng gọi, khỏi trả phí đánh thức worker.
+ * Worker sống suốt vòng đời pool (không tạo thread mỗi frame), [run] không cấp phát.
+ * Nhiều luồng gọi [run] cùng lúc (vd. warmup model mới trên luồng swap trong khi analysis thread đang detect)
+ * được xếp hàng qua [callerLock]: mỗi lần chỉ 1 tác vụ chiếm worker, lần sau chờ lần trước xong.
+ * [threadFactory] (tuỳ chọn) tạo worker — vd. để đặt priority như luồng gọi; null = thread daemon thường tên "[name]-i".
+ * Không phụ thuộc Android để test trên JVM.
+ */
+class BandPool @JvmOverloads constructor(
+    val parallelism: Int = defaultParallelism(),
+    private val minWorkPerBand: Int = 32_768,
+    name: String = "band",
+    threadFactory: ThreadFactory? = null
+) {
+    init {
+        require(parallelism >= 1) { "parallelism must be >= 1" }
+        require(minWorkPerBand >= 1) { "minWorkPerBand must be >= 1" }
+    }
+
+    /** Xử lý hàng [from, to) */
+    fun interface BandTask {
+        fun run(from: Int, to: Int)
+    }
+
+    private val lock = Object()
+    private val callerLock = Object()
+    private var generation = 0L
+    private var task: BandTask? = null
+    private var rows = 0
+    private var bands = 0
+    private var pending = 0
+    private var error: Throwable? = null
+    private var closed = false
+
+    private val workers = Array(parallelism - 1) { i ->
+        val loop = Runnable { workerLoop(i + 1) }
+        (threadFactory?.newThread(loop) ?: Thread(loop, "$name-${i + 1}")).apply {
+            isDaemon = true
+            start()
+        }
+    }
+
+    /** Số dải sẽ dùng cho [rows] hàng, mỗi hàng [workPerRow] đơn vị (vd. pixel) */
+    fun bandsFor(rows: Int, workPerRow: Int): Int {
+        if (rows <= 1) return 1
+        val byWork = (rows.toLong() * workPerRow / minWorkPerBand).toInt()
+        return byWork.coerceIn(1, minOf(parallelism, rows))
+    }
+
+    /** Chạy [task] trên [0, rows), trả về khi mọi dải xong; lỗi của bất kỳ dải nào được ném lại ở đây */
+    fun run(rows: Int, workPerRow: Int, task: BandTask) {
+        val n = bandsFor(rows, workPerRow)
+        if (n <= 1) {
+            if (rows > 0) task.run(0, rows)
+            return
+        }
+        synchronized(callerLock) {
+            synchronized(lock) {
+                if (closed) {
+                    task.run(0, rows)
+                    return
+                }
+                this.task = task
+                this.rows = rows
+                bands = n
+                pending = n - 1
+                error = null
+                generation++
+                lock.notifyAll()
+            }
+            var failure: Throwable? = null
+            try {
+                task.run(0, bandEnd(rows, n, 0))
+            } catch (t: Throwable) {
+                failure = t
+            }
+            synchronized(lock) {
+                while (pending > 0) lock.wait()
+                this.task = null
+                if (failure == null) failure = error
+            }
+            failure?.let { throw it }
+        }
+    }
+
+    private fun workerLoop(index: Int) {
+        var seen = 0L
+        while (true) {
+            var t: BandTask?
+            var r: Int
+            var n: Int
+            synchronized(lock) {
+                while (!closed && generation == seen) lock.wait()
+                // Đã đóng nhưng còn lần chạy chưa nhận → làm nốt dải của mình, không thì [run] chờ pending mãi
+                if (generation == seen) return
+                seen = generation
+                t = task
+                r = rows
+                n = bands
+            }
+            if (index >= n) continue // lần này không cần worker này
+            var failure: Throwable? = null
+            try {
+                t!!.run(bandEnd(r, n, index - 1), bandEnd(r, n, index))
+            } catch (e: Throwable) {
+                failure = e
+            }
+            synchronized(lock) {
+                if (failure != null && error == null) error = failure
+                pending--
+                if (pending == 0) lock.notifyAll()
+            }
+        }
+    }
+
+    /** Dừng worker (lần [run] đang dở vẫn được làm xong); [run] sau đó chạy tuần tự trên luồng gọi */
+    fun close() {
+        synchronized(lock) {
+            closed = true
+            lock.notifyAll()
+        }
+    }
+
+    companion object {
+        /** Cuối dải thứ [band] (đầu dải = cuối dải trước) */
+        private fun bandEnd(rows: Int, bands: Int, band: Int): Int = ((band + 1).toLong() * rows / bands).toInt()
+
+        /**
+         * Mặc định nửa số core (tối đa 4): điện thoại 8 core thường có 4 core lớn,
+         * và tiền xử lý chạy xen kẽ (không song song) với các luồng của interpreter.
+         */
+        @JvmStatic
+        fun defaultParallelism(): Int = (Runtime.getRuntime().availableProcessors() / 2).coerceIn(1, 4)
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.spiketimer.yolo
+
+/**
+ * Một cấu hình detector cần đo: backend, số luồng CPU, XNNPACK, kích thước input.
+ */
+data class BenchmarkConfig(
+    val delegate: String,
+    val numThreads: Int,
+    val useXnnpack: Boolean,
+    val inputSize: Int
+) {
+    /** Khoá ổn định để so sánh giữa các lần chạy / bản build */
+    fun key(): String = "$delegate-t$numThreads-${if (useXnnpack) "xnn" else "ref"}-$inputSize"
+
+    companion object {
+        const val CPU = "cpu"
+        const val GPU = "gpu"
+        const val NNAPI = "nnapi"
+
+        @JvmField val DEFAULT_THREADS = intArrayOf(1, 2, 4, 8)
+        @JvmField val DEFAULT_INPUT_SIZES = intArrayOf(448, 384, 320)
+
+        /**
+         * Ma trận cấu hình: CPU đủ tổ hợp luồng × XNNPACK bật/tắt × input;
+         * GPU/NNAPI chỉ đo với XNNPACK bật và [delegateThreads] luồng (luồng CPU chỉ chạy op fallback).
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun matrix(
+            threads: IntArray = DEFAULT_THREADS,
+            inputSizes: IntArray = DEFAULT_INPUT_SIZES,
+            delegates: List<String> = listOf(CPU, GPU, NNAPI),
+            delegateThreads: Int = 4
+        ): List<BenchmarkConfig> {
+            val out = ArrayList<BenchmarkConfig>()
+            for (size in inputSizes) {
+                for (d in delegates) {
+                    if (d == CPU) {
+                        for (xnn in booleanArrayOf(true, false)) {
+                            for (t in threads) out.add(BenchmarkConfig(CPU, t, xnn, size))
+                        }
+                    } else {
+                        out.add(BenchmarkConfig(d, delegateThreads, true, size))
+                    }
+                }
+            }
+            return out
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.spiketimer.yolo
+
+/**
+ * Nguồn thời gian đơn điệu (ms) — tiêm vào các bộ logic thuần để test trên JVM.
+ * Trên máy thật truyền `SystemClock::elapsedRealtime`.
+ */
+fun interface Clock {
+    fun nowMs(): Long
+}
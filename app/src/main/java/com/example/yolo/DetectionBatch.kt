@@ -0,0 +1,183 @@
+package com.example.spiketimer.yolo
+
+/**
+ * Kết quả detect dạng mảng phẳng (structure-of-arrays), tái sử dụng qua các frame:
+ * box [l, t, r, b]* ở [boxes], score / lớp / track id theo chỉ số ở [scores], [classIds], [trackIds].
+ * Nơi sở hữu (pipeline, detector, overlay) giữ 1 batch và truyền tham chiếu qua detect → map toạ độ → vẽ;
+ * mảng chỉ lớn thêm khi vượt sức chứa, [clear] / [nms] / [copyFrom] không cấp phát.
+ * Hệ toạ độ do nơi ghi quyết định (input model, ảnh đứng hoặc view). Không thread-safe.
+ * Không phụ thuộc Android để test trên JVM.
+ */
+class DetectionBatch @JvmOverloads constructor(capacity: Int = 64) {
+    init {
+        require(capacity >= 1) { "capacity must be >= 1" }
+    }
+
+    var boxes = FloatArray(4 * capacity); private set
+    var scores = FloatArray(capacity); private set
+    var classIds = IntArray(capacity); private set
+    /** [NO_TRACK] khi chưa gán */
+    var trackIds = IntArray(capacity); private set
+    var size = 0; private set
+
+    private var suppressed = BooleanArray(capacity)
+
+    fun capacity(): Int = scores.size
+
+    fun isEmpty(): Boolean = size == 0
+
+    fun clear() {
+        size = 0
+    }
+
+    /** Cắt còn [n] phần tử đầu (n ≤ [size]) */
+    fun truncate(n: Int) {
+        size = n.coerceIn(0, size)
+    }
+
+    /** Đảm bảo chứa được [n] phần tử, giữ nguyên nội dung */
+    fun ensureCapacity(n: Int) {
+        if (n <= scores.size) return
+        val cap = maxOf(n, scores.size * 2)
+        boxes = boxes.copyOf(4 * cap)
+        scores = scores.copyOf(cap)
+        classIds = classIds.copyOf(cap)
+        trackIds = trackIds.copyOf(cap)
+        suppressed = BooleanArray(cap)
+    }
+
+    /** Thêm 1 box, trả về chỉ số */
+    @JvmOverloads
+    fun add(left: Float, top: Float, right: Float, bottom: Float, score: Float, classId: Int = 0): Int {
+        val i = size
+        ensureCapacity(i + 1)
+        boxes[4 * i] = left; boxes[4 * i + 1] = top
+        boxes[4 * i + 2] = right; boxes[4 * i + 3] = bottom
+        scores[i] = score
+        classIds[i] = classId
+        trackIds[i] = NO_TRACK
+        size = i + 1
+        return i
+    }
+
+    /**
+     * Nhận phần tử [size] mà nơi gọi vừa ghi box thẳng vào [boxes] (ở 4·size, sau [ensureCapacity]) —
+     * vd. decode từ output model không qua biến tạm.
+     */
+    fun commit(score: Float, classId: Int = 0): Int {
+        val i = size
+        scores[i] = score
+        classIds[i] = classId
+        trackIds[i] = NO_TRACK
+        size = i + 1
+        return i
+    }
+
+    fun score(i: Int): Float = scores[i]
+
+    /** Score cao nhất, 0 nếu rỗng */
+    fun maxScore(): Float {
+        var best = 0f
+        for (i in 0 until size) if (scores[i] > best) best = scores[i]
+        return best
+    }
+
+    /** Số phần tử đầu (đã xếp giảm dần theo score) có score ≥ [threshold] */
+    fun countAtLeast(threshold: Float): Int {
+        var k = 0
+        while (k < size && scores[k] >= threshold) k++
+        return k
+    }
+
+    /** Chép [n] phần tử đầu của [src] (mặc định tất cả) */
+    @JvmOverloads
+    fun copyFrom(src: DetectionBatch, n: Int = src.size) {
+        val count = n.coerceIn(0, src.size)
+        ensureCapacity(count)
+        System.arraycopy(src.boxes, 0, boxes, 0, 4 * count)
+        System.arraycopy(src.scores, 0, scores, 0, count)
+        System.arraycopy(src.classIds, 0, classIds, 0, count)
+        System.arraycopy(src.trackIds, 0, trackIds, 0, count)
+        size = count
+    }
+
+    /** Xếp tại chỗ theo score giảm dần (quicksort trên cả 4 mảng, không cấp phát) */
+    fun sortByScore() {
+        sort(0, size - 1)
+    }
+
+    /**
+     * NMS tại chỗ: xếp theo score giảm dần, giữ box mạnh nhất rồi bỏ mọi box cùng lớp có IoU > [iouThresh]
+     * với nó, tối đa [topK] box. Batch sau đó chỉ còn các box giữ lại, vẫn theo score giảm dần.
+     */
+    fun nms(iouThresh: Float, topK: Int) {
+        sortByScore()
+        val n = size
+        suppressed.fill(false, 0, n)
+        var kept = 0
+        for (i in 0 until n) {
+            if (kept >= topK) break
+            if (suppressed[i]) continue
+            for (j in i + 1 until n) {
+                if (!suppressed[j] && classIds[j] == classIds[i] &&
+                    iou(boxes, 4 * i, boxes, 4 * j) > iouThresh) suppressed[j] = true
+            }
+            // i ≥ kept: các vị trí trước i đã xử lý xong nên dồn lên được
+            if (kept != i) move(i, kept)
+            kept++
+        }
+        size = kept
+    }
+
+    private fun sort(lo0: Int, hi0: Int) {
+        var lo = lo0
+        var hi = hi0
+        while (hi - lo > 12) {
+            val pivot = scores[(lo + hi) ushr 1]
+            var i = lo
+            var j = hi
+            while (i <= j) {
+                while (scores[i] > pivot) i++
+                while (scores[j] < pivot) j--
+                if (i <= j) swap(i++, j--)
+            }
+            // Đệ quy nửa nhỏ, lặp nửa lớn → độ sâu O(log n)
+            if (j - lo < hi - i) { sort(lo, j); lo = i } else { sort(i, hi); hi = j }
+        }
+        for (i in lo + 1..hi) {
+            var k = i
+            while (k > lo && scores[k - 1] < scores[k]) { swap(k - 1, k); k-- }
+        }
+    }
+
+    private fun swap(a: Int, b: Int) {
+        val s = scores[a]; scores[a] = scores[b]; scores[b] = s
+        val c = classIds[a]; classIds[a] = classIds[b]; classIds[b] = c
+        val t = trackIds[a]; trackIds[a] = trackIds[b]; trackIds[b] = t
+        for (k in 0 until 4) {
+            val v = boxes[4 * a + k]; boxes[4 * a + k] = boxes[4 * b + k]; boxes[4 * b + k] = v
+        }
+    }
+
+    private fun move(from: Int, to: Int) {
+        System.arraycopy(boxes, 4 * from, boxes, 4 * to, 4)
+        scores[to] = scores[from]
+        classIds[to] = classIds[from]
+        trackIds[to] = trackIds[from]
+    }
+
+    companion object {
+        const val NO_TRACK = -1
+
+        /** IoU của box a[ao..ao+3] và b[bo..bo+3] ([l, t, r, b]) — dùng cho [nms] và đánh giá offline */
+        @JvmStatic
+        fun iou(a: FloatArray, ao: Int, b: FloatArray, bo: Int): Float {
+            val iw = minOf(a[ao + 2], b[bo + 2]) - maxOf(a[ao], b[bo])
+            val ih = minOf(a[ao + 3], b[bo + 3]) - maxOf(a[ao + 1], b[bo + 1])
+            if (iw <= 0f || ih <= 0f) return 0f
+            val inter = iw * ih
+            val union = (a[ao + 2] - a[ao]) * (a[ao + 3] - a[ao + 1]) + (b[bo + 2] - b[bo]) * (b[bo + 3] - b[bo + 1]) - inter
+            return if (union <= 0f) 0f else inter / union
+        }
+    }
+}
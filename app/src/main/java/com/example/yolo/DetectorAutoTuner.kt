@@ -0,0 +1,97 @@
+package com.example.spiketimer.yolo
+
+import android.content.Context
+import android.graphics.BitmapFactory
+import android.os.Process
+import android.util.Log
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Tune lần đầu (hoặc khi model / OS đổi, hoặc profile cũ bị lỗi): benchmark các cấu hình backend × luồng
+ * trên ảnh test đóng gói, chọn cấu hình nhanh nhất mà ổn định rồi lưu vào [DetectorProfileStore].
+ * Chạy trên thread nền ưu tiên thấp; trong lúc chờ, detector dùng [DetectorProfile.DEFAULT].
+ * Chỉ đo khi pipeline camera rảnh: số đo lúc tranh CPU/GPU với analyzer sẽ lệch, nên pipeline bật lên
+ * ([setPipelineActive]) thì huỷ lần đo đang chạy và bỏ kết quả; pipeline đóng thì tune lại từ đầu.
+ */
+object DetectorAutoTuner {
+    private const val TAG = "DetectorAutoTuner"
+    private const val TEST_IMAGE = "val_test.jpg"
+    private const val ITERATIONS = 15
+
+    private val running = AtomicBoolean(false)
+    @Volatile private var pipelineActive = false
+    @Volatile private var benchmark: DetectorBenchmark? = null
+    @Volatile private var discarded = false  // lần đo vừa rồi bị bỏ vì pipeline → chạy lại khi rảnh
+
+    /**
+     * Pipeline camera bắt đầu (true) / kết thúc (false). Bắt đầu → huỷ lần tune đang chạy;
+     * kết thúc → tune lại nền nếu vẫn chưa có profile.
+     */
+    @JvmStatic
+    fun setPipelineActive(context: Context, active: Boolean) {
+        pipelineActive = active
+        if (active) {
+            benchmark?.cancelled = true
+        } else {
+            ensureTuned(context)
+        }
+    }
+
+    /** Bắt đầu tune nền nếu chưa có profile hợp lệ và pipeline camera đang rảnh. Trả về true nếu đã khởi chạy. */
+    @JvmStatic
+    fun ensureTuned(context: Context): Boolean {
+        val app = context.applicationContext
+        if (pipelineActive || !running.compareAndSet(false, true)) return false
+        discarded = false
+        Thread({
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND)
+            try {
+                val store = DetectorProfileStore(app)
+                if (store.load() == null) tune(app, store)
+            } catch (t: Throwable) {
+                Log.w(TAG, "Auto-tune failed: ${t.message}")
+            } finally {
+                running.set(false)
+                // Pipeline đã đóng trong lúc thread này còn dừng dở → setPipelineActive(false) không khởi chạy được
+                if (discarded && !pipelineActive) ensureTuned(app)
+            }
+        }, "detector-tuner").start()
+        return true
+    }
+
+    fun isRunning(): Boolean = running.get()
+
+    /**
+     * Tune đồng bộ (gọi trên thread nền). Trả về profile đã lưu, null nếu không đo được cấu hình nào
+     * hoặc pipeline camera chạy trong lúc đo (kết quả bị bỏ, không lưu).
+     */
+    @JvmStatic
+    fun tune(context: Context, store: DetectorProfileStore): DetectorProfile? {
+        val image = context.assets.open(TEST_IMAGE).use { BitmapFactory.decodeStream(it) }
+            ?: return null
+        val failed = store.failedKeys()
+        val candidates = BenchmarkConfig.matrix(inputSizes = intArrayOf(BenchmarkConfig.DEFAULT_INPUT_SIZES[0]))
+            .filter { DetectorProfile(it.delegate, it.numThreads, it.useXnnpack).key() !in failed }
+        Log.i(TAG, "Tuning ${candidates.size} configs (skip $failed)")
+        val t0 = System.nanoTime()
+        val bench = DetectorBenchmark(context, image, ITERATIONS)
+        benchmark = bench
+        // Pipeline có thể vừa bật giữa lúc kiểm ở ensureTuned và lúc gán benchmark
+        if (pipelineActive) bench.cancelled = true
+        val results = try {
+            bench.run(candidates, null)
+        } finally {
+            benchmark = null
+            image.recycle()
+        }
+        if (bench.cancelled || pipelineActive) {
+            discarded = true
+            Log.i(TAG, "Tuning discarded: camera pipeline ran during measurement")
+            return null
+        }
+        val best = DetectorProfile.pickFastestStable(results) ?: return null
+        store.save(best)
+        Log.i(TAG, "Tuned in ${(System.nanoTime() - t0) / 1_000_000} ms → ${best.key()} p50 ${best.p50Ms} ms")
+        return best
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.spiketimer.yolo
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.os.Build
+import android.util.Log
+import org.json.JSONArray
+import org.json.JSONObject
+import java.io.File
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+
+/**
+ * Đo latency detector theo từng [BenchmarkConfig] trên 1 ảnh cố định:
+ * mỗi cấu hình init (gồm warmup) rồi chạy [iterations] lần detect, ghi p50/p95 tổng và từng stage.
+ * Chạy trên thread nền; kết quả lưu JSON trong filesDir/benchmarks để so giữa các bản build / máy.
+ */
+class DetectorBenchmark @JvmOverloads constructor(
+    private val context: Context,
+    private val image: Bitmap,
+    private val iterations: Int = 30,
+    private val modelPath: String = "best_float16_no_nms_448.tflite"
+) {
+    fun interface Listener {
+        fun onResult(done: Int, total: Int, result: Result)
+    }
+
+    data class Result(
+        val config: BenchmarkConfig,
+        /** "ok", "unavailable" (delegate/size không bật được) hoặc "error: …" */
+        val status: String,
+        val initMs: Float = Float.NaN,
+        val p50Ms: Float = Float.NaN,
+        val p95Ms: Float = Float.NaN,
+        val meanMs: Float = Float.NaN,
+        /** stage → [p50, p95] */
+        val stages: Map<String, FloatArray> = emptyMap()
+    ) {
+        fun isOk(): Boolean = status == STATUS_OK
+
+        fun toJson(): JSONObject = JSONObject().apply {
+            put("key", config.key())
+            put("delegate", config.delegate)
+            put("threads", config.numThreads)
+            put("xnnpack", config.useXnnpack)
+            put("inputSize", config.inputSize)
+            put("status", status)
+            if (isOk()) {
+                put("initMs", initMs.toDouble())
+                put("p50Ms", p50Ms.toDouble())
+                put("p95Ms", p95Ms.toDouble())
+                put("meanMs", meanMs.toDouble())
+                val st = JSONObject()
+                for ((k, v) in stages) st.put(k, JSONArray().put(v[0].toDouble()).put(v[1].toDouble()))
+                put("stages", st)
+            }
+        }
+    }
+
+    /** Tiền xử lý Canvas vs [LetterboxResampler]: p50 (ms) + sai khác output (mức 8-bit) */
+    data class PreprocessComparison(
+        val canvasP50Ms: Float,
+        val resamplerP50Ms: Float,
+        val maxDiff: Float,
+        val meanDiff: Float
+    ) {
+        fun toJson(): JSONObject = JSONObject().apply {
+            put("canvasP50Ms", canvasP50Ms.toDouble())
+            put("resamplerP50Ms", resamplerP50Ms.toDouble())
+            put("maxDiff", maxDiff.toDouble())
+            put("meanDiff", meanDiff.toDouble())
+        }
+    }
+
+    @Volatile var cancelled = false
+
+    /**
+     * So 2 đường tiền xử lý trên cùng ảnh (xoay [rotationDegrees] để đi qua nhánh xoay):
+     * thời gian mỗi lần và độ lệch tensor input. Không cần interpreter.
+     */
+    @JvmOverloads
+    fun comparePreprocess(rotationDegrees: Int = 90, inputSize: Int = 448): PreprocessComparison {
+        val detector = TFLiteYoloDetector(context, modelPath, inputSize)
+        fun measure(canvas: Boolean): Pair<Float, FloatArray> {
+            detector.useCanvasLetterbox = canvas
+            val stats = LatencyStats(iterations)
+            var bb = detector.prepareInput(image, rotationDegrees)
+            for (i in 0 until iterations) {
+                val t = System.nanoTime()
+                bb = detector.prepareInput(image, rotationDegrees)
+                stats.add((System.nanoTime() - t) / 1e6f)
+            }
+            val fb = bb.asFloatBuffer()
+            val out = FloatArray(fb.remaining())
+            fb.get(out)
+            return stats.percentile(50f) to out
+        }
+        val (canvasMs, a) = measure(true)
+        val (resMs, b) = measure(false)
+        var max = 0f
+        var sum = 0.0
+        for (i in a.indices) {
+            val d = kotlin.math.abs(a[i] - b[i]) * 255f
+            if (d > max) max = d
+            sum += d
+        }
+        detector.close()
+        return PreprocessComparison(canvasMs, resMs, max, (sum / a.size).toFloat())
+    }
+
+    fun run(configs: List<BenchmarkConfig>, listener: Listener?): List<Result> {
+        val results = ArrayList<Result>(configs.size)
+        for ((i, cfg) in configs.withIndex()) {
+            if (cancelled) break
+            val r = runOne(cfg)
+            Log.i(TAG, "${cfg.key()}: ${r.status} p50=${r.p50Ms} p95=${r.p95Ms}")
+            results.add(r)
+            listener?.onResult(i + 1, configs.size, r)
+        }
+        return results
+    }
+
+    private fun runOne(cfg: BenchmarkConfig): Result {
+        val detector = TFLiteYoloDetector(context, modelPath, cfg.inputSize)
+        try {
+            val t0 = System.nanoTime()
+            detector.initialize(
+                cfg.delegate == BenchmarkConfig.GPU, cfg.numThreads,
+                false, cfg.delegate == BenchmarkConfig.NNAPI, cfg.useXnnpack
+            )
+            val initMs = (System.nanoTime() - t0) / 1e6f
+            val delegateOk = when (cfg.delegate) {
+                BenchmarkConfig.GPU -> detector.isUsingGpu()
+                BenchmarkConfig.NNAPI -> detector.isUsingNnapi()
+                else -> true
+            }
+            if (!delegateOk || detector.inputSize != cfg.inputSize) return Result(cfg, STATUS_UNAVAILABLE)
+
+            val total = LatencyStats(iterations)
+            val stages = PipelineMetrics()
+            detector.stageMetrics = stages
+            for (i in 0 until iterations) {
+                if (cancelled) break
+                val t = System.nanoTime()
+                detector.detect(image, 0)
+                total.add((System.nanoTime() - t) / 1e6f)
+            }
+            val stageMap = LinkedHashMap<String, FloatArray>()
+            for (name in STAGES) {
+                val s = stages.stage(name)
+                if (s.count() > 0) stageMap[name] = floatArrayOf(s.percentile(50f), s.percentile(95f))
+            }
+            return Result(cfg, STATUS_OK, initMs, total.percentile(50f), total.percentile(95f), total.mean(), stageMap)
+        } catch (t: Throwable) {
+            Log.w(TAG, "${cfg.key()} failed: ${t.message}")
+            return Result(cfg, "error: ${t.message}")
+        } finally {
+            detector.close()
+        }
+    }
+
+    /** Báo cáo đầy đủ: máy, bản build, model, số vòng + kết quả */
+    @JvmOverloads
+    fun toJson(results: List<Result>, preprocess: PreprocessComparison? = null): JSONObject = JSONObject().apply {
+        put("timestamp", System.currentTimeMillis())
+        put("device", deviceInfo(context))
+        put("model", modelPath)
+        put("iterations", iterations)
+        put("image", "${image.width}x${image.height}")
+        val arr = JSONArray()
+        for (r in results) arr.put(r.toJson())
+        put("results", arr)
+        if (preprocess != null) put("preprocess", preprocess.toJson())
+    }
+
+    companion object {
+        private const val TAG = "DetectorBenchmark"
+        const val STATUS_OK = "ok"
+        const val STATUS_UNAVAILABLE = "unavailable"
+        private const val DIR = "benchmarks"
+        private val STAGES = listOf("pixels", "resample", "letterbox", "input", "inference", "decode", "nms")
+
+        @JvmStatic
+        fun deviceInfo(context: Context): JSONObject = JSONObject().apply {
+            put("manufacturer", Build.MANUFACTURER)
+            put("model", Build.MODEL)
+            put("hardware", Build.HARDWARE)
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) put("soc", Build.SOC_MODEL)
+            put("sdk", Build.VERSION.SDK_INT)
+            put("abi", Build.SUPPORTED_ABIS.firstOrNull() ?: "")
+            runCatching {
+                val pi = context.packageManager.getPackageInfo(context.packageName, 0)
+                put("versionName", pi.versionName)
+                @Suppress("DEPRECATION")
+                put("versionCode", pi.versionCode)
+            }
+        }
+
+        /** Ghi báo cáo vào filesDir/benchmarks/bench_<thời gian>.json */
+        @JvmStatic
+        fun save(context: Context, report: JSONObject): File {
+            val dir = File(context.filesDir, DIR).apply { mkdirs() }
+            val name = "bench_" + SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(Date()) + ".json"
+            val f = File(dir, name)
+            f.writeText(report.toString(2))
+            return f
+        }
+
+        /** Báo cáo gần nhất đã lưu (để so sánh), null nếu chưa có */
+        @JvmStatic
+        fun loadLatest(context: Context): JSONObject? {
+            val files = File(context.filesDir, DIR).listFiles { f -> f.name.endsWith(".json") } ?: return null
+            val latest = files.maxByOrNull { it.name } ?: return null
+            return runCatching { JSONObject(latest.readText()) }.getOrNull()
+        }
+
+        /** key → p50 của các cấu hình "ok" trong 1 báo cáo */
+        @JvmStatic
+        fun p50ByKey(report: JSONObject?): Map<String, Float> {
+            val out = HashMap<String, Float>()
+            val arr = report?.optJSONArray("results") ?: return out
+            for (i in 0 until arr.length()) {
+                val o = arr.getJSONObject(i)
+                if (o.optString("status") == STATUS_OK) out[o.getString("key")] = o.getDouble("p50Ms").toFloat()
+            }
+            return out
+        }
+    }
+}
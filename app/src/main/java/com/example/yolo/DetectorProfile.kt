@@ -0,0 +1,54 @@
+package com.example.spiketimer.yolo
+
+/**
+ * Cấu hình backend detector đã tune cho máy hiện tại (delegate + số luồng + XNNPACK).
+ * Mọi nơi tạo detector đọc profile này thay vì tự chọn tham số initialize().
+ * Kích thước input không nằm trong profile — governor điều khiển lúc chạy.
+ */
+data class DetectorProfile(
+    val delegate: String,
+    val numThreads: Int,
+    val useXnnpack: Boolean,
+    /** p50 đo lúc tune (ms), NaN nếu là profile mặc định */
+    val p50Ms: Float = Float.NaN
+) {
+    fun usesDelegate(): Boolean = delegate != BenchmarkConfig.CPU
+
+    fun key(): String = "$delegate-t$numThreads-${if (useXnnpack) "xnn" else "ref"}"
+
+    /** Như profile nhưng giới hạn số luồng CPU (governor hạ nấc) */
+    fun withMaxThreads(maxThreads: Int): DetectorProfile =
+        if (numThreads <= maxThreads) this else copy(numThreads = maxThreads)
+
+    companion object {
+        /** An toàn trên mọi máy: CPU + XNNPACK, 4 luồng */
+        @JvmField val DEFAULT = DetectorProfile(BenchmarkConfig.CPU, 4, true)
+
+        /**
+         * Chọn cấu hình nhanh nhất trong các kết quả "ok" mà ổn định: p95 ≤ [maxJitter] × p50.
+         * Bằng nhau (trong 5%) thì ưu tiên CPU rồi ít luồng hơn — ít rủi ro driver và tranh CPU với camera.
+         * Trả về null nếu không có kết quả hợp lệ.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun pickFastestStable(results: List<DetectorBenchmark.Result>, maxJitter: Float = 1.5f): DetectorProfile? {
+            var best: DetectorBenchmark.Result? = null
+            for (r in results) {
+                if (!r.isOk() || r.p50Ms.isNaN() || r.p95Ms > r.p50Ms * maxJitter) continue
+                val b = best
+                if (b == null || better(r, b)) best = r
+            }
+            return best?.let { DetectorProfile(it.config.delegate, it.config.numThreads, it.config.useXnnpack, it.p50Ms) }
+        }
+
+        private fun better(a: DetectorBenchmark.Result, b: DetectorBenchmark.Result): Boolean {
+            if (a.p50Ms < b.p50Ms * 0.95f) return true
+            if (b.p50Ms < a.p50Ms * 0.95f) return false
+            val aCpu = a.config.delegate == BenchmarkConfig.CPU
+            val bCpu = b.config.delegate == BenchmarkConfig.CPU
+            if (aCpu != bCpu) return aCpu
+            if (a.config.numThreads != b.config.numThreads) return a.config.numThreads < b.config.numThreads
+            return a.p50Ms < b.p50Ms
+        }
+    }
+}
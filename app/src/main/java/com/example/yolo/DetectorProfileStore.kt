@@ -0,0 +1,131 @@
+package com.example.spiketimer.yolo
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.os.Build
+import android.util.Log
+import java.io.File
+import java.io.FileInputStream
+import java.security.MessageDigest
+
+/**
+ * Lưu [DetectorProfile] trong SharedPreferences, khoá theo máy (Build.FINGERPRINT — đổi khi
+ * cập nhật OS/driver) + SHA-256 của model. Khoá khác → coi như chưa tune.
+ * Cấu hình từng lỗi (delegate crash, init fail) được ghi lại để lần tune sau bỏ qua.
+ */
+class DetectorProfileStore @JvmOverloads constructor(
+    context: Context,
+    private val modelPath: String = DEFAULT_MODEL
+) {
+    private val appContext = context.applicationContext
+    private val prefs: SharedPreferences = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+
+    /** Khoá máy + model; hash model được cache theo lần cập nhật app để không đọc lại file mỗi lần mở */
+    fun profileKey(): String = Build.FINGERPRINT + "|" + modelHash()
+
+    /** Model trong assets đổi theo bản cập nhật app, model file ([ModelCatalog.isFile]) theo mốc sửa file */
+    fun modelHash(): String {
+        val file = if (ModelCatalog.isFile(modelPath)) File(modelPath) else null
+        val stamp = if (file != null) file.lastModified() else runCatching {
+            appContext.packageManager.getPackageInfo(appContext.packageName, 0).lastUpdateTime
+        }.getOrDefault(0L)
+        val cachedStamp = prefs.getLong(KEY_HASH_STAMP, -1L)
+        val cached = prefs.getString(KEY_HASH, null)
+        if (cached != null && cachedStamp == stamp && prefs.getString(KEY_HASH_MODEL, null) == modelPath) return cached
+        val hash = (if (file != null) FileInputStream(file) else appContext.assets.open(modelPath)).use { sha256(it) }
+        prefs.edit()
+            .putString(KEY_HASH, hash)
+            .putString(KEY_HASH_MODEL, modelPath)
+            .putLong(KEY_HASH_STAMP, stamp)
+            .apply()
+        return hash
+    }
+
+    /** Profile đã tune cho máy + model hiện tại, null nếu chưa có hoặc đã lỗi thời */
+    fun load(): DetectorProfile? {
+        val key = runCatching { profileKey() }.getOrElse {
+            Log.w(TAG, "Cannot fingerprint model: ${it.message}")
+            return null
+        }
+        if (prefs.getString(KEY_PROFILE_KEY, null) != key) return null
+        val delegate = prefs.getString(KEY_DELEGATE, null) ?: return null
+        return DetectorProfile(
+            delegate,
+            prefs.getInt(KEY_THREADS, DetectorProfile.DEFAULT.numThreads),
+            prefs.getBoolean(KEY_XNNPACK, true),
+            prefs.getFloat(KEY_P50, Float.NaN)
+        )
+    }
+
+    /** Profile đã tune, hoặc [DetectorProfile.DEFAULT] khi chưa tune xong */
+    fun loadOrDefault(): DetectorProfile = load() ?: DetectorProfile.DEFAULT
+
+    fun save(profile: DetectorProfile) {
+        prefs.edit()
+            .putString(KEY_PROFILE_KEY, profileKey())
+            .putString(KEY_DELEGATE, profile.delegate)
+            .putInt(KEY_THREADS, profile.numThreads)
+            .putBoolean(KEY_XNNPACK, profile.useXnnpack)
+            .putFloat(KEY_P50, profile.p50Ms)
+            .apply()
+        Log.i(TAG, "Saved profile ${profile.key()} (p50 ${profile.p50Ms} ms)")
+    }
+
+    /**
+     * Cấu hình bị lỗi lúc chạy: ghi vào danh sách đen và xoá profile → lần tune sau chọn cấu hình khác.
+     * Danh sách đen đi theo khoá máy + model, đổi model/OS thì thử lại từ đầu.
+     */
+    fun markFailed(profile: DetectorProfile) {
+        val key = runCatching { profileKey() }.getOrNull() ?: return
+        val failed = HashSet(failedKeys())
+        failed.add(profile.key())
+        prefs.edit()
+            .putString(KEY_FAILED_FOR, key)
+            .putStringSet(KEY_FAILED, failed)
+            .remove(KEY_PROFILE_KEY)
+            .apply()
+        Log.w(TAG, "Profile ${profile.key()} failed, will re-tune without it")
+    }
+
+    /** key() của các cấu hình từng lỗi trên máy + model hiện tại */
+    fun failedKeys(): Set<String> {
+        val key = runCatching { profileKey() }.getOrNull() ?: return emptySet()
+        if (prefs.getString(KEY_FAILED_FOR, null) != key) return emptySet()
+        return prefs.getStringSet(KEY_FAILED, null) ?: emptySet()
+    }
+
+    fun invalidate() {
+        prefs.edit().remove(KEY_PROFILE_KEY).apply()
+    }
+
+    companion object {
+        private const val TAG = "DetectorProfileStore"
+        const val PREFS_NAME = "detector_profile"
+        const val DEFAULT_MODEL = "best_float16_no_nms_448.tflite"
+
+        private const val KEY_PROFILE_KEY = "profile_key"
+        private const val KEY_DELEGATE = "delegate"
+        private const val KEY_THREADS = "threads"
+        private const val KEY_XNNPACK = "xnnpack"
+        private const val KEY_P50 = "p50_ms"
+        private const val KEY_FAILED = "failed"
+        private const val KEY_FAILED_FOR = "failed_for"
+        private const val KEY_HASH = "model_sha256"
+        private const val KEY_HASH_MODEL = "model_sha256_path"
+        private const val KEY_HASH_STAMP = "model_sha256_stamp"
+
+        @JvmStatic
+        fun sha256(input: java.io.InputStream): String {
+            val md = MessageDigest.getInstance("SHA-256")
+            val buf = ByteArray(64 * 1024)
+            while (true) {
+                val n = input.read(buf)
+                if (n < 0) break
+                md.update(buf, 0, n)
+            }
+            val sb = StringBuilder(64)
+            for (b in md.digest()) sb.append(String.format("%02x", b))
+            return sb.toString()
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.spiketimer.yolo
+
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.io.Writer
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.util.Locale
+
+/**
+ * Nhật ký sự kiện nhị phân, record cố định [RECORD_SIZE] byte trong ring buffer — thay cho logcat trên hot path:
+ *   t_ms (long, elapsedRealtime) | type (int) | i0 (int) | f0..f3 (float)
+ * Ghi bằng put tuyệt đối, không cấp phát. Chạy trên file mmap ([open]) nên dữ liệu nằm trong page cache
+ * của kernel ngay khi ghi — process chết giữa trận vẫn còn log, mở lại thì ghi tiếp sau record cuối.
+ * Header: magic | version | recordSize | capacity | tổng số record đã ghi (long) | số phiên (int).
+ * Có thể chạy trên ByteBuffer thường để test trên JVM.
+ */
+class EventLog(private val buf: ByteBuffer) {
+    val capacity: Int
+    private var written: Long
+    private var session: Int
+    private var channel: FileChannel? = null
+    @Volatile private var closed = false
+
+    init {
+        buf.order(ByteOrder.LITTLE_ENDIAN)
+        val cap = (buf.capacity() - HEADER_SIZE) / RECORD_SIZE
+        require(cap > 0) { "buffer too small" }
+        if (buf.getInt(0) == MAGIC && buf.getInt(4) == VERSION && buf.getInt(8) == RECORD_SIZE && buf.getInt(12) == cap) {
+            written = buf.getLong(16)
+            session = buf.getInt(24)
+        } else {
+            buf.putInt(0, MAGIC); buf.putInt(4, VERSION); buf.putInt(8, RECORD_SIZE); buf.putInt(12, cap)
+            written = 0L
+            session = 0
+            buf.putLong(16, 0L); buf.putInt(24, 0)
+        }
+        capacity = cap
+    }
+
+    /** Tổng số record từng ghi (kể cả đã bị ghi đè) */
+    @Synchronized fun written(): Long = written
+
+    /** Số record còn đọc được */
+    @Synchronized fun size(): Int = minOf(written, capacity.toLong()).toInt()
+
+    /** Đánh dấu phiên mới (mỗi lần mở màn camera) — trả về số phiên */
+    @Synchronized
+    fun startSession(tMs: Long, wallMs: Long): Int {
+        if (closed) return session
+        session++
+        buf.putInt(24, session)
+        // Record phiên mang wall clock (long ở chỗ f0/f1) để CSV quy đổi t_ms của phiên ra giờ thật
+        val o = offsetOf(written)
+        append(tMs, SESSION, session)
+        buf.putLong(o + 16, wallMs)
+        return session
+    }
+
+    @JvmOverloads
+    @Synchronized
+    fun append(tMs: Long, type: Int, i0: Int, f0: Float = 0f, f1: Float = 0f, f2: Float = 0f, f3: Float = 0f) {
+        if (closed) return
+        val o = offsetOf(written)
+        buf.putLong(o, tMs)
+        buf.putInt(o + 8, type)
+        buf.putInt(o + 12, i0)
+        buf.putFloat(o + 16, f0)
+        buf.putFloat(o + 20, f1)
+        buf.putFloat(o + 24, f2)
+        buf.putFloat(o + 28, f3)
+        // Bộ đếm ghi sau record → chết giữa chừng chỉ mất record dở dang
+        written++
+        buf.putLong(16, written)
+    }
+
+    private fun offsetOf(index: Long): Int = HEADER_SIZE + (index % capacity).toInt() * RECORD_SIZE
+
+    /** Tổng hợp latency 1 stage ([stageId] theo tên) trong 1 khoảng: trung bình, max, số mẫu */
+    fun stage(tMs: Long, name: String, meanMs: Float, maxMs: Float, count: Int) =
+        append(tMs, STAGE, stageId(name), meanMs, maxMs, count.toFloat())
+
+    /** Duyệt record từ cũ tới mới */
+    @Synchronized
+    fun forEach(visitor: Visitor) {
+        val n = size()
+        val first = written - n
+        for (k in 0 until n) {
+            val o = offsetOf(first + k)
+            visitor.visit(
+                buf.getLong(o), buf.getInt(o + 8), buf.getInt(o + 12),
+                buf.getFloat(o + 16), buf.getFloat(o + 20), buf.getFloat(o + 24), buf.getFloat(o + 28)
+            )
+        }
+    }
+
+    fun interface Visitor {
+        fun visit(tMs: Long, type: Int, i0: Int, f0: Float, f1: Float, f2: Float, f3: Float)
+    }
+
+    /** CSV: session, wall_ms (quy đổi theo mốc phiên), t_ms, type, name (stage), i0, f0..f3 */
+    @Synchronized
+    @Throws(IOException::class)
+    fun exportCsv(out: Writer) {
+        out.write("session,wall_ms,t_ms,type,name,i0,f0,f1,f2,f3\n")
+        var curSession = 0
+        var sessionT = 0L
+        var sessionWall = 0L
+        val sb = StringBuilder()
+        val n = size()
+        val first = written - n
+        for (k in 0 until n) {
+            val o = offsetOf(first + k)
+            val t = buf.getLong(o)
+            val type = buf.getInt(o + 8)
+            val i0 = buf.getInt(o + 12)
+            if (type == SESSION) {
+                curSession = i0
+                sessionT = t
+                sessionWall = buf.getLong(o + 16)
+            }
+            sb.setLength(0)
+            sb.append(curSession).append(',')
+                .append(if (curSession > 0) sessionWall + (t - sessionT) else 0L).append(',')
+                .append(t).append(',')
+                .append(typeName(type)).append(',')
+                .append(if (type == STAGE) STAGE_NAMES.getOrElse(i0) { "other" } else "").append(',')
+                .append(i0)
+            if (type == SESSION) {
+                sb.append(",,,,")
+            } else {
+                for (f in 0 until 4) sb.append(',').append(fmt(buf.getFloat(o + 16 + 4 * f)))
+            }
+            sb.append('\n')
+            out.write(sb.toString())
+        }
+        out.flush()
+    }
+
+    /** Ghi CSV ra [file] */
+    @Throws(IOException::class)
+    fun exportCsv(file: File) {
+        file.parentFile?.mkdirs()
+        file.bufferedWriter().use { exportCsv(it) }
+    }
+
+    @Synchronized
+    fun close() {
+        if (closed) return
+        closed = true
+        (buf as? MappedByteBuffer)?.force()
+        runCatching { channel?.close() }
+    }
+
+    companion object {
+        const val RECORD_SIZE = 32
+        const val HEADER_SIZE = 64
+        private const val MAGIC = 0x53504B45 // "SPKE"
+        private const val VERSION = 2 // 2: STAGE là tổng hợp theo khoảng thay vì từng mẫu
+
+        // Loại record
+        const val SESSION = 1          // i0 = số phiên, f0+f1 = wall clock ms (long)
+        const val FRAME = 2            // i0 = số box ≥ ngưỡng, f0 = score cao nhất, f1 = detect ms, f2 = tuổi frame ms, f3 = điểm gate
+        const val FRAME_SKIPPED = 3    // i0 = lý do (SKIP_*), f0 = tuổi frame ms, f1 = điểm gate
+        const val TRIGGER = 4          // i0 = nguồn (TRIGGER_*), f0 = statistic, f1 = score, f2 = ms từ onset
+        const val COUNTDOWN_START = 5  // i0 = ms countdown, f0 = ms bù trễ phát hiện
+        const val COUNTDOWN_END = 6    // i0 = lý do (END_*)
+        const val AUDIO = 7            // i0 = âm thanh (AUDIO_*), f0 = ms lệch so với mốc dự kiến
+        const val STAGE = 8            // i0 = stage id ([STAGE_NAMES]), f0 = trung bình ms, f1 = max ms, f2 = số mẫu trong khoảng
+        const val PERF_LEVEL = 9       // i0 = nấc governor
+
+        const val SKIP_GATE = 0
+        const val SKIP_STALE = 1
+
+        const val END_EXPIRED = 0
+        const val END_RESET = 1
+
+        const val TRIGGER_CAMERA = 1
+        const val TRIGGER_AUDIO = 2
+
+        const val AUDIO_EXPLOSION = 0
+        const val AUDIO_NOTIFY = 1
+
+        private val TYPE_NAMES = arrayOf(
+            "?", "session", "frame", "frame_skipped", "trigger", "countdown_start", "countdown_end", "audio", "stage", "perf_level"
+        )
+
+        /** Stage cố định của pipeline — id ghi vào record, tên chỉ dùng khi xuất CSV */
+        @JvmField
+        val STAGE_NAMES = listOf(
+            "gate", "convert", "detect", "tiled", "age",
+            "letterbox", "input", "pixels", "resample", "inference", "decode", "nms",
+            "interval", "work"
+        )
+        private val STAGE_IDS: Map<String, Int> = STAGE_NAMES.withIndex().associate { it.value to it.index }
+
+        @JvmStatic fun stageId(name: String): Int = STAGE_IDS[name] ?: STAGE_NAMES.size
+
+        @JvmStatic fun typeName(type: Int): String = TYPE_NAMES.getOrElse(type) { "?" }
+
+        private fun fmt(v: Float): String = if (v.isNaN()) "" else String.format(Locale.US, "%.3f", v)
+
+        /**
+         * Mở (hoặc tạo) ring mmap [capacity] record ở [file]. File cũ cùng cấu hình được ghi tiếp,
+         * khác cấu hình thì khởi tạo lại.
+         */
+        @JvmStatic
+        @Throws(IOException::class)
+        fun open(file: File, capacity: Int): EventLog {
+            file.parentFile?.mkdirs()
+            val size = HEADER_SIZE.toLong() + capacity.toLong() * RECORD_SIZE
+            val raf = RandomAccessFile(file, "rw")
+            try {
+                if (raf.length() != size) raf.setLength(size)
+                val ch = raf.channel
+                val log = EventLog(ch.map(FileChannel.MapMode.READ_WRITE, 0, size))
+                log.channel = ch
+                return log
+            } catch (e: IOException) {
+                raf.close()
+                throw e
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.spiketimer.yolo
+
+import java.util.Locale
+
+/**
+ * Xếp lịch theo tuổi frame: so timestamp cảm biến của frame với "bây giờ" (cùng timebase, ns):
+ *   tuổi ≤ [downgradeAfterMs]  → [PROCESS]
+ *   tuổi ≤ [dropAfterMs]       → [DOWNGRADE] (chỉ detect full frame, bỏ bước phụ tốn thời gian như tiled)
+ *   già hơn                    → [DROP] — kết quả trễ làm lệch mốc onset của countdown, tệ hơn không có.
+ * Không bỏ quá [maxConsecutiveDrops] frame liền nhau (pipeline chậm đều thì vẫn phải nhìn thấy gì đó).
+ * Tuổi chỉ đo được khi timestamp cảm biến cùng timebase với "bây giờ" ([timebase], đọc từ
+ * SENSOR_INFO_TIMESTAMP_SOURCE lúc bind camera):
+ *   [TIMEBASE_REALTIME] → đo tuổi, hạ cấp / bỏ theo tuổi,
+ *   [TIMEBASE_UNKNOWN]  → không so được (lệch đúng bằng thời gian máy ngủ, có thể rất nhỏ), luôn [PROCESS],
+ *   [TIMEBASE_GUESS]    → chưa bind / máy không báo: đoán, tuổi âm hoặc lệch quá [maxSkewMs] coi như khác timebase.
+ * Không phụ thuộc Android để test trên JVM.
+ */
+class FrameAgePolicy @JvmOverloads constructor(
+    val downgradeAfterMs: Long = 60L,
+    val dropAfterMs: Long = 120L,
+    private val maxConsecutiveDrops: Int = 3,
+    private val maxSkewMs: Long = 5_000L
+) {
+    init {
+        require(dropAfterMs >= downgradeAfterMs) { "dropAfterMs must be >= downgradeAfterMs" }
+    }
+
+    private val ages = LatencyStats()
+    private var consecutiveDrops = 0
+    private var processed = 0L
+    private var downgraded = 0L
+    private var dropped = 0L
+    private var unknown = 0L
+
+    /** Nguồn timestamp của camera đang bind ([TIMEBASE_GUESS] / [TIMEBASE_REALTIME] / [TIMEBASE_UNKNOWN]) */
+    @Volatile var timebase = TIMEBASE_GUESS
+
+    /** Tuổi (ms) của frame vừa xét, NaN nếu không đo được */
+    var lastAgeMs = Float.NaN; private set
+
+    /** Quyết định cho frame chụp lúc [sensorNs], xét lúc [nowNs] */
+    @Synchronized
+    fun classify(sensorNs: Long, nowNs: Long): Int {
+        val age = (nowNs - sensorNs) / 1_000_000f
+        val tb = timebase
+        if (tb == TIMEBASE_UNKNOWN || sensorNs <= 0L || age < -1f || (tb == TIMEBASE_GUESS && age > maxSkewMs)) {
+            lastAgeMs = Float.NaN
+            unknown++
+            processed++
+            return PROCESS
+        }
+        lastAgeMs = maxOf(0f, age)
+        ages.add(lastAgeMs)
+        if (age > dropAfterMs && consecutiveDrops < maxConsecutiveDrops) {
+            consecutiveDrops++
+            dropped++
+            return DROP
+        }
+        consecutiveDrops = 0
+        processed++
+        if (age > downgradeAfterMs) {
+            downgraded++
+            return DOWNGRADE
+        }
+        return PROCESS
+    }
+
+    @Synchronized fun droppedFrames(): Long = dropped
+
+    @Synchronized fun downgradedFrames(): Long = downgraded
+
+    @Synchronized fun agePercentile(p: Float): Float = ages.percentile(p)
+
+    @Synchronized
+    fun summary(): String {
+        if (timebase == TIMEBASE_UNKNOWN) return "timebase unknown, not used"
+        if (unknown > 0 && ages.count() == 0L) return "timebase ?"
+        return String.format(
+            Locale.US, "p50 %.0f p95 %.0f ms, drop %d, down %d / %d",
+            ages.percentile(50f), ages.percentile(95f), dropped, downgraded, processed + dropped
+        )
+    }
+
+    companion object {
+        const val PROCESS = 0
+        const val DOWNGRADE = 1
+        const val DROP = 2
+
+        const val TIMEBASE_GUESS = 0
+        const val TIMEBASE_REALTIME = 1
+        const val TIMEBASE_UNKNOWN = 2
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.spiketimer.yolo
+
+/**
+ * Affine gộp input model → view overlay, thay cho 2 bước mapToOriginal + mapForOverlay:
+ *   input (letterbox, ảnh đã xoay đứng) → ảnh đứng: (x - pad) / ratio + crop
+ *   ảnh đứng → view (FIT_CENTER):          x · scale + viewPad
+ * Xoay đã được xử lý ở bước src → input nên từ input trở đi chỉ còn scale + tịnh tiến theo từng trục:
+ *   xView = sx · xIn + tx,  yView = sy · yIn + ty   (sx == sy).
+ * Hệ số chỉ tính lại khi cấu hình letterbox (kích thước analysis / xoay / input) hoặc kích thước view đổi.
+ * Box dạng mảng phẳng [left, top, right, bottom]*, không cấp phát. Không phụ thuộc Android để test trên JVM.
+ */
+class FrameTransform {
+    // Khoá cache
+    private var dstW = -1
+    private var dstH = -1
+    private var upW = -1
+    private var upH = -1
+    private var cropX = Float.NaN
+    private var cropY = Float.NaN
+    private var ratio = Float.NaN
+    private var padX = Float.NaN
+    private var padY = Float.NaN
+    var viewW = 0; private set
+    var viewH = 0; private set
+
+    /** ảnh đứng → view */
+    var viewScale = 1f; private set
+    var viewPadX = 0f; private set
+    var viewPadY = 0f; private set
+
+    /** input → view */
+    var sx = 1f; private set
+    var tx = 0f; private set
+    var sy = 1f; private set
+    var ty = 0f; private set
+
+    // Ảnh đứng [0, upW-1] × [0, upH-1] trên view — kẹp giống LetterboxTransform.inputBoxToUpright
+    private var minX = 0f
+    private var maxX = 0f
+    private var minY = 0f
+    private var maxY = 0f
+
+    /** true nếu view đã có kích thước và hệ số hợp lệ */
+    fun isValid(): Boolean = viewW > 0 && viewH > 0 && upW > 0 && upH > 0
+
+    /** Tính lại nếu cấu hình đổi; trả về true khi đã tính lại */
+    fun update(t: LetterboxTransform, viewW: Int, viewH: Int): Boolean {
+        if (t.dstW == dstW && t.dstH == dstH && t.uprightW == upW && t.uprightH == upH &&
+            t.cropX == cropX && t.cropY == cropY && t.ratio == ratio && t.padX == padX && t.padY == padY &&
+            viewW == this.viewW && viewH == this.viewH) {
+            return false
+        }
+        dstW = t.dstW; dstH = t.dstH; upW = t.uprightW; upH = t.uprightH
+        cropX = t.cropX; cropY = t.cropY; ratio = t.ratio; padX = t.padX; padY = t.padY
+        this.viewW = viewW; this.viewH = viewH
+        if (!isValid()) return true
+
+        viewScale = minOf(viewW / upW.toFloat(), viewH / upH.toFloat())
+        viewPadX = (viewW - upW * viewScale) / 2f
+        viewPadY = (viewH - upH * viewScale) / 2f
+
+        sx = viewScale / ratio
+        sy = sx
+        tx = (cropX - padX / ratio) * viewScale + viewPadX
+        ty = (cropY - padY / ratio) * viewScale + viewPadY
+
+        minX = viewPadX; maxX = (upW - 1) * viewScale + viewPadX
+        minY = viewPadY; maxY = (upH - 1) * viewScale + viewPadY
+        return true
+    }
+
+    /** [count] box input-space từ src[srcOffset] → view-space vào dst[dstOffset] (src/dst có thể trùng) */
+    fun mapInputBoxes(src: FloatArray, srcOffset: Int, dst: FloatArray, dstOffset: Int, count: Int) {
+        for (i in 0 until count) {
+            val s = srcOffset + 4 * i
+            val d = dstOffset + 4 * i
+            val l = src[s]; val t = src[s + 1]; val r = src[s + 2]; val b = src[s + 3]
+            dst[d]     = (l * sx + tx).coerceIn(minX, maxX)
+            dst[d + 1] = (t * sy + ty).coerceIn(minY, maxY)
+            dst[d + 2] = (r * sx + tx).coerceIn(minX, maxX)
+            dst[d + 3] = (b * sy + ty).coerceIn(minY, maxY)
+        }
+    }
+
+    /** Box đã ở toạ độ ảnh đứng (vd. kết quả tiled) → view */
+    fun mapUprightBoxes(src: FloatArray, srcOffset: Int, dst: FloatArray, dstOffset: Int, count: Int) {
+        for (i in 0 until count) {
+            val s = srcOffset + 4 * i
+            val d = dstOffset + 4 * i
+            val l = src[s]; val t = src[s + 1]; val r = src[s + 2]; val b = src[s + 3]
+            dst[d]     = l * viewScale + viewPadX
+            dst[d + 1] = t * viewScale + viewPadY
+            dst[d + 2] = r * viewScale + viewPadX
+            dst[d + 3] = b * viewScale + viewPadY
+        }
+    }
+}
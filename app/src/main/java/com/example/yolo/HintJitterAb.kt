@@ -0,0 +1,65 @@
+package com.example.spiketimer.yolo
+
+import java.util.Locale
+
+/**
+ * So A/B jitter của phiên performance hint ([FrameHintSession]) trên từng máy, tách theo bên như
+ * [CaptureLatencyLog] tách theo profile chụp:
+ *   - bật ([enabled]): luân phiên khối [blockMs] có hint / không hint, frame detect ghi vào bên đang chạy,
+ *   - tắt: luôn [HINT_ON], không ghi gì (jitter chung vẫn nằm ở [PipelineMetrics]).
+ * Khối dài (mặc định 30 s) để scheduler kịp ổn định sau mỗi lần đổi, và để nhiệt / xung trôi chậm chia đều 2 bên.
+ * [armAt] và [record] gọi trên analysis thread, [summary] trên main.
+ * Không phụ thuộc Android để test trên JVM.
+ */
+class HintJitterAb @JvmOverloads constructor(private val blockMs: Long = 30_000L) {
+    private val detect = Array(ARM_NAMES.size) { LatencyStats() }
+    private val interval = Array(ARM_NAMES.size) { LatencyStats() }
+    private var arm = HINT_ON
+    private var blockStartMs = -1L
+
+    /** Bật / tắt chia A/B (đổi từ settings); khối đầu sau khi bật là [HINT_ON] */
+    @Volatile var enabled = false
+
+    /** Bên cho frame bắt đầu lúc [nowMs]: đổi bên khi khối hiện tại đủ [blockMs] */
+    @Synchronized
+    fun armAt(nowMs: Long): Int {
+        if (!enabled) {
+            arm = HINT_ON
+            blockStartMs = -1L
+        } else if (blockStartMs < 0L) {
+            blockStartMs = nowMs
+        } else if (nowMs - blockStartMs >= blockMs) {
+            arm = 1 - arm
+            blockStartMs = nowMs
+        }
+        return arm
+    }
+
+    /** Ghi 1 frame detect của bên [arm]; [intervalMs] < 0 = chưa có frame trước để tính nhịp */
+    @Synchronized
+    fun record(arm: Int, detectMs: Float, intervalMs: Float) {
+        if (!enabled) return
+        detect[arm].add(detectMs)
+        if (intervalMs >= 0f) interval[arm].add(intervalMs)
+    }
+
+    @Synchronized
+    fun summary(): String {
+        val sb = StringBuilder()
+        for (a in ARM_NAMES.indices) {
+            if (detect[a].count() < 2L) continue
+            if (sb.isNotEmpty()) sb.append(" | ")
+            sb.append(String.format(Locale.US, "%s detect p99-p50 %.1f / sd %.1f, interval p99-p50 %.1f / sd %.1f ms (%d)",
+                ARM_NAMES[a], detect[a].jitter(), detect[a].stdDev(),
+                if (interval[a].count() < 2L) Float.NaN else interval[a].jitter(),
+                if (interval[a].count() < 2L) Float.NaN else interval[a].stdDev(), detect[a].count()))
+        }
+        return if (sb.isEmpty()) "collecting" else sb.toString()
+    }
+
+    companion object {
+        const val HINT_ON = 0
+        const val HINT_OFF = 1
+        @JvmField val ARM_NAMES = arrayOf("hint on", "hint off")
+    }
+}
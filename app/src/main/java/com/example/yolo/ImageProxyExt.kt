@@ -6,19 +6,33 @@ import android.graphics.ImageFormat
 import android.util.Log
 import androidx.camera.core.ImageAnalysis
 import androidx.camera.core.ImageProxy
+import com.example.spiketimer.yolo.BandPool
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
 
 object ImageProxyExt {
+    // Trạng thái lần convert hiện tại cho các dải hàng (1 nơi gọi tại một thời điểm — xem @Synchronized)
+    private var argb = IntArray(0)
+    private var bandBuf: ByteBuffer? = null
+    private var bandWidth = 0
+    private var bandRowStride = 0
+    private var bandPixelStride = 0
+    private val convertRows = BandPool.BandTask { from, to -> convertRows(from, to) }
+
     /**
      * Convert ImageProxy (OUTPUT_IMAGE_FORMAT_RGBA_8888) → Bitmap ARGB_8888.
      * - Java-friendly: static method via @file:JvmName + @JvmStatic
      * - Tối ưu: tái sử dụng bitmap đầu ra nếu cùng w×h để giảm GC.
      * - An toàn stride: xử lý rowStride/pixelStride (padding) theo từng hàng.
+     * - Có [pool]: chia hàng thành dải convert song song vào mảng ARGB chung, rồi 1 lần setPixels.
      *
      * Lưu ý: Bạn phải cấu hình ImageAnalysis:
      *   .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_RGBA_8888)
      */
     @JvmStatic
-    fun toBitmapRGBA(image: ImageProxy, reuse: Bitmap? = null): Bitmap {
+    @JvmOverloads
+    @Synchronized
+    fun toBitmapRGBA(image: ImageProxy, reuse: Bitmap? = null, pool: BandPool? = null): Bitmap {
         val width = image.width
         val height = image.height
 
@@ -28,9 +42,6 @@ object ImageProxyExt {
             "Expected 1 plane for RGBA_8888, but got ${planes.size}. Did you set OUTPUT_IMAGE_FORMAT_RGBA_8888?"
         }
         val plane = planes[0]
-        val buf = plane.buffer
-        val rowStride = plane.rowStride
-        val pixelStride = plane.pixelStride // thường = 4
 
         val outBmp = if (reuse != null && reuse.width == width && reuse.height == height && reuse.config == Bitmap.Config.ARGB_8888) {
             reuse
@@ -38,27 +49,40 @@ object ImageProxyExt {
             Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
         }
 
-        // Mỗi hàng: copy rowStride bytes → convert RGBA → ARGB int[] → setPixels
-        val rowBytes = ByteArray(rowStride)
-        val argb = IntArray(width)
-
-        for (y in 0 until height) {
-            buf.position(y * rowStride)
-            buf.get(rowBytes, 0, rowStride)
+        // RGBA (đọc tuyệt đối 4 byte/pixel, không đụng position → an toàn giữa các dải) → ARGB int[]
+        if (argb.size != width * height) argb = IntArray(width * height)
+        bandBuf = plane.buffer
+        bandWidth = width
+        bandRowStride = plane.rowStride
+        bandPixelStride = plane.pixelStride // thường = 4
+        try {
+            if (pool != null) pool.run(height, width, convertRows) else convertRows(0, height)
+        } finally {
+            bandBuf = null
+        }
+        outBmp.setPixels(argb, 0, width, 0, 0, width, height)
+        return outBmp
+    }
 
-            var src = 0
-            var x = 0
-            while (x < width) {
-                val r = rowBytes[src].toInt() and 0xFF
-                val g = rowBytes[src + 1].toInt() and 0xFF
-                val b = rowBytes[src + 2].toInt() and 0xFF
-                val a = rowBytes[src + 3].toInt() and 0xFF
-                argb[x] = (a shl 24) or (r shl 16) or (g shl 8) or b
-                src += pixelStride
-                x++
+    private fun convertRows(from: Int, to: Int) {
+        val buf = bandBuf!!
+        val out = argb
+        val w = bandWidth
+        val ps = bandPixelStride
+        val bigEndian = buf.order() == ByteOrder.BIG_ENDIAN
+        for (y in from until to) {
+            var src = y * bandRowStride
+            var dst = y * w
+            for (x in 0 until w) {
+                val v = buf.getInt(src)
+                // Bộ nhớ R,G,B,A → int big-endian RGBA / little-endian ABGR
+                out[dst++] = if (bigEndian) {
+                    (v ushr 8) or (v shl 24)
+                } else {
+                    (v and 0xFF00FF00.toInt()) or (v and 0xFF shl 16) or (v ushr 16 and 0xFF)
+                }
+                src += ps
             }
-            outBmp.setPixels(argb, 0, width, 0, y, width, 1)
         }
-        return outBmp
     }
 }
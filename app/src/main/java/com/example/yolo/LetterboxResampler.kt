@@ -0,0 +1,219 @@
+package com.example.spiketimer.yolo
+
+import java.nio.ByteBuffer
+import java.nio.FloatBuffer
+import kotlin.math.ceil
+import kotlin.math.floor
+
+/**
+ * Resample xoay + letterbox thẳng vào tensor input, thay cho Canvas/Skia:
+ * bảng index + trọng số bilinear (số nguyên Q11) tính 1 lần cho mỗi cấu hình [LetterboxTransform],
+ * sau đó mỗi frame chỉ còn đọc 4 pixel nguồn và ghi RGB (float [0..1] hoặc uint8) cho vùng nội dung.
+ *
+ * Xoay bội 90° nên mỗi cột đích chỉ phụ thuộc 1 trục nguồn và mỗi hàng đích phụ thuộc trục còn lại:
+ * offset pixel nguồn = colOff[u] + rowOff[v] (stride đã gộp sẵn) → bảng tách rời, O(dstW + dstH).
+ * Vùng pad (đen = 0) chỉ ghi khi bảng đổi hoặc buffer đích đổi.
+ * Lấy mẫu tại tâm pixel, kẹp ở mép ảnh — cùng quy ước với Canvas.drawBitmap có FILTER_BITMAP_FLAG.
+ * Không phụ thuộc Android để test trên JVM.
+ */
+class LetterboxResampler {
+    // Cấu hình đã dựng bảng
+    private var srcW = -1
+    private var srcH = -1
+    private var srcStride = -1
+    private var rotation = -1
+    private var dstW = -1
+    private var dstH = -1
+    private var cropX = Float.NaN
+    private var cropY = Float.NaN
+    private var cropW = Float.NaN
+    private var cropH = Float.NaN
+
+    /** Vùng nội dung trên ảnh đích: [u0, u1) × [v0, v1) */
+    var u0 = 0; private set
+    var u1 = 0; private set
+    var v0 = 0; private set
+    var v1 = 0; private set
+
+    private var colOff0 = IntArray(0)
+    private var colOff1 = IntArray(0)
+    private var colW = IntArray(0)
+    private var rowOff0 = IntArray(0)
+    private var rowOff1 = IntArray(0)
+    private var rowW = IntArray(0)
+
+    // Pad đã ghi vào buffer nào / offset nào
+    private var padOut: Any? = null
+    private var padOffset = -1
+
+    /**
+     * Dựng lại bảng nếu cấu hình khác lần trước. Trả về true nếu đã dựng lại.
+     * @param srcStride số pixel mỗi hàng của mảng nguồn (mặc định = srcW)
+     */
+    @JvmOverloads
+    fun update(t: LetterboxTransform, srcStride: Int = t.srcW): Boolean {
+        if (t.srcW == srcW && t.srcH == srcH && srcStride == this.srcStride && t.rotation == rotation &&
+            t.dstW == dstW && t.dstH == dstH &&
+            t.cropX == cropX && t.cropY == cropY && t.cropW == cropW && t.cropH == cropH) {
+            return false
+        }
+        srcW = t.srcW; srcH = t.srcH; this.srcStride = srcStride; rotation = t.rotation
+        dstW = t.dstW; dstH = t.dstH
+        cropX = t.cropX; cropY = t.cropY; cropW = t.cropW; cropH = t.cropH
+
+        // Tâm pixel đích nằm trong vùng nội dung (giống clipRect của bản Canvas)
+        u0 = ceil(t.padX - 0.5f).toInt().coerceIn(0, dstW)
+        u1 = ceil(dstW - t.padX - 0.5f).toInt().coerceIn(u0, dstW)
+        v0 = ceil(t.padY - 0.5f).toInt().coerceIn(0, dstH)
+        v1 = ceil(dstH - t.padY - 0.5f).toInt().coerceIn(v0, dstH)
+
+        // Cột đích → trục nguồn nào, có lật không (xem LetterboxTransform.srcToInputAffine)
+        //   0: sx = ux          sy = uy
+        //  90: sx = uy          sy = H - ux
+        // 180: sx = W - ux      sy = H - uy
+        // 270: sx = W - uy      sy = ux
+        val colOnX = rotation == 0 || rotation == 180
+        val colFlip = rotation == 90 || rotation == 180
+        val rowFlip = rotation == 180 || rotation == 270
+        val colLen = if (colOnX) srcW else srcH
+        val rowLen = if (colOnX) srcH else srcW
+        val colStride = if (colOnX) 1 else srcStride
+        val rowStride = if (colOnX) srcStride else 1
+
+        val nc = u1 - u0
+        val nr = v1 - v0
+        if (colOff0.size != nc) { colOff0 = IntArray(nc); colOff1 = IntArray(nc); colW = IntArray(nc) }
+        if (rowOff0.size != nr) { rowOff0 = IntArray(nr); rowOff1 = IntArray(nr); rowW = IntArray(nr) }
+        for (i in 0 until nc) {
+            val ux = (u0 + i + 0.5f - t.padX) / t.ratio + cropX
+            axis(if (colFlip) colLen - ux else ux, colLen, colStride, colOff0, colOff1, colW, i)
+        }
+        for (i in 0 until nr) {
+            val uy = (v0 + i + 0.5f - t.padY) / t.ratio + cropY
+            axis(if (rowFlip) rowLen - uy else uy, rowLen, rowStride, rowOff0, rowOff1, rowW, i)
+        }
+        padOut = null
+        return true
+    }
+
+    /** Toạ độ liên tục c trên trục dài n → 2 offset kẹp mép + trọng số Q11 của mẫu thứ 2 */
+    private fun axis(c: Float, n: Int, stride: Int, off0: IntArray, off1: IntArray, w: IntArray, i: Int) {
+        val p = c - 0.5f
+        val f = floor(p)
+        val i0 = f.toInt()
+        off0[i] = i0.coerceIn(0, n - 1) * stride
+        off1[i] = (i0 + 1).coerceIn(0, n - 1) * stride
+        w[i] = ((p - f) * ONE + 0.5f).toInt().coerceIn(0, ONE)
+    }
+
+    // Tham số của lần resample hiện tại cho các dải hàng (tránh lambda bắt biến mỗi frame)
+    private var curSrc = IntArray(0)
+    private var curFloats: FloatBuffer? = null
+    private var curBytes: ByteBuffer? = null
+    private var curOffset = 0
+    private val floatRows = BandPool.BandTask { from, to -> floatRows(from, to) }
+    private val byteRows = BandPool.BandTask { from, to -> byteRows(from, to) }
+
+    /**
+     * ARGB (Bitmap.getPixels) → RGB float [0..1] NHWC, ghi từ [offset] (tính theo float) của [out].
+     * Dùng put tuyệt đối, không đổi position của buffer. Có [pool] thì chia hàng đích thành dải chạy song song
+     * (mỗi dải ghi vùng hàng riêng của [out]).
+     */
+    @JvmOverloads
+    fun resample(src: IntArray, out: FloatBuffer, offset: Int = 0, pool: BandPool? = null) {
+        if (padOut !== out || padOffset != offset) {
+            fillPad { idx -> out.put(offset + idx, 0f); out.put(offset + idx + 1, 0f); out.put(offset + idx + 2, 0f) }
+            padOut = out; padOffset = offset
+        }
+        curSrc = src; curFloats = out; curOffset = offset
+        try {
+            if (pool != null) pool.run(v1 - v0, u1 - u0, floatRows) else floatRows(0, v1 - v0)
+        } finally {
+            curFloats = null
+        }
+    }
+
+    /** ARGB → RGB uint8 NHWC (model lượng tử hoá), ghi từ [offset] (tính theo byte) của [out] */
+    @JvmOverloads
+    fun resample(src: IntArray, out: ByteBuffer, offset: Int = 0, pool: BandPool? = null) {
+        if (padOut !== out || padOffset != offset) {
+            fillPad { idx -> out.put(offset + idx, 0); out.put(offset + idx + 1, 0); out.put(offset + idx + 2, 0) }
+            padOut = out; padOffset = offset
+        }
+        curSrc = src; curBytes = out; curOffset = offset
+        try {
+            if (pool != null) pool.run(v1 - v0, u1 - u0, byteRows) else byteRows(0, v1 - v0)
+        } finally {
+            curBytes = null
+        }
+    }
+
+    /** Hàng nội dung [from, to) (tính từ [v0]) → float */
+    private fun floatRows(from: Int, to: Int) {
+        val src = curSrc
+        val out = curFloats!!
+        val nc = u1 - u0
+        for (r in from until to) {
+            val r0 = rowOff0[r]; val r1 = rowOff1[r]; val wr = rowW[r]
+            var o = curOffset + ((v0 + r) * dstW + u0) * 3
+            for (c in 0 until nc) {
+                val c0 = colOff0[c]; val c1 = colOff1[c]; val wc = colW[c]
+                val p00 = src[r0 + c0]; val p01 = src[r0 + c1]
+                val p10 = src[r1 + c0]; val p11 = src[r1 + c1]
+                out.put(o, lerp2(p00 shr 16 and 0xFF, p01 shr 16 and 0xFF, p10 shr 16 and 0xFF, p11 shr 16 and 0xFF, wc, wr) * TO_FLOAT)
+                out.put(o + 1, lerp2(p00 shr 8 and 0xFF, p01 shr 8 and 0xFF, p10 shr 8 and 0xFF, p11 shr 8 and 0xFF, wc, wr) * TO_FLOAT)
+                out.put(o + 2, lerp2(p00 and 0xFF, p01 and 0xFF, p10 and 0xFF, p11 and 0xFF, wc, wr) * TO_FLOAT)
+                o += 3
+            }
+        }
+    }
+
+    /** Hàng nội dung [from, to) → uint8 */
+    private fun byteRows(from: Int, to: Int) {
+        val src = curSrc
+        val out = curBytes!!
+        val nc = u1 - u0
+        for (r in from until to) {
+            val r0 = rowOff0[r]; val r1 = rowOff1[r]; val wr = rowW[r]
+            var o = curOffset + ((v0 + r) * dstW + u0) * 3
+            for (c in 0 until nc) {
+                val c0 = colOff0[c]; val c1 = colOff1[c]; val wc = colW[c]
+                val p00 = src[r0 + c0]; val p01 = src[r0 + c1]
+                val p10 = src[r1 + c0]; val p11 = src[r1 + c1]
+                out.put(o, round8(lerp2(p00 shr 16 and 0xFF, p01 shr 16 and 0xFF, p10 shr 16 and 0xFF, p11 shr 16 and 0xFF, wc, wr)))
+                out.put(o + 1, round8(lerp2(p00 shr 8 and 0xFF, p01 shr 8 and 0xFF, p10 shr 8 and 0xFF, p11 shr 8 and 0xFF, wc, wr)))
+                out.put(o + 2, round8(lerp2(p00 and 0xFF, p01 and 0xFF, p10 and 0xFF, p11 and 0xFF, wc, wr)))
+                o += 3
+            }
+        }
+    }
+
+    /** Gọi [put] với chỉ số (phần tử, = pixel·3) của mọi pixel pad */
+    private inline fun fillPad(put: (Int) -> Unit) {
+        for (v in 0 until dstH) {
+            val inRows = v in v0 until v1
+            for (u in 0 until dstW) {
+                if (inRows && u in u0 until u1) continue
+                put((v * dstW + u) * 3)
+            }
+        }
+    }
+
+    companion object {
+        private const val SHIFT = 11
+        private const val ONE = 1 shl SHIFT
+        /** Kết quả lerp2 mang hệ số 2^(2·SHIFT) */
+        private const val TO_FLOAT = 1f / (255f * (1 shl (2 * SHIFT)))
+
+        /** Bilinear số nguyên: ≤ 255·2^22, vừa Int */
+        @Suppress("NOTHING_TO_INLINE")
+        private inline fun lerp2(a: Int, b: Int, c: Int, d: Int, wc: Int, wr: Int): Int {
+            val top = a * (ONE - wc) + b * wc
+            val bot = c * (ONE - wc) + d * wc
+            return top * (ONE - wr) + bot * wr
+        }
+
+        @Suppress("NOTHING_TO_INLINE")
+        private inline fun round8(v: Int): Byte = ((v + (1 shl (2 * SHIFT - 1))) shr (2 * SHIFT)).toByte()
+    }
+}
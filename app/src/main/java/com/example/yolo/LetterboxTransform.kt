@@ -0,0 +1,119 @@
+package com.example.spiketimer.yolo
+
+import kotlin.math.roundToInt
+
+/**
+ * Hình học letterbox có xoay, thay cho việc để CameraX tạo bản sao RGBA đã xoay:
+ *   frame cảm biến (srcW×srcH, chưa xoay)
+ *     → xoay rotationDegrees theo chiều kim đồng hồ (= ImageInfo.rotationDegrees) thành ảnh "đứng" (upright)
+ *     → letterbox (giữ tỉ lệ, pad giữa) vào dstW×dstH của model.
+ * Preprocess dùng [srcToInputAffine] để resample 1 lần; box từ model map ngược qua [inputBoxToUpright].
+ * Có thể letterbox một vùng crop của ảnh đứng (tile) thay vì cả ảnh.
+ * Toạ độ liên tục (cạnh pixel), không phụ thuộc Android để test trên JVM.
+ */
+class LetterboxTransform {
+    var srcW = 0; private set
+    var srcH = 0; private set
+    var rotation = 0; private set
+    var dstW = 0; private set
+    var dstH = 0; private set
+
+    /** Kích thước ảnh sau khi xoay */
+    var uprightW = 0; private set
+    var uprightH = 0; private set
+
+    /** Vùng crop trên ảnh đứng được letterbox (mặc định = cả ảnh) */
+    var cropX = 0f; private set
+    var cropY = 0f; private set
+    var cropW = 0f; private set
+    var cropH = 0f; private set
+
+    var ratio = 1f; private set
+    var padX = 0f; private set
+    var padY = 0f; private set
+
+    /**
+     * Tính lại khi có thay đổi. Trả về true nếu cấu hình khác lần trước.
+     * @param rotationDegrees 0/90/180/270
+     */
+    fun update(srcW: Int, srcH: Int, rotationDegrees: Int, dstW: Int, dstH: Int): Boolean {
+        val rot = ((rotationDegrees % 360) + 360) % 360
+        val swap = rot == 90 || rot == 270
+        val w = if (swap) srcH else srcW
+        val h = if (swap) srcW else srcH
+        return update(srcW, srcH, rotationDegrees, dstW, dstH, 0f, 0f, w.toFloat(), h.toFloat())
+    }
+
+    /** Như trên nhưng chỉ letterbox vùng crop (toạ độ ảnh đứng) — dùng cho tile */
+    fun update(
+        srcW: Int, srcH: Int, rotationDegrees: Int, dstW: Int, dstH: Int,
+        cropX: Float, cropY: Float, cropW: Float, cropH: Float
+    ): Boolean {
+        val rot = ((rotationDegrees % 360) + 360) % 360
+        require(rot % 90 == 0) { "rotation must be a multiple of 90, got $rotationDegrees" }
+        if (srcW == this.srcW && srcH == this.srcH && rot == rotation && dstW == this.dstW && dstH == this.dstH &&
+            cropX == this.cropX && cropY == this.cropY && cropW == this.cropW && cropH == this.cropH) {
+            return false
+        }
+        this.srcW = srcW
+        this.srcH = srcH
+        this.rotation = rot
+        this.dstW = dstW
+        this.dstH = dstH
+        val swap = rot == 90 || rot == 270
+        uprightW = if (swap) srcH else srcW
+        uprightH = if (swap) srcW else srcH
+        this.cropX = cropX
+        this.cropY = cropY
+        this.cropW = cropW
+        this.cropH = cropH
+        ratio = minOf(dstW / cropW, dstH / cropH)
+        val newW = (cropW * ratio).roundToInt()
+        val newH = (cropH * ratio).roundToInt()
+        padX = (dstW - newW) / 2f
+        padY = (dstH - newH) / 2f
+        return true
+    }
+
+    /**
+     * Affine 2×3 src → input: x' = a·x + b·y + c, y' = d·x + e·y + f, ghi vào out[0..5] = [a, b, c, d, e, f].
+     * Cùng thứ tự với 6 phần tử đầu của android.graphics.Matrix.setValues().
+     */
+    fun srcToInputAffine(out: FloatArray) {
+        // Xoay CW quanh gốc rồi tịnh tiến để ảnh đứng nằm trong [0, uprightW) × [0, uprightH)
+        val w = srcW.toFloat()
+        val h = srcH.toFloat()
+        var a = 1f; var b = 0f; var c = 0f
+        var d = 0f; var e = 1f; var f = 0f
+        when (rotation) {
+            90 -> { a = 0f; b = -1f; c = h; d = 1f; e = 0f; f = 0f }     // (x, y) → (H - y, x)
+            180 -> { a = -1f; b = 0f; c = w; d = 0f; e = -1f; f = h }    // (x, y) → (W - x, H - y)
+            270 -> { a = 0f; b = 1f; c = 0f; d = -1f; e = 0f; f = w }    // (x, y) → (y, W - x)
+        }
+        out[0] = a * ratio; out[1] = b * ratio; out[2] = (c - cropX) * ratio + padX
+        out[3] = d * ratio; out[4] = e * ratio; out[5] = (f - cropY) * ratio + padY
+    }
+
+    /** Điểm trên frame cảm biến → điểm trên ảnh đứng */
+    fun srcToUpright(x: Float, y: Float, out: FloatArray) {
+        when (rotation) {
+            90 -> { out[0] = srcH - y; out[1] = x }
+            180 -> { out[0] = srcW - x; out[1] = srcH - y }
+            270 -> { out[0] = y; out[1] = srcW - x }
+            else -> { out[0] = x; out[1] = y }
+        }
+    }
+
+    /**
+     * Box trong không gian input (bỏ pad) → box trên ảnh đứng, kẹp trong ảnh.
+     * box = [left, top, right, bottom], ghi đè tại chỗ từ [offset].
+     */
+    fun inputBoxToUpright(box: FloatArray, offset: Int = 0) {
+        val maxX = (uprightW - 1).toFloat()
+        val maxY = (uprightH - 1).toFloat()
+        box[offset]     = ((box[offset]     - padX) / ratio + cropX).coerceIn(0f, maxX)
+        box[offset + 1] = ((box[offset + 1] - padY) / ratio + cropY).coerceIn(0f, maxY)
+        box[offset + 2] = ((box[offset + 2] - padX) / ratio + cropX).coerceIn(0f, maxX)
+        box[offset + 3] = ((box[offset + 3] - padY) / ratio + cropY).coerceIn(0f, maxY)
+    }
+}
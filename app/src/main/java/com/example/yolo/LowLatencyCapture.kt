@@ -0,0 +1,220 @@
+package com.example.spiketimer.yolo
+
+import java.util.Locale
+import kotlin.math.roundToInt
+
+/**
+ * Chọn tham số cho profile chụp độ trễ thấp (Camera2 interop): dải FPS của AE cố định ở mức cao nhất,
+ * khử nhiễu / làm nét ở chế độ không thêm frame trễ, từ mảng khả năng của CameraCharacteristics.
+ * Dải FPS dạng mảng phẳng [lower, upper]*; mode là hằng số Camera2 (OFF = 0, FAST = 1).
+ * Không phụ thuộc Android để test trên JVM.
+ */
+object LowLatencyCapture {
+    const val MODE_OFF = 0
+    const val MODE_FAST = 1
+
+    /** Khử nhiễu: FAST giữ chất lượng mà không giảm FPS, OFF nếu máy không có FAST (HIGH_QUALITY / ZSL thêm trễ) */
+    @JvmField val NOISE_MODES = intArrayOf(MODE_FAST, MODE_OFF)
+
+    /** Làm nét không giúp detector → tắt hẳn nếu được */
+    @JvmField val EDGE_MODES = intArrayOf(MODE_OFF, MODE_FAST)
+
+    /**
+     * Dải FPS có cận dưới cao nhất mà cận trên ≤ [maxFps] (dải cố định thắng dải rộng cùng cận dưới):
+     * cận dưới cao = AE không được kéo dài frame (và phơi sáng) khi tối. Trả về index dải, -1 nếu không có.
+     */
+    @JvmStatic
+    fun pickFpsRange(ranges: IntArray, maxFps: Int): Int {
+        var best = -1
+        for (i in 0 until ranges.size / 2) {
+            val lo = ranges[2 * i]
+            val hi = ranges[2 * i + 1]
+            if (hi > maxFps || lo <= 0) continue
+            if (best < 0) { best = i; continue }
+            val bestLo = ranges[2 * best]
+            val bestHi = ranges[2 * best + 1]
+            if (lo > bestLo || (lo == bestLo && hi < bestHi)) best = i
+        }
+        return best
+    }
+
+    /** Mode đầu tiên trong [preferred] mà máy hỗ trợ, -1 nếu không có (giữ mặc định của máy) */
+    @JvmStatic
+    fun pickMode(available: IntArray?, preferred: IntArray): Int {
+        if (available == null) return -1
+        for (m in preferred) if (m in available) return m
+        return -1
+    }
+
+    /** Thời lượng frame (ns) ở [fps] */
+    @JvmStatic
+    fun frameDurationNs(fps: Int): Long = 1_000_000_000L / fps.coerceAtLeast(1)
+}
+
+/**
+ * Trần thời gian phơi sáng khi AE muốn phơi lâu hơn [capNs] (tối → spike nhoè khi di chuyển).
+ * Camera2 chỉ nhận exposure thủ công khi tắt AE, nên:
+ *   - AUTO: đọc exposure / ISO AE chọn; khi AE đã hội tụ mà exposure > [capNs] → MANUAL với
+ *     exposure = [capNs], ISO bù đúng tỉ lệ (cùng độ sáng), kẹp trong dải ISO của cảm biến.
+ *   - MANUAL: không còn AE → tự giữ độ sáng trung bình của frame (luma lúc chuyển) bằng cách chỉnh ISO,
+ *     mỗi bước tối đa ×[maxStep], bỏ lệch trong [deadband]. ISO chạm sàn mà vẫn quá sáng → trả lại AUTO
+ *     (cảnh đã đủ sáng để AE tự phơi ngắn). ISO chạm trần → chấp nhận frame tối hơn thay vì nhoè.
+ * Sau mỗi lệnh, frame trong [settleMs] có thể còn chụp theo thiết lập cũ nên không dùng để đo.
+ * Camera thread gọi [onAutoResult], analysis thread gọi [onFrameLuma]. Không phụ thuộc Android để test trên JVM.
+ */
+class ExposureCap @JvmOverloads constructor(
+    private val clock: Clock,
+    val capNs: Long = 4_000_000L,
+    val deadband: Float = 1.1f,
+    val maxStep: Float = 1.25f,
+    val settleMs: Long = 200L
+) {
+    init {
+        require(capNs > 0L) { "capNs must be > 0" }
+        require(deadband >= 1f && maxStep > 1f) { "deadband must be >= 1, maxStep > 1" }
+    }
+
+    private var isoMin = 0
+    private var isoMax = 0
+    private var manual = false
+    var iso = 0; private set
+    private var targetLuma = Float.NaN
+    private var autoLuma = Float.NaN
+    private var lastCommandMs = Long.MIN_VALUE
+
+    /** Dải ISO của cảm biến; [isoMax] ≤ [isoMin] = máy không cho exposure thủ công → tắt */
+    @Synchronized
+    fun setIsoRange(isoMin: Int, isoMax: Int) {
+        this.isoMin = isoMin
+        this.isoMax = isoMax
+        if (!isSupported()) reset()
+    }
+
+    @Synchronized fun isSupported(): Boolean = isoMax > isoMin && isoMin > 0
+
+    @Synchronized fun isManual(): Boolean = manual
+
+    /** Về AUTO, quên độ sáng đã giữ */
+    @Synchronized
+    fun reset() {
+        manual = false
+        targetLuma = Float.NaN
+        autoLuma = Float.NaN
+        lastCommandMs = Long.MIN_VALUE
+    }
+
+    /** Kết quả chụp khi AE đang bật; true nếu vừa chuyển sang MANUAL (cần gửi lại capture request) */
+    @Synchronized
+    fun onAutoResult(exposureNs: Long, iso: Int, converged: Boolean): Boolean {
+        if (manual || !isSupported() || !converged || autoLuma.isNaN()) return false
+        if (exposureNs <= capNs * deadband || iso <= 0) return false
+        manual = true
+        this.iso = (iso.toDouble() * exposureNs / capNs).roundToInt().coerceIn(isoMin, isoMax)
+        targetLuma = autoLuma
+        lastCommandMs = clock.nowMs()
+        return true
+    }
+
+    /**
+     * Độ sáng trung bình [0..1] của frame vừa phân tích; true nếu thiết lập đổi (ISO mới, hoặc về AUTO).
+     */
+    @Synchronized
+    fun onFrameLuma(luma: Float): Boolean {
+        if (luma.isNaN() || luma <= 0f) return false
+        if (!manual) {
+            autoLuma = luma
+            return false
+        }
+        val now = clock.nowMs()
+        if (lastCommandMs != Long.MIN_VALUE && now - lastCommandMs < settleMs) return false
+        val ratio = targetLuma / luma
+        if (ratio <= deadband && ratio >= 1f / deadband) return false
+        val next = (iso * ratio.coerceIn(1f / maxStep, maxStep)).roundToInt().coerceIn(isoMin, isoMax)
+        if (next == iso) {
+            if (ratio < 1f) {
+                // Sàn ISO mà vẫn quá sáng: AE tự chọn exposure ≤ trần được rồi
+                reset()
+                autoLuma = luma
+                return true
+            }
+            return false
+        }
+        iso = next
+        lastCommandMs = now
+        return true
+    }
+
+    @Synchronized
+    fun summary(): String = when {
+        !isSupported() -> "n/a"
+        manual -> String.format(Locale.US, "manual %.1f ms ISO %d (luma %.2f)", capNs / 1e6f, iso, targetLuma)
+        else -> String.format(Locale.US, "auto (cap %.1f ms)", capNs / 1e6f)
+    }
+}
+
+/**
+ * Đo độ trễ camera → analyzer theo timestamp cảm biến, tách theo profile chụp để so A/B trên từng máy:
+ *   - result: cảm biến bắt đầu phơi → CaptureResult về (phơi + đọc + ISP),
+ *   - age: cảm biến → analyzer nhận frame (thêm buffer / hàng đợi của CameraX).
+ * [onResult] (camera thread) ghi timestamp vào ring nhỏ, [onAnalyze] (analysis thread) ghép theo timestamp.
+ * Timestamp khác timebase với "bây giờ" (âm hoặc lệch quá [maxSkewMs]) → bỏ qua.
+ * Không phụ thuộc Android để test trên JVM.
+ */
+class CaptureLatencyLog @JvmOverloads constructor(
+    private val maxSkewMs: Long = 5_000L,
+    ringSize: Int = 32
+) {
+    private val sensorNs = LongArray(ringSize)
+    private val completedNs = LongArray(ringSize)
+    private var next = 0
+
+    private val result = Array(PROFILE_NAMES.size) { LatencyStats() }
+    private val age = Array(PROFILE_NAMES.size) { LatencyStats() }
+
+    /** Profile đang chạy ([STANDARD] / [LOW_LATENCY]); frame sau lần đổi tính cho profile mới */
+    @Volatile var profile = STANDARD
+
+    @Synchronized
+    fun onResult(sensorTimestampNs: Long, nowNs: Long) {
+        sensorNs[next] = sensorTimestampNs
+        completedNs[next] = nowNs
+        next = (next + 1) % sensorNs.size
+    }
+
+    @Synchronized
+    fun onAnalyze(sensorTimestampNs: Long, nowNs: Long) {
+        val p = profile
+        val ageMs = (nowNs - sensorTimestampNs) / 1e6f
+        if (sensorTimestampNs <= 0L || ageMs < 0f || ageMs > maxSkewMs) return
+        age[p].add(ageMs)
+        for (i in sensorNs.indices) {
+            if (sensorNs[i] == sensorTimestampNs) {
+                result[p].add(maxOf(0f, (completedNs[i] - sensorTimestampNs) / 1e6f))
+                break
+            }
+        }
+    }
+
+    /** p50 tuổi frame (ms) của [profile], NaN nếu chưa có mẫu */
+    @Synchronized
+    fun ageP50(profile: Int): Float = if (age[profile].count() == 0L) Float.NaN else age[profile].percentile(50f)
+
+    @Synchronized
+    fun summary(): String {
+        val sb = StringBuilder()
+        for (p in PROFILE_NAMES.indices) {
+            if (age[p].count() == 0L) continue
+            if (sb.isNotEmpty()) sb.append(" | ")
+            sb.append(String.format(Locale.US, "%s age p50 %.0f p95 %.0f, result p50 %.0f ms (%d)",
+                PROFILE_NAMES[p], age[p].percentile(50f), age[p].percentile(95f),
+                if (result[p].count() == 0L) Float.NaN else result[p].percentile(50f), age[p].count()))
+        }
+        return if (sb.isEmpty()) "timebase ?" else sb.toString()
+    }
+
+    companion object {
+        const val STANDARD = 0
+        const val LOW_LATENCY = 1
+        @JvmField val PROFILE_NAMES = arrayOf("std", "low-lat")
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.spiketimer.yolo
+
+import java.io.File
+
+/**
+ * Danh sách model detector có thể đổi nóng: model đóng gói trong assets ([defaultModel], đứng đầu)
+ * + mọi file `.tflite` trong [dir] (vd. filesDir/models, đẩy vào bằng adb hoặc tải về) — cho A/B ngoài hiện trường.
+ * Model trong assets được gọi bằng tên, model trong [dir] bằng đường dẫn tuyệt đối
+ * (cùng quy ước với tham số modelPath của [TFLiteYoloDetector]).
+ * Không phụ thuộc Android để test trên JVM.
+ */
+class ModelCatalog @JvmOverloads constructor(
+    private val dir: File,
+    val defaultModel: String = DetectorProfileStore.DEFAULT_MODEL
+) {
+    /** Model mặc định trước, sau đó file trong [dir] theo tên */
+    fun list(): List<String> {
+        val files = dir.listFiles { f -> f.isFile && f.name.endsWith(EXTENSION) && f.length() > 0 }
+            ?.sortedBy { it.name }
+            ?.map { it.absolutePath }
+            .orEmpty()
+        return listOf(defaultModel) + files
+    }
+
+    /** Model kế tiếp sau [current] (vòng lại đầu danh sách) */
+    fun next(current: String): String {
+        val all = list()
+        val i = all.indexOf(current)
+        return all[(i + 1) % all.size]
+    }
+
+    /** Model đã lưu trong prefs nếu vẫn còn, ngược lại model mặc định */
+    fun resolve(saved: String?): String =
+        if (saved != null && saved in list()) saved else defaultModel
+
+    companion object {
+        const val EXTENSION = ".tflite"
+
+        /** true nếu [model] là file trong storage (đường dẫn tuyệt đối) thay vì tên asset */
+        @JvmStatic fun isFile(model: String): Boolean = model.startsWith("/")
+
+        /** Tên ngắn để hiển thị */
+        @JvmStatic fun displayName(model: String): String = model.substringAfterLast('/')
+    }
+}
@@ -4,19 +4,19 @@ import android.content.Context
 import android.graphics.Canvas
 import android.graphics.Color
 import android.graphics.Paint
-import android.graphics.RectF
 import android.util.AttributeSet
 import android.view.View
+import com.example.spiketimer.yolo.DetectionBatch
 import java.util.Locale
-import kotlin.math.min
 
 class OverlayView @JvmOverloads constructor(
     context: Context,
     attrs: AttributeSet? = null
 ) : View(context, attrs) {
 
-    @Volatile private var boxes: List<RectF> = emptyList()
-    @Volatile private var scores: List<Float> = emptyList()
+    // Box view-space + score; analysis thread chép vào, UI thread vẽ (khoá trên lock)
+    private val lock = Any()
+    private val shown = DetectionBatch()
 
     private val boxPaint = Paint(Paint.ANTI_ALIAS_FLAG).apply {
         style = Paint.Style.STROKE
@@ -31,34 +31,40 @@ class OverlayView @JvmOverloads constructor(
         color = 0x88000000.toInt()
     }
 
-    fun setDetections(dets: List<com.example.spiketimer.yolo.TFLiteYoloDetector.Detection>) {
-        boxes = dets.map { it.box }
-        scores = dets.map { it.score }
+    /**
+     * [n] phần tử đầu của [dets] (box đã ở toạ độ view, FrameTransform). Chép vào batch riêng
+     * nên nơi gọi dùng lại batch của mình ngay được.
+     */
+    @JvmOverloads
+    fun setDetections(dets: DetectionBatch, n: Int = dets.size) {
+        synchronized(lock) { shown.copyFrom(dets, n) }
         postInvalidateOnAnimation()
     }
 
     fun clear() {
-        boxes = emptyList()
-        scores = emptyList()
+        synchronized(lock) { shown.clear() }
         postInvalidateOnAnimation()
     }
 
     override fun onDraw(canvas: Canvas) {
         super.onDraw(canvas)
-        val n = min(boxes.size, scores.size)
-        for (i in 0 until n) {
-            val r = boxes[i]
-            canvas.drawRect(r, boxPaint)
+        synchronized(lock) {
+            val boxes = shown.boxes
+            val scores = shown.scores
+            for (i in 0 until shown.size) {
+                val l = boxes[4 * i]; val t = boxes[4 * i + 1]
+                canvas.drawRect(l, t, boxes[4 * i + 2], boxes[4 * i + 3], boxPaint)
 
-            val label = String.format(Locale.US, "spike %.2f", scores[i])
-            val tw = textPaint.measureText(label)
-            val th = textPaint.textSize + 12f
+                val label = String.format(Locale.US, "spike %.2f", scores[i])
+                val tw = textPaint.measureText(label)
+                val th = textPaint.textSize + 12f
 
-            val x = r.left.coerceAtLeast(0f)
-            val y = r.top.coerceAtLeast(th)
+                val x = l.coerceAtLeast(0f)
+                val y = t.coerceAtLeast(th)
 
-            canvas.drawRect(x, y - th, x + tw + 16f, y, bgPaint)
-            canvas.drawText(label, x + 8f, y - 6f, textPaint)
+                canvas.drawRect(x, y - th, x + tw + 16f, y, bgPaint)
+                canvas.drawText(label, x + 8f, y - 6f, textPaint)
+            }
         }
     }
-}
\ No newline at end of file
+}
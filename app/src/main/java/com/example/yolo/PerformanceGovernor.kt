@@ -0,0 +1,144 @@
+package com.example.spiketimer.yolo
+
+import kotlin.math.min
+
+/**
+ * Nguồn trạng thái nhiệt — tách interface để chạy policy trên JVM với nguồn giả lập.
+ * Trên máy thật dùng [AndroidThermalSource].
+ */
+interface ThermalSource {
+    /** Cùng thang với PowerManager.THERMAL_STATUS_* (0 = NONE … 6 = SHUTDOWN) */
+    fun thermalStatus(): Int
+
+    /** Headroom dự báo (≥ 1.0 ⇒ sắp throttle). NaN nếu máy không hỗ trợ. */
+    fun thermalHeadroom(): Float
+}
+
+/** Một nấc cấu hình pipeline: số luồng CPU, kích thước input, khoảng cách tối thiểu giữa 2 lần infer */
+data class PerfLevel(
+    val numThreads: Int,
+    val inputSize: Int,
+    val minFrameIntervalMs: Long
+)
+
+/**
+ * Governor theo nhiệt + tải:
+ * - Nóng (SEVERE trở lên / headroom cao) ⇒ hạ 1 nấc ngay (vẫn giới hạn tốc độ đổi nấc).
+ * - Ấm hoặc latency vượt budget liên tục [stepDownHoldMs] ⇒ hạ 1 nấc.
+ * - Mát + latency dư nhiều liên tục [stepUpHoldMs] ⇒ nâng 1 nấc.
+ * Hysteresis: ngưỡng hạ/nâng tách xa nhau, thời gian giữ nâng dài hơn hạ,
+ * và nếu vừa nâng đã phải hạ lại thì thời gian giữ nâng lần sau tăng gấp đôi (tối đa [maxStepUpHoldMs]).
+ *
+ * Không đụng Android API — gọi [onFrame] sau mỗi lần detect (trên analysis thread).
+ */
+class PerformanceGovernor @JvmOverloads constructor(
+    private val thermal: ThermalSource,
+    private val clock: Clock,
+    val levels: List<PerfLevel> = DEFAULT_LEVELS,
+    private val latencyBudgetMs: Float = 60f,
+    private val stepDownHoldMs: Long = 1_500L,
+    private val stepUpHoldMs: Long = 10_000L,
+    private val maxStepUpHoldMs: Long = 60_000L,
+) {
+    init {
+        require(levels.isNotEmpty()) { "levels must not be empty" }
+    }
+
+    private var levelIndex = 0
+    private var latencyEwma = Float.NaN
+
+    private var warmSinceMs = -1L
+    private var coolSinceMs = -1L
+    private var lastChangeMs = Long.MIN_VALUE / 2
+    private var lastStepUpMs = Long.MIN_VALUE / 2
+    private var currentStepUpHoldMs = stepUpHoldMs
+
+    fun currentLevel(): PerfLevel = levels[levelIndex]
+    fun currentLevelIndex(): Int = levelIndex
+    fun latencyEwmaMs(): Float = latencyEwma
+
+    /**
+     * Ghi nhận latency 1 frame và đánh giá lại nấc.
+     * @return true nếu nấc vừa thay đổi (caller cần áp cấu hình mới).
+     */
+    fun onFrame(latencyMs: Float): Boolean {
+        latencyEwma = if (latencyEwma.isNaN()) latencyMs else latencyEwma + EWMA_ALPHA * (latencyMs - latencyEwma)
+        return evaluate()
+    }
+
+    /** Đánh giá lại mà không có mẫu latency mới (vd. khi đang bỏ frame) */
+    fun evaluate(): Boolean {
+        val now = clock.nowMs()
+        val status = thermal.thermalStatus()
+        val headroom = thermal.thermalHeadroom()
+
+        val hot = status >= STATUS_SEVERE || (!headroom.isNaN() && headroom >= HEADROOM_HOT)
+        val warm = hot || status >= STATUS_MODERATE ||
+                (!headroom.isNaN() && headroom >= HEADROOM_WARM) ||
+                (!latencyEwma.isNaN() && latencyEwma > latencyBudgetMs)
+        val cool = status <= STATUS_LIGHT &&
+                (headroom.isNaN() || headroom < HEADROOM_COOL) &&
+                (latencyEwma.isNaN() || latencyEwma < latencyBudgetMs * COOL_LATENCY_FRACTION)
+
+        if (warm) {
+            coolSinceMs = -1L
+            if (warmSinceMs < 0) warmSinceMs = now
+            val held = hot || now - warmSinceMs >= stepDownHoldMs
+            if (held && now - lastChangeMs >= MIN_CHANGE_INTERVAL_MS && levelIndex < levels.size - 1) {
+                // Vừa nâng mà đã phải hạ ⇒ dao động, kéo dài thời gian giữ nâng
+                if (now - lastStepUpMs < currentStepUpHoldMs) {
+                    currentStepUpHoldMs = min(currentStepUpHoldMs * 2, maxStepUpHoldMs)
+                }
+                return changeTo(levelIndex + 1, now)
+            }
+            return false
+        }
+
+        warmSinceMs = -1L
+        if (cool) {
+            if (coolSinceMs < 0) coolSinceMs = now
+            if (now - coolSinceMs >= currentStepUpHoldMs && levelIndex > 0) {
+                lastStepUpMs = now
+                return changeTo(levelIndex - 1, now)
+            }
+        } else {
+            coolSinceMs = -1L
+        }
+        return false
+    }
+
+    private fun changeTo(index: Int, now: Long): Boolean {
+        levelIndex = index
+        lastChangeMs = now
+        warmSinceMs = -1L
+        coolSinceMs = -1L
+        // Latency cũ thuộc nấc trước, đo lại từ đầu
+        latencyEwma = Float.NaN
+        return true
+    }
+
+    companion object {
+        // Cùng giá trị với PowerManager.THERMAL_STATUS_*
+        const val STATUS_NONE = 0
+        const val STATUS_LIGHT = 1
+        const val STATUS_MODERATE = 2
+        const val STATUS_SEVERE = 3
+
+        private const val HEADROOM_HOT = 0.95f
+        private const val HEADROOM_WARM = 0.85f
+        private const val HEADROOM_COOL = 0.70f
+        private const val COOL_LATENCY_FRACTION = 0.7f
+        private const val EWMA_ALPHA = 0.1f
+        private const val MIN_CHANGE_INTERVAL_MS = 1_000L
+
+        /** Thứ tự hạ: giảm tốc độ phân tích → giảm luồng + input → tối thiểu */
+        @JvmField
+        val DEFAULT_LEVELS: List<PerfLevel> = listOf(
+            PerfLevel(numThreads = 4, inputSize = 448, minFrameIntervalMs = 0L),
+            PerfLevel(numThreads = 4, inputSize = 448, minFrameIntervalMs = 50L),
+            PerfLevel(numThreads = 2, inputSize = 384, minFrameIntervalMs = 66L),
+            PerfLevel(numThreads = 2, inputSize = 320, minFrameIntervalMs = 100L),
+            PerfLevel(numThreads = 1, inputSize = 320, minFrameIntervalMs = 150L),
+        )
+    }
+}
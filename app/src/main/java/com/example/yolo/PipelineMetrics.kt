@@ -0,0 +1,175 @@
+package com.example.spiketimer.yolo
+
+import java.util.Locale
+
+/**
+ * Cửa sổ trượt các mẫu latency (ms) — ghi không cấp phát, percentile tính khi đọc.
+ */
+class LatencyStats(capacity: Int = 120) {
+    private val samples = FloatArray(capacity)
+    private val scratch = FloatArray(capacity)
+    private var next = 0
+    private var filled = 0
+    private var total = 0L
+
+    @Synchronized
+    fun add(ms: Float) {
+        samples[next] = ms
+        next = (next + 1) % samples.size
+        if (filled < samples.size) filled++
+        total++
+    }
+
+    /** Tổng số mẫu từng ghi (kể cả đã bị đẩy khỏi cửa sổ) */
+    @Synchronized
+    fun count(): Long = total
+
+    @Synchronized
+    fun mean(): Float {
+        if (filled == 0) return Float.NaN
+        var s = 0f
+        for (i in 0 until filled) s += samples[i]
+        return s / filled
+    }
+
+    /** p trong [0..100], nearest-rank trên cửa sổ hiện tại */
+    @Synchronized
+    fun percentile(p: Float): Float {
+        if (filled == 0) return Float.NaN
+        System.arraycopy(samples, 0, scratch, 0, filled)
+        java.util.Arrays.sort(scratch, 0, filled)
+        val rank = ((p / 100f) * filled).toInt().coerceIn(0, filled - 1)
+        return scratch[rank]
+    }
+
+    /** Độ lệch chuẩn trên cửa sổ hiện tại */
+    @Synchronized
+    fun stdDev(): Float {
+        if (filled < 2) return Float.NaN
+        var s = 0.0
+        for (i in 0 until filled) s += samples[i]
+        val m = s / filled
+        var v = 0.0
+        for (i in 0 until filled) v += (samples[i] - m) * (samples[i] - m)
+        return Math.sqrt(v / (filled - 1)).toFloat()
+    }
+
+    /** Jitter: khoảng p99 − p50 (đuôi chậm so với trung vị) */
+    fun jitter(): Float = percentile(99f) - percentile(50f)
+
+    @Synchronized
+    fun reset() {
+        next = 0
+        filled = 0
+        total = 0
+    }
+}
+
+/**
+ * Bề mặt metrics của pipeline: latency theo stage + vài thông tin tĩnh (size đã chọn…).
+ * Analysis thread ghi, UI thread đọc [summary] vài lần/giây.
+ * Nhật ký sự kiện (nếu gắn) nhận tổng hợp theo stage mỗi [stageLogIntervalMs] (1 record / stage / khoảng)
+ * thay vì từng mẫu — vài stage mỗi frame ở 30 fps sẽ lấp ring trong vài phút.
+ */
+class PipelineMetrics @JvmOverloads constructor(private val stageLogIntervalMs: Long = STAGE_LOG_INTERVAL_MS) {
+    private val stages = LinkedHashMap<String, LatencyStats>()
+    private val infos = LinkedHashMap<String, String>()
+    @Volatile private var eventLog: EventLog? = null
+    private var eventClock: Clock = Clock { 0L }
+
+    // Tổng hợp stage trong khoảng hiện tại, chờ ghi vào eventLog (khoá bằng chính map)
+    private val pending = LinkedHashMap<String, StageWindow>()
+    private var windowStartMs = -1L
+
+    private class StageWindow {
+        var count = 0
+        var sum = 0.0
+        var max = 0f
+
+        fun add(ms: Float) {
+            count++
+            sum += ms
+            if (ms > max) max = ms
+        }
+    }
+
+    /**
+     * Ghi tổng hợp latency theo stage vào [log] (record STAGE: trung bình / max / số mẫu) để phân tích sau trận;
+     * null = tắt. Phần chưa ghi của log cũ được ghi nốt trước khi đổi.
+     */
+    fun attachEventLog(log: EventLog?, clock: Clock) {
+        flushStages()
+        synchronized(pending) {
+            eventClock = clock
+            eventLog = log
+            windowStartMs = -1L
+        }
+    }
+
+    fun stage(name: String): LatencyStats = synchronized(stages) {
+        stages.getOrPut(name) { LatencyStats() }
+    }
+
+    fun record(name: String, ms: Float) {
+        stage(name).add(ms)
+        if (eventLog == null) return
+        synchronized(pending) {
+            val log = eventLog ?: return
+            val now = eventClock.nowMs()
+            pending.getOrPut(name) { StageWindow() }.add(ms)
+            if (windowStartMs < 0L) {
+                windowStartMs = now
+            } else if (now - windowStartMs >= stageLogIntervalMs) {
+                writeStagesLocked(log, now)
+            }
+        }
+    }
+
+    /** Ghi ngay phần tổng hợp stage đang chờ (vd. trước khi đóng log) */
+    fun flushStages() {
+        synchronized(pending) {
+            val log = eventLog ?: return
+            writeStagesLocked(log, eventClock.nowMs())
+        }
+    }
+
+    private fun writeStagesLocked(log: EventLog, now: Long) {
+        for ((name, w) in pending) {
+            if (w.count == 0) continue
+            log.stage(now, name, (w.sum / w.count).toFloat(), w.max, w.count)
+            w.count = 0
+            w.sum = 0.0
+            w.max = 0f
+        }
+        windowStartMs = now
+    }
+
+    /** "p99−p50 x / sd y ms" của stage [name], rỗng nếu chưa có mẫu */
+    fun jitter(name: String): String {
+        val s = synchronized(stages) { stages[name] } ?: return ""
+        if (s.count() < 2L) return ""
+        return String.format(Locale.US, "p99-p50 %.1f / sd %.1f ms", s.jitter(), s.stdDev())
+    }
+
+    fun putInfo(key: String, value: String) {
+        synchronized(infos) { infos[key] = value }
+    }
+
+    fun summary(): String {
+        val sb = StringBuilder()
+        synchronized(infos) {
+            for ((k, v) in infos) sb.append(k).append(": ").append(v).append('\n')
+        }
+        synchronized(stages) {
+            for ((k, s) in stages) {
+                if (s.count() == 0L) continue
+                sb.append(String.format(Locale.US, "%s p50 %.1f / p95 %.1f ms\n", k, s.percentile(50f), s.percentile(95f)))
+            }
+        }
+        return sb.toString().trimEnd()
+    }
+
+    companion object {
+        const val STAGE_LOG_INTERVAL_MS = 1_000L
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.spiketimer.yolo
+
+import java.util.Locale
+
+/**
+ * Các núm chỉnh hiệu năng của pipeline camera (thay cho hằng số biên dịch trong CameraPreviewActivity),
+ * chỉnh theo máy / địa điểm mà không cần build lại APK.
+ * - [confThreshold], [iouThreshold], [topK], [tiles], [triggerFalseRate], [countdownBoxes]: áp ngay từ frame kế tiếp.
+ * - [inputSize]: đổi kích thước tensor input (resize, không tạo lại interpreter).
+ * - [maxThreads]: interpreter không đổi số luồng tại chỗ → phải init lại.
+ * - [lowLatencyCapture]: đổi capture request của camera tại chỗ (Camera2 interop), không bind lại.
+ * - [audioTrigger]: bật / tắt luồng mic (cần quyền ghi âm và file mẫu âm thanh).
+ * - [hintAb]: chẩn đoán, luân phiên bật / tắt phiên performance hint để so jitter (xem [HintJitterAb]).
+ * Full frame chạy chế độ presence (chỉ quét confidence, 1 box) nên [iouThreshold]/[topK] chỉ còn áp cho lượt tiled.
+ * Governor vẫn hạ nấc bên dưới các trần này khi máy nóng.
+ * Không phụ thuộc Android để test trên JVM.
+ */
+data class PipelineSettings @JvmOverloads constructor(
+    /** Box hiển thị / phản hồi cho cổng khi score ≥ ngưỡng này */
+    val confThreshold: Float = 0.74f,
+    val iouThreshold: Float = 0.45f,
+    val topK: Int = 10,
+    /** α của trigger tuần tự (thay cho số frame ổn định của debounce cũ) */
+    val triggerFalseRate: Float = 0.01f,
+    /** Trần kích thước input model (px, bội [INPUT_STEP]) */
+    val inputSize: Int = 448,
+    /** Trần số luồng CPU của interpreter */
+    val maxThreads: Int = 4,
+    /** Số tile khi full frame không thấy gì (1 = tắt tiled) */
+    val tiles: Int = 2,
+    /** Vẽ box trong lúc đếm ngược (tắt = chỉ quét confidence, không decode box nào) */
+    val countdownBoxes: Boolean = true,
+    /** Profile chụp độ trễ thấp: FPS cố định cao, khử nhiễu / làm nét nhanh, trần phơi sáng (tự chọn, mặc định tắt) */
+    val lowLatencyCapture: Boolean = false,
+    /** Trigger âm thanh: khớp tiếng cắm spike trên mic, kích hoạt countdown cùng với camera (mặc định tắt) */
+    val audioTrigger: Boolean = false,
+    /** So A/B phiên performance hint: luân phiên khối có / không hint, jitter ghi riêng từng bên (chẩn đoán, mặc định tắt) */
+    val hintAb: Boolean = false
+) {
+    /** Trường vượt miền hợp lệ → thông báo (theo thứ tự khai báo); rỗng nếu hợp lệ */
+    fun errors(): Map<String, String> {
+        val out = LinkedHashMap<String, String>()
+        check(out, CONF, confThreshold, CONF_RANGE)
+        check(out, IOU, iouThreshold, IOU_RANGE)
+        check(out, TOP_K, topK, TOP_K_RANGE)
+        check(out, TRIGGER_FALSE_RATE, triggerFalseRate, FALSE_RATE_RANGE)
+        check(out, INPUT_SIZE, inputSize, INPUT_RANGE)
+        if (INPUT_SIZE !in out && inputSize % INPUT_STEP != 0) out[INPUT_SIZE] = "bội của $INPUT_STEP"
+        check(out, MAX_THREADS, maxThreads, THREADS_RANGE)
+        check(out, TILES, tiles, TILES_RANGE)
+        return out
+    }
+
+    fun isValid(): Boolean = errors().isEmpty()
+
+    /** Kẹp mọi trường vào miền hợp lệ (giá trị đọc từ prefs cũ / sửa tay) */
+    fun clamped(): PipelineSettings = PipelineSettings(
+        confThreshold = confThreshold.finiteOr(DEFAULT.confThreshold).coerceIn(CONF_RANGE),
+        iouThreshold = iouThreshold.finiteOr(DEFAULT.iouThreshold).coerceIn(IOU_RANGE),
+        topK = topK.coerceIn(TOP_K_RANGE),
+        triggerFalseRate = triggerFalseRate.finiteOr(DEFAULT.triggerFalseRate).coerceIn(FALSE_RATE_RANGE),
+        inputSize = (Math.round(inputSize.toFloat() / INPUT_STEP) * INPUT_STEP).coerceIn(INPUT_RANGE),
+        maxThreads = maxThreads.coerceIn(THREADS_RANGE),
+        tiles = tiles.coerceIn(TILES_RANGE),
+        countdownBoxes = countdownBoxes,
+        lowLatencyCapture = lowLatencyCapture,
+        audioTrigger = audioTrigger,
+        hintAb = hintAb
+    )
+
+    /** Tên preset trùng khớp, hoặc [CUSTOM]; [audioTrigger] (tính năng) và [hintAb] (chẩn đoán) không phải núm hiệu năng nên không tính */
+    fun presetName(): String {
+        val knobs = withAudioTrigger(false).withHintAb(false)
+        return PRESETS.entries.firstOrNull { it.value == knobs }?.key ?: CUSTOM
+    }
+
+    fun withAudioTrigger(on: Boolean): PipelineSettings = copy(audioTrigger = on)
+
+    fun withHintAb(on: Boolean): PipelineSettings = copy(hintAb = on)
+
+    override fun toString(): String = String.format(
+        Locale.US, "%s: conf %.2f, iou %.2f, top %d, α %.3f, input %d, ≤%d thr, tiles %d%s%s%s%s",
+        presetName(), confThreshold, iouThreshold, topK, triggerFalseRate, inputSize, maxThreads, tiles,
+        if (countdownBoxes) "" else ", no boxes in countdown",
+        if (lowLatencyCapture) ", low-latency capture" else "",
+        if (audioTrigger) ", audio trigger" else "",
+        if (hintAb) ", hint A/B" else ""
+    )
+
+    companion object {
+        // Tên trường (khoá lỗi của [errors], cũng là khoá prefs)
+        const val CONF = "conf_threshold"
+        const val IOU = "iou_threshold"
+        const val TOP_K = "top_k"
+        const val TRIGGER_FALSE_RATE = "trigger_false_rate"
+        const val INPUT_SIZE = "input_size"
+        const val MAX_THREADS = "max_threads"
+        const val TILES = "tiles"
+        const val COUNTDOWN_BOXES = "countdown_boxes"
+        const val LOW_LATENCY_CAPTURE = "low_latency_capture"
+        const val AUDIO_TRIGGER = "audio_trigger"
+        const val HINT_AB = "hint_ab"
+
+        const val BATTERY_SAVER = "battery_saver"
+        const val BALANCED = "balanced"
+        const val LOWEST_LATENCY = "lowest_latency"
+        const val CUSTOM = "custom"
+
+        /** Sàn của [confThreshold] = ngưỡng decode của detector (box thấp hơn đã bị bỏ trước NMS) */
+        const val MIN_CONF = 0.3f
+        const val MAX_TOP_K = 50
+        const val INPUT_STEP = 32
+        const val MAX_INPUT = 448
+
+        @JvmField val CONF_RANGE = MIN_CONF..0.99f
+        @JvmField val IOU_RANGE = 0.1f..0.9f
+        @JvmField val TOP_K_RANGE = 1..MAX_TOP_K
+        @JvmField val FALSE_RATE_RANGE = 0.001f..0.2f
+        @JvmField val INPUT_RANGE = 256..MAX_INPUT
+        @JvmField val THREADS_RANGE = 1..8
+        @JvmField val TILES_RANGE = 1..4
+
+        @JvmField val DEFAULT = PipelineSettings()
+
+        /**
+         * - Tiết kiệm pin: input nhỏ, 2 luồng, không tiled, trigger thận trọng hơn, không vẽ box khi đếm ngược.
+         * - Cân bằng: cấu hình gốc.
+         * - Độ trễ thấp nhất: input 384, không tiled (frame trượt không tốn thêm 1 lượt), trigger nhạy hơn,
+         *   không vẽ box khi đếm ngược, bật profile chụp độ trễ thấp.
+         */
+        @JvmField
+        val PRESETS: Map<String, PipelineSettings> = linkedMapOf(
+            BATTERY_SAVER to PipelineSettings(0.74f, 0.45f, 5, 0.005f, 320, 2, 1, false),
+            BALANCED to DEFAULT,
+            LOWEST_LATENCY to PipelineSettings(0.7f, 0.45f, 10, 0.02f, 384, 4, 1, false, true)
+        )
+
+        @JvmStatic fun preset(name: String): PipelineSettings? = PRESETS[name]
+
+        private fun Float.finiteOr(fallback: Float): Float = if (isNaN() || isInfinite()) fallback else this
+
+        private fun check(out: MutableMap<String, String>, key: String, v: Float, range: ClosedFloatingPointRange<Float>) {
+            if (v.isNaN() || v !in range) out[key] = String.format(Locale.US, "%s–%s", fmt(range.start), fmt(range.endInclusive))
+        }
+
+        private fun check(out: MutableMap<String, String>, key: String, v: Int, range: IntRange) {
+            if (v !in range) out[key] = "${range.first}–${range.last}"
+        }
+
+        private fun fmt(v: Float): String = String.format(Locale.US, "%.3f", v).trimEnd('0').trimEnd('.')
+    }
+}
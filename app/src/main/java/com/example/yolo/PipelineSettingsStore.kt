@@ -0,0 +1,85 @@
+package com.example.spiketimer.yolo
+
+import android.content.Context
+import android.content.SharedPreferences
+
+/**
+ * Lưu [PipelineSettings] trong prefs chung của app ("spike_prefs", cùng chỗ với thời gian countdown).
+ * Giá trị đọc ra luôn được kẹp về miền hợp lệ. [setListener] báo khi bộ cài đặt thực sự đổi —
+ * SettingsActivity lưu cả bộ bằng 1 lần apply nên listener chỉ nhận 1 lần cho mỗi lần lưu.
+ */
+class PipelineSettingsStore(context: Context) {
+    private val prefs: SharedPreferences =
+        context.applicationContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+
+    fun interface Listener {
+        /** Gọi trên main thread */
+        fun onChanged(settings: PipelineSettings)
+    }
+
+    private var listener: Listener? = null
+    private var last: PipelineSettings? = null
+
+    // Prefs giữ listener bằng weak reference → phải giữ tham chiếu mạnh ở đây
+    private val prefsListener = SharedPreferences.OnSharedPreferenceChangeListener { _, key ->
+        if (key == null || key in KEYS) {
+            val s = load()
+            if (s != last) {
+                last = s
+                listener?.onChanged(s)
+            }
+        }
+    }
+
+    fun load(): PipelineSettings {
+        val d = PipelineSettings.DEFAULT
+        return PipelineSettings(
+            prefs.getFloat(PipelineSettings.CONF, d.confThreshold),
+            prefs.getFloat(PipelineSettings.IOU, d.iouThreshold),
+            prefs.getInt(PipelineSettings.TOP_K, d.topK),
+            prefs.getFloat(PipelineSettings.TRIGGER_FALSE_RATE, d.triggerFalseRate),
+            prefs.getInt(PipelineSettings.INPUT_SIZE, d.inputSize),
+            prefs.getInt(PipelineSettings.MAX_THREADS, d.maxThreads),
+            prefs.getInt(PipelineSettings.TILES, d.tiles),
+            prefs.getBoolean(PipelineSettings.COUNTDOWN_BOXES, d.countdownBoxes),
+            prefs.getBoolean(PipelineSettings.LOW_LATENCY_CAPTURE, d.lowLatencyCapture),
+            prefs.getBoolean(PipelineSettings.AUDIO_TRIGGER, d.audioTrigger),
+            prefs.getBoolean(PipelineSettings.HINT_AB, d.hintAb)
+        ).clamped()
+    }
+
+    fun save(settings: PipelineSettings) {
+        prefs.edit()
+            .putFloat(PipelineSettings.CONF, settings.confThreshold)
+            .putFloat(PipelineSettings.IOU, settings.iouThreshold)
+            .putInt(PipelineSettings.TOP_K, settings.topK)
+            .putFloat(PipelineSettings.TRIGGER_FALSE_RATE, settings.triggerFalseRate)
+            .putInt(PipelineSettings.INPUT_SIZE, settings.inputSize)
+            .putInt(PipelineSettings.MAX_THREADS, settings.maxThreads)
+            .putInt(PipelineSettings.TILES, settings.tiles)
+            .putBoolean(PipelineSettings.COUNTDOWN_BOXES, settings.countdownBoxes)
+            .putBoolean(PipelineSettings.LOW_LATENCY_CAPTURE, settings.lowLatencyCapture)
+            .putBoolean(PipelineSettings.AUDIO_TRIGGER, settings.audioTrigger)
+            .putBoolean(PipelineSettings.HINT_AB, settings.hintAb)
+            .apply()
+    }
+
+    /** Theo dõi thay đổi (null = huỷ); [current] là bộ đang dùng, để không báo lại chính nó */
+    fun setListener(listener: Listener?, current: PipelineSettings?) {
+        this.listener = listener
+        last = current
+        if (listener != null) prefs.registerOnSharedPreferenceChangeListener(prefsListener)
+        else prefs.unregisterOnSharedPreferenceChangeListener(prefsListener)
+    }
+
+    companion object {
+        const val PREFS_NAME = "spike_prefs"
+
+        private val KEYS = setOf(
+            PipelineSettings.CONF, PipelineSettings.IOU, PipelineSettings.TOP_K, PipelineSettings.TRIGGER_FALSE_RATE,
+            PipelineSettings.INPUT_SIZE, PipelineSettings.MAX_THREADS, PipelineSettings.TILES,
+            PipelineSettings.COUNTDOWN_BOXES, PipelineSettings.LOW_LATENCY_CAPTURE,
+            PipelineSettings.AUDIO_TRIGGER, PipelineSettings.HINT_AB
+        )
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.spiketimer.yolo
+
+import java.nio.ByteBuffer
+import java.util.Locale
+
+/**
+ * Đặc trưng "vệt sáng màu" rẻ trên frame RGBA gốc (chưa xoay, chưa convert Bitmap):
+ * lấy mẫu thưa ~[samplesX]×[samplesY] điểm, đếm điểm sáng + bão hoà + đúng dải hue,
+ * trả về tỉ lệ lớn nhất trong lưới [cols]×[rows] ô — spike nhỏ ở góc vẫn nổi bật trong ô của nó.
+ * Dải hue mặc định là đỏ-cam (đèn spike); đổi theo map/skin nếu cần.
+ */
+class GlowFeature @JvmOverloads constructor(
+    private val hueLoDeg: Float = 340f,
+    private val hueHiDeg: Float = 30f,
+    private val minSat: Float = 0.55f,
+    private val minVal: Float = 0.6f,
+    private val cols: Int = 8,
+    private val rows: Int = 6,
+    private val samplesX: Int = 96,
+    private val samplesY: Int = 54
+) {
+    private val hits = IntArray(cols * rows)
+    private val totals = IntArray(cols * rows)
+
+    /** Độ sáng trung bình [0..1] của các điểm mẫu ở lần [score] gần nhất (cho vòng exposure thủ công), NaN nếu chưa có */
+    var lastMeanLuma = Float.NaN; private set
+
+    /** Buffer RGBA_8888 (ImageProxy plane 0); đọc tuyệt đối, không đổi position */
+    fun score(buf: ByteBuffer, width: Int, height: Int, rowStride: Int, pixelStride: Int): Float {
+        hits.fill(0)
+        totals.fill(0)
+        var lumaSum = 0L
+        var samples = 0
+        val stepX = maxOf(1, width / samplesX)
+        val stepY = maxOf(1, height / samplesY)
+        val minMax = (minVal * 255f).toInt()
+        var y = stepY / 2
+        while (y < height) {
+            val rowBase = y * rowStride
+            val cellRow = (y * rows / height) * cols
+            var x = stepX / 2
+            while (x < width) {
+                val o = rowBase + x * pixelStride
+                val r = buf.get(o).toInt() and 0xFF
+                val g = buf.get(o + 1).toInt() and 0xFF
+                val b = buf.get(o + 2).toInt() and 0xFF
+                val cell = cellRow + x * cols / width
+                totals[cell]++
+                if (isGlow(r, g, b, minMax)) hits[cell]++
+                lumaSum += 77 * r + 150 * g + 29 * b // Rec.601 ×256
+                samples++
+                x += stepX
+            }
+            y += stepY
+        }
+        lastMeanLuma = if (samples == 0) Float.NaN else lumaSum / (samples * 255f * 256f)
+        var best = 0f
+        for (i in hits.indices) {
+            if (totals[i] == 0) continue
+            val f = hits[i].toFloat() / totals[i]
+            if (f > best) best = f
+        }
+        return best
+    }
+
+    private fun isGlow(r: Int, g: Int, b: Int, minMax: Int): Boolean {
+        val max = maxOf(r, maxOf(g, b))
+        if (max < minMax) return false
+        val min = minOf(r, minOf(g, b))
+        val d = max - min
+        if (d < minSat * max) return false
+        val hue = when (max) {
+            r -> 60f * (((g - b).toFloat() / d + 6f) % 6f)
+            g -> 60f * ((b - r).toFloat() / d + 2f)
+            else -> 60f * ((r - g).toFloat() / d + 4f)
+        }
+        return if (hueLoDeg <= hueHiDeg) hue in hueLoDeg..hueHiDeg else hue >= hueLoDeg || hue <= hueHiDeg
+    }
+}
+
+/**
+ * Cổng trước YOLO: frame có điểm [GlowFeature] dưới ngưỡng thì bỏ qua detect.
+ * Ngưỡng tự chỉnh theo [recallTarget]: giữ điểm gate của các frame detector thật sự thấy spike,
+ * ngưỡng = phân vị (1 − recall) của các điểm đó (× [margin]).
+ * Frame bị chặn vẫn được "kiểm tra" 1/[auditEvery] lần bằng detector để phát hiện bỏ sót
+ * (nếu không, điểm dưới ngưỡng không bao giờ được quan sát và recall bị ước lượng lạc quan).
+ * Sau khi thấy spike, cổng mở [holdOpenMs] để không làm đứt debounce.
+ * Không phụ thuộc Android để test trên JVM.
+ */
+class SpikeGate @JvmOverloads constructor(
+    private val clock: Clock,
+    val recallTarget: Float = 0.98f,
+    private val initialThreshold: Float = 0.01f,
+    private val auditEvery: Int = 10,
+    private val holdOpenMs: Long = 2_000L,
+    private val minPositives: Int = 20,
+    private val margin: Float = 0.9f,
+    capacity: Int = 256
+) {
+    init {
+        require(recallTarget in 0f..1f) { "recallTarget must be in [0, 1]" }
+    }
+
+    private val positives = FloatArray(capacity)
+    private val sorted = FloatArray(capacity)
+    private var posNext = 0
+    private var posFilled = 0
+    private var holdUntilMs = Long.MIN_VALUE
+
+    @get:Synchronized var threshold = initialThreshold; private set
+
+    // Thống kê
+    private var frames = 0L
+    private var passed = 0L
+    private var skipped = 0L
+    private var audits = 0L
+    private var auditMisses = 0L
+    private var rejectedSinceAudit = 0
+
+    /** Quyết định cho frame có điểm [score]: [SKIP], [PASS] hoặc [AUDIT] (bị chặn nhưng vẫn chạy để kiểm tra) */
+    @Synchronized
+    fun decide(score: Float): Int {
+        frames++
+        if (clock.nowMs() < holdUntilMs || score >= threshold) {
+            passed++
+            return PASS
+        }
+        if (auditEvery > 0 && ++rejectedSinceAudit >= auditEvery) {
+            rejectedSinceAudit = 0
+            audits++
+            return AUDIT
+        }
+        skipped++
+        return SKIP
+    }
+
+    /** Kết quả detector cho frame đã [PASS]/[AUDIT] */
+    @Synchronized
+    fun onDetection(score: Float, decision: Int, spikeFound: Boolean) {
+        if (!spikeFound) return
+        holdUntilMs = clock.nowMs() + holdOpenMs
+        if (decision == AUDIT) auditMisses++
+        positives[posNext] = score
+        posNext = (posNext + 1) % positives.size
+        if (posFilled < positives.size) posFilled++
+        if (posFilled >= minPositives) {
+            System.arraycopy(positives, 0, sorted, 0, posFilled)
+            java.util.Arrays.sort(sorted, 0, posFilled)
+            val idx = ((1f - recallTarget) * posFilled).toInt().coerceIn(0, posFilled - 1)
+            threshold = sorted[idx] * margin
+        }
+    }
+
+    @Synchronized fun passRate(): Float = if (frames == 0L) Float.NaN else passed.toFloat() / frames
+
+    @Synchronized fun skippedFrames(): Long = skipped
+
+    @Synchronized fun auditMisses(): Long = auditMisses
+
+    /** Ước lượng compute tiết kiệm: số frame bỏ qua × latency detect điển hình */
+    @Synchronized fun savedMs(detectMs: Float): Float = skipped * detectMs
+
+    @Synchronized
+    fun summary(detectMs: Float): String = String.format(
+        Locale.US, "pass %.0f%% th %.3f, miss %d/%d audits, saved ~%.1f s",
+        passRate() * 100f, threshold, auditMisses, audits,
+        if (detectMs.isNaN()) 0f else savedMs(detectMs) / 1000f
+    )
+
+    companion object {
+        const val SKIP = 0
+        const val PASS = 1
+        const val AUDIT = 2
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.spiketimer.yolo
+
+import java.util.Locale
+import kotlin.math.ln
+
+/**
+ * Kích hoạt countdown bằng kiểm định tuần tự (CUSUM/SPRT của Wald) trên confidence thô từng frame,
+ * thay cho đếm N frame liên tiếp ≥ ngưỡng:
+ *   mỗi frame cộng log-likelihood ratio llr(c) = slope · (c − pivot) (kẹp ±[maxStepLlr]),
+ *   c = confidence cao nhất của frame (0 nếu không có box).
+ * Chưa kích hoạt: S = max(0, S + llr), kích hoạt khi S ≥ A = ln((1 − β) / α).
+ * Đã kích hoạt: S chỉ giảm khi có bằng chứng "không có spike", mở lại khi S ≤ B = ln(β / (1 − α))
+ * (hysteresis — spike nằm yên trong khung không kích hoạt lại).
+ * α = [falseTriggerRate], β = [missRate]. [pivot]/[slope] là hiệu chuẩn confidence của model:
+ * frame có c = pivot không nghiêng về bên nào.
+ * Bằng chứng cũ hơn [maxGapMs] (analysis dừng / bị governor giãn) bị bỏ khi chưa kích hoạt.
+ * Không phụ thuộc Android để test trên JVM.
+ */
+class SpikeTrigger @JvmOverloads constructor(
+    private val clock: Clock,
+    falseTriggerRate: Float = 0.01f,
+    missRate: Float = 0.05f,
+    private val pivot: Float = 0.5f,
+    private val slope: Float = 12f,
+    private val maxStepLlr: Float = 5f,
+    private val maxGapMs: Long = 500L
+) {
+    var falseTriggerRate: Float = falseTriggerRate
+        @Synchronized get
+        private set
+    var missRate: Float = missRate
+        @Synchronized get
+        private set
+
+    /** Ngưỡng kích hoạt A và ngưỡng mở lại B (log-likelihood ratio) */
+    var upper: Float = 0f
+        @Synchronized get
+        private set
+    var lower: Float = 0f
+        @Synchronized get
+        private set
+
+    init {
+        setRates(falseTriggerRate, missRate)
+    }
+
+    /** Đổi α/β lúc chạy (cài đặt đổi nóng); statistic hiện tại giữ nguyên, so với ngưỡng mới từ frame kế tiếp */
+    @Synchronized
+    fun setRates(falseTriggerRate: Float, missRate: Float) {
+        require(falseTriggerRate > 0f && falseTriggerRate < 1f) { "falseTriggerRate must be in (0, 1)" }
+        require(missRate > 0f && missRate < 1f) { "missRate must be in (0, 1)" }
+        require(falseTriggerRate + missRate < 1f) { "falseTriggerRate + missRate must be < 1" }
+        this.falseTriggerRate = falseTriggerRate
+        this.missRate = missRate
+        upper = ln((1f - missRate) / falseTriggerRate)
+        lower = ln(missRate / (1f - falseTriggerRate))
+    }
+
+    private var stat = 0f
+    private var fired = false
+    private var lastMs = Long.MIN_VALUE
+    private var onsetMs = 0L
+    private var framesInRun = 0
+
+    // Thống kê
+    private var triggers = 0
+    private var lastFramesToFire = 0
+    private var lastLatencyMs = 0L
+
+    /**
+     * Ghi bằng chứng 1 frame. Trả về true đúng 1 lần ở frame làm S vượt A (tới khi được mở lại).
+     * @param maxScore confidence cao nhất của frame, 0 nếu không có box
+     */
+    fun update(maxScore: Float): Boolean = update(maxScore, clock.nowMs())
+
+    /**
+     * Như [update] nhưng với mốc chụp của frame [atMs] (cùng timebase với [clock]) —
+     * onset không bị lệch theo thời gian frame nằm chờ + detect.
+     */
+    @Synchronized
+    fun update(maxScore: Float, atMs: Long): Boolean {
+        if (!fired && lastMs != Long.MIN_VALUE && atMs - lastMs > maxGapMs) stat = 0f
+        lastMs = atMs
+        val llr = llr(maxScore)
+        if (fired) {
+            stat = minOf(upper, stat + llr)
+            if (stat <= lower) { fired = false; stat = 0f }
+            return false
+        }
+        if (stat == 0f && llr > 0f) { onsetMs = atMs; framesInRun = 0 }
+        stat = maxOf(0f, stat + llr)
+        if (stat == 0f) return false
+        framesInRun++
+        if (stat < upper) return false
+        fired = true
+        triggers++
+        lastFramesToFire = framesInRun
+        lastLatencyMs = atMs - onsetMs
+        return true
+    }
+
+    /**
+     * Bằng chứng dứt khoát từ nguồn khác camera (vd. khớp âm thanh cắm spike) bắt đầu lúc [onsetMs]:
+     * đang chờ → kích hoạt ngay (true), như thể S vừa chạm A; đã kích hoạt → bỏ qua.
+     * Sau đó chốt / mở lại theo bằng chứng camera như thường.
+     */
+    @Synchronized
+    fun fire(onsetMs: Long, atMs: Long): Boolean {
+        if (fired) return false
+        stat = upper
+        fired = true
+        lastMs = atMs
+        this.onsetMs = onsetMs
+        triggers++
+        lastFramesToFire = 0
+        lastLatencyMs = atMs - onsetMs
+        return true
+    }
+
+    /** Log-likelihood ratio (spike / không spike) của 1 frame */
+    fun llr(maxScore: Float): Float = (slope * (maxScore - pivot)).coerceIn(-maxStepLlr, maxStepLlr)
+
+    /** Mốc frame đầu tiên của chuỗi bằng chứng đã (hoặc đang) dẫn tới kích hoạt */
+    @Synchronized fun onsetMs(): Long = onsetMs
+
+    @Synchronized fun isFired(): Boolean = fired
+
+    @Synchronized fun statistic(): Float = stat
+
+    /** Về trạng thái ban đầu (reset countdown) — sẵn sàng kích hoạt lại ngay */
+    @Synchronized
+    fun reset() {
+        stat = 0f
+        fired = false
+        lastMs = Long.MIN_VALUE
+        onsetMs = 0L
+        framesInRun = 0
+    }
+
+    @Synchronized
+    fun summary(): String = String.format(
+        Locale.US, "S %.1f/%.1f %s, fired %d (last %d fr, %d ms)",
+        stat, upper, if (fired) "latched" else "armed", triggers, lastFramesToFire, lastLatencyMs
+    )
+}
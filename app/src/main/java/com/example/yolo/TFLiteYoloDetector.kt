@@ -5,35 +5,106 @@ import android.graphics.Bitmap
 import android.graphics.BitmapFactory
 import android.graphics.Canvas
 import android.graphics.Color
+import android.graphics.Matrix
 import android.graphics.Paint
-import android.graphics.RectF
+import android.os.SystemClock
 import android.util.Log
 import org.tensorflow.lite.Delegate
 import org.tensorflow.lite.Interpreter
+import java.io.RandomAccessFile
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
+import java.nio.FloatBuffer
+import java.nio.channels.FileChannel
 import kotlin.math.max
-import kotlin.math.min
-import kotlin.math.roundToInt
 
 class TFLiteYoloDetector(
     private val context: Context,
-    private val modelPath: String = "best_float16_no_nms_448.tflite",
-    private val inputSize: Int = 448,
+    val modelPath: String = "best_float16_no_nms_448.tflite",
+    inputSize: Int = 448,
     private val confThreshold: Float = 0.74f,
 ) {
 
+    /** Kích thước input hiện tại (vuông). Governor có thể hạ xuống qua [setInputSize]. */
+    var inputSize: Int = inputSize
+        private set
+
     private var interpreter: Interpreter? = null
     private var accelDelegate: Delegate? = null  // có thể là GPU hoặc NNAPI (dùng chung biến)
     private var inputTensorType: org.tensorflow.lite.DataType? = null
     private var inputShape: IntArray? = null
 
+    // Chế độ tiled: interpreter riêng với batch = số tile (CPU), tạo lười lần đầu cần
+    private var modelBuffer: ByteBuffer? = null
+    private var tileInterpreter: Interpreter? = null
+    private var tileBatch = 0
+    private var tileInputSize = 0
+    // Lần tạo tiled lỗi gần nhất (batch, input): cùng cấu hình thì không thử lại mỗi frame
+    private var tileFailedBatch = 0
+    private var tileFailedInputSize = 0
+    private var tileInputBuffer: ByteBuffer? = null
+    private val tileLayout = TileLayout()
+    private var tileTransforms = emptyArray<LetterboxTransform>()
+    private var tileResamplers = emptyArray<LetterboxResampler>()
+    private var tileInputFloats: FloatBuffer? = null
+
     // Trạng thái tăng tốc
     private var usingGpu: Boolean = false
     private var usingNnapi: Boolean = false
+    private var numThreads: Int = 0
+    private var usingXnnpack: Boolean = true
+
+    // Tái sử dụng giữa các frame: hình học letterbox + bitmap/canvas đích
+    private val letterboxTransform = LetterboxTransform()
+    private val affineValues = FloatArray(9)
+    private val letterboxMatrix = Matrix()
+    private val letterboxPaint = Paint(Paint.ANTI_ALIAS_FLAG or Paint.FILTER_BITMAP_FLAG)
+    private var letterboxBitmap: Bitmap? = null
+    private var letterboxCanvas: Canvas? = null
+
+    // Tái sử dụng giữa các frame: input buffer, mảng pixel, output container + bản phẳng
+    private var reusedInput: ByteBuffer? = null
+    private var reusedInputFloats: FloatBuffer? = null
+    private var pixelScratch = IntArray(0)
+    private var srcPixels = IntArray(0)
+
+    // Resample trực tiếp vào tensor (bảng hệ số dựng lại khi kích thước/xoay đổi)
+    private val resampler = LetterboxResampler()
+
+    /** true → dùng lại đường Canvas/Skia cũ (chỉ để benchmark / so sánh output) */
+    @Volatile var useCanvasLetterbox = false
+    private val mainOutput = OutputSlot()
+    private val tileOutput = OutputSlot()
+
+    /** Cấu hình/kết quả warmup; đặt tracker mới trước [initialize] để đổi số vòng / ngưỡng ổn định */
+    var warmupTracker = WarmupTracker()
+    @Volatile private var warm = false
+
+    /** Nếu gán, [detect] ghi thời gian từng stage: letterbox / input / inference / decode / nms (ms) */
+    var stageMetrics: PipelineMetrics? = null
+
+    /** Nếu gán, đọc pixel + resample/chuẩn hoá chia theo dải hàng chạy song song trên pool (dùng chung, nơi gọi đóng) */
+    @Volatile var bandPool: BandPool? = null
+
+    // Tham số lần tiền xử lý hiện tại cho các dải hàng (task dựng sẵn, không cấp phát mỗi frame)
+    private var bandBitmap: Bitmap? = null
+    private var bandPixels = IntArray(0)
+    private var bandOut: ByteBuffer? = null
+    private var bandBase = 0
+    private val readRows = BandPool.BandTask { from, to ->
+        val b = bandBitmap!!
+        b.getPixels(bandPixels, from * b.width, b.width, 0, from, b.width, to - from)
+    }
+    private val floatRows = BandPool.BandTask { from, to -> putFloatRows(from, to) }
+    private val uint8Rows = BandPool.BandTask { from, to -> putUint8Rows(from, to) }
 
     fun isUsingGpu(): Boolean = usingGpu
     fun isUsingNnapi(): Boolean = usingNnapi
+    fun getNumThreads(): Int = numThreads
+    fun isUsingXnnpack(): Boolean = usingXnnpack
+
+    /** true khi warmup đã xong (latency ổn định hoặc hết số vòng) — frame thật sẽ chạy ở tốc độ steady-state */
+    fun isWarm(): Boolean = warm
 
     /**
      * Initialize bản cơ bản (giữ tương thích với code cũ).
@@ -52,16 +123,37 @@ class TFLiteYoloDetector(
      * - useNnapi: nếu GPU không bật được, thử NNAPI (nhiều máy Dimensity chạy ổn)
      */
     fun initialize(useGpu: Boolean, numThreads: Int, forceGpu: Boolean, useNnapi: Boolean) {
-        // Reset trạng thái
+        initialize(useGpu, numThreads, forceGpu, useNnapi, useXnnpack = true)
+    }
+
+    /**
+     * Initialize theo profile đã tune ([DetectorProfileStore]). Trả về false nếu delegate trong profile
+     * không bật được (đã rơi về CPU) hoặc warmup lỗi — nơi gọi nên báo [DetectorProfileStore.markFailed].
+     */
+    fun initialize(profile: DetectorProfile): Boolean {
+        val gpu = profile.delegate == BenchmarkConfig.GPU
+        val nnapi = profile.delegate == BenchmarkConfig.NNAPI
+        initialize(gpu, profile.numThreads, false, nnapi, profile.useXnnpack)
+        // Warmup lỗi (vd. delegate crash lúc invoke) cũng tính là profile hỏng
+        return (!gpu || usingGpu) && (!nnapi || usingNnapi) && warm
+    }
+
+    /** Như trên + bật/tắt XNNPACK (benchmark so sánh với kernel CPU mặc định của TFLite) */
+    fun initialize(useGpu: Boolean, numThreads: Int, forceGpu: Boolean, useNnapi: Boolean, useXnnpack: Boolean) {
+        // Reset trạng thái (giữ buffer model đã nạp — [loadModel] hoặc lần init trước)
+        val loaded = modelBuffer
         close()
+        warm = false
 
         val opts = Interpreter.Options().apply {
             // XNNPACK cho CPU; an toàn khi kết hợp delegate
-            setUseXNNPACK(true)
+            setUseXNNPACK(useXnnpack)
             setNumThreads(numThreads)
         }
         usingGpu = false
         usingNnapi = false
+        usingXnnpack = useXnnpack
+        this.numThreads = numThreads
 
         // 1) Thử GPU trước (nếu được bật)
         if (useGpu) {
@@ -100,9 +192,18 @@ class TFLiteYoloDetector(
         }
 
         // 3) Tạo Interpreter
-        val buffer = loadModelFile(modelPath)
+        val buffer = loaded ?: loadModelFile(modelPath)
+        modelBuffer = buffer
         interpreter = Interpreter(buffer, opts)
 
+        // 3b) Giữ kích thước input đã chọn trước đó (vd. governor đã hạ) khi re-init
+        interpreter?.let { itp ->
+            val native = itp.getInputTensor(0).shape()
+            if (native.size == 4 && native[1] != inputSize && !resizeInterpreterInput(itp, inputSize)) {
+                inputSize = native[1]
+            }
+        }
+
         // 4) Log input/output info
         interpreter?.let { itp ->
             val inTensor = itp.getInputTensor(0)
@@ -118,16 +219,84 @@ class TFLiteYoloDetector(
             }
         }
 
-        // 5) Warmup để lần sau mượt hơn (bỏ qua lỗi yên lặng)
-        runCatching {
-            val dummy = Bitmap.createBitmap(inputSize, inputSize, Bitmap.Config.ARGB_8888)
-            run(dummy)
+        // 5) Warmup qua đường detect thật tới khi latency ổn định (lỗi không chặn init)
+        runCatching { warmup() }.onFailure { Log.w(TAG, "Warmup failed: ${it.message}") }
+    }
+
+    /**
+     * Chỉ đọc file model vào bộ nhớ, chưa tạo interpreter / delegate: phần I/O chạy được trên luồng nền,
+     * còn [initialize] (tạo delegate GPU/NNAPI — gắn với thread tạo ra nó) chạy trên thread sẽ gọi [detect].
+     */
+    fun loadModel() {
+        if (modelBuffer == null) modelBuffer = loadModelFile(modelPath)
+    }
+
+    /**
+     * Chạy [detect] nhiều vòng trên frame giả cỡ camera (chưa xoay) để mồi bitmap letterbox,
+     * input buffer, output container và code decode/NMS; latency từng vòng ghi vào [warmupTracker].
+     * Chỉ đánh dấu [isWarm] khi tracker dừng (ổn định hoặc chạm số vòng tối đa).
+     */
+    @JvmOverloads
+    fun warmup(
+        srcWidth: Int = inputSize * 16 / 9,
+        srcHeight: Int = inputSize,
+        rotationDegrees: Int = 90
+    ): WarmupTracker {
+        val tracker = warmupTracker
+        tracker.reset()
+        warm = false
+        // Nền tối + 1 vệt sáng để decode không chạy trên tensor toàn 0
+        val frame = Bitmap.createBitmap(srcWidth, srcHeight, Bitmap.Config.ARGB_8888)
+        frame.eraseColor(Color.DKGRAY)
+        Canvas(frame).drawRect(srcWidth * 0.4f, srcHeight * 0.4f, srcWidth * 0.6f, srcHeight * 0.6f,
+            Paint().apply { color = Color.RED })
+        try {
+            do {
+                val t0 = SystemClock.elapsedRealtimeNanos()
+                detect(frame, rotationDegrees)
+                val ms = (SystemClock.elapsedRealtimeNanos() - t0) / 1e6f
+            } while (!tracker.add(ms))
+        } finally {
+            frame.recycle()
+        }
+        warm = true
+        Log.i(TAG, "Warmup ${tracker.summary()}: ${tracker.latencies().contentToString()}")
+        return tracker
+    }
+
+    /**
+     * Đổi kích thước input lúc runtime (resizeInput + allocateTensors), không tạo lại Interpreter.
+     * Model export với anchor cố định sẽ từ chối shape mới → giữ kích thước cũ và trả false.
+     */
+    fun setInputSize(size: Int): Boolean {
+        if (size == inputSize) return true
+        val itp = interpreter ?: run { inputSize = size; return true }
+        if (resizeInterpreterInput(itp, size)) {
+            inputSize = size
+            inputShape = itp.getInputTensor(0).shape()
+            Log.i(TAG, "Input resized to $size")
+            return true
         }
+        // Khôi phục shape cũ để interpreter còn dùng được
+        resizeInterpreterInput(itp, inputSize)
+        Log.w(TAG, "Model does not accept input size $size, keep $inputSize")
+        return false
+    }
+
+    private fun resizeInterpreterInput(itp: Interpreter, size: Int): Boolean = try {
+        itp.resizeInput(0, intArrayOf(1, size, size, 3))
+        itp.allocateTensors()
+        true
+    } catch (t: Throwable) {
+        false
     }
 
     fun close() {
         runCatching { interpreter?.close() }
         interpreter = null
+        mainOutput.clear()
+        closeTileInterpreter()
+        modelBuffer = null
         runCatching { accelDelegate?.let { closeDelegateReflective(it) } }
         accelDelegate = null
         usingGpu = false
@@ -141,16 +310,8 @@ class TFLiteYoloDetector(
     fun run(bitmap: Bitmap): Map<Int, FloatArray> {
         val itp = interpreter ?: error("Call initialize() first")
 
-        // 1) Letterbox về inputSize x inputSize
-        val letterboxed = letterbox(bitmap, inputSize, inputSize)
-
-        // 2) Chuẩn bị input theo dtype thực tế
-        val inType = inputTensorType ?: org.tensorflow.lite.DataType.FLOAT32
-        val inputBuffer: Any = if (inType == org.tensorflow.lite.DataType.FLOAT32) {
-            toFloatBuffer(letterboxed)
-        } else {
-            toByteBufferUINT8(letterboxed)
-        }
+        // 1–2) Letterbox về inputSize x inputSize + chuẩn bị input theo dtype thực tế
+        val inputBuffer = prepareInput(bitmap, 0)
 
         // 3) Cấp phát container output THEO ĐÚNG SHAPE (mảng lồng nhau)
         val outCount = itp.outputTensorCount
@@ -167,159 +328,340 @@ class TFLiteYoloDetector(
         // 4) Run
         itp.runForMultipleInputsOutputs(arrayOf(inputBuffer), outputs)
 
-        // 5) Flatten để log/tiện xử lý vòng sau
+        // 5) Flatten để tiện xử lý vòng sau (không log từng output: boxing float mỗi lần gọi)
         for (i in 0 until outCount) {
-            val raw = outputs[i]!!
-            val flat = flattenToFloatArray(raw)
-            flatOutputs[i] = flat
-            Log.i(TAG, "Out[$i] size=${flat.size}, head=${flat.take(8)}")
+            flatOutputs[i] = flattenToFloatArray(outputs[i]!!)
         }
 
         return flatOutputs
     }
 
-    // -------------------- VÒNG 3: Decode + NMS + API Detection --------------------
-
-    /** Kết quả cuối cùng trả về cho app */
-    data class Detection(
-        val box: RectF,      // toạ độ trên ảnh gốc (left, top, right, bottom)
-        val score: Float,
-        val label: String = "spike",
-        val classId: Int = 0
-    )
-
-    // Struct giữ thông tin để map ngược từ không gian input(448) về ảnh gốc
-    private data class LetterboxInfo(
-        val ratio: Float,
-        val padX: Float,
-        val padY: Float,
-        val srcW: Int,
-        val srcH: Int,
-        val dstW: Int,
-        val dstH: Int
-    )
-
-    // API mới: detect trên ảnh tĩnh, trả List<Detection> đã qua NMS
+    // -------------------- VÒNG 3: Decode + NMS + DetectionBatch --------------------
+
+    /** Batch kết quả của detector cho các lời gọi không truyền batch riêng (tái sử dụng qua các lần detect) */
+    private val results = DetectionBatch()
+
+    // API mới: detect trên ảnh tĩnh, trả batch đã qua NMS (của detector, hợp lệ tới lần detect sau)
     fun detect(
         srcBitmap: Bitmap,
         iouThresh: Float = 0.45f,
         topK: Int = 50
-    ): List<Detection> {
-        val itp = interpreter ?: error("Call initialize() first")
+    ): DetectionBatch = detect(srcBitmap, 0, iouThresh, topK)
+
+    /**
+     * Detect trên frame CHƯA xoay (ImageAnalysis tắt output rotation):
+     * rotationDegrees (= ImageInfo.rotationDegrees) được gộp vào bước letterbox,
+     * box ghi vào [out] theo toạ độ ảnh đã xoay đứng. Trả về [out].
+     */
+    @JvmOverloads
+    fun detect(
+        srcBitmap: Bitmap,
+        rotationDegrees: Int,
+        iouThresh: Float = 0.45f,
+        topK: Int = 50,
+        out: DetectionBatch = results
+    ): DetectionBatch {
+        detectInto(srcBitmap, rotationDegrees, iouThresh, topK, out)
+        // Map về ảnh gốc (đã xoay đứng) tại chỗ
+        val boxes = out.boxes
+        for (i in 0 until out.size) letterboxTransform.inputBoxToUpright(boxes, 4 * i)
+        return out
+    }
 
-        // 1) Letterbox + info để map ngược
-        val (letter, info) = letterboxWithInfo(srcBitmap, inputSize, inputSize)
+    /**
+     * Như [detect] nhưng box ở toạ độ INPUT model; trả về số box trong [out].
+     * Nơi gọi map thẳng sang view bằng [FrameTransform] với [getLetterboxTransform] —
+     * không qua bước ảnh gốc, không cấp phát cho kết quả.
+     */
+    fun detectInto(
+        srcBitmap: Bitmap,
+        rotationDegrees: Int,
+        iouThresh: Float,
+        topK: Int,
+        out: DetectionBatch
+    ): Int {
+        val itp = interpreter ?: error("Call initialize() first")
+        val sm = stageMetrics
 
-        // 2) Chuẩn bị input buffer
-        val inType = inputTensorType ?: org.tensorflow.lite.DataType.FLOAT32
-        val inputBuffer: Any = if (inType == org.tensorflow.lite.DataType.FLOAT32) {
-            toFloatBuffer(letter)
-        } else {
-            toByteBufferUINT8(letter)
-        }
+        // 1–2) Xoay + letterbox + chuẩn hoá thẳng vào input buffer
+        val inputBuffer = prepareInput(srcBitmap, rotationDegrees)
+        var t = System.nanoTime()
 
-        // 3) CHUẨN: tạo container theo đúng shape [1,5,4116]
-        val outTensor = itp.getOutputTensor(0)
-        val outShape = outTensor.shape() // [1, 5, 4116]
-        val outContainer: Any = makeOutputContainer(outShape, outTensor.dataType())
+        // 3) Container theo đúng shape [1,5,4116] — tái sử dụng khi shape không đổi
+        mainOutput.prepare(itp)
 
         // 4) Run với Map<Int, Any> (không dùng hashMapOf(0 to ...) vì sẽ suy luận sai generic)
-        val outMap: MutableMap<Int, Any> = HashMap()
-        outMap[0] = outContainer
-        itp.runForMultipleInputsOutputs(arrayOf(inputBuffer), outMap)
+        itp.runForMultipleInputsOutputs(arrayOf(inputBuffer), mainOutput.map)
+        if (sm != null) t = lap(sm, "inference", t)
 
         // 5) Flatten ra FloatArray để decode
-        val outArr = flattenToFloatArray(outContainer)
+        val outArr = mainOutput.flatten()
+
+        // 6) Decode ở không gian input (448) thẳng vào batch
+        out.clear()
+        decodeInto(outArr, inputSize, inputSize, confThreshold, 0, outArr.size, out)
+        if (sm != null) t = lap(sm, "decode", t)
 
-        // 6) Decode ở không gian input (448)
-        val (inputBoxes, inputScores) = decodeYoloOutputs(outArr, inputSize, inputSize, confThreshold)
+        // 7) NMS ngay ở không gian input (scale đều nên IoU không đổi khi map ra ngoài)
+        out.nms(iouThresh, topK)
+        if (sm != null) lap(sm, "nms", t)
+        return out.size
+    }
 
-        // 7) Map về ảnh gốc + NMS
-        val mapped = ArrayList<Detection>(inputBoxes.size)
-        for (i in inputBoxes.indices) {
-            val rect = mapToOriginal(inputBoxes[i], info)
-            mapped.add(Detection(rect, inputScores[i]))
+    /**
+     * Chế độ presence cho trigger: chỉ quét kênh confidence của output, trả về score cao nhất (0 nếu không có anchor)
+     * và ghi anchor vào [lastPresenceAnchor]. [boxOut] != null → decode đúng 1 box của anchor đó
+     * (toạ độ INPUT model, [l, t, r, b] tại boxOut[0..3], như [detectInto]); null → không decode box nào.
+     * Không decode toàn bộ, không NMS, không cấp phát. Bản [DetectionBatch] ở dưới ghi box + score vào batch.
+     */
+    @JvmOverloads
+    fun detectPresence(srcBitmap: Bitmap, rotationDegrees: Int, boxOut: FloatArray? = null): Float {
+        val itp = interpreter ?: error("Call initialize() first")
+        val sm = stageMetrics
+        val inputBuffer = prepareInput(srcBitmap, rotationDegrees)
+        var t = System.nanoTime()
+        mainOutput.prepare(itp)
+        itp.runForMultipleInputsOutputs(arrayOf(inputBuffer), mainOutput.map)
+        if (sm != null) t = lap(sm, "inference", t)
+
+        val out = mainOutput.flatten()
+        val n = out.size / YoloDecode.CHANNELS
+        val anchor = YoloDecode.maxConfAnchor(out, 0, n)
+        lastPresenceAnchor = anchor
+        if (anchor < 0) return 0f
+        val score = YoloDecode.conf(out, 0, n, anchor)
+        if (boxOut != null && !YoloDecode.decodeAnchor(out, 0, n, anchor, YoloDecode.looksNormalized(out, 0, n),
+                inputSize, inputSize, boxOut, 0)) {
+            // Box suy biến: coi như không có box để vẽ, score vẫn là bằng chứng cho trigger
+            boxOut.fill(0f, 0, 4)
         }
-        return nms(mapped, iouThresh, topK)
+        if (sm != null) lap(sm, "decode", t)
+        return score
+    }
+
+    /**
+     * [detectPresence] ghi vào batch: [out] còn đúng 1 phần tử (box anchor mạnh nhất ở toạ độ INPUT + score)
+     * khi box hợp lệ, rỗng nếu không; [decodeBox] = false → luôn rỗng. Trả về score cao nhất như bản mảng.
+     */
+    fun detectPresence(srcBitmap: Bitmap, rotationDegrees: Int, out: DetectionBatch, decodeBox: Boolean): Float {
+        out.clear()
+        val box = if (decodeBox) out.boxes else null
+        val score = detectPresence(srcBitmap, rotationDegrees, box)
+        if (box != null && box[2] > box[0] && box[3] > box[1]) out.commit(score)
+        return score
     }
 
+    /** Anchor của lần [detectPresence] gần nhất (-1 nếu output rỗng) */
+    var lastPresenceAnchor: Int = -1
+        private set
+
+    /** Hình học letterbox của frame vừa detect (chỉ đọc trên cùng thread với detect) */
+    fun getLetterboxTransform(): LetterboxTransform = letterboxTransform
 
     /**
-     * Decode tensor [5 x N] → (boxes in input-space, scores)
-     * 5 kênh = [cx, cy, w, h, conf].
-     * Tự dò xem toạ độ có chuẩn hoá 0..1 hay đã là pixel (≤1.2 ⇒ coi là chuẩn hoá).
+     * Tiền xử lý 1 frame vào input buffer tái sử dụng (đã rewind), theo dtype input của model.
+     * Mặc định dùng [LetterboxResampler]; [useCanvasLetterbox] chuyển về Canvas để so sánh.
      */
-    private fun decodeYoloOutputs(
-        out: FloatArray,
-        inputW: Int,
-        inputH: Int,
-        confTh: Float,
-    ): Pair<List<RectF>, List<Float>> {
-        val C = 5
-        val N = out.size / C
-        if (N <= 0) return emptyList<RectF>() to emptyList()
+    fun prepareInput(srcBitmap: Bitmap, rotationDegrees: Int): ByteBuffer {
+        val sm = stageMetrics
+        var t = System.nanoTime()
+        letterboxTransform.update(srcBitmap.width, srcBitmap.height, rotationDegrees, inputSize, inputSize)
+        val uint8 = inputTensorType != null && inputTensorType != org.tensorflow.lite.DataType.FLOAT32
+        if (useCanvasLetterbox) {
+            val letter = letterboxRotated(srcBitmap, letterboxTransform)
+            if (sm != null) t = lap(sm, "letterbox", t)
+            val bb = if (uint8) toByteBufferUINT8(letter) else toFloatBuffer(letter)
+            if (sm != null) lap(sm, "input", t)
+            return bb
+        }
+        val pixels = readPixels(srcBitmap)
+        if (sm != null) t = lap(sm, "pixels", t)
+        resampler.update(letterboxTransform)
+        val bb = reusableInputBuffer(inputSize * inputSize * 3 * (if (uint8) 1 else 4))
+        val pool = bandPool
+        if (uint8) resampler.resample(pixels, bb, 0, pool) else resampler.resample(pixels, reusedInputFloats!!, 0, pool)
+        if (sm != null) lap(sm, "resample", t)
+        return bb
+    }
 
-        // Đoán normalized?
-        var isNormalized = false
-        run {
-            var maxVal = 0f
-            var checked = 0
-            val start = 0
-            val end = min(N, 200)
-            for (i in start until end) {
-                maxVal = max(maxVal, out[i])
-                maxVal = max(maxVal, out[N + i])
-                maxVal = max(maxVal, out[2 * N + i])
-                maxVal = max(maxVal, out[3 * N + i])
-                checked++
-            }
-            isNormalized = maxVal <= 1.2f
+    /** Bitmap nguồn → mảng ARGB tái sử dụng */
+    private fun readPixels(bmp: Bitmap): IntArray {
+        val n = bmp.width * bmp.height
+        if (srcPixels.size != n) srcPixels = IntArray(n)
+        readPixelsInto(bmp, srcPixels)
+        return srcPixels
+    }
+
+    /** getPixels theo dải hàng (song song nếu có [bandPool]) */
+    private fun readPixelsInto(bmp: Bitmap, dst: IntArray) {
+        bandBitmap = bmp
+        bandPixels = dst
+        try {
+            runBands(bmp.height, bmp.width, readRows)
+        } finally {
+            bandBitmap = null
         }
+    }
 
-        val boxes = ArrayList<RectF>(64)
-        val scores = ArrayList<Float>(64)
+    private fun runBands(rows: Int, workPerRow: Int, task: BandPool.BandTask) {
+        val pool = bandPool
+        if (pool != null) pool.run(rows, workPerRow, task) else task.run(0, rows)
+    }
 
-        for (i in 0 until N) {
-            val conf = out[4 * N + i]
-            if (conf < confTh) continue
+    private fun lap(sm: PipelineMetrics, stage: String, since: Long): Long {
+        val now = System.nanoTime()
+        sm.record(stage, (now - since) / 1e6f)
+        return now
+    }
 
-            var cx = out[0 * N + i]
-            var cy = out[1 * N + i]
-            var w  = out[2 * N + i]
-            var h  = out[3 * N + i]
+    /**
+     * Chế độ tiled cho spike nhỏ/xa: chia ảnh đứng thành [tileCount] tile chồng lấn,
+     * letterbox từng tile vào 1 input batch [tileCount, S, S, 3] và chạy 1 lần;
+     * box map về toạ độ ảnh đứng rồi NMS chéo tile, ghi vào [out] (trả về [out]).
+     * Dùng interpreter riêng (batch cố định, CPU) để không phải resize qua lại giữa 1 và N
+     * trên interpreter chính mỗi frame — delegate GPU/NNAPI không chia sẻ được giữa 2 interpreter.
+     */
+    @JvmOverloads
+    fun detectTiled(
+        srcBitmap: Bitmap,
+        rotationDegrees: Int,
+        tileCount: Int,
+        iouThresh: Float = 0.45f,
+        topK: Int = 50,
+        out: DetectionBatch = results
+    ): DetectionBatch {
+        require(tileCount >= 1) { "tileCount must be >= 1" }
+        out.clear()
+        val itp = ensureTileInterpreter(tileCount) ?: return out
+        val size = tileInputSize
+
+        // 1) Layout tile trên ảnh đứng
+        val swap = rotationDegrees == 90 || rotationDegrees == 270
+        val uprightW = if (swap) srcBitmap.height else srcBitmap.width
+        val uprightH = if (swap) srcBitmap.width else srcBitmap.height
+        tileLayout.update(uprightW, uprightH, tileCount)
+        if (tileTransforms.size != tileCount) {
+            tileTransforms = Array(tileCount) { LetterboxTransform() }
+            tileResamplers = Array(tileCount) { LetterboxResampler() }
+        }
 
-            if (isNormalized) {
-                cx *= inputW
-                cy *= inputH
-                w  *= inputW
-                h  *= inputH
+        // 2) Letterbox từng tile vào vùng riêng của input batch
+        val uint8 = inputTensorType != null && inputTensorType != org.tensorflow.lite.DataType.FLOAT32
+        val bytesPerTile = size * size * 3 * (if (uint8) 1 else 4)
+        val batch = tileInputBuffer?.takeIf { it.capacity() == bytesPerTile * tileCount }
+            ?: ByteBuffer.allocateDirect(bytesPerTile * tileCount).order(ByteOrder.nativeOrder())
+                .also { tileInputBuffer = it; tileInputFloats = it.asFloatBuffer() }
+        batch.rewind()
+        val rects = tileLayout.rects
+        val canvas = useCanvasLetterbox
+        val pixels = if (canvas) null else readPixels(srcBitmap)
+        for (t in 0 until tileCount) {
+            val tr = tileTransforms[t]
+            tr.update(srcBitmap.width, srcBitmap.height, rotationDegrees, size, size,
+                rects[4 * t], rects[4 * t + 1], rects[4 * t + 2], rects[4 * t + 3])
+            if (pixels == null) {
+                val letter = letterboxRotated(srcBitmap, tr)
+                if (uint8) putUint8Pixels(letter, batch) else putFloatPixels(letter, batch)
+            } else {
+                // Mỗi tile 1 bảng hệ số riêng, ghi vào vùng của nó trong batch (put tuyệt đối)
+                val rs = tileResamplers[t]
+                rs.update(tr)
+                if (uint8) rs.resample(pixels, batch, t * bytesPerTile, bandPool)
+                else rs.resample(pixels, tileInputFloats!!, t * bytesPerTile / 4, bandPool)
             }
+        }
+        batch.rewind()
+
+        // 3) Một lần chạy cho cả batch: output [T, 5, N]
+        tileOutput.prepare(itp)
+        itp.runForMultipleInputsOutputs(arrayOf<Any>(batch), tileOutput.map)
+        val outArr = tileOutput.flatten()
+
+        // 4) Decode từng tile → toạ độ ảnh đứng, rồi NMS chung
+        val perTile = outArr.size / tileCount
+        for (t in 0 until tileCount) {
+            val from = out.size
+            decodeInto(outArr, size, size, confThreshold, t * perTile, perTile, out)
+            val boxes = out.boxes
+            for (i in from until out.size) tileTransforms[t].inputBoxToUpright(boxes, 4 * i)
+        }
+        out.nms(iouThresh, topK)
+        return out
+    }
 
-            val left = (cx - w / 2f).coerceIn(0f, inputW.toFloat())
-            val top  = (cy - h / 2f).coerceIn(0f, inputH.toFloat())
-            val right = (cx + w / 2f).coerceIn(0f, inputW.toFloat())
-            val bottom = (cy + h / 2f).coerceIn(0f, inputH.toFloat())
-
-            if (right > left && bottom > top) {
-                boxes.add(RectF(left, top, right, bottom))
-                scores.add(conf)
+    /** Tạo (hoặc giữ) interpreter tiled với batch = tileCount, input = inputSize hiện tại */
+    private fun ensureTileInterpreter(tileCount: Int): Interpreter? {
+        val existing = tileInterpreter
+        if (existing != null && tileBatch == tileCount && tileInputSize == inputSize) return existing
+        closeTileInterpreter()
+        if (tileFailedBatch == tileCount && tileFailedInputSize == inputSize) return null
+        val buffer = modelBuffer ?: error("Call initialize() first")
+        var itp: Interpreter? = null
+        return try {
+            val opts = Interpreter.Options().apply {
+                setUseXNNPACK(true)
+                setNumThreads(max(1, numThreads))
             }
+            val created = Interpreter(buffer, opts)
+            itp = created
+            created.resizeInput(0, intArrayOf(tileCount, inputSize, inputSize, 3))
+            created.allocateTensors()
+            tileInterpreter = created
+            tileBatch = tileCount
+            tileInputSize = inputSize
+            Log.i(TAG, "Tile interpreter ready: batch=$tileCount, input=$inputSize")
+            created
+        } catch (t: Throwable) {
+            // Model không nhận batch/input này: đóng interpreter dở dang, nhớ cấu hình để khỏi thử lại
+            runCatching { itp?.close() }
+            tileFailedBatch = tileCount
+            tileFailedInputSize = inputSize
+            Log.w(TAG, "Tiled mode unavailable (batch=$tileCount, input=$inputSize): ${t.message}")
+            null
         }
-        return boxes to scores
     }
 
-    /** Map box từ input(448) -> ảnh gốc (bỏ padding) */
-    private fun mapToOriginal(b: RectF, info: LetterboxInfo): RectF {
-        val x0 = (b.left   - info.padX) / info.ratio
-        val y0 = (b.top    - info.padY) / info.ratio
-        val x1 = (b.right  - info.padX) / info.ratio
-        val y1 = (b.bottom - info.padY) / info.ratio
+    private fun closeTileInterpreter() {
+        runCatching { tileInterpreter?.close() }
+        tileInterpreter = null
+        tileBatch = 0
+        tileInputSize = 0
+        tileInputBuffer = null
+        tileInputFloats = null
+        tileOutput.clear()
+    }
+
+
+    /**
+     * Decode tensor [5 x N] → box ở không gian input + score, nối vào [out] (không tạo object mỗi box).
+     * 5 kênh = [cx, cy, w, h, conf].
+     * Tự dò xem toạ độ có chuẩn hoá 0..1 hay đã là pixel (≤1.2 ⇒ coi là chuẩn hoá).
+     * base/length: đoạn của 1 phần tử batch trong output phẳng (chế độ tiled).
+     */
+    private fun decodeInto(
+        out: FloatArray,
+        inputW: Int,
+        inputH: Int,
+        confTh: Float,
+        base: Int,
+        length: Int,
+        dst: DetectionBatch
+    ) {
+        val n = length / YoloDecode.CHANNELS
+        if (n <= 0) return
+
+        // Đoán normalized?
+        val isNormalized = YoloDecode.looksNormalized(out, base, n)
 
-        val l = x0.coerceIn(0f, (info.srcW - 1).toFloat())
-        val t = y0.coerceIn(0f, (info.srcH - 1).toFloat())
-        val r = x1.coerceIn(0f, (info.srcW - 1).toFloat())
-        val btm = y1.coerceIn(0f, (info.srcH - 1).toFloat())
-        return RectF(l, t, r, btm)
+        for (i in 0 until n) {
+            val conf = YoloDecode.conf(out, base, n, i)
+            if (conf < confTh) continue
+            dst.ensureCapacity(dst.size + 1)
+            // Box suy biến (rộng / cao ≤ 0 sau khi kẹp) không được commit → vị trí bị ghi đè ở box sau
+            if (YoloDecode.decodeAnchor(out, base, n, i, isNormalized, inputW, inputH, dst.boxes, 4 * dst.size)) {
+                dst.commit(conf)
+            }
+        }
     }
 
     // ---------------- GPU/NNAPI via Reflection ----------------
@@ -405,7 +747,13 @@ class TFLiteYoloDetector(
 
     // ---------------- Helpers ----------------
 
+    /** Tên asset, hoặc đường dẫn tuyệt đối tới file trong storage (mmap chỉ đọc, xem [ModelCatalog]) */
     private fun loadModelFile(assetName: String): ByteBuffer {
+        if (ModelCatalog.isFile(assetName)) {
+            RandomAccessFile(assetName, "r").use { raf ->
+                return raf.channel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+            }
+        }
         context.assets.open(assetName).use { input ->
             val bytes = input.readBytes()
             val bb = ByteBuffer.allocateDirect(bytes.size)
@@ -416,91 +764,160 @@ class TFLiteYoloDetector(
         }
     }
 
-    /** Letterbox (giữ tỉ lệ) về (dstW x dstH) */
-    private fun letterbox(src: Bitmap, dstW: Int, dstH: Int): Bitmap {
-        val ratio = minOf(dstW.toFloat() / src.width, dstH.toFloat() / src.height)
-        val newW = (src.width * ratio).roundToInt()
-        val newH = (src.height * ratio).roundToInt()
-
-        val out = Bitmap.createBitmap(dstW, dstH, Bitmap.Config.ARGB_8888)
-        val canvas = Canvas(out)
+    /**
+     * Xoay + letterbox trong 1 lần resample (Matrix từ [LetterboxTransform]),
+     * ghi vào bitmap đích tái sử dụng — không tạo bản scaled trung gian.
+     */
+    private fun letterboxRotated(src: Bitmap, t: LetterboxTransform): Bitmap {
+        val out = letterboxBitmap?.takeIf { it.width == t.dstW && it.height == t.dstH }
+            ?: Bitmap.createBitmap(t.dstW, t.dstH, Bitmap.Config.ARGB_8888).also {
+                letterboxBitmap = it
+                letterboxCanvas = Canvas(it)
+            }
+        val canvas = letterboxCanvas!!
         canvas.drawColor(Color.BLACK)
 
-        val left = ((dstW - newW) / 2f)
-        val top  = ((dstH - newH) / 2f)
-        val rect = RectF(left, top, left + newW, top + newH)
-        val paint = Paint(Paint.ANTI_ALIAS_FLAG or Paint.FILTER_BITMAP_FLAG)
-        canvas.drawBitmap(Bitmap.createScaledBitmap(src, newW, newH, true), null, rect, paint)
+        t.srcToInputAffine(affineValues)
+        affineValues[6] = 0f; affineValues[7] = 0f; affineValues[8] = 1f
+        letterboxMatrix.setValues(affineValues)
+        // Clip vào vùng nội dung để phần ngoài crop (tile) không lấn vào pad
+        canvas.save()
+        canvas.clipRect(t.padX, t.padY, t.dstW - t.padX, t.dstH - t.padY)
+        canvas.drawBitmap(src, letterboxMatrix, letterboxPaint)
+        canvas.restore()
         return out
     }
 
-    /** Letterbox trả thêm info để map ngược */
-    private fun letterboxWithInfo(src: Bitmap, dstW: Int, dstH: Int): Pair<Bitmap, LetterboxInfo> {
-        val ratio = minOf(dstW.toFloat() / src.width, dstH.toFloat() / src.height)
-        val newW = (src.width * ratio).roundToInt()
-        val newH = (src.height * ratio).roundToInt()
-        val padX = (dstW - newW) / 2f
-        val padY = (dstH - newH) / 2f
-
-        val out = Bitmap.createBitmap(dstW, dstH, Bitmap.Config.ARGB_8888)
-        val canvas = Canvas(out)
-        canvas.drawColor(Color.BLACK)
-
-        val rect = RectF(padX, padY, padX + newW, padY + newH)
-        val paint = Paint(Paint.ANTI_ALIAS_FLAG or Paint.FILTER_BITMAP_FLAG)
-        canvas.drawBitmap(Bitmap.createScaledBitmap(src, newW, newH, true), null, rect, paint)
+    /** Chuẩn hoá [0..1], NHWC float32, RGB */
+    private fun toFloatBuffer(bmp: Bitmap): ByteBuffer {
+        val bb = reusableInputBuffer(4 * bmp.width * bmp.height * 3)
+        putFloatPixels(bmp, bb)
+        bb.rewind()
+        return bb
+    }
 
-        val info = LetterboxInfo(ratio, padX, padY, src.width, src.height, dstW, dstH)
-        return out to info
+    /** Ghi pixel bmp dạng float RGB [0..1] vào bb từ vị trí hiện tại (dùng chung cho batch tile) */
+    private fun putFloatPixels(bmp: Bitmap, bb: ByteBuffer) {
+        putPixels(bmp, bb, 12, floatRows)
     }
 
-    /** Chuẩn hoá [0..1], NHWC float32, RGB */
-    private fun toFloatBuffer(bmp: Bitmap): ByteBuffer {
+    /** Đọc pixel rồi ghi theo dải hàng bằng put tuyệt đối từ position hiện tại, cuối cùng dời position qua vùng đã ghi */
+    private fun putPixels(bmp: Bitmap, bb: ByteBuffer, bytesPerPixel: Int, rows: BandPool.BandTask) {
         val w = bmp.width
         val h = bmp.height
-        val bb = ByteBuffer.allocateDirect(4 * w * h * 3)
-        bb.order(ByteOrder.nativeOrder())
-
-        val pixels = IntArray(w * h)
-        bmp.getPixels(pixels, 0, w, 0, 0, w, h)
+        val pixels = pixelsFor(w * h)
+        readPixelsInto(bmp, pixels)
+        bandBitmap = bmp
+        bandOut = bb
+        bandBase = bb.position()
+        try {
+            runBands(h, w, rows)
+        } finally {
+            bandBitmap = null
+            bandOut = null
+        }
+        bb.position(bandBase + w * h * bytesPerPixel)
+    }
 
-        var idx = 0
-        for (y in 0 until h) {
+    private fun putFloatRows(from: Int, to: Int) {
+        val w = bandBitmap!!.width
+        val bb = bandOut!!
+        val pixels = bandPixels
+        var idx = from * w
+        var o = bandBase + idx * 12
+        for (y in from until to) {
             for (x in 0 until w) {
                 val c = pixels[idx++]
-                val r = (c shr 16 and 0xFF) / 255f
-                val g = (c shr 8  and 0xFF) / 255f
-                val b = (c        and 0xFF) / 255f
-                bb.putFloat(r); bb.putFloat(g); bb.putFloat(b)
+                bb.putFloat(o, (c shr 16 and 0xFF) / 255f)
+                bb.putFloat(o + 4, (c shr 8  and 0xFF) / 255f)
+                bb.putFloat(o + 8, (c        and 0xFF) / 255f)
+                o += 12
             }
         }
-        bb.rewind()
-        return bb
     }
 
     /** Trường hợp input là UINT8 (hiếm) */
     private fun toByteBufferUINT8(bmp: Bitmap): ByteBuffer {
-        val w = bmp.width
-        val h = bmp.height
-        val bb = ByteBuffer.allocateDirect(w * h * 3)
-        bb.order(ByteOrder.nativeOrder())
+        val bb = reusableInputBuffer(bmp.width * bmp.height * 3)
+        putUint8Pixels(bmp, bb)
+        bb.rewind()
+        return bb
+    }
 
-        val pixels = IntArray(w * h)
-        bmp.getPixels(pixels, 0, w, 0, 0, w, h)
+    private fun putUint8Pixels(bmp: Bitmap, bb: ByteBuffer) {
+        putPixels(bmp, bb, 3, uint8Rows)
+    }
 
-        var idx = 0
-        for (y in 0 until h) {
+    private fun putUint8Rows(from: Int, to: Int) {
+        val w = bandBitmap!!.width
+        val bb = bandOut!!
+        val pixels = bandPixels
+        var idx = from * w
+        var o = bandBase + idx * 3
+        for (y in from until to) {
             for (x in 0 until w) {
                 val c = pixels[idx++]
-                bb.put((c shr 16 and 0xFF).toByte())
-                bb.put((c shr 8  and 0xFF).toByte())
-                bb.put((c        and 0xFF).toByte())
+                bb.put(o, (c shr 16 and 0xFF).toByte())
+                bb.put(o + 1, (c shr 8  and 0xFF).toByte())
+                bb.put(o + 2, (c        and 0xFF).toByte())
+                o += 3
             }
         }
+    }
+
+    private fun reusableInputBuffer(bytes: Int): ByteBuffer {
+        val bb = reusedInput?.takeIf { it.capacity() == bytes }
+            ?: ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder()).also {
+                reusedInput = it
+                reusedInputFloats = it.asFloatBuffer()
+            }
         bb.rewind()
         return bb
     }
 
+    private fun pixelsFor(n: Int): IntArray {
+        if (pixelScratch.size != n) pixelScratch = IntArray(n)
+        return pixelScratch
+    }
+
+    /** Output container (theo shape) + bản phẳng, tạo lại chỉ khi shape output đổi */
+    private inner class OutputSlot {
+        private var shape: IntArray? = null
+        private var container: Any? = null
+        private var flat = FloatArray(0)
+        val map: MutableMap<Int, Any> = HashMap()
+
+        fun prepare(itp: Interpreter) {
+            val t = itp.getOutputTensor(0)
+            val s = t.shape()
+            if (container != null && s.contentEquals(shape)) return
+            val c = makeOutputContainer(s, t.dataType())
+            shape = s
+            container = c
+            flat = FloatArray(s.fold(1) { acc, d -> acc * d })
+            map[0] = c
+        }
+
+        fun flatten(): FloatArray {
+            flattenInto(container!!, flat, 0)
+            return flat
+        }
+
+        fun clear() {
+            shape = null
+            container = null
+            flat = FloatArray(0)
+            map.clear()
+        }
+    }
+
+    /** Chép mảng lồng nhau vào dst (không cấp phát), trả về vị trí ghi tiếp theo */
+    private fun flattenInto(x: Any, dst: FloatArray, pos: Int): Int = when (x) {
+        is FloatArray -> { System.arraycopy(x, 0, dst, pos, x.size); pos + x.size }
+        is Array<*> -> x.fold(pos) { p, e -> flattenInto(e!!, dst, p) }
+        else -> error("Unsupported element type in output container: ${x::class}")
+    }
+
     /** Tạo container mảng lồng nhau theo shape để TFLite copyTo() hợp lệ */
     private fun makeOutputContainer(shape: IntArray, dtype: org.tensorflow.lite.DataType): Any {
         require(dtype == org.tensorflow.lite.DataType.FLOAT32) {
@@ -530,41 +947,6 @@ class TFLiteYoloDetector(
         return out.toFloatArray()
     }
 
-    // ---------------- NMS helpers ----------------
-
-    private fun iou(a: RectF, b: RectF): Float {
-        val interLeft = max(a.left, b.left)
-        val interTop = max(a.top, b.top)
-        val interRight = min(a.right, b.right)
-        val interBottom = min(a.bottom, b.bottom)
-        val interW = max(0f, interRight - interLeft)
-        val interH = max(0f, interBottom - interTop)
-        val inter = interW * interH
-        val union = a.width() * a.height() + b.width() * b.height() - inter
-        return if (union <= 0f) 0f else inter / union
-    }
-
-    private fun nms(
-        detections: List<Detection>,
-        iouThresh: Float = 0.45f,
-        topK: Int = 50
-    ): List<Detection> {
-        if (detections.isEmpty()) return emptyList()
-        val sorted = detections.sortedByDescending { it.score }.toMutableList()
-        val keep = ArrayList<Detection>(min(topK, sorted.size))
-
-        while (sorted.isNotEmpty() && keep.size < topK) {
-            val best = sorted.removeAt(0)
-            keep.add(best)
-            val it = sorted.iterator()
-            while (it.hasNext()) {
-                val d = it.next()
-                if (iou(best.box, d.box) > iouThresh) it.remove()
-            }
-        }
-        return keep
-    }
-
     companion object {
         private const val TAG = "YoloDetector"
     }
@@ -0,0 +1,34 @@
+package com.example.spiketimer.yolo
+
+import java.io.File
+
+/**
+ * Liệt kê thread (tid) của process theo tên qua /proc/self/task/&lt;tid&gt;/comm.
+ * Dùng để tìm luồng worker mà interpreter TFLite/XNNPACK tạo trong native: thread mới kế thừa tên (comm,
+ * tối đa 15 ký tự) của thread tạo ra nó, nên worker của interpreter init trên "spike-analysis" cũng tên "spike-analysis".
+ * Không phụ thuộc Android để test trên JVM (truyền thư mục giả cho [root]).
+ */
+class TaskScanner @JvmOverloads constructor(
+    private val root: File = File("/proc/self/task")
+) {
+    /** tid có comm trùng [name] (so theo 15 ký tự đầu như kernel), trừ các tid trong [exclude] */
+    @JvmOverloads
+    fun tidsNamed(name: String, exclude: IntArray = IntArray(0)): IntArray {
+        val want = name.take(COMM_MAX)
+        val dirs = root.listFiles() ?: return IntArray(0)
+        val out = ArrayList<Int>()
+        for (d in dirs) {
+            val tid = d.name.toIntOrNull() ?: continue
+            if (tid in exclude) continue
+            // Thread có thể vừa thoát giữa listFiles và đọc comm
+            val comm = runCatching { File(d, "comm").readText().trimEnd('\n') }.getOrNull() ?: continue
+            if (comm == want) out.add(tid)
+        }
+        out.sort()
+        return out.toIntArray()
+    }
+
+    companion object {
+        const val COMM_MAX = 15
+    }
+}
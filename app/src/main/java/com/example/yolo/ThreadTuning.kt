@@ -0,0 +1,137 @@
+package com.example.spiketimer.yolo
+
+import android.content.Context
+import android.os.Build
+import android.os.PerformanceHintManager
+import android.os.Process
+import android.util.Log
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * ThreadFactory cho luồng pipeline: đặt priority Linux (vd. [Process.THREAD_PRIORITY_URGENT_DISPLAY]) ngay khi
+ * thread chạy và ghi lại tid để đưa vào phiên performance hint. Thread tạo từ thread này (worker native của
+ * interpreter) kế thừa priority lúc được tạo.
+ * Tên thread ≤ 15 ký tự để comm trong /proc không bị cắt (xem [TaskScanner]).
+ */
+class PriorityThreadFactory(
+    val name: String,
+    val priority: Int
+) : ThreadFactory {
+    private val count = AtomicInteger()
+    private val tids = CopyOnWriteArrayList<Int>()
+
+    override fun newThread(r: Runnable): Thread {
+        val n = count.incrementAndGet()
+        return Thread({
+            val tid = Process.myTid()
+            setPriority(tid, priority)
+            tids.add(tid)
+            try {
+                r.run()
+            } finally {
+                tids.remove(tid)
+            }
+        }, if (n == 1) name else "$name-$n")
+    }
+
+    /** tid các thread đang sống của factory */
+    fun tids(): IntArray = tids.toIntArray()
+
+    companion object {
+        private const val TAG = "ThreadTuning"
+
+        /** Đặt priority cho [tid] (thread cùng process); false nếu hệ thống từ chối */
+        @JvmStatic
+        fun setPriority(tid: Int, priority: Int): Boolean = try {
+            Process.setThreadPriority(tid, priority)
+            true
+        } catch (e: Exception) {
+            // SecurityException (ROM chặn nice âm) hoặc IllegalArgumentException (thread đã thoát)
+            Log.w(TAG, "setThreadPriority($tid, $priority) failed: ${e.message}")
+            false
+        }
+    }
+}
+
+/**
+ * Phiên PerformanceHintManager (API 31+) cho vòng phân tích: báo thời lượng mục tiêu + thực tế mỗi frame
+ * để scheduler nâng xung / đặt thread lên core lớn trước khi frame kế tiếp tới, thay vì đợi governor CPU
+ * phát hiện tải. Máy cũ hoặc không có HAL power → mọi hàm là no-op ([isActive] = false).
+ * [setEnabled] tắt / bật lại phiên tại chỗ (giữ tid + ngân sách) để so A/B jitter, xem [HintJitterAb].
+ * Mọi hàm (kể cả [close]) gọi trên analysis thread; mỗi hàm tự kiểm SDK_INT trước khi chạm API 31.
+ */
+class FrameHintSession(context: Context) {
+    private val manager: PerformanceHintManager? =
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) context.getSystemService(PerformanceHintManager::class.java) else null
+    private var session: PerformanceHintManager.Session? = null
+    private var targetNs = 0L
+    private var tids = IntArray(0)
+    private var enabled = true
+
+    fun isActive(): Boolean = session != null
+
+    /** Đặt [tids] cho phiên (tạo mới nếu chưa có); trả về true nếu phiên đang chạy. Đang tắt → chỉ ghi nhớ */
+    fun setThreads(tids: IntArray, targetMs: Float): Boolean {
+        this.tids = tids
+        targetNs = (targetMs * 1e6f).toLong()
+        if (!enabled || Build.VERSION.SDK_INT < Build.VERSION_CODES.S) return false
+        if (manager == null || tids.isEmpty()) return false
+        val s = session
+        if (s != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+            try {
+                s.setThreads(tids)
+                s.updateTargetWorkDuration(targetNs)
+                return true
+            } catch (e: Exception) {
+                // tid đã chết / không thuộc process → tạo phiên mới
+                Log.w(TAG, "Hint setThreads failed: ${e.message}")
+            }
+        }
+        close()
+        session = try {
+            manager.createHintSession(tids, targetNs)
+        } catch (e: Exception) {
+            Log.w(TAG, "Hint session unavailable: ${e.message}")
+            null
+        }
+        return session != null
+    }
+
+    /** Ngân sách mỗi frame đổi (governor đổi nấc) */
+    fun updateTarget(targetMs: Float) {
+        val ns = (targetMs * 1e6f).toLong()
+        if (ns == targetNs) return
+        targetNs = ns
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) return
+        try { session?.updateTargetWorkDuration(ns) } catch (e: Exception) { Log.w(TAG, "Hint target failed: ${e.message}") }
+    }
+
+    /** Thời lượng thực tế của 1 frame đã làm việc */
+    fun reportActual(actualNs: Long) {
+        if (actualNs <= 0L || Build.VERSION.SDK_INT < Build.VERSION_CODES.S) return
+        try { session?.reportActualWorkDuration(actualNs) } catch (e: Exception) { close() }
+    }
+
+    fun targetMs(): Float = targetNs / 1e6f
+
+    /** Tắt (đóng phiên, giữ tid + ngân sách) / bật lại (tạo phiên với tid đã nhớ); gọi lặp lại cùng giá trị là no-op */
+    fun setEnabled(on: Boolean) {
+        if (on == enabled) return
+        enabled = on
+        if (on) setThreads(tids, targetMs()) else close()
+    }
+
+    fun close() {
+        // Phiên chỉ tồn tại từ API 31; kiểm SDK_INT để lint (minSdk 24) thấy lời gọi đã được chặn
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            try { session?.close() } catch (_: Exception) {}
+        }
+        session = null
+    }
+
+    companion object {
+        private const val TAG = "FrameHintSession"
+    }
+}
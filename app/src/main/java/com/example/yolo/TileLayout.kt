@@ -0,0 +1,69 @@
+package com.example.spiketimer.yolo
+
+import kotlin.math.abs
+import kotlin.math.ln
+
+/**
+ * Chia ảnh đứng (w×h) thành lưới tile chồng lấn cho chế độ tiled.
+ * Lưới cols×rows (cols·rows = tileCount) chọn sao cho tile gần vuông nhất → letterbox tile ít pad.
+ * rects = [x, y, w, h] liên tiếp cho từng tile, toạ độ ảnh đứng.
+ */
+class TileLayout {
+    var count = 0; private set
+    var cols = 0; private set
+    var rows = 0; private set
+    var rects = FloatArray(0); private set
+
+    private var lastW = -1
+    private var lastH = -1
+    private var lastTiles = -1
+    private var lastOverlap = -1f
+
+    /** Trả về true nếu layout thay đổi */
+    @JvmOverloads
+    fun update(w: Int, h: Int, tileCount: Int, overlap: Float = DEFAULT_OVERLAP): Boolean {
+        require(tileCount >= 1) { "tileCount must be >= 1" }
+        require(overlap in 0f..0.9f) { "overlap must be in [0, 0.9]" }
+        if (w == lastW && h == lastH && tileCount == lastTiles && overlap == lastOverlap) return false
+        lastW = w; lastH = h; lastTiles = tileCount; lastOverlap = overlap
+
+        // Chọn lưới cho tile gần vuông nhất
+        var bestCols = tileCount
+        var bestScore = Float.MAX_VALUE
+        for (c in 1..tileCount) {
+            if (tileCount % c != 0) continue
+            val r = tileCount / c
+            val tw = spanLength(w.toFloat(), c, overlap)
+            val th = spanLength(h.toFloat(), r, overlap)
+            val score = abs(ln(tw / th))
+            if (score < bestScore) { bestScore = score; bestCols = c }
+        }
+        cols = bestCols
+        rows = tileCount / bestCols
+        count = tileCount
+
+        val tw = spanLength(w.toFloat(), cols, overlap)
+        val th = spanLength(h.toFloat(), rows, overlap)
+        val strideX = if (cols > 1) (w - tw) / (cols - 1) else 0f
+        val strideY = if (rows > 1) (h - th) / (rows - 1) else 0f
+        if (rects.size != count * 4) rects = FloatArray(count * 4)
+        var k = 0
+        for (r in 0 until rows) {
+            for (c in 0 until cols) {
+                rects[k++] = c * strideX
+                rects[k++] = r * strideY
+                rects[k++] = tw
+                rects[k++] = th
+            }
+        }
+        return true
+    }
+
+    companion object {
+        const val DEFAULT_OVERLAP = 0.2f
+
+        /** Độ dài 1 tile để n tile chồng lấn [overlap] phủ vừa [total] */
+        private fun spanLength(total: Float, n: Int, overlap: Float): Float =
+            if (n <= 1) total else total / (n - (n - 1) * overlap)
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.spiketimer.yolo
+
+import java.util.Locale
+
+/**
+ * Theo dõi latency từng vòng warmup và quyết định khi nào detector "sẵn sàng":
+ * đã chạy ít nhất [minIterations] vòng và [window] vòng cuối lệch nhau không quá
+ * [tolerance] (tương đối so với median của cửa sổ). Chạm [maxIterations] thì dừng dù chưa ổn định.
+ * Không phụ thuộc Android để test trên JVM.
+ */
+class WarmupTracker @JvmOverloads constructor(
+    val minIterations: Int = 3,
+    val maxIterations: Int = 12,
+    val window: Int = 3,
+    val tolerance: Float = 0.15f
+) {
+    init {
+        require(window >= 2) { "window must be >= 2" }
+        require(minIterations >= window) { "minIterations must be >= window" }
+        require(maxIterations >= minIterations) { "maxIterations must be >= minIterations" }
+    }
+
+    private val samples = FloatArray(maxIterations)
+    private var count = 0
+    private var stable = false
+
+    /** Ghi latency 1 vòng. Trả về true khi nên dừng warmup (ổn định hoặc hết số vòng). */
+    fun add(ms: Float): Boolean {
+        if (isFinished()) return true
+        samples[count++] = ms
+        if (count >= minIterations) stable = windowSpread() <= tolerance
+        return isFinished()
+    }
+
+    fun isFinished(): Boolean = stable || count >= maxIterations
+
+    /** Latency đã ổn định (chứ không phải dừng vì hết vòng) */
+    fun isStable(): Boolean = stable
+
+    fun iterations(): Int = count
+
+    fun latencies(): FloatArray = samples.copyOf(count)
+
+    fun firstMs(): Float = if (count > 0) samples[0] else Float.NaN
+
+    /** Median của cửa sổ cuối — ước lượng latency steady-state */
+    fun steadyMs(): Float {
+        if (count == 0) return Float.NaN
+        val n = minOf(window, count)
+        val w = samples.copyOfRange(count - n, count)
+        w.sort()
+        return w[n / 2]
+    }
+
+    fun reset() {
+        count = 0
+        stable = false
+    }
+
+    fun summary(): String = String.format(
+        Locale.US, "%d it, first %.1f → %.1f ms%s",
+        count, firstMs(), steadyMs(), if (stable) "" else " (unstable)"
+    )
+
+    private fun windowSpread(): Float {
+        var lo = Float.MAX_VALUE
+        var hi = -Float.MAX_VALUE
+        for (i in count - window until count) {
+            lo = minOf(lo, samples[i])
+            hi = maxOf(hi, samples[i])
+        }
+        val median = steadyMs()
+        return if (median > 0f) (hi - lo) / median else 0f
+    }
+}
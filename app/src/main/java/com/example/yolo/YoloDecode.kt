@@ -0,0 +1,65 @@
+package com.example.spiketimer.yolo
+
+/**
+ * Đọc output YOLO 1 lớp dạng phẳng [5 x N] (kênh: cx, cy, w, h, conf; kênh c của anchor i ở base + c·N + i).
+ * Chế độ "presence" chỉ quét kênh conf để lấy anchor mạnh nhất, decode đúng 1 box khi cần —
+ * không decode mọi anchor, không tạo RectF, không NMS.
+ * Không phụ thuộc Android để test trên JVM.
+ */
+object YoloDecode {
+    const val CHANNELS = 5
+    const val CONF = 4
+
+    /** Toạ độ chuẩn hoá 0..1 hay đã là pixel: xét tối đa 200 anchor đầu, mọi toạ độ ≤ 1.2 ⇒ chuẩn hoá */
+    @JvmStatic
+    fun looksNormalized(out: FloatArray, base: Int, n: Int): Boolean {
+        var maxVal = 0f
+        for (i in 0 until minOf(n, 200)) {
+            for (c in 0 until 4) maxVal = maxOf(maxVal, out[base + c * n + i])
+        }
+        return maxVal <= 1.2f
+    }
+
+    /** Anchor có conf cao nhất (-1 nếu không có anchor) — chỉ đọc kênh conf */
+    @JvmStatic
+    fun maxConfAnchor(out: FloatArray, base: Int, n: Int): Int {
+        if (n <= 0) return -1
+        val c = base + CONF * n
+        var best = 0
+        var bestConf = out[c]
+        for (i in 1 until n) {
+            val v = out[c + i]
+            if (v > bestConf) { bestConf = v; best = i }
+        }
+        return best
+    }
+
+    @JvmStatic
+    fun conf(out: FloatArray, base: Int, n: Int, anchor: Int): Float = out[base + CONF * n + anchor]
+
+    /**
+     * Box của [anchor] ở không gian input [inputW]×[inputH] → dst[dstOffset..+3] (l, t, r, b, kẹp trong input).
+     * Trả về false nếu box suy biến (rộng / cao ≤ 0 sau khi kẹp).
+     */
+    @JvmStatic
+    fun decodeAnchor(
+        out: FloatArray, base: Int, n: Int, anchor: Int, normalized: Boolean,
+        inputW: Int, inputH: Int, dst: FloatArray, dstOffset: Int
+    ): Boolean {
+        var cx = out[base + anchor]
+        var cy = out[base + n + anchor]
+        var w = out[base + 2 * n + anchor]
+        var h = out[base + 3 * n + anchor]
+        if (normalized) {
+            cx *= inputW; cy *= inputH
+            w *= inputW; h *= inputH
+        }
+        val l = (cx - w / 2f).coerceIn(0f, inputW.toFloat())
+        val t = (cy - h / 2f).coerceIn(0f, inputH.toFloat())
+        val r = (cx + w / 2f).coerceIn(0f, inputW.toFloat())
+        val b = (cy + h / 2f).coerceIn(0f, inputH.toFloat())
+        dst[dstOffset] = l; dst[dstOffset + 1] = t
+        dst[dstOffset + 2] = r; dst[dstOffset + 3] = b
+        return r > l && b > t
+    }
+}
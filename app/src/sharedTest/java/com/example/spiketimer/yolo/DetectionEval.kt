@@ -0,0 +1,239 @@
+package com.example.spiketimer.yolo
+
+import java.util.Locale
+
+/**
+ * Đánh giá độ chính xác detector trên tập ảnh có nhãn (1 lớp "spike"):
+ * mỗi ảnh ghép dự đoán với ground truth theo score giảm dần (kiểu COCO: mỗi GT chỉ khớp 1 lần,
+ * khớp với GT có IoU cao nhất chưa dùng), lần lượt ở từng ngưỡng IoU trong [matchIous].
+ * Từ đó tính AP (nội suy mọi điểm recall), mAP@0.5 / mAP@0.5:0.95 và precision/recall tại một ngưỡng confidence.
+ * Box dạng mảng phẳng [left, top, right, bottom]* cùng hệ toạ độ với GT (pixel ảnh gốc).
+ * Chỉ dùng khi đánh giá (unit test + DatasetEvalTest) nên nằm ở src/sharedTest, không vào APK.
+ * Không phụ thuộc Android để test trên JVM.
+ */
+class DetectionEval @JvmOverloads constructor(
+    val matchIous: FloatArray = COCO_IOUS
+) {
+    init {
+        require(matchIous.isNotEmpty() && matchIous.size <= 32) { "1..32 IoU thresholds" }
+    }
+
+    private var predScores = FloatArray(256)
+    private var predTp = IntArray(256) // bit i = true positive ở matchIous[i]
+    private var predCount = 0
+    private var gtCount = 0
+    private var images = 0
+
+    fun images(): Int = images
+    fun groundTruths(): Int = gtCount
+    fun predictions(): Int = predCount
+
+    /** Ghi 1 ảnh: [gtN] box GT và [n] dự đoán (score bất kỳ thứ tự) */
+    fun add(gt: FloatArray, gtN: Int, boxes: FloatArray, scores: FloatArray, n: Int) {
+        images++
+        gtCount += gtN
+        val order = (0 until n).sortedByDescending { scores[it] }
+        val used = BooleanArray(gtN * matchIous.size)
+        for (p in order) {
+            var mask = 0
+            for (k in matchIous.indices) {
+                var best = -1
+                var bestIou = matchIous[k]
+                for (g in 0 until gtN) {
+                    if (used[k * gtN + g]) continue
+                    val iou = DetectionBatch.iou(boxes, 4 * p, gt, 4 * g)
+                    if (iou >= bestIou) { bestIou = iou; best = g }
+                }
+                if (best >= 0) {
+                    used[k * gtN + best] = true
+                    mask = mask or (1 shl k)
+                }
+            }
+            push(scores[p], mask)
+        }
+    }
+
+    private fun push(score: Float, mask: Int) {
+        if (predCount == predScores.size) {
+            predScores = predScores.copyOf(predCount * 2)
+            predTp = predTp.copyOf(predCount * 2)
+        }
+        predScores[predCount] = score
+        predTp[predCount] = mask
+        predCount++
+    }
+
+    /** AP ở matchIous[[iouIndex]]: diện tích dưới đường precision (bao trên) theo recall, mọi dự đoán ≥ [minConf] */
+    @JvmOverloads
+    fun averagePrecision(iouIndex: Int, minConf: Float = 0f): Float {
+        if (gtCount == 0) return Float.NaN
+        val order = (0 until predCount).filter { predScores[it] >= minConf }.sortedByDescending { predScores[it] }
+        val m = order.size
+        val precision = FloatArray(m)
+        val recall = FloatArray(m)
+        var tp = 0
+        for ((i, p) in order.withIndex()) {
+            if (predTp[p] and (1 shl iouIndex) != 0) tp++
+            precision[i] = tp.toFloat() / (i + 1)
+            recall[i] = tp.toFloat() / gtCount
+        }
+        // Bao trên của precision từ phải sang trái, rồi cộng theo từng bước recall
+        for (i in m - 2 downTo 0) precision[i] = maxOf(precision[i], precision[i + 1])
+        var ap = 0f
+        var prevRecall = 0f
+        for (i in 0 until m) {
+            if (recall[i] > prevRecall) {
+                ap += (recall[i] - prevRecall) * precision[i]
+                prevRecall = recall[i]
+            }
+        }
+        return ap
+    }
+
+    /** mAP@[iou] (iou phải nằm trong [matchIous]) */
+    fun mapAt(iou: Float): Float {
+        val k = matchIous.indexOfFirst { kotlin.math.abs(it - iou) < 1e-4f }
+        require(k >= 0) { "IoU $iou not evaluated" }
+        return averagePrecision(k)
+    }
+
+    /** Trung bình AP qua mọi ngưỡng IoU (= mAP@0.5:0.95 với [COCO_IOUS]) */
+    fun meanAp(): Float {
+        var s = 0f
+        for (k in matchIous.indices) s += averagePrecision(k)
+        return s / matchIous.size
+    }
+
+    /** [precision, recall] khi chỉ giữ dự đoán có score ≥ [conf] */
+    fun precisionRecall(conf: Float, iouIndex: Int): FloatArray {
+        var kept = 0
+        var tp = 0
+        for (i in 0 until predCount) {
+            if (predScores[i] < conf) continue
+            kept++
+            if (predTp[i] and (1 shl iouIndex) != 0) tp++
+        }
+        val precision = if (kept == 0) 1f else tp.toFloat() / kept
+        val recall = if (gtCount == 0) Float.NaN else tp.toFloat() / gtCount
+        return floatArrayOf(precision, recall)
+    }
+
+    fun summary(confs: FloatArray): String {
+        val sb = StringBuilder()
+        sb.append(String.format(Locale.US, "%d images, %d gt, %d preds, mAP50 %.3f, mAP50-95 %.3f\n",
+            images, gtCount, predCount, averagePrecision(0), meanAp()))
+        for (c in confs) {
+            val pr = precisionRecall(c, 0)
+            sb.append(String.format(Locale.US, "  conf %.2f: P %.3f R %.3f\n", c, pr[0], pr[1]))
+        }
+        return sb.toString().trimEnd()
+    }
+
+    companion object {
+        @JvmField
+        val COCO_IOUS = FloatArray(10) { 0.5f + 0.05f * it }
+
+        /**
+         * Nhãn định dạng YOLO (mỗi dòng `class cx cy w h`, chuẩn hoá [0..1]) → box pixel [l, t, r, b]* trên ảnh [imgW]×[imgH].
+         * Dòng trống / hỏng bị bỏ qua.
+         */
+        @JvmStatic
+        fun parseYoloLabels(text: String, imgW: Int, imgH: Int): FloatArray {
+            val out = ArrayList<Float>()
+            for (line in text.lineSequence()) {
+                val p = line.trim().split(Regex("\\s+"))
+                if (p.size < 5) continue
+                val cx = p[1].toFloatOrNull() ?: continue
+                val cy = p[2].toFloatOrNull() ?: continue
+                val w = p[3].toFloatOrNull() ?: continue
+                val h = p[4].toFloatOrNull() ?: continue
+                out.add((cx - w / 2f) * imgW); out.add((cy - h / 2f) * imgH)
+                out.add((cx + w / 2f) * imgW); out.add((cy + h / 2f) * imgH)
+            }
+            return out.toFloatArray()
+        }
+    }
+}
+
+/**
+ * File kết quả "vàng" của detector: mỗi ảnh 1 dòng `tên<TAB>score,l,t,r,b;…` (box theo score giảm dần).
+ * So file mới với file vàng để bắt sai lệch số khi tối ưu tiền xử lý / decode / NMS.
+ */
+object GoldenOutput {
+    /** 1 dòng cho ảnh [name] với [n] box */
+    @JvmStatic
+    fun line(name: String, boxes: FloatArray, scores: FloatArray, n: Int): String {
+        val order = (0 until n).sortedByDescending { scores[it] }
+        val sb = StringBuilder(name).append('\t')
+        for ((j, i) in order.withIndex()) {
+            if (j > 0) sb.append(';')
+            sb.append(String.format(Locale.US, "%.5f,%.2f,%.2f,%.2f,%.2f",
+                scores[i], boxes[4 * i], boxes[4 * i + 1], boxes[4 * i + 2], boxes[4 * i + 3]))
+        }
+        return sb.toString()
+    }
+
+    /** Đọc file vàng: tên ảnh → mảng phẳng [score, l, t, r, b]* */
+    @JvmStatic
+    fun parse(text: String): Map<String, FloatArray> {
+        val out = LinkedHashMap<String, FloatArray>()
+        for (line in text.lineSequence()) {
+            if (line.isBlank()) continue
+            val tab = line.indexOf('\t')
+            if (tab < 0) continue
+            val body = line.substring(tab + 1)
+            val values = if (body.isEmpty()) FloatArray(0)
+            else body.split(';').flatMap { it.split(',') }.map { it.toFloat() }.toFloatArray()
+            out[line.substring(0, tab)] = values
+        }
+        return out
+    }
+
+    /** Kết quả so sánh: số ảnh lệch (khác số box hoặc vượt dung sai), lệch lớn nhất của box (px) và score */
+    class Drift(
+        val images: Int,
+        val mismatchedImages: List<String>,
+        val maxBoxDiff: Float,
+        val maxScoreDiff: Float
+    ) {
+        fun isClean(): Boolean = mismatchedImages.isEmpty()
+
+        override fun toString(): String = String.format(
+            Locale.US, "%d/%d images drifted, max box %.3f px, max score %.5f",
+            mismatchedImages.size, images, maxBoxDiff, maxScoreDiff
+        )
+    }
+
+    /** So [actual] với [expected]; ảnh chỉ có ở 1 bên cũng tính là lệch */
+    @JvmStatic
+    @JvmOverloads
+    fun compare(
+        expected: Map<String, FloatArray>,
+        actual: Map<String, FloatArray>,
+        boxTol: Float = 0.5f,
+        scoreTol: Float = 1e-3f
+    ): Drift {
+        val names = LinkedHashSet(expected.keys).apply { addAll(actual.keys) }
+        val bad = ArrayList<String>()
+        var maxBox = 0f
+        var maxScore = 0f
+        for (name in names) {
+            val e = expected[name]
+            val a = actual[name]
+            if (e == null || a == null || e.size != a.size) { bad.add(name); continue }
+            var ok = true
+            for (i in e.indices) {
+                val d = kotlin.math.abs(e[i] - a[i])
+                if (i % 5 == 0) {
+                    maxScore = maxOf(maxScore, d)
+                    if (d > scoreTol) ok = false
+                } else {
+                    maxBox = maxOf(maxBox, d)
+                    if (d > boxTol) ok = false
+                }
+            }
+            if (!ok) bad.add(name)
+        }
+        return Drift(names.size, bad, maxBox, maxScore)
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.spiketimer.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AnalysisResolutionTest {
+
+    // Danh sách size điển hình của camera sau (landscape, sensor orientation)
+    private static final int[] W = {4000, 1920, 1280, 640, 320, 1440, 640, 1600};
+    private static final int[] H = {3000, 1080,  720, 360, 180, 1080, 480,  720};
+
+    @Test
+    public void picksSmallest169CoveringModelInput() {
+        int[] order = AnalysisResolution.order(W, H, 448, 16f / 9f);
+        assertEquals(640, W[order[0]]);
+        assertEquals(360, H[order[0]]);
+        // Tiếp theo là 16:9 lớn dần
+        assertEquals(1280, W[order[1]]);
+        assertEquals(1920, W[order[2]]);
+    }
+
+    @Test
+    public void largerModelInputSkipsTooSmallSizes() {
+        int[] order = AnalysisResolution.order(W, H, 1000, 16f / 9f);
+        assertEquals(1280, W[order[0]]);
+    }
+
+    @Test
+    public void fallsBackToLargestWhenNothingCovers() {
+        int[] w = {320, 640};
+        int[] h = {180, 360};
+        int[] order = AnalysisResolution.order(w, h, 2000, 16f / 9f);
+        assertEquals(640, w[order[0]]);
+    }
+
+    @Test
+    public void otherAspectRatiosComeAfterMatchingOnes() {
+        int[] order = AnalysisResolution.order(W, H, 448, 16f / 9f);
+        // 3 size 16:9 phủ được 448 đứng trước mọi size 4:3 / 20:9
+        for (int i = 0; i < 3; i++) {
+            assertEquals(16f / 9f, W[order[i]] / (float) H[order[i]], 0.05f);
+        }
+        assertEquals(W.length, order.length);
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Trigger âm thanh offline: WAV tổng hợp (mẫu + nhiễu) qua đúng engine streaming dùng trên mic.
+ */
+public class AudioTemplateMatcherTest {
+    private static final int RATE = AudioTemplateMatcher.SAMPLE_RATE;
+
+    /** "Tiếng cắm spike" tổng hợp: chirp lên, 2 tone, chirp xuống — 0.5 s, biên độ 1 */
+    private static float[] plantSound(int rate) {
+        int n = rate / 2;
+        float[] out = new float[n];
+        double phase = 0;
+        for (int i = 0; i < n; i++) {
+            double t = (double) i / rate;
+            double f;
+            if (t < 0.15) f = 1500 + (3500 - 1500) * t / 0.15;
+            else if (t < 0.25) f = -1;
+            else f = 4000 - (4000 - 2000) * (t - 0.25) / 0.25;
+            double v;
+            if (f > 0) {
+                phase += 2 * Math.PI * f / rate;
+                v = Math.sin(phase);
+            } else {
+                v = 0.5 * Math.sin(2 * Math.PI * 800 * t) + 0.5 * Math.sin(2 * Math.PI * 2400 * t);
+            }
+            out[i] = (float) v;
+        }
+        return out;
+    }
+
+    /** [seconds] s nhiễu trắng biên độ [noise], chèn [sound] × [gain] tại [atS] */
+    private static float[] scene(int rate, double seconds, float noise, float[] sound, float gain, double atS, long seed) {
+        Random rnd = new Random(seed);
+        float[] out = new float[(int) (seconds * rate)];
+        for (int i = 0; i < out.length; i++) out[i] = (float) (noise * rnd.nextGaussian());
+        if (sound != null) {
+            int at = (int) (atS * rate);
+            for (int i = 0; i < sound.length && at + i < out.length; i++) out[at + i] += gain * sound[i];
+        }
+        return out;
+    }
+
+    /** WAV PCM 16-bit [channels] kênh (cùng tín hiệu mọi kênh) */
+    private static byte[] wav(float[] samples, int rate, int channels) {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        int data = samples.length * 2 * channels;
+        b.writeBytes("RIFF".getBytes());
+        le32(b, 36 + data);
+        b.writeBytes("WAVEfmt ".getBytes());
+        le32(b, 16);
+        le16(b, 1);
+        le16(b, channels);
+        le32(b, rate);
+        le32(b, rate * 2 * channels);
+        le16(b, 2 * channels);
+        le16(b, 16);
+        b.writeBytes("data".getBytes());
+        le32(b, data);
+        for (float s : samples) {
+            int v = Math.max(-32768, Math.min(32767, Math.round(s * 32767f)));
+            for (int c = 0; c < channels; c++) le16(b, v);
+        }
+        return b.toByteArray();
+    }
+
+    private static void le16(ByteArrayOutputStream b, int v) { b.write(v & 0xFF); b.write((v >> 8) & 0xFF); }
+    private static void le32(ByteArrayOutputStream b, int v) { le16(b, v & 0xFFFF); le16(b, (v >>> 16) & 0xFFFF); }
+
+    /** Đưa [pcm] qua matcher theo đoạn [chunk] mẫu (như vòng đọc mic), mẫu 0 ở [startMs]; trả về số lần phát hiện */
+    private static int stream(AudioTemplateMatcher m, float[] pcm, int chunk, long startMs) {
+        short[] buf = new short[chunk];
+        int hits = 0;
+        for (int off = 0; off < pcm.length; off += chunk) {
+            int n = Math.min(chunk, pcm.length - off);
+            for (int i = 0; i < n; i++) buf[i] = (short) Math.max(-32768, Math.min(32767, Math.round(pcm[off + i] * 32767f)));
+            if (m.feed(buf, 0, n, startMs + off * 1000L / RATE)) hits++;
+        }
+        return hits;
+    }
+
+    private static AudioTemplateMatcher matcher() {
+        // Mẫu đi qua WAV 48 kHz stereo như file thật (đọc + trộn mono + đổi về 16 kHz)
+        float[] template = WavPcm.readAt(wav(plantSound(48_000), 48_000, 2), RATE);
+        return new AudioTemplateMatcher(template);
+    }
+
+    @Test
+    public void wavRoundTripMixesAndResamples() {
+        float[] src = plantSound(48_000);
+        WavPcm.Audio a = WavPcm.read(wav(src, 48_000, 2));
+        assertEquals(48_000, a.getSampleRate());
+        assertEquals(src.length, a.getSamples().length);
+        assertEquals(src[1000], a.getSamples()[1000], 1e-3f);
+        assertEquals(src.length / 3, WavPcm.resample(a.getSamples(), 48_000, RATE).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonWav() {
+        WavPcm.read(new byte[64]);
+    }
+
+    @Test
+    public void detectsPlantSoundInNoiseWithOnset() {
+        AudioTemplateMatcher m = matcher();
+        float[] pcm = scene(RATE, 4.0, 0.01f, plantSound(RATE), 0.3f, 1.234, 1);
+        assertEquals(1, stream(m, pcm, 320, 10_000L));
+        assertTrue("score " + m.getLastDetectionScore(), m.getLastDetectionScore() >= m.getThreshold());
+        // Onset trong khoảng 1 hop (16 ms) + cắt lặng của mẫu quanh mốc thật
+        assertEquals(10_000L + 1_234L, m.getLastOnsetMs(), 40L);
+    }
+
+    @Test
+    public void quietPlantSoundStillMatchesShape() {
+        AudioTemplateMatcher m = matcher();
+        float[] pcm = scene(RATE, 3.0, 0.002f, plantSound(RATE), 0.03f, 1.0, 2);
+        assertEquals(1, stream(m, pcm, 160, 0L));
+    }
+
+    @Test
+    public void ignoresNoiseToneAndOtherSounds() {
+        float[] tone = new float[RATE];
+        for (int i = 0; i < tone.length; i++) tone[i] = (float) Math.sin(2 * Math.PI * 1000 * i / RATE);
+        float[] sound = plantSound(RATE);
+        float[] reversed = new float[sound.length];
+        for (int i = 0; i < sound.length; i++) reversed[i] = sound[sound.length - 1 - i];
+
+        AudioTemplateMatcher m = matcher();
+        assertEquals(0, stream(m, scene(RATE, 3.0, 0.05f, null, 0f, 0, 3), 320, 0L));
+        assertEquals(0, stream(m, scene(RATE, 3.0, 0.01f, tone, 0.3f, 1.0, 4), 320, 3_000L));
+        assertEquals(0, stream(m, scene(RATE, 3.0, 0.01f, reversed, 0.3f, 1.0, 5), 320, 6_000L));
+        assertTrue("peak " + m.getPeakScore(), m.getPeakScore() < m.getThreshold());
+    }
+
+    @Test
+    public void refractoryBlocksEchoButNotNextPlant() {
+        AudioTemplateMatcher m = matcher();
+        float[] sound = plantSound(RATE);
+        float[] pcm = scene(RATE, 8.0, 0.01f, sound, 0.3f, 1.0, 6);
+        for (double at : new double[]{1.6, 5.0}) {             // vang lại sau 0.6 s, lượt mới sau 4 s
+            int o = (int) (at * RATE);
+            for (int i = 0; i < sound.length; i++) pcm[o + i] += 0.3f * sound[i];
+        }
+        assertEquals(2, stream(m, pcm, 320, 0L));
+        assertEquals(5_000L, m.getLastOnsetMs(), 40L);
+    }
+
+    @Test
+    public void fftMatchesDirectDft() {
+        int n = 64;
+        float[] re = new float[n], im = new float[n];
+        Random rnd = new Random(7);
+        for (int i = 0; i < n; i++) re[i] = (float) rnd.nextGaussian();
+        float[] x = re.clone();
+        new Fft(n).transform(re, im);
+        for (int k = 0; k < n; k += 7) {
+            double sr = 0, si = 0;
+            for (int t = 0; t < n; t++) {
+                sr += x[t] * Math.cos(2 * Math.PI * k * t / n);
+                si -= x[t] * Math.sin(2 * Math.PI * k * t / n);
+            }
+            assertEquals(sr, re[k], 1e-3);
+            assertEquals(si, im[k], 1e-3);
+        }
+    }
+}
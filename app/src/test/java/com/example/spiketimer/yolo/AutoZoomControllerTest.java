@@ -0,0 +1,104 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Auto-zoom: zoom đích theo kích thước / vị trí box, tốc độ giới hạn, lùi về khi mất mục tiêu, pinch ưu tiên.
+ */
+public class AutoZoomControllerTest {
+
+    private long now;
+    private AutoZoomController zoom;
+
+    @Before
+    public void setUp() {
+        now = 1_000L;
+        zoom = new AutoZoomController(() -> now);
+        zoom.setLimits(1f, 8f);
+    }
+
+    /** Box vuông cạnh [side] tâm (cx, cy) ở toạ độ chưa zoom → toạ độ trên frame đang ở zoom hiện tại */
+    private float[] seen(float cx, float cy, float side) {
+        float[] u = {cx - side / 2, cy - side / 2, cx + side / 2, cy + side / 2};
+        float[] f = new float[4];
+        AutoZoomController.toZoomed(u, 0, zoom.getZoom() / zoom.getBaseZoom(), f, 0);
+        return f;
+    }
+
+    /** Chạy [frames] frame 33 ms, trả về zoom cuối */
+    private float run(int frames, float cx, float cy, float side) {
+        for (int i = 0; i < frames; i++) {
+            now += 33;
+            zoom.update(side > 0 ? seen(cx, cy, side) : null, 0);
+        }
+        return zoom.getZoom();
+    }
+
+    @Test
+    public void unzoomRoundTrip() {
+        float[] b = {0.4f, 0.45f, 0.6f, 0.55f};
+        float[] z = new float[4];
+        float[] back = new float[4];
+        AutoZoomController.toZoomed(b, 0, 2f, z, 0);
+        assertArrayEquals(new float[]{0.3f, 0.4f, 0.7f, 0.6f}, z, 1e-6f);
+        AutoZoomController.toUnzoomed(z, 0, 2f, back, 0);
+        assertArrayEquals(b, back, 1e-6f);
+    }
+
+    @Test
+    public void zoomsInSmoothlyOnTinyCentredTarget() {
+        // Box 5% cạnh = 0.25% diện tích; đích 2% → zoom √8 ≈ 2.83
+        now += 33;
+        zoom.update(seen(0.5f, 0.5f, 0.05f), 0);
+        now += 33;
+        float first = zoom.update(seen(0.5f, 0.5f, 0.05f), 0);
+        // Bước đầu bị giới hạn tốc độ: e^(1.2 · 0.033) ≈ 1.04
+        assertTrue(first > 1f && first < 1.05f);
+        float z = run(120, 0.5f, 0.5f, 0.05f);
+        assertEquals(Math.sqrt(8), z, 0.05);
+    }
+
+    @Test
+    public void offCentreTargetStaysInFrame() {
+        // Tâm lệch 0.3 → zoom tối đa 0.5·0.8 / (0.3 + 0.025) ≈ 1.23 dù box rất nhỏ
+        float z = run(120, 0.8f, 0.5f, 0.05f);
+        assertEquals(0.4f / 0.325f, z, 0.03f);
+    }
+
+    @Test
+    public void largeTargetDoesNotZoom() {
+        assertEquals(1f, run(60, 0.5f, 0.5f, 0.3f), 0f);
+    }
+
+    @Test
+    public void zoomsBackOutAfterLosingTarget() {
+        run(120, 0.5f, 0.5f, 0.05f);
+        assertTrue(zoom.getZoom() > 2.5f);
+        // Trong holdMs vẫn giữ zoom
+        float held = run(30, 0, 0, 0);
+        assertTrue(held > 2.5f);
+        assertEquals(1f, run(150, 0, 0, 0), 0.01f);
+    }
+
+    @Test
+    public void pinchBecomesBaseAndPausesAutoZoom() {
+        zoom.onUserZoom(2f);
+        assertTrue(Float.isNaN(zoom.update(seen(0.5f, 0.5f, 0.02f), 0)));
+        now += 3_000L;
+        float z = run(150, 0.5f, 0.5f, 0.05f);
+        // Toạ độ chưa zoom tính từ mức nền 2× → đích 2 · √8 ≈ 5.66 (dưới max 8)
+        assertEquals(2f * Math.sqrt(8), z, 0.1);
+        zoom.reset();
+        assertEquals(2f, run(150, 0, 0, 0), 0.01f);
+    }
+
+    @Test
+    public void noZoomRangeIsIgnored() {
+        zoom.setLimits(1f, 1f);
+        assertTrue(Float.isNaN(zoom.update(seen(0.5f, 0.5f, 0.02f), 0)));
+        assertEquals("n/a", zoom.summary());
+    }
+}
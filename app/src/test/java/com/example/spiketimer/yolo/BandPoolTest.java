@@ -0,0 +1,178 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pool dải hàng: chia đủ + không chồng, thích nghi theo khối lượng, lỗi ném lại, 2 luồng gọi cùng lúc,
+ * đóng pool giữa lúc đang chạy; resample song song khớp tuần tự.
+ */
+public class BandPoolTest {
+
+    private BandPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new BandPool(4, 1_000);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void bandCountAdaptsToWork() {
+        assertEquals(1, pool.bandsFor(10, 50));     // 500 đơn vị < 1 dải
+        assertEquals(2, pool.bandsFor(20, 100));    // 2000 → 2 dải
+        assertEquals(4, pool.bandsFor(720, 1280));  // chặn ở parallelism
+        assertEquals(3, pool.bandsFor(3, 100_000)); // không quá số hàng
+        assertEquals(1, pool.bandsFor(0, 100));
+    }
+
+    @Test
+    public void coversEveryRowExactlyOnceAcrossRuns() {
+        for (int run = 0; run < 200; run++) {
+            int rows = 1 + run % 97;
+            int[] hits = new int[rows];
+            ConcurrentHashMap<String, Boolean> threads = new ConcurrentHashMap<>();
+            pool.run(rows, 400, (from, to) -> {
+                threads.put(Thread.currentThread().getName(), true);
+                for (int r = from; r < to; r++) hits[r]++;
+            });
+            for (int r = 0; r < rows; r++) assertEquals("run " + run + " row " + r, 1, hits[r]);
+            assertTrue(threads.size() <= pool.bandsFor(rows, 400));
+        }
+    }
+
+    @Test
+    public void workerFailureIsRethrownAndPoolStaysUsable() {
+        try {
+            pool.run(100, 1_000, (from, to) -> {
+                if (from > 0) throw new IllegalStateException("band " + from);
+            });
+            fail("expected failure");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().startsWith("band "));
+        }
+        AtomicInteger rows = new AtomicInteger();
+        pool.run(100, 1_000, (from, to) -> rows.addAndGet(to - from));
+        assertEquals(100, rows.get());
+    }
+
+    @Test
+    public void concurrentCallersEachGetTheirOwnRows() throws Exception {
+        // vd. warmup model mới trên luồng swap song song với detect trên analysis thread
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] callers = new Thread[2];
+        for (int c = 0; c < callers.length; c++) {
+            int seed = c;
+            callers[c] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int run = 0; run < 300; run++) {
+                        int rows = 8 + (run * 7 + seed * 13) % 120;
+                        int[] hits = new int[rows];
+                        pool.run(rows, 400, (from, to) -> {
+                            for (int r = from; r < to; r++) hits[r]++;
+                        });
+                        for (int r = 0; r < rows; r++) {
+                            if (hits[r] != 1) throw new AssertionError("caller " + seed + " run " + run + " row " + r + " hit " + hits[r]);
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }, "caller-" + c);
+            callers[c].start();
+        }
+        start.countDown();
+        for (Thread t : callers) t.join(30_000);
+        for (Thread t : callers) assertFalse(t.getName() + " stuck", t.isAlive());
+        if (failure.get() != null) throw new AssertionError(failure.get());
+    }
+
+    @Test
+    public void closeDuringRunDoesNotStrandCaller() throws Exception {
+        // vd. onCleared đóng pool trên main thread khi analysis thread còn đang warmup qua pool
+        for (int attempt = 0; attempt < 300; attempt++) {
+            BandPool p = new BandPool(4, 1_000);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            CountDownLatch started = new CountDownLatch(1);
+            Thread caller = new Thread(() -> {
+                try {
+                    for (int run = 0; run < 50; run++) {
+                        int[] hits = new int[64];
+                        p.run(hits.length, 1_000, (from, to) -> {
+                            for (int r = from; r < to; r++) hits[r]++;
+                        });
+                        started.countDown();
+                        for (int r = 0; r < hits.length; r++) {
+                            if (hits[r] != 1) throw new AssertionError("run " + run + " row " + r + " hit " + hits[r]);
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }, "caller");
+            caller.start();
+            started.await();
+            p.close();
+            caller.join(5_000);
+            assertFalse("run() stuck after close (attempt " + attempt + ")", caller.isAlive());
+            if (failure.get() != null) throw new AssertionError(failure.get());
+        }
+    }
+
+    @Test
+    public void closedPoolRunsOnCaller() {
+        pool.close();
+        String caller = Thread.currentThread().getName();
+        pool.run(100, 1_000, (from, to) -> {
+            assertEquals(caller, Thread.currentThread().getName());
+            assertEquals(0, from);
+            assertEquals(100, to);
+        });
+    }
+
+    @Test
+    public void parallelResampleMatchesSerial() {
+        int w = 640, h = 360, size = 320;
+        int[] src = new int[w * h];
+        Random rnd = new Random(7);
+        for (int i = 0; i < src.length; i++) src[i] = 0xFF000000 | rnd.nextInt(0x1000000);
+        LetterboxTransform t = new LetterboxTransform();
+        t.update(w, h, 90, size, size);
+
+        LetterboxResampler serial = new LetterboxResampler();
+        serial.update(t);
+        FloatBuffer a = ByteBuffer.allocateDirect(size * size * 12).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        serial.resample(src, a);
+
+        LetterboxResampler parallel = new LetterboxResampler();
+        parallel.update(t);
+        FloatBuffer b = ByteBuffer.allocateDirect(size * size * 12).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        parallel.resample(src, b, 0, pool);
+
+        for (int i = 0; i < size * size * 3; i++) assertEquals("at " + i, a.get(i), b.get(i), 0f);
+
+        ByteBuffer ua = ByteBuffer.allocate(size * size * 3);
+        ByteBuffer ub = ByteBuffer.allocate(size * size * 3);
+        serial.resample(src, ua);
+        parallel.resample(src, ub, 0, pool);
+        assertEquals(ua, ub);
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class BenchmarkConfigTest {
+
+    @Test
+    public void defaultMatrixCoversCpuGridAndDelegates() {
+        List<BenchmarkConfig> m = BenchmarkConfig.matrix();
+        // mỗi input: CPU 4 luồng × 2 XNNPACK + GPU + NNAPI = 10
+        assertEquals(3 * 10, m.size());
+        Set<String> keys = new HashSet<>();
+        for (BenchmarkConfig c : m) assertTrue("duplicate " + c.key(), keys.add(c.key()));
+        assertTrue(keys.contains("cpu-t8-ref-320"));
+        assertTrue(keys.contains("gpu-t4-xnn-448"));
+        assertFalse(keys.contains("gpu-t1-xnn-448"));
+    }
+
+    @Test
+    public void cpuOnlyMatrix() {
+        List<BenchmarkConfig> m = BenchmarkConfig.matrix(new int[]{2}, new int[]{448},
+                Arrays.asList(BenchmarkConfig.CPU), 4);
+        assertEquals(2, m.size());
+        assertEquals("cpu-t2-xnn-448", m.get(0).key());
+        assertEquals("cpu-t2-ref-448", m.get(1).key());
+    }
+}
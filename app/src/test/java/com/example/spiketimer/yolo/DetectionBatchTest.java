@@ -0,0 +1,126 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Batch kết quả dạng mảng phẳng: thêm / lớn thêm, xếp theo score, NMS tại chỗ so với NMS list kiểu cũ, chép.
+ */
+public class DetectionBatchTest {
+
+    @Test
+    public void addGrowsAndKeepsContent() {
+        DetectionBatch b = new DetectionBatch(1);
+        b.add(0, 0, 10, 10, 0.5f);
+        b.add(5, 5, 20, 20, 0.7f, 3);
+        assertEquals(2, b.getSize());
+        assertTrue(b.capacity() >= 2);
+        assertArrayEquals(new float[]{0, 0, 10, 10, 5, 5, 20, 20}, Arrays.copyOf(b.getBoxes(), 8), 0f);
+        assertEquals(3, b.getClassIds()[1]);
+        assertEquals(DetectionBatch.NO_TRACK, b.getTrackIds()[0]);
+        assertEquals(0.7f, b.maxScore(), 0f);
+        b.clear();
+        assertTrue(b.isEmpty());
+        assertEquals(0f, b.maxScore(), 0f);
+    }
+
+    @Test
+    public void sortByScoreKeepsBoxesWithScores() {
+        DetectionBatch b = new DetectionBatch(4);
+        Random r = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            float s = r.nextFloat();
+            b.add(s, s, s + 1, s + 1, s, i);
+        }
+        b.sortByScore();
+        for (int i = 0; i < b.getSize(); i++) {
+            if (i > 0) assertTrue(b.score(i - 1) >= b.score(i));
+            assertEquals(b.score(i), b.getBoxes()[4 * i], 0f);
+        }
+        assertEquals(200, b.getSize());
+    }
+
+    @Test
+    public void nmsSuppressesOverlapsAndLimitsTopK() {
+        DetectionBatch b = new DetectionBatch();
+        b.add(0, 0, 10, 10, 0.6f);
+        b.add(1, 1, 11, 11, 0.9f);      // trùng box 0 (IoU ≈ 0.68) và mạnh hơn
+        b.add(50, 50, 60, 60, 0.5f);
+        b.add(100, 100, 110, 110, 0.4f);
+        b.nms(0.45f, 10);
+        assertEquals(3, b.getSize());
+        assertArrayEquals(new float[]{0.9f, 0.5f, 0.4f}, Arrays.copyOf(b.getScores(), 3), 0f);
+        assertEquals(1f, b.getBoxes()[0], 0f);
+        assertEquals(2, b.countAtLeast(0.45f));
+
+        b.nms(0.45f, 2);
+        assertEquals(2, b.getSize());
+    }
+
+    @Test
+    public void nmsKeepsOverlapsOfDifferentClasses() {
+        DetectionBatch b = new DetectionBatch();
+        b.add(0, 0, 10, 10, 0.9f, 0);
+        b.add(0, 0, 10, 10, 0.8f, 1);
+        b.nms(0.45f, 10);
+        assertEquals(2, b.getSize());
+    }
+
+    @Test
+    public void nmsMatchesListReference() {
+        Random r = new Random(42);
+        for (int trial = 0; trial < 20; trial++) {
+            DetectionBatch b = new DetectionBatch(8);
+            List<float[]> ref = new ArrayList<>();
+            for (int i = 0; i < 150; i++) {
+                float x = r.nextFloat() * 200, y = r.nextFloat() * 200, w = 5 + r.nextFloat() * 40, h = 5 + r.nextFloat() * 40;
+                float s = r.nextFloat();
+                b.add(x, y, x + w, y + h, s);
+                ref.add(new float[]{x, y, x + w, y + h, s});
+            }
+            b.nms(0.45f, 50);
+            List<float[]> kept = referenceNms(ref, 0.45f, 50);
+            assertEquals(kept.size(), b.getSize());
+            for (int i = 0; i < kept.size(); i++) {
+                for (int k = 0; k < 4; k++) assertEquals(kept.get(i)[k], b.getBoxes()[4 * i + k], 0f);
+                assertEquals(kept.get(i)[4], b.score(i), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void copyFromTakesPrefixAndTruncateShrinks() {
+        DetectionBatch src = new DetectionBatch();
+        src.add(0, 0, 1, 1, 0.9f);
+        src.add(2, 2, 3, 3, 0.8f);
+        src.add(4, 4, 5, 5, 0.7f);
+        DetectionBatch dst = new DetectionBatch(1);
+        dst.copyFrom(src, 2);
+        assertEquals(2, dst.getSize());
+        assertEquals(2f, dst.getBoxes()[4], 0f);
+        assertEquals(0.8f, dst.score(1), 0f);
+        dst.copyFrom(src, 10);
+        assertEquals(3, dst.getSize());
+        dst.truncate(1);
+        assertEquals(1, dst.getSize());
+    }
+
+    /** NMS kiểu list trước đây: xếp ổn định theo score giảm dần, loại box IoU > ngưỡng với box đã giữ */
+    private static List<float[]> referenceNms(List<float[]> dets, float iou, int topK) {
+        List<float[]> sorted = new ArrayList<>(dets);
+        sorted.sort((a, b) -> Float.compare(b[4], a[4]));
+        List<float[]> keep = new ArrayList<>();
+        while (!sorted.isEmpty() && keep.size() < topK) {
+            float[] best = sorted.remove(0);
+            keep.add(best);
+            sorted.removeIf(d -> DetectionBatch.iou(best, 0, d, 0) > iou);
+        }
+        return keep;
+    }
+}
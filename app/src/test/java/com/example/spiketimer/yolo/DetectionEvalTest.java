@@ -0,0 +1,90 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Chỉ số đánh giá offline: ghép dự đoán–GT, AP, precision/recall theo ngưỡng, nhãn YOLO, file vàng.
+ */
+public class DetectionEvalTest {
+
+    private static final float[] GT = {10, 10, 50, 50, 100, 100, 140, 160};
+
+    @Test
+    public void perfectPredictionsGiveFullAp() {
+        DetectionEval e = new DetectionEval();
+        e.add(GT, 2, GT.clone(), new float[]{0.9f, 0.8f}, 2);
+        assertEquals(1f, e.mapAt(0.5f), 1e-6f);
+        assertEquals(1f, e.meanAp(), 1e-6f);
+        assertArrayEquals(new float[]{1f, 1f}, e.precisionRecall(0.5f, 0), 1e-6f);
+    }
+
+    @Test
+    public void duplicateAndFalsePositiveLowerPrecision() {
+        DetectionEval e = new DetectionEval(new float[]{0.5f});
+        // Box trùng GT[0] 2 lần (lần 2 là FP), 1 box lạc, GT[1] bị bỏ sót
+        float[] boxes = {10, 10, 50, 50, 12, 12, 50, 50, 300, 300, 320, 320};
+        e.add(GT, 2, boxes, new float[]{0.9f, 0.7f, 0.6f}, 3);
+        assertEquals(3, e.predictions());
+        // Chỉ 1 TP ở hạng 1 → AP = recall 0.5 × precision 1
+        assertEquals(0.5f, e.averagePrecision(0), 1e-6f);
+        float[] pr = e.precisionRecall(0.65f, 0);
+        assertEquals(0.5f, pr[0], 1e-6f);
+        assertEquals(0.5f, pr[1], 1e-6f);
+        // Ngưỡng cao hơn mọi score: không giữ gì → precision quy ước 1, recall 0
+        assertArrayEquals(new float[]{1f, 0f}, e.precisionRecall(0.95f, 0), 1e-6f);
+    }
+
+    @Test
+    public void strictIouRejectsLooseBox() {
+        DetectionEval e = new DetectionEval(new float[]{0.5f, 0.9f});
+        // Lệch 4 px mỗi phía trên box 40×40: IoU ≈ 0.67
+        e.add(new float[]{10, 10, 50, 50}, 1, new float[]{14, 14, 54, 54}, new float[]{0.8f}, 1);
+        assertEquals(1f, e.averagePrecision(0), 1e-6f);
+        assertEquals(0f, e.averagePrecision(1), 1e-6f);
+    }
+
+    @Test
+    public void apUsesPrecisionEnvelope() {
+        DetectionEval e = new DetectionEval(new float[]{0.5f});
+        float[] gt = {0, 0, 10, 10, 20, 0, 30, 10};
+        // Hạng: TP, FP, TP → P/R: (1, .5), (.5, .5), (.67, 1) → AP = .5·1 + .5·.667
+        float[] boxes = {0, 0, 10, 10, 100, 100, 110, 110, 20, 0, 30, 10};
+        e.add(gt, 2, boxes, new float[]{0.9f, 0.8f, 0.7f}, 3);
+        assertEquals(0.5f + 0.5f * (2f / 3f), e.averagePrecision(0), 1e-5f);
+    }
+
+    @Test
+    public void parsesYoloLabels() {
+        float[] b = DetectionEval.parseYoloLabels("0 0.5 0.5 0.2 0.4\n\nbad line\n0 0.1 0.1 0.1 0.1\n", 200, 100);
+        assertArrayEquals(new float[]{80, 30, 120, 70, 10, 5, 30, 15}, b, 1e-4f);
+    }
+
+    @Test
+    public void goldenRoundTripAndDrift() {
+        String a = GoldenOutput.line("a.jpg", new float[]{1, 2, 3, 4, 5, 6, 7, 8}, new float[]{0.5f, 0.9f}, 2);
+        assertEquals("a.jpg\t0.90000,5.00,6.00,7.00,8.00;0.50000,1.00,2.00,3.00,4.00", a);
+        String empty = GoldenOutput.line("b.jpg", new float[0], new float[0], 0);
+        Map<String, float[]> expected = GoldenOutput.parse(a + "\n" + empty + "\n");
+        assertEquals(2, expected.size());
+        assertEquals(0, expected.get("b.jpg").length);
+
+        Map<String, float[]> same = new LinkedHashMap<>(expected);
+        assertTrue(GoldenOutput.compare(expected, same).isClean());
+
+        Map<String, float[]> moved = new LinkedHashMap<>(expected);
+        moved.put("a.jpg", new float[]{0.9f, 5, 6, 7, 9, 0.5f, 1, 2, 3, 4});
+        GoldenOutput.Drift d = GoldenOutput.compare(expected, moved);
+        assertFalse(d.isClean());
+        assertEquals(1f, d.getMaxBoxDiff(), 1e-5f);
+        assertEquals("a.jpg", d.getMismatchedImages().get(0));
+
+        Map<String, float[]> missing = new LinkedHashMap<>();
+        missing.put("a.jpg", expected.get("a.jpg"));
+        assertEquals(1, GoldenOutput.compare(expected, missing).getMismatchedImages().size());
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Chọn profile từ kết quả tune: nhanh nhất mà ổn định, hoà thì ưu tiên CPU / ít luồng.
+ */
+public class DetectorProfileTest {
+
+    private static DetectorBenchmark.Result ok(String delegate, int threads, boolean xnn, float p50, float p95) {
+        return new DetectorBenchmark.Result(new BenchmarkConfig(delegate, threads, xnn, 448),
+                DetectorBenchmark.STATUS_OK, 100f, p50, p95, p50, new HashMap<>());
+    }
+
+    private static DetectorBenchmark.Result unavailable(String delegate) {
+        return new DetectorBenchmark.Result(new BenchmarkConfig(delegate, 4, true, 448),
+                DetectorBenchmark.STATUS_UNAVAILABLE, Float.NaN, Float.NaN, Float.NaN, Float.NaN, new HashMap<>());
+    }
+
+    @Test
+    public void picksFastestStable() {
+        DetectorProfile p = DetectorProfile.pickFastestStable(Arrays.asList(
+                ok(BenchmarkConfig.CPU, 4, true, 40f, 45f),
+                ok(BenchmarkConfig.CPU, 2, true, 55f, 60f),
+                ok(BenchmarkConfig.GPU, 4, true, 25f, 28f),
+                unavailable(BenchmarkConfig.NNAPI)));
+        assertNotNull(p);
+        assertEquals(BenchmarkConfig.GPU, p.getDelegate());
+        assertTrue(p.usesDelegate());
+        assertEquals(25f, p.getP50Ms(), 0f);
+    }
+
+    @Test
+    public void rejectsJitteryConfig() {
+        DetectorProfile p = DetectorProfile.pickFastestStable(Arrays.asList(
+                ok(BenchmarkConfig.NNAPI, 4, true, 20f, 90f),
+                ok(BenchmarkConfig.CPU, 4, true, 40f, 44f)));
+        assertEquals("cpu-t4-xnn", p.key());
+    }
+
+    @Test
+    public void nearTiePrefersCpuThenFewerThreads() {
+        DetectorProfile p = DetectorProfile.pickFastestStable(Arrays.asList(
+                ok(BenchmarkConfig.GPU, 4, true, 39f, 41f),
+                ok(BenchmarkConfig.CPU, 8, true, 40f, 43f),
+                ok(BenchmarkConfig.CPU, 4, true, 40.5f, 43f)));
+        assertEquals("cpu-t4-xnn", p.key());
+    }
+
+    @Test
+    public void nothingUsableReturnsNull() {
+        assertNull(DetectorProfile.pickFastestStable(Collections.singletonList(unavailable(BenchmarkConfig.GPU))));
+        assertNull(DetectorProfile.pickFastestStable(Collections.emptyList()));
+    }
+
+    @Test
+    public void governorCapsThreads() {
+        DetectorProfile p = new DetectorProfile(BenchmarkConfig.CPU, 8, true, 30f);
+        assertEquals(2, p.withMaxThreads(2).getNumThreads());
+        assertSame(p, p.withMaxThreads(8));
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ring buffer nhật ký sự kiện: ghi đè vòng, mở lại file giữ record, xuất CSV.
+ */
+public class EventLogTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static EventLog heapLog(int capacity) {
+        return new EventLog(ByteBuffer.allocate(EventLog.HEADER_SIZE + capacity * EventLog.RECORD_SIZE));
+    }
+
+    @Test
+    public void ringKeepsNewestRecords() {
+        EventLog log = heapLog(4);
+        for (int i = 0; i < 6; i++) log.append(100L + i, EventLog.FRAME, i, i * 0.5f, 0f, 0f, 0f);
+        assertEquals(6, log.written());
+        assertEquals(4, log.size());
+        long[] seen = new long[4];
+        int[] k = {0};
+        log.forEach((t, type, i0, f0, f1, f2, f3) -> {
+            assertEquals(EventLog.FRAME, type);
+            assertEquals(i0 * 0.5f, f0, 0f);
+            seen[k[0]++] = t;
+        });
+        assertArrayEquals(new long[]{102L, 103L, 104L, 105L}, seen);
+    }
+
+    @Test
+    public void reopenedFileContinuesAfterLastRecord() throws Exception {
+        File f = new File(tmp.getRoot(), "events/events.bin");
+        EventLog a = EventLog.open(f, 16);
+        assertEquals(1, a.startSession(1_000L, 1_700_000_000_000L));
+        a.append(1_010L, EventLog.TRIGGER, 1, 4.6f);
+        a.close();
+        // Ghi sau close bị bỏ qua
+        a.append(1_020L, EventLog.TRIGGER, 1, 4.6f);
+
+        EventLog b = EventLog.open(f, 16);
+        assertEquals(2, b.written());
+        assertEquals(2, b.startSession(5L, 1_700_000_100_000L));
+        assertEquals(3, b.written());
+        b.close();
+
+        // Khác capacity → khởi tạo lại
+        EventLog c = EventLog.open(f, 8);
+        assertEquals(0, c.written());
+        c.close();
+    }
+
+    @Test
+    public void exportsCsvWithWallClockAndStageNames() throws Exception {
+        EventLog log = heapLog(8);
+        log.startSession(2_000L, 1_700_000_000_000L);
+        log.stage(2_005L, "detect", 21.5f, 30f, 28);
+        log.stage(2_006L, "unknown-stage", 1f, 1f, 1);
+        log.append(2_010L, EventLog.COUNTDOWN_START, 44_900, 100f);
+        StringWriter w = new StringWriter();
+        log.exportCsv(w);
+        String[] lines = w.toString().split("\n");
+        assertEquals(5, lines.length);
+        assertEquals("session,wall_ms,t_ms,type,name,i0,f0,f1,f2,f3", lines[0]);
+        assertEquals("1,1700000000000,2000,session,,1,,,,", lines[1]);
+        assertEquals("1,1700000000005,2005,stage,detect,2,21.500,30.000,28.000,0.000", lines[2]);
+        assertTrue(lines[3].contains(",stage,other,"));
+        assertEquals("1,1700000000010,2010,countdown_start,,44900,100.000,0.000,0.000,0.000", lines[4]);
+    }
+
+    @Test
+    public void metricsLogStageAggregatesPerInterval() {
+        EventLog log = heapLog(8);
+        PipelineMetrics m = new PipelineMetrics(1_000L);
+        long[] now = {0L};
+        m.record("gate", 0.2f);
+        m.attachEventLog(log, () -> now[0]);
+        now[0] = 42L;
+        m.record("gate", 0.3f);
+        now[0] = 500L;
+        m.record("gate", 0.5f);
+        m.record("detect", 20f);
+        assertEquals(0, log.written());      // chưa hết khoảng → chưa ghi
+
+        now[0] = 1_042L;
+        m.record("gate", 0.4f);              // hết khoảng → 1 record / stage
+        assertEquals(2, log.written());
+        List<float[]> rows = new ArrayList<>();
+        log.forEach((t, type, i0, f0, f1, f2, f3) -> {
+            assertEquals(1_042L, t);
+            assertEquals(EventLog.STAGE, type);
+            rows.add(new float[]{i0, f0, f1, f2});
+        });
+        assertEquals(EventLog.stageId("gate"), (int) rows.get(0)[0]);
+        assertEquals(0.4f, rows.get(0)[1], 1e-6f);
+        assertEquals(0.5f, rows.get(0)[2], 0f);
+        assertEquals(3f, rows.get(0)[3], 0f);
+        assertEquals(EventLog.stageId("detect"), (int) rows.get(1)[0]);
+        assertEquals(1f, rows.get(1)[3], 0f);
+
+        now[0] = 1_100L;
+        m.record("detect", 25f);
+        m.attachEventLog(null, () -> now[0]);  // gỡ log → ghi nốt phần đang chờ
+        assertEquals(3, log.written());
+        m.record("detect", 25f);
+        assertEquals(3, log.written());
+    }
+}
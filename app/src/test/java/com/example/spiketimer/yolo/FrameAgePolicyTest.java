@@ -0,0 +1,77 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Xếp lịch theo tuổi frame: xử lý / hạ cấp / bỏ, chống bỏ liên tục, nguồn timestamp / timebase lạ.
+ */
+public class FrameAgePolicyTest {
+
+    private static final long MS = 1_000_000L;
+    private static final long NOW = 50_000L * MS;
+
+    @Test
+    public void classifiesByAge() {
+        FrameAgePolicy p = new FrameAgePolicy(60L, 120L);
+        assertEquals(FrameAgePolicy.PROCESS, p.classify(NOW - 20 * MS, NOW));
+        assertEquals(20f, p.getLastAgeMs(), 1e-3f);
+        assertEquals(FrameAgePolicy.DOWNGRADE, p.classify(NOW - 80 * MS, NOW));
+        assertEquals(FrameAgePolicy.DROP, p.classify(NOW - 200 * MS, NOW));
+        assertEquals(1, p.droppedFrames());
+        assertEquals(1, p.downgradedFrames());
+    }
+
+    @Test
+    public void neverDropsMoreThanLimitInARow() {
+        FrameAgePolicy p = new FrameAgePolicy(60L, 120L, 2);
+        assertEquals(FrameAgePolicy.DROP, p.classify(NOW - 200 * MS, NOW));
+        assertEquals(FrameAgePolicy.DROP, p.classify(NOW - 200 * MS, NOW));
+        // Pipeline chậm đều → frame thứ 3 vẫn được xử lý (hạ cấp)
+        assertEquals(FrameAgePolicy.DOWNGRADE, p.classify(NOW - 200 * MS, NOW));
+        assertEquals(FrameAgePolicy.DROP, p.classify(NOW - 200 * MS, NOW));
+    }
+
+    @Test
+    public void foreignTimebaseAlwaysProcesses() {
+        FrameAgePolicy p = new FrameAgePolicy();
+        // Timestamp ở timebase khác (vd. uptime lệch hàng giờ) hoặc tương lai
+        assertEquals(FrameAgePolicy.PROCESS, p.classify(NOW - 3_600_000L * MS, NOW));
+        assertTrue(Float.isNaN(p.getLastAgeMs()));
+        assertEquals(FrameAgePolicy.PROCESS, p.classify(NOW + 500 * MS, NOW));
+        assertEquals(FrameAgePolicy.PROCESS, p.classify(0L, NOW));
+        assertEquals("timebase ?", p.summary());
+        assertEquals(0, p.droppedFrames());
+    }
+
+    @Test
+    public void realtimeSourceTrustsLargeAges() {
+        FrameAgePolicy p = new FrameAgePolicy(60L, 120L);
+        p.setTimebase(FrameAgePolicy.TIMEBASE_REALTIME);
+        // Cùng timebase → frame cũ 10 s là cũ thật, không phải timebase khác
+        assertEquals(FrameAgePolicy.DROP, p.classify(NOW - 10_000L * MS, NOW));
+        assertEquals(10_000f, p.getLastAgeMs(), 1e-1f);
+        assertEquals(FrameAgePolicy.PROCESS, p.classify(0L, NOW));
+    }
+
+    @Test
+    public void unknownSourceNeverUsesAge() {
+        FrameAgePolicy p = new FrameAgePolicy(60L, 120L);
+        p.setTimebase(FrameAgePolicy.TIMEBASE_UNKNOWN);
+        // Tuổi trông hợp lý (máy chưa ngủ lần nào) vẫn không dùng được
+        assertEquals(FrameAgePolicy.PROCESS, p.classify(NOW - 200 * MS, NOW));
+        assertTrue(Float.isNaN(p.getLastAgeMs()));
+        assertEquals(0, p.droppedFrames());
+        assertEquals("timebase unknown, not used", p.summary());
+    }
+
+    @Test
+    public void exportsAgePercentiles() {
+        FrameAgePolicy p = new FrameAgePolicy();
+        for (int i = 1; i <= 100; i++) p.classify(NOW - i * MS, NOW);
+        assertEquals(51f, p.agePercentile(50f), 1e-3f);
+        assertEquals(96f, p.agePercentile(95f), 1e-3f);
+        assertTrue(p.summary().startsWith("p50 51 p95 96 ms"));
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Affine gộp input → view phải khớp 2 bước cũ: inputBoxToUpright rồi FIT_CENTER lên view.
+ */
+public class FrameTransformTest {
+
+    private static final int[] ROTATIONS = {0, 90, 180, 270};
+
+    /** mapForOverlay cũ: scale + pad FIT_CENTER từ ảnh đứng lên view */
+    private static float[] oldTwoStep(LetterboxTransform t, float[] inputBox, int viewW, int viewH) {
+        float[] b = inputBox.clone();
+        t.inputBoxToUpright(b, 0);
+        float scale = Math.min(viewW / (float) t.getUprightW(), viewH / (float) t.getUprightH());
+        float padX = (viewW - t.getUprightW() * scale) / 2f;
+        float padY = (viewH - t.getUprightH() * scale) / 2f;
+        return new float[]{b[0] * scale + padX, b[1] * scale + padY, b[2] * scale + padX, b[3] * scale + padY};
+    }
+
+    @Test
+    public void matchesTwoStepMappingForAllRotations() {
+        float[][] boxes = {
+                {0f, 0f, 448f, 448f},
+                {100f, 150f, 220f, 260f},
+                {10f, 200f, 30f, 240f},
+                {400f, 120f, 447f, 330f},
+        };
+        int[][] views = {{1080, 2200}, {2200, 1080}, {720, 1280}};
+        for (int rot : ROTATIONS) {
+            LetterboxTransform t = new LetterboxTransform();
+            t.update(640, 360, rot, 448, 448);
+            for (int[] v : views) {
+                FrameTransform f = new FrameTransform();
+                assertTrue(f.update(t, v[0], v[1]));
+                float[] flat = new float[4 * boxes.length];
+                for (int i = 0; i < boxes.length; i++) System.arraycopy(boxes[i], 0, flat, 4 * i, 4);
+                f.mapInputBoxes(flat, 0, flat, 0, boxes.length);
+                for (int i = 0; i < boxes.length; i++) {
+                    float[] expected = oldTwoStep(t, boxes[i], v[0], v[1]);
+                    for (int k = 0; k < 4; k++) {
+                        assertEquals("rot " + rot + " view " + v[0] + "x" + v[1], expected[k], flat[4 * i + k], 1e-2f);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void uprightBoxesUseViewScaleOnly() {
+        LetterboxTransform t = new LetterboxTransform();
+        t.update(640, 360, 90, 448, 448);
+        FrameTransform f = new FrameTransform();
+        f.update(t, 720, 1280);
+        float[] b = {0f, 0f, 360f, 640f};
+        f.mapUprightBoxes(b, 0, b, 0, 1);
+        assertArrayEquals(new float[]{0f, 0f, 720f, 1280f}, b, 1e-3f);
+    }
+
+    @Test
+    public void recomputesOnlyWhenConfigChanges() {
+        LetterboxTransform t = new LetterboxTransform();
+        t.update(640, 360, 90, 448, 448);
+        FrameTransform f = new FrameTransform();
+        assertTrue(f.update(t, 1080, 1920));
+        assertFalse(f.update(t, 1080, 1920));
+        assertTrue(f.update(t, 1080, 2000));
+        t.update(640, 360, 90, 384, 384);
+        assertTrue(f.update(t, 1080, 2000));
+        t.update(640, 360, 0, 384, 384);
+        assertTrue(f.update(t, 1080, 2000));
+    }
+
+    @Test
+    public void invalidUntilViewLaidOut() {
+        LetterboxTransform t = new LetterboxTransform();
+        t.update(640, 360, 0, 448, 448);
+        FrameTransform f = new FrameTransform();
+        f.update(t, 0, 0);
+        assertFalse(f.isValid());
+        f.update(t, 100, 100);
+        assertTrue(f.isValid());
+    }
+}
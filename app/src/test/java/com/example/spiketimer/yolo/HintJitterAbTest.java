@@ -0,0 +1,59 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * A/B phiên hint: luân phiên khối khi bật, jitter ghi riêng từng bên, tắt thì không ghi.
+ */
+public class HintJitterAbTest {
+
+    @Test
+    public void disabledStaysOnAndRecordsNothing() {
+        HintJitterAb ab = new HintJitterAb(1_000L);
+        assertEquals(HintJitterAb.HINT_ON, ab.armAt(0L));
+        assertEquals(HintJitterAb.HINT_ON, ab.armAt(5_000L));
+        ab.record(HintJitterAb.HINT_ON, 20f, 33f);
+        ab.record(HintJitterAb.HINT_ON, 25f, 33f);
+        assertEquals("collecting", ab.summary());
+    }
+
+    @Test
+    public void alternatesBlocksAndSplitsStats() {
+        HintJitterAb ab = new HintJitterAb(1_000L);
+        ab.setEnabled(true);
+        long t = 0L;
+        // Khối 1: hint bật, detect đều; khối 2: hint tắt, cứ 5 frame có 1 frame trễ vọt
+        for (int i = 0; i < 30; i++, t += 34L) {
+            int arm = ab.armAt(t);
+            assertEquals(HintJitterAb.HINT_ON, arm);
+            ab.record(arm, 20f, i == 0 ? -1f : 34f);
+        }
+        for (int i = 0; i < 30; i++, t += 34L) {
+            int arm = ab.armAt(t);
+            assertEquals(HintJitterAb.HINT_OFF, arm);
+            ab.record(arm, i % 5 == 0 ? 60f : 20f, 34f);
+        }
+        assertEquals(HintJitterAb.HINT_ON, ab.armAt(t));
+
+        String s = ab.summary();
+        assertTrue(s, s.startsWith("hint on detect p99-p50 0.0 / sd 0.0"));
+        assertTrue(s, s.contains(" | hint off detect p99-p50 40.0"));
+        assertTrue(s, s.contains("(30)"));
+    }
+
+    @Test
+    public void reEnablingStartsWithHintOn() {
+        HintJitterAb ab = new HintJitterAb(1_000L);
+        ab.setEnabled(true);
+        ab.armAt(0L);
+        assertEquals(HintJitterAb.HINT_OFF, ab.armAt(1_000L));
+        ab.setEnabled(false);
+        assertEquals(HintJitterAb.HINT_ON, ab.armAt(1_100L));
+        ab.setEnabled(true);
+        assertEquals(HintJitterAb.HINT_ON, ab.armAt(1_200L));
+        assertEquals(HintJitterAb.HINT_ON, ab.armAt(2_100L));
+        assertEquals(HintJitterAb.HINT_OFF, ab.armAt(2_200L));
+    }
+}
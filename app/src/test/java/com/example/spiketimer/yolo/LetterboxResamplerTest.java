@@ -0,0 +1,164 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Resampler bảng hệ số so với bilinear tham chiếu tính thẳng từ affine ngược của LetterboxTransform
+ * (cùng quy ước tâm pixel + kẹp mép như Canvas.drawBitmap có filter).
+ */
+public class LetterboxResamplerTest {
+
+    private static final int SRC_W = 80;
+    private static final int SRC_H = 45;
+    private static final int DST = 64;
+    private static final int[] ROTATIONS = {0, 90, 180, 270};
+
+    private static int[] randomArgb(int n, long seed) {
+        Random r = new Random(seed);
+        int[] px = new int[n];
+        for (int i = 0; i < n; i++) px[i] = 0xFF000000 | r.nextInt(0x1000000);
+        return px;
+    }
+
+    /** Bilinear tham chiếu (double) cho 1 pixel đích, trả về RGB [0..1] */
+    private static double[] reference(int[] src, LetterboxTransform t, int u, int v) {
+        float[] m = new float[6];
+        t.srcToInputAffine(m);
+        double x = u + 0.5 - m[2];
+        double y = v + 0.5 - m[5];
+        double det = (double) m[0] * m[4] - (double) m[1] * m[3];
+        double sx = (m[4] * x - m[1] * y) / det - 0.5;
+        double sy = (-m[3] * x + m[0] * y) / det - 0.5;
+        int x0 = (int) Math.floor(sx), y0 = (int) Math.floor(sy);
+        double fx = sx - x0, fy = sy - y0;
+        double[] out = new double[3];
+        for (int ch = 0; ch < 3; ch++) {
+            int shift = 16 - 8 * ch;
+            double p00 = px(src, x0, y0, shift), p01 = px(src, x0 + 1, y0, shift);
+            double p10 = px(src, x0, y0 + 1, shift), p11 = px(src, x0 + 1, y0 + 1, shift);
+            double top = p00 + (p01 - p00) * fx;
+            double bot = p10 + (p11 - p10) * fx;
+            out[ch] = (top + (bot - top) * fy) / 255.0;
+        }
+        return out;
+    }
+
+    private static double px(int[] src, int x, int y, int shift) {
+        x = Math.max(0, Math.min(SRC_W - 1, x));
+        y = Math.max(0, Math.min(SRC_H - 1, y));
+        return (src[y * SRC_W + x] >> shift) & 0xFF;
+    }
+
+    private static void assertMatchesReference(int[] src, LetterboxTransform t, LetterboxResampler rs, FloatBuffer out, String msg) {
+        for (int v = 0; v < DST; v++) {
+            for (int u = 0; u < DST; u++) {
+                int o = (v * DST + u) * 3;
+                boolean content = u >= rs.getU0() && u < rs.getU1() && v >= rs.getV0() && v < rs.getV1();
+                if (!content) {
+                    assertEquals(msg + " pad", 0f, out.get(o), 0f);
+                    continue;
+                }
+                double[] ref = reference(src, t, u, v);
+                for (int ch = 0; ch < 3; ch++) {
+                    assertEquals(msg + " (" + u + "," + v + ")", ref[ch], out.get(o + ch), 0.6 / 255.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void matchesReferenceForAllRotations() {
+        int[] src = randomArgb(SRC_W * SRC_H, 1);
+        for (int rot : ROTATIONS) {
+            LetterboxTransform t = new LetterboxTransform();
+            t.update(SRC_W, SRC_H, rot, DST, DST);
+            LetterboxResampler rs = new LetterboxResampler();
+            assertTrue(rs.update(t));
+            FloatBuffer out = FloatBuffer.allocate(DST * DST * 3);
+            rs.resample(src, out);
+            assertMatchesReference(src, t, rs, out, "rot " + rot);
+            // Nội dung phủ đúng cạnh dài, pad ở cạnh ngắn
+            boolean swap = rot == 90 || rot == 270;
+            if (swap) { assertEquals(0, rs.getV0()); assertEquals(DST, rs.getV1()); }
+            else { assertEquals(0, rs.getU0()); assertEquals(DST, rs.getU1()); }
+        }
+    }
+
+    @Test
+    public void matchesReferenceForCropTile() {
+        int[] src = randomArgb(SRC_W * SRC_H, 2);
+        for (int rot : ROTATIONS) {
+            LetterboxTransform t = new LetterboxTransform();
+            t.update(SRC_W, SRC_H, rot, DST, DST);
+            float cw = t.getUprightW() * 0.6f;
+            t.update(SRC_W, SRC_H, rot, DST, DST, t.getUprightW() - cw, 0f, cw, t.getUprightH());
+            LetterboxResampler rs = new LetterboxResampler();
+            rs.update(t);
+            FloatBuffer out = FloatBuffer.allocate(DST * DST * 3);
+            rs.resample(src, out);
+            assertMatchesReference(src, t, rs, out, "crop rot " + rot);
+        }
+    }
+
+    @Test
+    public void uint8MatchesFloatPath() {
+        int[] src = randomArgb(SRC_W * SRC_H, 3);
+        LetterboxTransform t = new LetterboxTransform();
+        t.update(SRC_W, SRC_H, 90, DST, DST);
+        LetterboxResampler rs = new LetterboxResampler();
+        rs.update(t);
+        FloatBuffer f = FloatBuffer.allocate(DST * DST * 3);
+        ByteBuffer b = ByteBuffer.allocate(DST * DST * 3);
+        rs.resample(src, f);
+        rs.resample(src, b);
+        for (int i = 0; i < DST * DST * 3; i++) {
+            assertEquals(Math.round(f.get(i) * 255f), b.get(i) & 0xFF);
+        }
+    }
+
+    @Test
+    public void writesAtOffsetWithoutTouchingOtherSlots() {
+        int[] src = randomArgb(SRC_W * SRC_H, 4);
+        LetterboxTransform t = new LetterboxTransform();
+        t.update(SRC_W, SRC_H, 0, DST, DST);
+        LetterboxResampler rs = new LetterboxResampler();
+        rs.update(t);
+        int slot = DST * DST * 3;
+        FloatBuffer batch = FloatBuffer.allocate(slot * 2);
+        for (int i = 0; i < slot; i++) batch.put(i, -1f);
+        rs.resample(src, batch, slot);
+        for (int i = 0; i < slot; i++) assertEquals(-1f, batch.get(i), 0f);
+        FloatBuffer single = FloatBuffer.allocate(slot);
+        rs.resample(src, single);
+        for (int i = 0; i < slot; i++) assertEquals(single.get(i), batch.get(slot + i), 0f);
+        assertEquals(0, batch.position());
+    }
+
+    @Test
+    public void padWrittenOnlyWhenTablesOrBufferChange() {
+        int[] src = randomArgb(SRC_W * SRC_H, 5);
+        LetterboxTransform t = new LetterboxTransform();
+        t.update(SRC_W, SRC_H, 0, DST, DST);
+        LetterboxResampler rs = new LetterboxResampler();
+        rs.update(t);
+        FloatBuffer out = FloatBuffer.allocate(DST * DST * 3);
+        rs.resample(src, out);
+        assertTrue(rs.getV0() > 0);
+        // Ghi bậy vào pad: frame sau không ghi lại pad (đã ghi 1 lần)
+        out.put(0, 7f);
+        assertFalse(rs.update(t));
+        rs.resample(src, out);
+        assertEquals(7f, out.get(0), 0f);
+        // Cấu hình đổi → bảng dựng lại → pad ghi lại
+        t.update(SRC_W, SRC_H, 180, DST, DST);
+        assertTrue(rs.update(t));
+        rs.resample(src, out);
+        assertEquals(0f, out.get(0), 0f);
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * So sánh xoay-trong-letterbox với hành vi cũ: CameraX tạo bản sao đã xoay,
+ * rồi letterbox + mapToOriginal trên bản sao đó.
+ */
+public class LetterboxTransformTest {
+
+    private static final int SRC_W = 64;
+    private static final int SRC_H = 36;
+    private static final int DST = 448;
+    private static final int[] ROTATIONS = {0, 90, 180, 270};
+
+    /** Xoay CW kiểu CameraX: trả về ảnh mới [w', h', pixels...] */
+    private static int[] rotateCopy(int[] px, int w, int h, int rotation) {
+        boolean swap = rotation == 90 || rotation == 270;
+        int ow = swap ? h : w;
+        int oh = swap ? w : h;
+        int[] out = new int[ow * oh];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int nx, ny;
+                switch (rotation) {
+                    case 90:  nx = h - 1 - y; ny = x; break;
+                    case 180: nx = w - 1 - x; ny = h - 1 - y; break;
+                    case 270: nx = y; ny = w - 1 - x; break;
+                    default:  nx = x; ny = y;
+                }
+                out[ny * ow + nx] = px[y * w + x];
+            }
+        }
+        return out;
+    }
+
+    /** Letterbox cũ: ratio + pad tính trên ảnh đã xoay */
+    private static float[] oldLetterbox(int w, int h) {
+        float ratio = Math.min(DST / (float) w, DST / (float) h);
+        int newW = Math.round(w * ratio);
+        int newH = Math.round(h * ratio);
+        return new float[]{ratio, (DST - newW) / 2f, (DST - newH) / 2f};
+    }
+
+    @Test
+    public void affineMatchesRotatedCopyThenLetterbox() {
+        int[] src = new int[SRC_W * SRC_H];
+        for (int i = 0; i < src.length; i++) src[i] = i;
+
+        LetterboxTransform t = new LetterboxTransform();
+        float[] m = new float[6];
+        for (int rot : ROTATIONS) {
+            t.update(SRC_W, SRC_H, rot, DST, DST);
+            t.srcToInputAffine(m);
+
+            boolean swap = rot == 90 || rot == 270;
+            int rw = swap ? SRC_H : SRC_W;
+            int rh = swap ? SRC_W : SRC_H;
+            assertEquals(rw, t.getUprightW());
+            assertEquals(rh, t.getUprightH());
+
+            int[] rotated = rotateCopy(src, SRC_W, SRC_H, rot);
+            float[] lb = oldLetterbox(rw, rh);
+            for (int ry = 0; ry < rh; ry++) {
+                for (int rx = 0; rx < rw; rx++) {
+                    int v = rotated[ry * rw + rx];
+                    // Tâm pixel gốc đi qua affine phải trùng tâm pixel bản sao đã xoay sau letterbox cũ
+                    float sx = (v % SRC_W) + 0.5f;
+                    float sy = (v / SRC_W) + 0.5f;
+                    float ix = m[0] * sx + m[1] * sy + m[2];
+                    float iy = m[3] * sx + m[4] * sy + m[5];
+                    float ex = (rx + 0.5f) * lb[0] + lb[1];
+                    float ey = (ry + 0.5f) * lb[0] + lb[2];
+                    assertEquals("rot " + rot, ex, ix, 1e-3f);
+                    assertEquals("rot " + rot, ey, iy, 1e-3f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void inverseBoxMatchesOldMapToOriginal() {
+        LetterboxTransform t = new LetterboxTransform();
+        float[][] boxes = {
+                {0f, 0f, 448f, 448f},
+                {100f, 150f, 220f, 260f},
+                {10f, 200f, 30f, 240f},
+                {400f, 120f, 447f, 330f},
+        };
+        for (int rot : ROTATIONS) {
+            t.update(SRC_W, SRC_H, rot, DST, DST);
+            int rw = t.getUprightW();
+            int rh = t.getUprightH();
+            float[] lb = oldLetterbox(rw, rh);
+            for (float[] b : boxes) {
+                float[] box = b.clone();
+                t.inputBoxToUpright(box, 0);
+                float[] expected = {
+                        clamp((b[0] - lb[1]) / lb[0], rw - 1),
+                        clamp((b[1] - lb[2]) / lb[0], rh - 1),
+                        clamp((b[2] - lb[1]) / lb[0], rw - 1),
+                        clamp((b[3] - lb[2]) / lb[0], rh - 1),
+                };
+                assertArrayEquals("rot " + rot, expected, box, 1e-4f);
+            }
+        }
+    }
+
+    @Test
+    public void srcToUprightAgreesWithAffine() {
+        LetterboxTransform t = new LetterboxTransform();
+        float[] m = new float[6];
+        float[] p = new float[2];
+        for (int rot : ROTATIONS) {
+            t.update(SRC_W, SRC_H, rot, DST, DST);
+            t.srcToInputAffine(m);
+            float[][] pts = {{0f, 0f}, {SRC_W, 0f}, {0f, SRC_H}, {12.5f, 7.25f}};
+            for (float[] s : pts) {
+                t.srcToUpright(s[0], s[1], p);
+                float ix = m[0] * s[0] + m[1] * s[1] + m[2];
+                float iy = m[3] * s[0] + m[4] * s[1] + m[5];
+                assertEquals(p[0] * t.getRatio() + t.getPadX(), ix, 1e-3f);
+                assertEquals(p[1] * t.getRatio() + t.getPadY(), iy, 1e-3f);
+            }
+        }
+    }
+
+    @Test
+    public void cropBoxMapsBackIntoFullFrame() {
+        LetterboxTransform t = new LetterboxTransform();
+        float[] m = new float[6];
+        for (int rot : ROTATIONS) {
+            t.update(SRC_W, SRC_H, rot, DST, DST);
+            int uw = t.getUprightW();
+            int uh = t.getUprightH();
+            float[] p = new float[2];
+            float[] s = {SRC_W * 0.7f, SRC_H * 0.3f};
+            t.srcToUpright(s[0], s[1], p);
+            // Tile là nửa trái/phải của ảnh đứng chứa điểm
+            float half = uw / 2f;
+            float cropX = p[0] < half ? 0f : half;
+            t.update(SRC_W, SRC_H, rot, DST, DST, cropX, 0f, half, uh);
+            t.srcToInputAffine(m);
+            // Điểm trong tile → input → map ngược phải về đúng toạ độ ảnh đứng
+            float ix = m[0] * s[0] + m[1] * s[1] + m[2];
+            float iy = m[3] * s[0] + m[4] * s[1] + m[5];
+            float[] box = {ix, iy, ix, iy};
+            t.inputBoxToUpright(box, 0);
+            assertEquals("rot " + rot, p[0], box[0], 1e-3f);
+            assertEquals("rot " + rot, p[1], box[1], 1e-3f);
+        }
+    }
+
+    @Test
+    public void updateReportsChangesOnly() {
+        LetterboxTransform t = new LetterboxTransform();
+        assertTrue(t.update(640, 360, 90, 448, 448));
+        assertFalse(t.update(640, 360, 90, 448, 448));
+        assertTrue(t.update(640, 360, 0, 448, 448));
+        assertTrue(t.update(640, 360, 0, 384, 384));
+    }
+
+    private static float clamp(float v, float hi) {
+        return Math.max(0f, Math.min(hi, v));
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Profile chụp độ trễ thấp: chọn dải FPS / mode theo khả năng máy, vòng trần phơi sáng, đo trễ theo profile.
+ */
+public class LowLatencyCaptureTest {
+
+    private long now;
+    private ExposureCap cap;
+
+    @Before
+    public void setUp() {
+        now = 1_000L;
+        cap = new ExposureCap(() -> now, 4_000_000L);
+        cap.setIsoRange(100, 3200);
+    }
+
+    @Test
+    public void picksHighestFixedFpsRangeWithinLimit() {
+        int[] ranges = {15, 30, 30, 30, 7, 30, 24, 60, 60, 60, 120, 120};
+        assertEquals(4, LowLatencyCapture.pickFpsRange(ranges, 60));  // [60, 60]
+        assertEquals(1, LowLatencyCapture.pickFpsRange(ranges, 30));  // [30, 30] thắng [15, 30]
+        assertEquals(-1, LowLatencyCapture.pickFpsRange(new int[]{60, 60}, 30));
+        assertEquals(-1, LowLatencyCapture.pickFpsRange(new int[0], 60));
+    }
+
+    @Test
+    public void picksFirstSupportedMode() {
+        assertEquals(LowLatencyCapture.MODE_FAST,
+                LowLatencyCapture.pickMode(new int[]{0, 1, 2}, LowLatencyCapture.NOISE_MODES));
+        assertEquals(LowLatencyCapture.MODE_OFF,
+                LowLatencyCapture.pickMode(new int[]{0, 1, 2}, LowLatencyCapture.EDGE_MODES));
+        assertEquals(LowLatencyCapture.MODE_FAST,
+                LowLatencyCapture.pickMode(new int[]{1, 2}, LowLatencyCapture.EDGE_MODES));
+        assertEquals(-1, LowLatencyCapture.pickMode(new int[]{2}, LowLatencyCapture.NOISE_MODES));
+        assertEquals(-1, LowLatencyCapture.pickMode(null, LowLatencyCapture.NOISE_MODES));
+    }
+
+    @Test
+    public void longAutoExposureSwitchesToManualAtSameBrightness() {
+        cap.onFrameLuma(0.4f);
+        assertFalse(cap.onAutoResult(3_000_000L, 400, true));       // dưới trần
+        assertFalse(cap.onAutoResult(16_000_000L, 400, false));     // AE chưa hội tụ
+        assertTrue(cap.onAutoResult(16_000_000L, 400, true));
+        assertTrue(cap.isManual());
+        assertEquals(1600, cap.getIso());                           // 16 ms → 4 ms: ISO ×4
+        assertFalse(cap.onAutoResult(16_000_000L, 400, true));      // đã manual
+    }
+
+    @Test
+    public void manualIsoClampsToSensorRange() {
+        cap.onFrameLuma(0.4f);
+        assertTrue(cap.onAutoResult(33_000_000L, 800, true));
+        assertEquals(3200, cap.getIso());
+    }
+
+    @Test
+    public void manualLoopTracksBrightnessAfterSettling() {
+        cap.onFrameLuma(0.4f);
+        cap.onAutoResult(16_000_000L, 400, true);
+        now += 50;
+        assertFalse(cap.onFrameLuma(0.2f));                         // còn trong settle
+        now += 200;
+        assertFalse(cap.onFrameLuma(0.38f));                        // trong deadband
+        assertTrue(cap.onFrameLuma(0.2f));                          // tối gấp đôi → ISO ×1.25 (bước tối đa)
+        assertEquals(2000, cap.getIso());
+        assertTrue(cap.isManual());
+    }
+
+    @Test
+    public void returnsToAutoWhenTooBrightAtMinimumIso() {
+        cap.onFrameLuma(0.4f);
+        cap.onAutoResult(4_800_000L, 100, true);                    // ISO 120
+        for (int i = 0; i < 5 && cap.isManual(); i++) {
+            now += 300;
+            cap.onFrameLuma(0.9f);
+        }
+        assertFalse(cap.isManual());
+    }
+
+    @Test
+    public void unsupportedSensorNeverGoesManual() {
+        cap.setIsoRange(0, 0);
+        cap.onFrameLuma(0.4f);
+        assertFalse(cap.onAutoResult(33_000_000L, 400, true));
+        assertEquals("n/a", cap.summary());
+    }
+
+    @Test
+    public void latencyIsSplitByProfileAndMatchedBySensorTimestamp() {
+        CaptureLatencyLog log = new CaptureLatencyLog();
+        log.onResult(1_000_000_000L, 1_020_000_000L);
+        log.onAnalyze(1_000_000_000L, 1_050_000_000L);
+        assertEquals(50f, log.ageP50(CaptureLatencyLog.STANDARD), 0.01f);
+        assertTrue(Float.isNaN(log.ageP50(CaptureLatencyLog.LOW_LATENCY)));
+
+        log.setProfile(CaptureLatencyLog.LOW_LATENCY);
+        log.onAnalyze(2_000_000_000L, 2_030_000_000L);               // không có result khớp: chỉ tính age
+        log.onAnalyze(3_000_000_000L, 2_000_000_000L);               // timebase khác → bỏ
+        assertEquals(30f, log.ageP50(CaptureLatencyLog.LOW_LATENCY), 0.01f);
+        String s = log.summary();
+        assertTrue(s, s.contains("std age p50 50") && s.contains("result p50 20") && s.contains("low-lat age p50 30"));
+    }
+}
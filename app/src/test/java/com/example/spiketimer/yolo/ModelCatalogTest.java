@@ -0,0 +1,61 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Danh sách model đổi nóng: asset mặc định + file .tflite trong thư mục models.
+ */
+public class ModelCatalogTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static File write(File dir, String name, int bytes) throws Exception {
+        File f = new File(dir, name);
+        try (FileOutputStream out = new FileOutputStream(f)) { out.write(new byte[bytes]); }
+        return f;
+    }
+
+    @Test
+    public void listsDefaultFirstThenModelFilesByName() throws Exception {
+        File dir = tmp.newFolder("models");
+        File b = write(dir, "b_v2.tflite", 16);
+        File a = write(dir, "a_v1.tflite", 16);
+        write(dir, "notes.txt", 16);
+        write(dir, "empty.tflite", 0);
+        ModelCatalog c = new ModelCatalog(dir, "base.tflite");
+        assertEquals(Arrays.asList("base.tflite", a.getAbsolutePath(), b.getAbsolutePath()), c.list());
+    }
+
+    @Test
+    public void nextCyclesAndResolveFallsBack() throws Exception {
+        File dir = tmp.newFolder("models");
+        File a = write(dir, "a.tflite", 16);
+        ModelCatalog c = new ModelCatalog(dir, "base.tflite");
+        assertEquals(a.getAbsolutePath(), c.next("base.tflite"));
+        assertEquals("base.tflite", c.next(a.getAbsolutePath()));
+        assertEquals("base.tflite", c.next("/gone.tflite"));
+        assertEquals(a.getAbsolutePath(), c.resolve(a.getAbsolutePath()));
+        assertTrue(a.delete());
+        assertEquals("base.tflite", c.resolve(a.getAbsolutePath()));
+        assertEquals("base.tflite", c.resolve(null));
+    }
+
+    @Test
+    public void missingDirectoryOnlyHasDefault() {
+        ModelCatalog c = new ModelCatalog(new File(tmp.getRoot(), "nope"));
+        assertEquals(1, c.list().size());
+        assertEquals(DetectorProfileStore.DEFAULT_MODEL, c.getDefaultModel());
+        assertTrue(ModelCatalog.isFile("/data/x.tflite"));
+        assertFalse(ModelCatalog.isFile("x.tflite"));
+        assertEquals("x.tflite", ModelCatalog.displayName("/data/models/x.tflite"));
+    }
+}
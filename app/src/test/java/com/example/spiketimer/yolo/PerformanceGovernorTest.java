@@ -0,0 +1,118 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Policy của governor chạy trên JVM với nguồn nhiệt + đồng hồ giả lập.
+ */
+public class PerformanceGovernorTest {
+
+    private static class FakeThermal implements ThermalSource {
+        int status = PerformanceGovernor.STATUS_NONE;
+        float headroom = Float.NaN;
+        @Override public int thermalStatus() { return status; }
+        @Override public float thermalHeadroom() { return headroom; }
+    }
+
+    private FakeThermal thermal;
+    private long now;
+    private PerformanceGovernor governor;
+
+    @Before
+    public void setUp() {
+        thermal = new FakeThermal();
+        now = 0L;
+        governor = new PerformanceGovernor(thermal, () -> now);
+    }
+
+    /** Chạy các frame cách nhau stepMs trong durationMs, trả về số lần đổi nấc */
+    private int run(long durationMs, long stepMs, float latencyMs) {
+        int changes = 0;
+        for (long t = 0; t < durationMs; t += stepMs) {
+            now += stepMs;
+            if (governor.onFrame(latencyMs)) changes++;
+        }
+        return changes;
+    }
+
+    @Test
+    public void staysAtTopLevelWhenCool() {
+        assertEquals(0, run(30_000, 33, 20f));
+        assertEquals(0, governor.currentLevelIndex());
+        assertEquals(4, governor.currentLevel().getNumThreads());
+    }
+
+    @Test
+    public void severeThermalStepsDownImmediately() {
+        thermal.status = PerformanceGovernor.STATUS_SEVERE;
+        now += 33;
+        assertTrue(governor.onFrame(20f));
+        assertEquals(1, governor.currentLevelIndex());
+    }
+
+    @Test
+    public void sustainedHighLatencyStepsDown() {
+        // Vượt budget ngắn hạn chưa hạ
+        assertEquals(0, run(1_000, 33, 120f));
+        // Giữ đủ lâu thì hạ
+        assertTrue(run(1_000, 33, 120f) >= 1);
+        assertTrue(governor.currentLevelIndex() >= 1);
+    }
+
+    @Test
+    public void stepsDownToFloorAndStaysThere() {
+        thermal.status = PerformanceGovernor.STATUS_SEVERE;
+        run(60_000, 33, 20f);
+        int last = governor.getLevels().size() - 1;
+        assertEquals(last, governor.currentLevelIndex());
+        assertEquals(1, governor.currentLevel().getNumThreads());
+    }
+
+    @Test
+    public void stepsBackUpOnlyAfterCoolHold() {
+        thermal.status = PerformanceGovernor.STATUS_SEVERE;
+        run(3_000, 33, 20f);
+        int hot = governor.currentLevelIndex();
+        assertTrue(hot >= 2);
+
+        thermal.status = PerformanceGovernor.STATUS_NONE;
+        // Chưa đủ thời gian giữ nâng
+        assertEquals(0, run(5_000, 33, 20f));
+        assertEquals(hot, governor.currentLevelIndex());
+        // Đủ lâu thì nâng từng nấc một
+        run(6_000, 33, 20f);
+        assertEquals(hot - 1, governor.currentLevelIndex());
+    }
+
+    @Test
+    public void moderateBandHoldsLevel() {
+        thermal.status = PerformanceGovernor.STATUS_SEVERE;
+        run(1_100, 33, 20f);
+        int level = governor.currentLevelIndex();
+        // Headroom nằm giữa ngưỡng mát và ngưỡng ấm → không nâng, không hạ
+        thermal.status = PerformanceGovernor.STATUS_LIGHT;
+        thermal.headroom = 0.8f;
+        assertEquals(0, run(60_000, 33, 20f));
+        assertEquals(level, governor.currentLevelIndex());
+    }
+
+    @Test
+    public void oscillationExtendsStepUpHold() {
+        // Hạ 1 nấc vì latency
+        run(2_000, 33, 120f);
+        assertEquals(1, governor.currentLevelIndex());
+        // Mát → nâng sau ~10 s (cộng thời gian EWMA tụt xuống)
+        run(11_000, 33, 20f);
+        assertEquals(0, governor.currentLevelIndex());
+        // Ngay lập tức quá tải lại → hạ, và lần nâng sau phải chờ lâu hơn
+        run(2_000, 33, 120f);
+        assertEquals(1, governor.currentLevelIndex());
+        run(11_000, 33, 20f);
+        assertEquals(1, governor.currentLevelIndex());
+        run(11_000, 33, 20f);
+        assertEquals(0, governor.currentLevelIndex());
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Núm hiệu năng: preset hợp lệ, kiểm tra miền, kẹp giá trị prefs cũ, nhận diện preset.
+ */
+public class PipelineSettingsTest {
+
+    @Test
+    public void presetsAreValidAndRecognised() {
+        for (Map.Entry<String, PipelineSettings> e : PipelineSettings.PRESETS.entrySet()) {
+            assertTrue(e.getKey(), e.getValue().isValid());
+            assertEquals(e.getKey(), e.getValue().presetName());
+        }
+        assertEquals(PipelineSettings.BALANCED, PipelineSettings.DEFAULT.presetName());
+        assertTrue(PipelineSettings.DEFAULT.getCountdownBoxes());
+        assertFalse(PipelineSettings.preset(PipelineSettings.LOWEST_LATENCY).getCountdownBoxes());
+        assertFalse(PipelineSettings.DEFAULT.getLowLatencyCapture());
+        assertTrue(PipelineSettings.preset(PipelineSettings.LOWEST_LATENCY).getLowLatencyCapture());
+        // Trigger âm thanh không làm mất nhận diện preset
+        assertEquals(PipelineSettings.BALANCED, PipelineSettings.DEFAULT.withAudioTrigger(true).presetName());
+        // A/B hint là chẩn đoán, cũng không tính
+        assertEquals(PipelineSettings.BALANCED, PipelineSettings.DEFAULT.withHintAb(true).presetName());
+        PipelineSettings tweaked = new PipelineSettings(0.8f, 0.45f, 10, 0.01f, 448, 4, 2);
+        assertEquals(PipelineSettings.CUSTOM, tweaked.presetName());
+    }
+
+    @Test
+    public void reportsEveryOutOfRangeField() {
+        PipelineSettings bad = new PipelineSettings(0.1f, 0.45f, 0, Float.NaN, 400, 4, 9);
+        Map<String, String> errors = bad.errors();
+        assertEquals(5, errors.size());
+        assertEquals("0.3–0.99", errors.get(PipelineSettings.CONF));
+        assertTrue(errors.containsKey(PipelineSettings.TOP_K));
+        assertTrue(errors.containsKey(PipelineSettings.TRIGGER_FALSE_RATE));
+        assertEquals("bội của 32", errors.get(PipelineSettings.INPUT_SIZE));
+        assertEquals("1–4", errors.get(PipelineSettings.TILES));
+        assertFalse(errors.containsKey(PipelineSettings.IOU));
+        assertFalse(bad.isValid());
+    }
+
+    @Test
+    public void clampsIntoRange() {
+        PipelineSettings c = new PipelineSettings(2f, 0f, 500, Float.NaN, 1000, 0, 0).clamped();
+        assertTrue(c.isValid());
+        assertEquals(0.99f, c.getConfThreshold(), 0f);
+        assertEquals(0.1f, c.getIouThreshold(), 0f);
+        assertEquals(PipelineSettings.MAX_TOP_K, c.getTopK());
+        assertEquals(PipelineSettings.DEFAULT.getTriggerFalseRate(), c.getTriggerFalseRate(), 0f);
+        assertEquals(PipelineSettings.MAX_INPUT, c.getInputSize());
+        assertEquals(1, c.getMaxThreads());
+        assertEquals(1, c.getTiles());
+        // Input làm tròn về bội 32 gần nhất
+        assertEquals(352, new PipelineSettings(0.74f, 0.45f, 10, 0.01f, 350, 4, 2).clamped().getInputSize());
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cổng trước YOLO: đặc trưng vệt sáng trên buffer RGBA + ngưỡng tự chỉnh theo recall.
+ */
+public class SpikeGateTest {
+
+    private long now;
+    private SpikeGate gate;
+
+    @Before
+    public void setUp() {
+        now = 0L;
+        gate = new SpikeGate(() -> now, 0.9f, 0.01f, 5, 1_000L, 10);
+    }
+
+    /** Frame RGBA w×h (có padding hàng) nền xám tối, vẽ 1 khối màu tại (x0, y0, bw, bh) */
+    private static ByteBuffer frame(int w, int h, int rowStride, int x0, int y0, int bw, int bh, int r, int g, int b) {
+        ByteBuffer buf = ByteBuffer.allocate(rowStride * h);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                boolean in = x >= x0 && x < x0 + bw && y >= y0 && y < y0 + bh;
+                int o = y * rowStride + x * 4;
+                buf.put(o, (byte) (in ? r : 40));
+                buf.put(o + 1, (byte) (in ? g : 40));
+                buf.put(o + 2, (byte) (in ? b : 45));
+                buf.put(o + 3, (byte) 255);
+            }
+        }
+        return buf;
+    }
+
+    @Test
+    public void glowFeatureFindsSmallRedBlobInCorner() {
+        GlowFeature f = new GlowFeature();
+        int w = 640, h = 360, stride = w * 4 + 64;
+        float empty = f.score(frame(w, h, stride, 0, 0, 0, 0, 0, 0, 0), w, h, stride, 4);
+        // Khối đỏ-cam 40×30 ở góc dưới phải (~0.5% diện tích frame)
+        float red = f.score(frame(w, h, stride, 590, 320, 40, 30, 255, 70, 20), w, h, stride, 4);
+        // Cùng khối nhưng màu xanh lá → không phải glow của spike
+        float green = f.score(frame(w, h, stride, 590, 320, 40, 30, 30, 240, 40), w, h, stride, 4);
+        assertEquals(0f, empty, 0f);
+        assertEquals(0f, green, 0f);
+        assertTrue("red " + red, red > 0.1f);
+    }
+
+    @Test
+    public void glowFeatureReportsMeanLumaOfSamples() {
+        GlowFeature f = new GlowFeature();
+        assertTrue(Float.isNaN(f.getLastMeanLuma()));
+        int w = 320, h = 180, stride = w * 4;
+        f.score(frame(w, h, stride, 0, 0, 0, 0, 0, 0, 0), w, h, stride, 4);
+        assertEquals(40.6f / 255f, f.getLastMeanLuma(), 0.005f);     // nền (40, 40, 45)
+        f.score(frame(w, h, stride, 0, 0, w, h, 255, 255, 255), w, h, stride, 4);
+        assertEquals(1f, f.getLastMeanLuma(), 0.005f);
+    }
+
+    @Test
+    public void passesAboveThresholdAndAuditsSomeRejects() {
+        assertEquals(SpikeGate.PASS, gate.decide(0.5f));
+        int audits = 0, skips = 0;
+        for (int i = 0; i < 20; i++) {
+            int d = gate.decide(0f);
+            if (d == SpikeGate.AUDIT) audits++;
+            if (d == SpikeGate.SKIP) skips++;
+        }
+        assertEquals(4, audits);
+        assertEquals(16, skips);
+        assertEquals(16, gate.skippedFrames());
+        assertEquals(1f / 21f, gate.passRate(), 1e-6f);
+        assertEquals(16 * 30f, gate.savedMs(30f), 0f);
+    }
+
+    @Test
+    public void holdsOpenAfterSpike() {
+        gate.onDetection(0.4f, SpikeGate.PASS, true);
+        now += 500;
+        assertEquals(SpikeGate.PASS, gate.decide(0f));
+        now += 600;
+        assertNotEquals(SpikeGate.PASS, gate.decide(0f));
+    }
+
+    @Test
+    public void thresholdTracksRecallTarget() {
+        // 20 frame có spike, điểm gate 0.05 … 1.00
+        for (int i = 1; i <= 20; i++) gate.onDetection(i * 0.05f, SpikeGate.PASS, true);
+        // recall 0.9 → phân vị 10% = 0.15, × margin 0.9
+        assertEquals(0.15f * 0.9f, gate.getThreshold(), 1e-5f);
+        int passed = 0;
+        for (int i = 1; i <= 20; i++) {
+            now += 10_000; // ra khỏi hold
+            if (gate.decide(i * 0.05f) == SpikeGate.PASS) passed++;
+        }
+        assertTrue(passed / 20f >= gate.getRecallTarget());
+    }
+
+    @Test
+    public void auditMissIsCounted() {
+        for (int i = 0; i < 4; i++) gate.decide(0f);
+        int d = gate.decide(0f);
+        assertEquals(SpikeGate.AUDIT, d);
+        gate.onDetection(0f, d, true);
+        assertEquals(1, gate.auditMisses());
+    }
+}
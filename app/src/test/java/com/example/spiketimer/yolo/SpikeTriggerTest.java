@@ -0,0 +1,129 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Trigger tuần tự: ngưỡng từ α/β, kích hoạt sớm với confidence cao, hysteresis, bỏ bằng chứng cũ.
+ */
+public class SpikeTriggerTest {
+
+    private long now;
+    private SpikeTrigger trigger;
+
+    @Before
+    public void setUp() {
+        now = 1_000L;
+        trigger = new SpikeTrigger(() -> now, 0.01f, 0.05f);
+    }
+
+    /** Đưa 1 frame cách frame trước 33 ms */
+    private boolean frame(float score) {
+        now += 33;
+        return trigger.update(score);
+    }
+
+    @Test
+    public void thresholdsFollowWald() {
+        assertEquals(Math.log(0.95 / 0.01), trigger.getUpper(), 1e-5);
+        assertEquals(Math.log(0.05 / 0.99), trigger.getLower(), 1e-5);
+    }
+
+    @Test
+    public void strongFrameFiresImmediately() {
+        assertTrue(frame(0.95f));
+        assertTrue(trigger.isFired());
+    }
+
+    @Test
+    public void boundaryScoresFireFasterThanThreeFrames() {
+        // Ngay tại ngưỡng cũ 0.74: 2 frame là đủ (trước đây cần 3)
+        assertFalse(frame(0.74f));
+        assertTrue(frame(0.74f));
+        assertEquals(1_033L, trigger.onsetMs());
+    }
+
+    @Test
+    public void weakEvidenceAccumulates() {
+        int frames = 0;
+        boolean fired = false;
+        while (!fired && frames < 20) { fired = frame(0.6f); frames++; }
+        assertTrue(fired);
+        assertTrue("frames " + frames, frames > 2);
+    }
+
+    @Test
+    public void noiseNeverFires() {
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(frame(i % 7 == 0 ? 0.55f : 0f));
+        }
+        assertEquals(0f, trigger.statistic(), 0f);
+    }
+
+    @Test
+    public void latchedUntilAbsenceEvidence() {
+        assertTrue(frame(0.95f));
+        // Spike vẫn trong khung → không kích hoạt lại
+        for (int i = 0; i < 10; i++) assertFalse(frame(0.95f));
+        // 1 frame trống chưa đủ mở lại, S giảm từ A xuống dưới B cần ≥ 2 frame
+        assertFalse(frame(0f));
+        assertTrue(trigger.isFired());
+        assertFalse(frame(0f));
+        assertFalse(trigger.isFired());
+        assertTrue(frame(0.95f));
+    }
+
+    @Test
+    public void staleEvidenceIsDropped() {
+        assertFalse(frame(0.7f));
+        now += 1_000; // analysis dừng lâu
+        assertFalse(trigger.update(0.7f));
+        assertEquals(now, trigger.onsetMs());
+    }
+
+    @Test
+    public void resetRearms() {
+        assertTrue(frame(0.95f));
+        trigger.reset();
+        assertFalse(trigger.isFired());
+        assertTrue(frame(0.95f));
+    }
+
+    @Test
+    public void captureTimeDrivesOnset() {
+        // Frame chụp lúc 1000/1033 nhưng xử lý trễ → onset theo mốc chụp
+        now = 5_000L;
+        assertFalse(trigger.update(0.74f, 1_000L));
+        assertTrue(trigger.update(0.74f, 1_033L));
+        assertEquals(1_000L, trigger.onsetMs());
+    }
+
+    @Test
+    public void ratesChangeLive() {
+        float strict = trigger.getUpper();
+        // α lớn hơn → ngưỡng A thấp hơn → 1 frame 0.74 đủ kích hoạt (trước đó cần 2)
+        trigger.setRates(0.2f, 0.05f);
+        assertTrue(trigger.getUpper() < strict);
+        assertEquals(0.2f, trigger.getFalseTriggerRate(), 0f);
+        assertTrue(frame(0.74f));
+    }
+
+    @Test
+    public void externalEvidenceFiresOnceAndLatchesCamera() {
+        frame(0.6f);
+        assertTrue(trigger.fire(now - 400, now));
+        assertEquals(now - 400, trigger.onsetMs());
+        assertFalse(trigger.fire(now, now));            // đã kích hoạt
+        assertFalse(frame(0.95f));                      // camera thấy spike sau đó: không kích hoạt lại
+        for (int i = 0; i < 10; i++) frame(0f);        // spike rời khung → mở lại
+        assertFalse(trigger.isFired());
+        assertTrue(trigger.fire(now, now));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRatesRejected() {
+        trigger.setRates(0.6f, 0.5f);
+    }
+}
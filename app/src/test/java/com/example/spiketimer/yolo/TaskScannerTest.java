@@ -0,0 +1,71 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tìm tid theo comm trong /proc/self/task (ở đây là thư mục giả) + jitter của cửa sổ latency.
+ */
+public class TaskScannerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static void task(File root, String tid, String comm) throws Exception {
+        File d = new File(root, tid);
+        assertTrue(d.mkdirs());
+        if (comm == null) return;
+        try (FileWriter w = new FileWriter(new File(d, "comm"))) { w.write(comm + "\n"); }
+    }
+
+    @Test
+    public void findsThreadsByCommExcludingOwn() throws Exception {
+        File root = tmp.newFolder("task");
+        task(root, "100", "spike-analysis");
+        task(root, "101", "spike-analysis");
+        task(root, "102", "spike-analysis");
+        task(root, "103", "RenderThread");
+        task(root, "104", null);               // thread vừa thoát: không còn comm
+        task(root, "self", "spike-analysis");  // không phải tid
+        TaskScanner s = new TaskScanner(root);
+        assertArrayEquals(new int[]{101, 102}, s.tidsNamed("spike-analysis", new int[]{100}));
+        assertArrayEquals(new int[]{103}, s.tidsNamed("RenderThread"));
+        assertEquals(0, s.tidsNamed("nobody").length);
+    }
+
+    @Test
+    public void comparesTruncatedComm() throws Exception {
+        File root = tmp.newFolder("task");
+        // Kernel cắt comm ở 15 ký tự
+        task(root, "7", "spike-analysis-");
+        assertArrayEquals(new int[]{7}, new TaskScanner(root).tidsNamed("spike-analysis-worker"));
+    }
+
+    @Test
+    public void missingRootYieldsNothing() {
+        assertEquals(0, new TaskScanner(new File(tmp.getRoot(), "none")).tidsNamed("x").length);
+    }
+
+    @Test
+    public void jitterIsTailOverMedian() {
+        LatencyStats s = new LatencyStats(100);
+        for (int i = 0; i < 98; i++) s.add(20f);
+        s.add(20f);
+        s.add(50f);
+        assertEquals(30f, s.jitter(), 1e-4f);
+        assertTrue(s.stdDev() > 2.9f && s.stdDev() < 3.1f);
+
+        PipelineMetrics m = new PipelineMetrics();
+        assertEquals("", m.jitter("detect"));
+        m.record("detect", 10f);
+        m.record("detect", 10f);
+        m.record("detect", 12f);
+        assertTrue(m.jitter("detect").startsWith("p99-p50 2.0"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TileLayoutTest {
+
+    @Test
+    public void wideFrameSplitsHorizontally() {
+        TileLayout l = new TileLayout();
+        l.update(640, 360, 2);
+        assertEquals(2, l.getCols());
+        assertEquals(1, l.getRows());
+        float[] r = l.getRects();
+        // Tile đầu sát trái, tile cuối sát phải, phủ hết chiều cao
+        assertEquals(0f, r[0], 1e-3f);
+        assertEquals(640f, r[4] + r[6], 1e-3f);
+        assertEquals(360f, r[3], 1e-3f);
+        // Có chồng lấn ở giữa
+        assertTrue(r[0] + r[2] > r[4]);
+    }
+
+    @Test
+    public void fourTilesOnWideFramePreferNearSquareTiles() {
+        TileLayout l = new TileLayout();
+        l.update(640, 360, 4);
+        // 2×2 → tile 16:9, 4×1 → tile ~4:9; 2×2 gần vuông hơn
+        assertEquals(2, l.getCols());
+        assertEquals(2, l.getRows());
+    }
+
+    @Test
+    public void tilesCoverWholeFrameWithOverlap() {
+        TileLayout l = new TileLayout();
+        l.update(360, 640, 3, 0.25f);
+        assertEquals(1, l.getCols());
+        assertEquals(3, l.getRows());
+        float[] r = l.getRects();
+        float covered = 0f;
+        for (int t = 0; t < l.getCount(); t++) {
+            float top = r[4 * t + 1];
+            float bottom = top + r[4 * t + 3];
+            assertTrue("gap before tile " + t, top <= covered + 1e-3f);
+            covered = Math.max(covered, bottom);
+        }
+        assertEquals(640f, covered, 1e-3f);
+        // Chồng lấn đúng 25% chiều cao tile
+        float overlap = (r[1] + r[3]) - r[5];
+        assertEquals(0.25f * r[3], overlap, 1e-3f);
+    }
+
+    @Test
+    public void updateIsNoOpForSameConfig() {
+        TileLayout l = new TileLayout();
+        assertTrue(l.update(640, 360, 2));
+        assertFalse(l.update(640, 360, 2));
+        assertTrue(l.update(640, 360, 4));
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tiêu chí "sẵn sàng" của warmup: dừng khi latency các vòng cuối ổn định, hoặc khi hết số vòng.
+ */
+public class WarmupTrackerTest {
+
+    @Test
+    public void stopsOnceLatencySettles() {
+        WarmupTracker t = new WarmupTracker(3, 12, 3, 0.15f);
+        // Vòng đầu chậm 2–3× (JIT, cấp phát buffer, khởi tạo kernel) rồi ổn định
+        float[] lat = {95f, 70f, 42f, 36f, 35f, 34f};
+        int i = 0;
+        while (!t.add(lat[i])) i++;
+        assertTrue(t.isStable());
+        assertEquals(6, t.iterations());
+        assertEquals(95f, t.firstMs(), 0f);
+        assertEquals(35f, t.steadyMs(), 0f);
+    }
+
+    @Test
+    public void neverStableBeforeMinIterations() {
+        WarmupTracker t = new WarmupTracker(4, 12, 3, 0.15f);
+        assertFalse(t.add(30f));
+        assertFalse(t.add(30f));
+        assertFalse(t.add(30f));
+        assertTrue(t.add(30f));
+        assertTrue(t.isStable());
+    }
+
+    @Test
+    public void givesUpAtMaxIterationsWhenNoisy() {
+        WarmupTracker t = new WarmupTracker(3, 6, 3, 0.15f);
+        float[] lat = {80f, 40f, 60f, 35f, 70f, 30f, 65f};
+        int n = 0;
+        for (float ms : lat) {
+            n++;
+            if (t.add(ms)) break;
+        }
+        assertEquals(6, n);
+        assertTrue(t.isFinished());
+        assertFalse(t.isStable());
+        assertEquals(6, t.latencies().length);
+    }
+
+    @Test
+    public void resetStartsOver() {
+        WarmupTracker t = new WarmupTracker();
+        for (int i = 0; i < 3; i++) t.add(20f);
+        assertTrue(t.isFinished());
+        t.reset();
+        assertFalse(t.isFinished());
+        assertEquals(0, t.iterations());
+        assertTrue(Float.isNaN(t.steadyMs()));
+    }
+}
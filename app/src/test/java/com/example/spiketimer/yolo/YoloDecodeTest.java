@@ -0,0 +1,69 @@
+package com.example.spiketimer.yolo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Chế độ presence: quét kênh conf lấy anchor mạnh nhất, decode đúng 1 box.
+ */
+public class YoloDecodeTest {
+
+    /** Output phẳng [5 x n]: mỗi anchor {cx, cy, w, h, conf} */
+    private static float[] output(float[]... anchors) {
+        int n = anchors.length;
+        float[] out = new float[5 * n];
+        for (int i = 0; i < n; i++) {
+            for (int c = 0; c < 5; c++) out[c * n + i] = anchors[i][c];
+        }
+        return out;
+    }
+
+    @Test
+    public void findsStrongestAnchorFromConfidenceOnly() {
+        float[] out = output(
+                new float[]{100, 100, 20, 20, 0.2f},
+                new float[]{200, 150, 40, 30, 0.91f},
+                new float[]{300, 300, 10, 10, 0.9f});
+        int a = YoloDecode.maxConfAnchor(out, 0, 3);
+        assertEquals(1, a);
+        assertEquals(0.91f, YoloDecode.conf(out, 0, 3, a), 0f);
+        assertEquals(-1, YoloDecode.maxConfAnchor(new float[0], 0, 0));
+    }
+
+    @Test
+    public void decodesOneBoxInPixelsOrNormalised() {
+        float[] px = output(new float[]{200, 150, 40, 30, 0.9f}, new float[]{10, 10, 4, 4, 0.1f});
+        assertFalse(YoloDecode.looksNormalized(px, 0, 2));
+        float[] box = new float[6];
+        assertTrue(YoloDecode.decodeAnchor(px, 0, 2, 0, false, 448, 448, box, 2));
+        assertArrayEquals(new float[]{0, 0, 180, 135, 220, 165}, box, 1e-4f);
+
+        float[] norm = output(new float[]{0.5f, 0.5f, 0.1f, 0.2f, 0.8f});
+        assertTrue(YoloDecode.looksNormalized(norm, 0, 1));
+        assertTrue(YoloDecode.decodeAnchor(norm, 0, 1, 0, true, 400, 400, box, 0));
+        assertArrayEquals(new float[]{180, 160, 220, 240}, java.util.Arrays.copyOf(box, 4), 1e-3f);
+    }
+
+    @Test
+    public void clampsAndRejectsDegenerateBox() {
+        float[] out = output(new float[]{-50, 100, 40, 40, 0.9f});
+        float[] box = new float[4];
+        assertFalse(YoloDecode.decodeAnchor(out, 0, 1, 0, false, 448, 448, box, 0));
+        assertEquals(0f, box[0], 0f);
+        assertEquals(0f, box[2], 0f);
+    }
+
+    @Test
+    public void respectsBatchBase() {
+        // 2 phần tử batch liền nhau (chế độ tiled): phần tử thứ 2 bắt đầu ở base = 5·n
+        float[] a = output(new float[]{10, 10, 4, 4, 0.3f}, new float[]{20, 20, 4, 4, 0.4f});
+        float[] b = output(new float[]{30, 30, 4, 4, 0.7f}, new float[]{40, 40, 4, 4, 0.2f});
+        float[] both = new float[a.length + b.length];
+        System.arraycopy(a, 0, both, 0, a.length);
+        System.arraycopy(b, 0, both, a.length, b.length);
+        assertEquals(1, YoloDecode.maxConfAnchor(both, 0, 2));
+        assertEquals(0, YoloDecode.maxConfAnchor(both, a.length, 2));
+        assertEquals(0.7f, YoloDecode.conf(both, a.length, 2, 0), 0f);
+    }
+}